@@ -4,11 +4,31 @@
  * Professor: Nery Chapeton-Lamas
  * Project: Assembler (HACK Architecture)
  */
-import java.io.FileOutputStream;
-import java.io.FileNotFoundException;
+import java.io.File;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.Arrays;
 import java.util.Scanner;
-import java.io.PrintWriter;
+import java.util.concurrent.ForkJoinPool;
 
+/**
+ * Translates HACK assembly code to HACK machine instructions.
+ * <p>
+ *     Besides the command line, an Assembler can be embedded in another tool: assemble accepts
+ *     a file name, a ByteBuffer, a Reader, or a ReadableByteChannel, and hands each instruction
+ *     to a HackWriter as it is produced (e.g., a TextHackWriter over any OutputStream or
+ *     WritableByteChannel, or a WordBuffer). All state lives in the Assembler object. Errors in
+ *     the assembly code are thrown as AssemblyException, which carries the line number.
+ * </p>
+ */
 public class Assembler {
 
     // ALGORITHM:
@@ -22,23 +42,110 @@ public class Assembler {
     // print out "done" message to user
     // close output file stream
 
-    // variable is static because the helper methods need to access the ramAddress, and it's
-    // state is required to be maintained
-    private static int ramAddress;
+    // SINGLE PASS MODE ("-single" flag):
+    // encode every instruction into memory while reading the file once, recording each
+    // symbolic A-instruction as a fixup, then backpatch the fixups once all labels are known
+
+    // A INSTRUCTION TABLE ("-atable" flag):
+    // precompute the text of all 32768 A-instructions before assembling (A-instruction heavy programs)
+
+    // PARALLEL MODE ("-parallel" flag):
+    // one scan of the file records where each instruction starts, builds the labels, and the
+    // order variables are first used in; variables are then allocated up front, so the
+    // instructions can be encoded in chunks on a ForkJoin pool (see ParallelEncoder)
+
+    // BINARY OUTPUT ("-binary" flag):
+    // write packed 16-bit words to a .hackb file instead of text lines (see HackFile for the format)
+
+    // PEEPHOLE OPTIMIZER ("-optimize" flag):
+    // rewrite the instruction stream (dead code, redundant A loads, inverse pairs, jump threading)
+    // before the passes run, which then resolve the labels of the shorter program (see PeepholeOptimizer)
+
+    // CACHE ("-cache dir" flag):
+    // serve an unchanged file from the on-disk cache, re-encode only the changed lines of a file
+    // that was assembled before (see AssemblyCache)
+
+    // BUILD REPORT ("-report" / "-report-stderr" flags):
+    // time each phase (open, passes, write, close) and count lines, instructions, labels, and
+    // variables, written as JSON next to the output file or to standard error (see BuildReport)
+
+    // SOURCE MAP ("-map" flag):
+    // record the source line of every ROM address and the address of every label while the
+    // labels are collected, written next to the output file as NAME.hack.map (see SourceMap)
+
+    // all possible assembly modes
+    public static final int TWO_PASS = 0;
+    public static final int SINGLE_PASS = 1;
+    public static final int PARALLEL = 2;
+
+    // name of each mode in build reports, indexed by mode
+    private static final String[] MODE_NAMES = {"two-pass", "single-pass", "parallel"};
+
+    // state of one assembly run - each Assembler object assembles one file at a time, so
+    // separate Assembler objects can run on separate threads (see BatchAssembler)
+    private SymbolTable symbolTable;
+    private int ramAddress;
+    private int mode;
+    private ForkJoinPool pool;
+
+    // symbol id (see SymbolTable.intern) used by each A instruction, recorded by firstPass so
+    // secondPass resolves symbols by array index - SymbolTable.NO_SYMBOL for integer literals
+    private int[] instructionSymbols;
+
+    // statistics of the last run
+    private int linesRead;
+    private int instructionCount;
+
+    // optional optimization stage run before the passes, null if not optimizing
+    private PeepholeOptimizer optimizer;
+
+    // optional timings/statistics of each run, null if not instrumented
+    private BuildReport report;
+
+    // optional source line of each instruction and address of each label, null if not mapped
+    private SourceMap sourceMap;
+
+    // lexer of the pass being run (null outside of the line by line loops), so an error thrown
+    // by SymbolTable or Code can be tied to the line it was found on
+    private Lexer currentLexer;
 
     public static void main(String[] args) {
 
-        String inputFileName, outputFileName;
-        PrintWriter outputFile = null; //keep compiler happy
-        SymbolTable symbolTable;
+        String inputFileName = null, outputFileName;
+        HackWriter outputFile = null; //keep compiler happy
+        int mode = TWO_PASS;
+        boolean useBinaryOutput = false, optimize = false, reportToFile = false, reportToStderr = false;
+        boolean writeMap = false;
+        String cacheDirectory = null;
 
-        //get input file name from command line or console input
-        if(args.length == 1) {
-            System.out.println("command line arg = " + args[0]);
-            inputFileName = args[0];
+        //get input file name (and any mode flags) from command line or console input
+        for (int i = 0; i < args.length; i++) {
+            String arg = args[i];
+            if (arg.equals("-single")) {
+                mode = SINGLE_PASS;
+            } else if (arg.equals("-parallel")) {
+                mode = PARALLEL;
+            } else if (arg.equals("-binary")) {
+                useBinaryOutput = true;
+            } else if (arg.equals("-atable")) {
+                Code.enableAInstructionCache();
+            } else if (arg.equals("-cache") && i + 1 < args.length) {
+                cacheDirectory = args[++i];
+            } else if (arg.equals("-optimize")) {
+                optimize = true;
+            } else if (arg.equals("-report")) {
+                reportToFile = true;
+            } else if (arg.equals("-report-stderr")) {
+                reportToStderr = true;
+            } else if (arg.equals("-map")) {
+                writeMap = true;
+            } else {
+                System.out.println("command line arg = " + arg);
+                inputFileName = arg;
+            }
         }
-        else
-        {
+
+        if (inputFileName == null) {
             Scanner keyboard = new Scanner(System.in);
 
             System.out.println("Please enter assembly file name you would like to assemble.");
@@ -48,27 +155,367 @@ public class Assembler {
             keyboard.close();
         }
 
-        outputFileName = inputFileName.substring(0,inputFileName.lastIndexOf('.')) + ".hack";
+        outputFileName = outputFileNameFor(inputFileName, useBinaryOutput);
 
+        BuildReport report = null;
+        if (reportToFile || reportToStderr) {
+            report = new BuildReport();
+            report.set("input", inputFileName);
+            report.set("output", outputFileName);
+            report.set("mode", cacheDirectory != null ? "cache" : MODE_NAMES[mode]);
+            report.set("optimized", optimize && cacheDirectory == null);
+            report.phase("openOutput");
+        }
+
+        // written to a temporary file moved over the output once assembled, so a file that fails
+        // (e.g., after the output was sized for the whole program) leaves the old output as it was
+        Path temporaryFile = null;
         try {
-            outputFile = new PrintWriter(new FileOutputStream(outputFileName));
-        } catch (FileNotFoundException ex) {
+            temporaryFile = HackFile.createTemporaryFile(Paths.get(outputFileName));
+            outputFile = HackFile.openWriter(temporaryFile.toString());
+        } catch (IOException ex) {
+            deleteTemporaryFile(temporaryFile);
             System.err.println("Could not open output file " + outputFileName);
             System.err.println("Run program again, make sure you have write permissions, etc.");
             System.exit(0);
         }
 
+        AssemblyCache cache = null;
+        PeepholeOptimizer optimizer = null;
+        SourceMap sourceMap = null;
+        try {
+            if (cacheDirectory != null) {
+                if (optimize) {
+                    System.out.println("-optimize is not applied to cached assembly.");
+                }
+                if (writeMap) {
+                    System.out.println("-map is not applied to cached assembly.");
+                }
+                cache = new AssemblyCache(Paths.get(cacheDirectory), AssemblyCache.DEFAULT_MAX_ENTRIES);
+                if (report != null) {
+                    report.phase("cache");
+                }
+                AssemblyCache.Entry entry = cache.assemble(inputFileName, outputFile);
+                if (report != null) {
+                    report.set("linesRead", entry.getLineCount());
+                    report.set("instructions", entry.getInstructionCount());
+                }
+            } else {
+                Assembler assembler = new Assembler(mode);
+                if (optimize) {
+                    optimizer = new PeepholeOptimizer();
+                    assembler.setOptimizer(optimizer);
+                }
+                if (writeMap) {
+                    sourceMap = new SourceMap();
+                    assembler.setSourceMap(sourceMap);
+                }
+                assembler.setReport(report);
+                assembler.assemble(inputFileName, outputFile);
+            }
+            if (report != null) {
+                report.phase("close");
+            }
+            outputFile.close();
+            Files.move(temporaryFile, Paths.get(outputFileName), StandardCopyOption.REPLACE_EXISTING,
+                    StandardCopyOption.ATOMIC_MOVE);
+            if (sourceMap != null) {
+                try (Writer mapFile = Files.newBufferedWriter(Paths.get(outputFileName + SourceMap.EXTENSION),
+                        StandardCharsets.US_ASCII)) {
+                    sourceMap.write(mapFile);
+                }
+            }
+            if (report != null) {
+                report.finish();
+                if (reportToFile) {
+                    Files.write(Paths.get(outputFileName + ".json"), report.toJson().getBytes(StandardCharsets.UTF_8));
+                }
+                if (reportToStderr) {
+                    System.err.print(report.toJson());
+                }
+            }
+        } catch (IOException | AssemblyException ex) {
+            System.err.println(ex.getMessage());
+            System.err.println("Could not assemble " + inputFileName + " to output file " + outputFileName);
+            try {
+                outputFile.close();
+            } catch (IOException closeEx) {
+                // already reporting the failure
+            }
+            deleteTemporaryFile(temporaryFile);
+            System.exit(0);
+        } finally {
+            deleteTemporaryFile(temporaryFile); // left only if the run failed
+        }
+
+        if (cache != null) {
+            System.out.println(cache.getReport());
+        }
+        if (optimizer != null) {
+            System.out.println(optimizer.getReport());
+        }
+        System.out.println("Congratulations, file has been successfully converted.");
+    }
+
+    /**
+     * Primary Constructor for Assembler
+     * <p>
+     *     Creates an assembler that can be used for any number of files (one at a time).
+     * </p>
+     * Precondition: mode is TWO_PASS, SINGLE_PASS, or PARALLEL
+     * Postcondition: assembler is ready to assemble
+     * @param mode - TWO_PASS for the standard firstPass/secondPass, SINGLE_PASS to read each
+     *               file once and backpatch labels, PARALLEL to encode on a ForkJoin pool
+     * @throws IllegalArgumentException - if mode is not one of the modes
+     */
+    public Assembler(int mode) throws IllegalArgumentException {
+        if (mode != TWO_PASS && mode != SINGLE_PASS && mode != PARALLEL) {
+            throw new IllegalArgumentException("Invalid assembly mode: " + mode);
+        }
+        this.mode = mode;
+        this.pool = ForkJoinPool.commonPool();
+    }
+
+    /**
+     * setPool
+     * <p>
+     *     Sets the pool PARALLEL mode encodes on (the common pool by default).
+     * </p>
+     * @param pool - ForkJoin pool to use
+     */
+    public void setPool(ForkJoinPool pool) {
+        this.pool = pool;
+    }
+
+    /**
+     * setOptimizer
+     * <p>
+     *     Sets the optimization stage run on each program before the passes (none by default).
+     *     Errors found by the later passes, and linesRead, still refer to the original source.
+     * </p>
+     * @param optimizer - optimizer to use, null to assemble the program as written
+     */
+    public void setOptimizer(PeepholeOptimizer optimizer) {
+        this.optimizer = optimizer;
+    }
+
+    /**
+     * setReport
+     * <p>
+     *     Sets the report each run records its phases and statistics in (none by default).
+     *     Each assemble call adds its phases (openInput, optimize, then the phases of the mode)
+     *     and sets linesRead, instructions, labels, variables, and symbolTableSize; the last
+     *     phase is finished before assemble returns.
+     * </p>
+     * @param report - report to record in, null to not instrument
+     */
+    public void setReport(BuildReport report) {
+        this.report = report;
+    }
+
+    /**
+     * setSourceMap
+     * <p>
+     *     Sets the map each run records the source line of every instruction and the address
+     *     of every label in (none by default); the map is cleared at the start of each run.
+     * </p>
+     * @param sourceMap - map to record in, null to not map
+     */
+    public void setSourceMap(SourceMap sourceMap) {
+        this.sourceMap = sourceMap;
+    }
+
+    /**
+     * deleteTemporaryFile
+     * @param temporaryFile - temporary output file to delete if it is still there, null if none
+     */
+    private static void deleteTemporaryFile(Path temporaryFile) {
+        if (temporaryFile != null) {
+            try {
+                Files.deleteIfExists(temporaryFile);
+            } catch (IOException e) {
+                // already reporting the failure
+            }
+        }
+    }
+
+    /**
+     * outputFileNameFor
+     * <p>
+     *     Derives the output file name from the input file name (extension replaced, or added
+     *     if the file name has none - a '.' in a directory name is not an extension).
+     * </p>
+     * Precondition: n/a
+     * Postcondition: n/a
+     * @param inputFileName - name of the .asm file
+     * @param useBinaryOutput - true for a packed binary .hackb file, false for a text .hack file
+     * @return - name of the output file
+     */
+    public static String outputFileNameFor(String inputFileName, boolean useBinaryOutput) {
+        int extensionStart = inputFileName.lastIndexOf('.');
+        int nameStart = Math.max(inputFileName.lastIndexOf('/'), inputFileName.lastIndexOf(File.separatorChar)) + 1;
+        String baseName = extensionStart > nameStart ? inputFileName.substring(0, extensionStart) : inputFileName;
+        return baseName + (useBinaryOutput ? HackFile.BINARY_EXTENSION : HackFile.TEXT_EXTENSION);
+    }
+
+    /**
+     * assemble
+     * <p>
+     *     Translates one .asm file, writing every instruction to outputFile. Every call starts
+     *     from a new symbol table and RAM address, so nothing is shared between files.
+     * </p>
+     * Precondition: Valid filename is passed to the method, and is an .asm file
+     * Postcondition: all instructions are written to outputFile (outputFile is left open)
+     * @param inputFileName - the filename of the .asm file to assemble
+     * @param outputFile - the writer to hand the final instructions to
+     * @throws IOException - if the .asm file could not be read or outputFile could not be written
+     * @throws AssemblyException - if an instruction is not valid
+     * @throws IllegalArgumentException - if the file name is not valid
+     */
+    public void assemble(String inputFileName, HackWriter outputFile) throws IOException {
+        phase("openInput");
+        assemble(Parser.mapSource(inputFileName), outputFile);
+        if (sourceMap != null) {
+            sourceMap.setSourceName(inputFileName);
+        }
+    }
+
+    /**
+     * assemble
+     * <p>
+     *     Translates assembly code that is already in memory (e.g., source sent to AssemblerServer),
+     *     writing every instruction to outputFile.
+     * </p>
+     * Precondition: source holds the assembly code between its position and limit
+     * Postcondition: all instructions are written to outputFile (outputFile is left open),
+     *                source is not modified
+     * @param source - buffer holding the assembly code
+     * @param outputFile - the writer to hand the final instructions to
+     * @throws IOException - if the instructions could not be written to outputFile
+     * @throws AssemblyException - if an instruction is not valid
+     */
+    public void assemble(ByteBuffer source, HackWriter outputFile) throws IOException {
         symbolTable = new SymbolTable();
+        linesRead = 0;
+        instructionCount = 0;
+        if (sourceMap != null) {
+            sourceMap.clear();
+        }
 
-        // do first pass to build symbol table (no output yet!)
-        firstPass(inputFileName, symbolTable);
+        if (optimizer != null) {
+            phase("optimize");
+            source = optimizer.optimize(source);
+        }
 
-        // do second pass to output translated ASM to HACK code
-        ramAddress = 16;
-        secondPass(inputFileName, symbolTable, outputFile);
+        try {
+            if (mode == SINGLE_PASS) {
+                // read the file once, labels are backpatched after the whole file is read
+                ramAddress = 16;
+                phase("singlePass");
+                singlePass(source, symbolTable, outputFile);
+            } else if (mode == PARALLEL) {
+                // scan once for labels and variables, then encode the instructions in parallel
+                ramAddress = 16;
+                phase("scan");
+                parallelPass(source, symbolTable, outputFile);
+            } else {
+                // do first pass to build symbol table (no output yet!)
+                phase("firstPass");
+                int expectedInstructions = firstPass(source, symbolTable);
+                outputFile.expectWords(expectedInstructions);
 
-        System.out.println("Congratulations, file has been successfully converted.");
-        outputFile.close();
+                // do second pass to output translated ASM to HACK code
+                ramAddress = 16;
+                phase("secondPass");
+                secondPass(source, symbolTable, outputFile);
+            }
+            if (optimizer != null) {
+                linesRead = optimizer.getSourceLineCount();
+            }
+            recordStatistics();
+        } catch (IllegalArgumentException e) {
+            // NumberFormatException included - tie the error to the line being translated
+            AssemblyException error = currentLexer == null ? AssemblyException.atLine(e, 0, null)
+                    : AssemblyException.atLine(e, currentLexer.getLineNumber(), currentLexer.getCleanLine());
+            if (optimizer != null && error.getLineNumber() > 0) {
+                // the passes read the optimized program - report the line it came from
+                throw new AssemblyException(error.getReason(), optimizer.getSourceLine(error.getLineNumber()),
+                        error.getSourceLine(), error);
+            }
+            throw error;
+        } finally {
+            currentLexer = null;
+        }
+    }
+
+    /**
+     * assemble
+     * <p>
+     *     Translates assembly code read from a Reader (e.g., generated code in a StringReader),
+     *     so no temporary file is needed. The code is read to the end before translating, since
+     *     labels may be used before they are declared; instructions are still handed to
+     *     outputFile as they are produced.
+     * </p>
+     * Precondition: source is open
+     * Postcondition: source has been read to the end (it is not closed), all instructions are
+     *                written to outputFile (outputFile is left open)
+     * @param source - reader of the assembly code
+     * @param outputFile - the writer to hand the final instructions to
+     * @throws IOException - if source could not be read or outputFile could not be written
+     * @throws AssemblyException - if an instruction is not valid
+     */
+    public void assemble(Reader source, HackWriter outputFile) throws IOException {
+        StringBuilder text = new StringBuilder();
+        char[] chunk = new char[8192];
+        int charsRead;
+        while ((charsRead = source.read(chunk)) >= 0) {
+            text.append(chunk, 0, charsRead);
+        }
+        assemble(ByteBuffer.wrap(text.toString().getBytes(StandardCharsets.UTF_8)), outputFile);
+    }
+
+    /**
+     * assemble
+     * <p>
+     *     Translates assembly code read from a channel (e.g., a pipe or socket), see
+     *     assemble(Reader, HackWriter).
+     * </p>
+     * Precondition: source is open
+     * Postcondition: source has been read to the end (it is not closed), all instructions are
+     *                written to outputFile (outputFile is left open)
+     * @param source - channel of the assembly code
+     * @param outputFile - the writer to hand the final instructions to
+     * @throws IOException - if source could not be read or outputFile could not be written
+     * @throws AssemblyException - if an instruction is not valid
+     */
+    public void assemble(ReadableByteChannel source, HackWriter outputFile) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(64 * 1024);
+        while (source.read(buffer) >= 0) {
+            if (!buffer.hasRemaining()) {
+                ByteBuffer larger = ByteBuffer.allocate(buffer.capacity() * 2);
+                buffer.flip();
+                larger.put(buffer);
+                buffer = larger;
+            }
+        }
+        buffer.flip();
+        assemble(buffer, outputFile);
+    }
+
+    /**
+     * getLinesRead
+     * @return - number of source lines in the last file assembled
+     */
+    public int getLinesRead() {
+        return linesRead;
+    }
+
+    /**
+     * getInstructionCount
+     * @return - number of instructions written for the last file assembled
+     */
+    public int getInstructionCount() {
+        return instructionCount;
     }
 
     /**
@@ -79,14 +526,19 @@ public class Assembler {
      *     before secondPass to correctly translate an assembly file (.asm) to a .hack
      *     machine instruction file.
      * </p>
-     * Precondition: Valid filename is passed to the method, and is an .asm file
+     * Precondition: source holds the assembly code
      * Postcondition: The assembly code will still need to be converted to binary,
-     *                this method is strictly for storing LABELS to the symbolTable.
-     * @param inputFileName - the filename of the .asm file to parse
+     *                this method is strictly for storing LABELS to the symbolTable (and
+     *                recording the symbol id of each A instruction for secondPass).
+     * @param source - buffer holding the assembly code (a duplicate is parsed)
      * @param symbolTable - the symbol table maintained by the driver of the Assembler.
+     * @return - number of instructions in the program (so the output can be sized)
      */
-    private static void firstPass(String inputFileName, SymbolTable symbolTable) {
-        Parser parser = new Parser(inputFileName);
+    private int firstPass(ByteBuffer source, SymbolTable symbolTable) {
+        Parser parser = new Parser(source.duplicate());
+        currentLexer = parser.getLexer();
+
+        instructionSymbols = new int[1024];
 
         char currentInstType;
         int romAddress = 0;
@@ -97,13 +549,19 @@ public class Assembler {
             currentInstType = parser.getCommandType();
             switch (currentInstType) {
                 case Parser.A_COMMAND:
+                    if (romAddress >= instructionSymbols.length) { // C instructions are not stored
+                        instructionSymbols = Arrays.copyOf(instructionSymbols, romAddress * 2);
+                    }
+                    instructionSymbols[romAddress] = internSymbol(parser.getLexer(), symbolTable);
+                    mapInstruction(romAddress, parser.getLineNumber());
                     romAddress++;
                     break;
                 case Parser.C_COMMAND:
+                    mapInstruction(romAddress, parser.getLineNumber());
                     romAddress++;
                     break;
                 case Parser.L_COMMAND:
-                    symbolTable.addEntry(parser.getSymbol(), romAddress);
+                    addLabel(internSymbol(parser.getLexer(), symbolTable), romAddress, symbolTable);
                     break;
                 case Parser.NO_COMMAND:
                     // do nothing, case here to illustrate all 'possible' cases.
@@ -112,6 +570,7 @@ public class Assembler {
                     throw new IllegalStateException("Fatal error resulting from instruction type of parser.");
             }
         }
+        return romAddress;
     }
 
     /**
@@ -123,15 +582,18 @@ public class Assembler {
      * </p>
      * Precondition: firstPass has been run
      * Postcondition: translates instructions into 16-bit instruction for HACK architecture
-     * @param inputFileName - filename to pass to a new Parser that will go through the .asm file
+     * @param source - buffer holding the assembly code, parsed again from the start
      * @param symbolTable - symbolTable being maintained by the driver
      * @param outputFile - the file to write the final instructions to
+     * @throws IOException - if the instructions could not be written to outputFile
      */
-    private static void secondPass(String inputFileName, SymbolTable symbolTable, PrintWriter outputFile) {
-        Parser parser = new Parser(inputFileName);
-        Code coder = new Code();
+    private void secondPass(ByteBuffer source, SymbolTable symbolTable, HackWriter outputFile)
+            throws IOException {
+        Parser parser = new Parser(source.duplicate());
+        currentLexer = parser.getLexer();
 
-        String machineInstruction = null;
+        int machineInstruction = 0;
+        int symbolId;
 
         char currentInstType;
         while (parser.hasMoreCommands()) {
@@ -140,10 +602,16 @@ public class Assembler {
             currentInstType = parser.getCommandType();
             switch (currentInstType) {
                 case Parser.A_COMMAND:
-                    machineInstruction = buildAInstruction(parser, coder, symbolTable);
+                    // instructionCount is the ROM address of the current instruction
+                    symbolId = instructionSymbols[instructionCount];
+                    if (symbolId == SymbolTable.NO_SYMBOL) {
+                        machineInstruction = buildAInstruction(parser, symbolTable);
+                    } else {
+                        machineInstruction = buildAInstruction(symbolId, symbolTable);
+                    }
                     break;
                 case Parser.C_COMMAND:
-                    machineInstruction = buildCInstruction(parser, coder);
+                    machineInstruction = buildCInstruction(parser);
                     break;
                 case Parser.L_COMMAND:
                     // do nothing, case here to illustrate all 'possible' cases.
@@ -155,15 +623,358 @@ public class Assembler {
                     throw new IllegalStateException("Fatal error resulting from instruction type of parser.");
             }
 
-            /**
-             * To debug, add the following string to the println:  + "  |  " + parser.getCleanLine()
-             *
-             * This will add the assembly instruction to the .hack file for illustration purposes
-             */
+            // the word is only rendered as text by the writer, straight into its output buffer
             if(currentInstType == 'A' || currentInstType == 'C') {
-                outputFile.println(machineInstruction);
+                outputFile.writeWord(machineInstruction);
+                instructionCount++;
             }
         }
+        linesRead = parser.getLineNumber();
+        instructionSymbols = null;
+    }
+
+    /**
+     * singlePass
+     * <p>
+     *     Method used to translate an assembly file in a single read of the file. C instructions and
+     *     A instructions with integer literals are encoded immediately into an in-memory buffer. A
+     *     instructions that use a symbol are left as a placeholder and recorded as a fixup, since the
+     *     symbol may be a label that is declared further down the file. Once the whole file has been
+     *     read, every fixup is resolved in the order it appeared, so variables are given the same RAM
+     *     addresses (and the output is identical to) running firstPass followed by secondPass.
+     * </p>
+     * Precondition: source holds the assembly code. ramAddress has been
+     *               set to the first available variable address.
+     * Postcondition: translates instructions into 16-bit instructions for HACK architecture and writes
+     *                them to outputFile, symbolTable holds all labels and variables of the program.
+     * @param source - buffer holding the assembly code (a duplicate is parsed)
+     * @param symbolTable - symbolTable being maintained by the driver
+     * @param outputFile - the file to write the final instructions to
+     * @throws IOException - if the instructions could not be written to outputFile
+     */
+    private void singlePass(ByteBuffer source, SymbolTable symbolTable, HackWriter outputFile)
+            throws IOException {
+        Parser parser = new Parser(source.duplicate());
+        currentLexer = parser.getLexer();
+
+        // instructions are kept in ROM order, fixups hold the ROM address, symbol id, and source line
+        // of each A instruction that can only be resolved after the labels have all been declared
+        int[] machineInstructions = new int[1024];
+        int[] fixupAddresses = new int[256];
+        int[] fixupSymbols = new int[256];
+        int[] fixupLines = new int[256];
+        int fixupCount = 0;
+
+        int symbolId;
+        char currentInstType;
+        int romAddress = 0;
+        while (parser.hasMoreCommands()) {
+            parser.advance();
+
+            currentInstType = parser.getCommandType();
+            if (romAddress == machineInstructions.length) {
+                machineInstructions = Arrays.copyOf(machineInstructions, romAddress * 2);
+            }
+
+            switch (currentInstType) {
+                case Parser.A_COMMAND:
+                    symbolId = internSymbol(parser.getLexer(), symbolTable);
+                    if (symbolId == SymbolTable.NO_SYMBOL) {
+                        machineInstructions[romAddress] = buildAInstruction(parser, symbolTable);
+                    } else {
+                        if (fixupCount == fixupAddresses.length) {
+                            fixupAddresses = Arrays.copyOf(fixupAddresses, fixupCount * 2);
+                            fixupSymbols = Arrays.copyOf(fixupSymbols, fixupCount * 2);
+                            fixupLines = Arrays.copyOf(fixupLines, fixupCount * 2);
+                        }
+                        fixupAddresses[fixupCount] = romAddress;
+                        fixupSymbols[fixupCount] = symbolId; // placeholder word until backpatched
+                        fixupLines[fixupCount] = parser.getLineNumber();
+                        fixupCount++;
+                    }
+                    mapInstruction(romAddress, parser.getLineNumber());
+                    romAddress++;
+                    break;
+                case Parser.C_COMMAND:
+                    machineInstructions[romAddress] = buildCInstruction(parser);
+                    mapInstruction(romAddress, parser.getLineNumber());
+                    romAddress++;
+                    break;
+                case Parser.L_COMMAND:
+                    addLabel(internSymbol(parser.getLexer(), symbolTable), romAddress, symbolTable);
+                    break;
+                case Parser.NO_COMMAND:
+                    // do nothing, case here to illustrate all 'possible' cases.
+                    break;
+                default:
+                    throw new IllegalStateException("Fatal error resulting from instruction type of parser.");
+            }
+        }
+
+        // backpatch in source order - any symbol that is still not a label is a new variable
+        // (errors are tied to the fixup's line, the lexer has moved past it)
+        currentLexer = null;
+        phase("backpatch");
+        for (int i = 0; i < fixupCount; i++) {
+            try {
+                machineInstructions[fixupAddresses[i]] = buildAInstruction(fixupSymbols[i], symbolTable);
+            } catch (IllegalArgumentException e) {
+                throw AssemblyException.atLine(e, fixupLines[i], "@" + symbolTable.getName(fixupSymbols[i]));
+            }
+        }
+
+        phase("write");
+        outputFile.expectWords(romAddress);
+        for (int i = 0; i < romAddress; i++) {
+            outputFile.writeWord(machineInstructions[i]);
+        }
+        instructionCount = romAddress;
+        linesRead = parser.getLineNumber();
+    }
+
+    /**
+     * parallelPass
+     * <p>
+     *     Method used to translate an assembly file with the encoding done on a ForkJoin pool.
+     *     The file is mapped once and scanned once: labels are added to the symbol table, the
+     *     byte offset, line number, and symbol id of every instruction are recorded, and so is
+     *     every symbol used by an A instruction (in order of first use). After the scan, the symbols that
+     *     did not turn out to be labels are given RAM addresses in that order - the same order
+     *     secondPass would give them - so the output is identical to the sequential modes.
+     * </p>
+     * Precondition: source holds the assembly code. ramAddress has been
+     *               set to the first available variable address.
+     * Postcondition: translates instructions into 16-bit instructions for HACK architecture and writes
+     *                them to outputFile, symbolTable holds all labels and variables of the program.
+     * @param source - buffer holding the assembly code (a duplicate is parsed)
+     * @param symbolTable - symbolTable being maintained by the driver
+     * @param outputFile - the file to write the final instructions to
+     * @throws IOException - if the instructions could not be written to outputFile
+     */
+    private void parallelPass(ByteBuffer source, SymbolTable symbolTable, HackWriter outputFile)
+            throws IOException {
+        Parser parser = new Parser(source.duplicate());
+        Lexer lexer = parser.getLexer();
+        currentLexer = lexer;
+
+        int[] instructionOffsets = new int[1024];
+        int[] instructionLines = new int[1024];
+        int[] instructionSymbols = new int[1024];
+        int[] symbolsInOrderOfUse = new int[256];
+        int[] firstUseLines = new int[256];
+        boolean[] symbolUsed = new boolean[256];
+        int usedCount = 0;
+
+        int symbolId = SymbolTable.NO_SYMBOL;
+        char currentInstType;
+        int romAddress = 0, lineOffset;
+        while (parser.hasMoreCommands()) {
+            lineOffset = lexer.getPosition();
+            parser.advance();
+
+            currentInstType = parser.getCommandType();
+            switch (currentInstType) {
+                case Parser.A_COMMAND:
+                    symbolId = internSymbol(lexer, symbolTable);
+                    if (symbolId != SymbolTable.NO_SYMBOL) {
+                        if (symbolId >= symbolUsed.length) {
+                            symbolUsed = Arrays.copyOf(symbolUsed, Math.max(symbolId + 1, symbolUsed.length * 2));
+                        }
+                        if (!symbolUsed[symbolId]) {
+                            symbolUsed[symbolId] = true;
+                            if (usedCount == symbolsInOrderOfUse.length) {
+                                symbolsInOrderOfUse = Arrays.copyOf(symbolsInOrderOfUse, usedCount * 2);
+                                firstUseLines = Arrays.copyOf(firstUseLines, usedCount * 2);
+                            }
+                            firstUseLines[usedCount] = parser.getLineNumber();
+                            symbolsInOrderOfUse[usedCount++] = symbolId;
+                        }
+                    }
+                    break;
+                case Parser.C_COMMAND:
+                    // encoded later, only the position is recorded below
+                    symbolId = SymbolTable.NO_SYMBOL;
+                    break;
+                case Parser.L_COMMAND:
+                    addLabel(internSymbol(parser.getLexer(), symbolTable), romAddress, symbolTable);
+                    break;
+                case Parser.NO_COMMAND:
+                    // do nothing, case here to illustrate all 'possible' cases.
+                    break;
+                default:
+                    throw new IllegalStateException("Fatal error resulting from instruction type of parser.");
+            }
+
+            if (currentInstType == Parser.A_COMMAND || currentInstType == Parser.C_COMMAND) {
+                if (romAddress == instructionOffsets.length) {
+                    instructionOffsets = Arrays.copyOf(instructionOffsets, romAddress * 2);
+                    instructionLines = Arrays.copyOf(instructionLines, romAddress * 2);
+                    instructionSymbols = Arrays.copyOf(instructionSymbols, romAddress * 2);
+                }
+                instructionOffsets[romAddress] = lineOffset;
+                instructionLines[romAddress] = parser.getLineNumber();
+                instructionSymbols[romAddress] = symbolId;
+                mapInstruction(romAddress, instructionLines[romAddress]);
+                romAddress++;
+            }
+        }
+
+        // pre-scan of variable allocation - symbols that are still not labels are variables
+        // (errors are tied to the symbol's first use here, and to their line by ParallelEncoder after)
+        currentLexer = null;
+        phase("allocate");
+        for (int i = 0; i < usedCount; i++) {
+            if (!symbolTable.contains(symbolsInOrderOfUse[i])) {
+                try {
+                    symbolTable.addEntry(symbolsInOrderOfUse[i], ramAddress);
+                } catch (IllegalArgumentException e) {
+                    throw AssemblyException.atLine(e, firstUseLines[i],
+                            "@" + symbolTable.getName(symbolsInOrderOfUse[i]));
+                }
+                ramAddress++;
+            }
+        }
+
+        phase("encode");
+        int[] machineInstructions = new ParallelEncoder(pool).encode(source, instructionOffsets, instructionLines,
+                instructionSymbols, romAddress, symbolTable);
+
+        phase("write");
+        outputFile.expectWords(romAddress);
+        for (int i = 0; i < romAddress; i++) {
+            outputFile.writeWord(machineInstructions[i]);
+        }
+        instructionCount = romAddress;
+        linesRead = parser.getLineNumber();
+    }
+
+    /**
+     * addLabel
+     * <p>
+     *     A label declared again is given the new address (a later declaration replaces an
+     *     earlier one, as it always has).
+     * </p>
+     * @param symbolId - id of the label (see internSymbol)
+     * @param romAddress - ROM address of the instruction after the label
+     * @param symbolTable - symbolTable being maintained by the driver
+     * @throws IllegalArgumentException - if the label name is not valid, or romAddress is out of range
+     */
+    private void addLabel(int symbolId, int romAddress, SymbolTable symbolTable) throws IllegalArgumentException {
+        symbolTable.addEntry(symbolId, romAddress);
+        if (sourceMap != null) {
+            sourceMap.addLabel(symbolTable.getName(symbolId), romAddress);
+        }
+    }
+
+    /**
+     * mapInstruction
+     * @param romAddress - ROM address of an instruction
+     * @param lineNumber - its line in the program being assembled, recorded (as a line of the
+     *                     original source) if a source map is set
+     */
+    private void mapInstruction(int romAddress, int lineNumber) {
+        if (sourceMap != null) {
+            sourceMap.addInstruction(romAddress, optimizer != null ? optimizer.getSourceLine(lineNumber) : lineNumber);
+        }
+    }
+
+    /**
+     * phase
+     * @param name - name of the phase starting now, recorded if a report is set
+     */
+    private void phase(String name) {
+        if (report != null) {
+            report.phase(name);
+        }
+    }
+
+    /**
+     * recordStatistics
+     * <p>
+     *     Ends the last phase of the run and sets the counts of the run in the report (if set).
+     *     Every symbol with an address that is not predefined is a label or a variable, and
+     *     variables are the RAM addresses handed out from 16.
+     * </p>
+     * Precondition: a run has just completed
+     * Postcondition: no phase of the report is running
+     */
+    private void recordStatistics() {
+        if (report == null) {
+            return;
+        }
+        report.finish();
+
+        int defined = 0;
+        for (int id = 0; id < symbolTable.size(); id++) {
+            if (!SymbolTable.isPredefined(id) && symbolTable.contains(id)) {
+                defined++;
+            }
+        }
+        int variables = ramAddress - 16;
+        report.set("linesRead", linesRead);
+        report.set("instructions", instructionCount);
+        report.set("labels", defined - variables);
+        report.set("variables", variables);
+        report.set("symbolTableSize", symbolTable.size());
+    }
+
+    /**
+     * internSymbol
+     * <p>
+     *     Gives the symbol of the lexer's current A- or L-command its symbol table id, straight
+     *     from the bytes of the line. A String is only made for a symbol that starts like a
+     *     number (or with a non-ASCII character), to check whether it is an integer literal.
+     * </p>
+     * Precondition: lexer is positioned at an A- or L-command
+     * Postcondition: symbol has an id in symbolTable (not necessarily an address)
+     * @param lexer - lexer positioned at the instruction
+     * @param symbolTable - symbolTable being maintained by the driver
+     * @return - id of the symbol, SymbolTable.NO_SYMBOL if the symbol is an integer literal
+     */
+    static int internSymbol(Lexer lexer, SymbolTable symbolTable) {
+        if (lexer.isSymbolNumeric()) {
+            return SymbolTable.NO_SYMBOL;
+        }
+
+        byte[] line = lexer.getLine();
+        int start = lexer.getSymbolStart(), end = lexer.getSymbolEnd();
+        if (start < end && (line[start] == '-' || line[start] == '+' || line[start] < 0
+                || (line[start] >= '0' && line[start] <= '9'))) {
+            String currentSymbol = lexer.getSlice(start, end);
+            return isIntegerLiteral(currentSymbol) ? SymbolTable.NO_SYMBOL : symbolTable.intern(currentSymbol);
+        }
+        return symbolTable.intern(line, start, end);
+    }
+
+    /**
+     * isIntegerLiteral
+     * <p>
+     *     Simple helper method used to check whether an A instruction's symbol is an integer
+     *     literal (no symbol table lookup needed) rather than a label or variable. Symbols
+     *     that can not start a number are rejected before Integer.parseInt is tried, so a
+     *     NumberFormatException is not thrown (and caught) for every label and variable.
+     * </p>
+     * Precondition: symbol is non-null
+     * Postcondition: n/a
+     * @param symbol - symbol from an A instruction
+     * @return - true if the symbol can be parsed as an integer, false otherwise
+     */
+    static boolean isIntegerLiteral(String symbol) {
+        if (symbol.length() == 0) {
+            return false;
+        }
+
+        char first = symbol.charAt(0);
+        if (first != '-' && first != '+' && !Character.isDigit(first)) {
+            return false;
+        }
+
+        try {
+            Integer.parseInt(symbol);
+            return true;
+        } catch (NumberFormatException e) {
+            return false;
+        }
     }
 
     /**
@@ -179,62 +990,100 @@ public class Assembler {
      *     v = value
      * </p>
      * Precondition: Valid instruction is passed to the method, parser points to valid .asm file.
-     *               The method will also NEED to use the static ramAddress variable to know which
+     *               The method will also NEED to use the ramAddress variable to know which
      *               address in RAM is the next available based off what has already been added.
-     * Postcondition: 16-bit binary instruction (A-instruction) per HACK architecture is returned.
+     * Postcondition: 16-bit A-instruction per HACK architecture is returned in the low bits of an int.
      * @param parser - parser object pointing to an .asm file
-     * @param code - code object used to convert symbols into binary instructions
-     * @return - binary string 16-bit A instruction
+     * @param symbolTable - symbolTable being maintained by the driver
+     * @return - 16-bit A instruction word
+     */
+    private int buildAInstruction(Parser parser, SymbolTable symbolTable) {
+        // integer literals are read straight from the lexer's line, without making a String
+        Lexer lexer = parser.getLexer();
+        if (lexer.isSymbolNumeric()) {
+            return Code.encodeAInstruction(lexer.getSymbolValue());
+        }
+        return buildAInstruction(parser.getSymbol(), symbolTable);
+    }
+
+    /**
+     * buildAInstruction
+     * <p>
+     *     Overloaded version of buildAInstruction that works from the symbol itself rather than
+     *     the parser's current line, so instructions can be built after the parser has moved on
+     *     (e.g., when backpatching in singlePass).
+     * </p>
+     * Precondition: same as buildAInstruction(Parser, SymbolTable)
+     * Postcondition: 16-bit A-instruction per HACK architecture is returned in the low bits of an int.
+     * @param currentSymbol - symbol or integer literal of the A instruction (no '@')
+     * @param symbolTable - symbolTable being maintained by the driver
+     * @return - 16-bit A instruction word
      */
-    private static String buildAInstruction(Parser parser, Code code, SymbolTable symbolTable) {
-        String aInstruction = "0";
-        String currentSymbol = parser.getSymbol();
+    private int buildAInstruction(String currentSymbol, SymbolTable symbolTable) {
         int decimalAddress;
-        String value;
 
-        // if try is completed, no symbol necessary (integer literal)
-        // otherwise, symbol is looked up and added if necessary
-        try {
+        // integer literal needs no symbol, otherwise symbol is looked up and added if necessary
+        if (isIntegerLiteral(currentSymbol)) {
             decimalAddress = Integer.parseInt(currentSymbol);
-            value = code.decimalToBinary(decimalAddress);
-        } catch (NumberFormatException e) {
+        } else {
             if (!symbolTable.contains(currentSymbol)) {
                 symbolTable.addEntry(currentSymbol, ramAddress);
                 ramAddress++;
             }
 
             decimalAddress = symbolTable.getAddress(currentSymbol);
-            value = code.decimalToBinary(decimalAddress);
         }
 
-        value = value.substring(1, value.length()); // ensuring 15 bit for 'value' semantics
+        return Code.encodeAInstruction(decimalAddress); // keeps 15 bits for 'value' semantics
+    }
 
-        aInstruction += value;
-        return aInstruction;
+    /**
+     * buildAInstruction
+     * <p>
+     *     Overloaded version of buildAInstruction for a symbol that has already been interned,
+     *     the symbol is resolved by array index instead of being hashed again. If the symbol
+     *     has no address yet, it is a variable and gets the next available RAM address.
+     * </p>
+     * Precondition: symbolId was returned by symbolTable.intern
+     * Postcondition: 16-bit A-instruction per HACK architecture is returned in the low bits of an int.
+     * @param symbolId - id of the symbol of the A instruction
+     * @param symbolTable - symbolTable being maintained by the driver
+     * @return - 16-bit A instruction word
+     */
+    private int buildAInstruction(int symbolId, SymbolTable symbolTable) {
+        if (!symbolTable.contains(symbolId)) {
+            symbolTable.addEntry(symbolId, ramAddress);
+            ramAddress++;
+        }
+
+        return Code.encodeAInstruction(symbolTable.getAddress(symbolId));
     }
 
     /**
      * buildCInstruction
      * <p>
      *     Builds a C instruction (machine code) that is composed of a 16-bit binary word.
+     *     The dest/comp/jump slices of the lexer's line are translated with the Code lookup
+     *     tables, so no Strings are built.
      *
-     *     C instruction: [1][1][1][c1][c2][c3][c4][c5][c6][d1][d2][d3][j1][j2][j3]
+     *     C instruction: [1][1][1][a][c1][c2][c3][c4][c5][c6][d1][d2][d3][j1][j2][j3]
      *     c - comp, d - dest, j - jump
      * </p>
      * Precondition: Valid instruction is passed to the method, parser points to valid .asm file
-     * Postcondition: 16-bit binary instruction (C-instruction) per hack architecture is returned.
+     * Postcondition: 16-bit C-instruction per hack architecture is returned in the low bits of an int.
      * @param parser - parser object pointing to an .asm file
-     * @param code - code object used to convert symbols into binary instructions
-     * @return - binary string 16-bit C instruction
+     * @return - 16-bit C instruction word
+     * @throws AssemblyException - if dest, comp, or jump is not a valid mnemonic
      */
-    private static String buildCInstruction(Parser parser, Code code) {
-        String cInstruction = "111";
-
-        cInstruction += code.getComp(parser.getComp());
-        cInstruction += code.getDest(parser.getDest());
-        cInstruction += code.getJump(parser.getJump());
+    private int buildCInstruction(Parser parser) {
+        Lexer lexer = parser.getLexer();
+        int cInstruction = Code.encodeCInstruction(lexer.getLine(), lexer.getDestStart(), lexer.getDestEnd(),
+                lexer.getCompStart(), lexer.getCompEnd(), lexer.getJumpStart(), lexer.getJumpEnd());
 
+        if (cInstruction == Code.INVALID) {
+            throw new AssemblyException("Invalid C instruction", parser.getLineNumber(), parser.getCleanLine());
+        }
         return cInstruction;
     }
 
-}
\ No newline at end of file
+}
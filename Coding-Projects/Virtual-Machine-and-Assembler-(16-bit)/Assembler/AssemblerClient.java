@@ -0,0 +1,187 @@
+/**
+ * Author: Ben Vargas
+ * Course: CS220 - Computer Architecture and Assembly Language
+ * Professor: Nery Chapeton-Lamas
+ * Project: Assembler (HACK Architecture)
+ */
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.FileDescriptor;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.StandardProtocolFamily;
+import java.net.UnixDomainSocketAddress;
+import java.nio.channels.Channels;
+import java.nio.channels.SocketChannel;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Command line client for AssemblerServer, used in place of running Assembler directly.
+ * <p>
+ *     Every file named on the command line is sent as one request on the same connection (as an
+ *     absolute path, since the server has its own working directory). With -stdin the assembly
+ *     code is read from standard input instead and the .hack text is written to standard output.
+ *     Unlike Assembler, the exit status is 1 if any request failed, so build scripts can stop.
+ * </p>
+ * Usage: java AssemblerClient [-socket path | -port N] [-single | -parallel] [-binary] (-stdin | -stop | file.asm...)
+ */
+public class AssemblerClient {
+
+    // ALGORITHM:
+    // parse command line for server address, mode, output format, and what to send
+    // connect to the server
+    // send each request and print its result (or error)
+    // exit with status 1 if any request failed
+
+    public static void main(String[] args) {
+        String socketPath = AssemblerServer.DEFAULT_SOCKET_PATH;
+        int port = -1;
+        int mode = Assembler.TWO_PASS;
+        boolean useBinaryOutput = false, readStdin = false, stopServer = false;
+        List<String> inputFileNames = new ArrayList<String>();
+
+        for (int i = 0; i < args.length; i++) {
+            if (args[i].equals("-socket") && i + 1 < args.length) {
+                socketPath = args[++i];
+            } else if (args[i].equals("-port") && i + 1 < args.length) {
+                port = Integer.parseInt(args[++i]);
+            } else if (args[i].equals("-single")) {
+                mode = Assembler.SINGLE_PASS;
+            } else if (args[i].equals("-parallel")) {
+                mode = Assembler.PARALLEL;
+            } else if (args[i].equals("-binary")) {
+                useBinaryOutput = true;
+            } else if (args[i].equals("-stdin")) {
+                readStdin = true;
+            } else if (args[i].equals("-stop")) {
+                stopServer = true;
+            } else {
+                inputFileNames.add(args[i]);
+            }
+        }
+
+        if (!readStdin && !stopServer && inputFileNames.isEmpty()) {
+            System.err.println("Usage: java AssemblerClient [-socket path | -port N] [-single | -parallel] " +
+                    "[-binary] (-stdin | -stop | file.asm...)");
+            System.exit(1);
+        }
+
+        boolean failed = false;
+        try (SocketChannel channel = connect(socketPath, port)) {
+            DataInputStream in = new DataInputStream(new BufferedInputStream(Channels.newInputStream(channel)));
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Channels.newOutputStream(channel)));
+
+            for (String inputFileName : inputFileNames) {
+                try {
+                    System.out.println(assembleFile(in, out, inputFileName, mode, useBinaryOutput));
+                } catch (IOException e) {
+                    System.err.println(e.getMessage());
+                    failed = true;
+                }
+            }
+
+            if (readStdin) {
+                try {
+                    assembleSource(in, out, System.in.readAllBytes(), mode);
+                } catch (IOException e) {
+                    System.err.println(e.getMessage());
+                    failed = true;
+                }
+            }
+
+            if (stopServer) {
+                out.writeByte(AssemblerServer.STOP);
+                out.flush();
+                AssemblerServer.readResponseCode(in);
+            }
+        } catch (IOException e) {
+            System.err.println(e.getMessage());
+            System.err.println("Could not reach the assembler server at " + (port >= 0 ? "port " + port : socketPath));
+            failed = true;
+        }
+
+        System.exit(failed ? 1 : 0);
+    }
+
+    /**
+     * connect
+     * @param socketPath - socket file of the server, used when port is negative
+     * @param port - loopback port of the server, or -1
+     * @return - open connection to the server
+     * @throws IOException - if the server could not be reached
+     */
+    public static SocketChannel connect(String socketPath, int port) throws IOException {
+        if (port >= 0) {
+            return SocketChannel.open(new InetSocketAddress(InetAddress.getLoopbackAddress(), port));
+        }
+        SocketChannel channel = SocketChannel.open(StandardProtocolFamily.UNIX);
+        channel.connect(UnixDomainSocketAddress.of(socketPath));
+        return channel;
+    }
+
+    /**
+     * assembleFile
+     * <p>
+     *     Asks the server to assemble one file; the output is written next to it by the server.
+     * </p>
+     * @param in - stream to read the response from
+     * @param out - stream to send the request on
+     * @param inputFileName - .asm file to assemble, relative to this process' working directory
+     * @param mode - assembly mode, see Assembler(int)
+     * @param useBinaryOutput - true for .hackb output, false for .hack
+     * @return - one line report of the output file and its instruction count
+     * @throws IOException - if the server reported an error or the connection failed
+     */
+    public static String assembleFile(DataInputStream in, DataOutputStream out, String inputFileName,
+                                      int mode, boolean useBinaryOutput) throws IOException {
+        out.writeByte(AssemblerServer.ASSEMBLE_FILE);
+        out.writeUTF(Paths.get(inputFileName).toAbsolutePath().toString());
+        out.writeByte(mode);
+        out.writeBoolean(useBinaryOutput);
+        out.flush();
+
+        AssemblerServer.readResponseCode(in);
+        String outputFileName = in.readUTF();
+        int instructionCount = in.readInt();
+        return outputFileName + " (" + instructionCount + " instructions)";
+    }
+
+    /**
+     * assembleSource
+     * <p>
+     *     Sends assembly code to the server and writes the returned words to standard output
+     *     as .hack text.
+     * </p>
+     * @param in - stream to read the response from
+     * @param out - stream to send the request on
+     * @param source - assembly code
+     * @param mode - assembly mode, see Assembler(int)
+     * @throws IOException - if the server reported an error or the connection failed
+     */
+    public static void assembleSource(DataInputStream in, DataOutputStream out, byte[] source, int mode)
+            throws IOException {
+        out.writeByte(AssemblerServer.ASSEMBLE_SOURCE);
+        out.writeByte(mode);
+        out.writeInt(source.length);
+        out.write(source);
+        out.flush();
+
+        AssemblerServer.readResponseCode(in);
+        int wordCount = in.readInt();
+        System.out.flush();
+        // standard output can not be mapped, so this writes through the writer's direct buffer
+        MappedHackWriter stdout = new MappedHackWriter(new FileOutputStream(FileDescriptor.out).getChannel());
+        stdout.expectWords(wordCount);
+        for (int i = 0; i < wordCount; i++) {
+            stdout.writeWord(in.readUnsignedShort());
+        }
+        stdout.flush();
+    }
+}
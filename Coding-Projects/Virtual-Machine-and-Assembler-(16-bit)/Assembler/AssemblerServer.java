@@ -0,0 +1,350 @@
+/**
+ * Author: Ben Vargas
+ * Course: CS220 - Computer Architecture and Assembly Language
+ * Professor: Nery Chapeton-Lamas
+ * Project: Assembler (HACK Architecture)
+ */
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.net.StandardProtocolFamily;
+import java.net.UnixDomainSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.AsynchronousCloseException;
+import java.nio.channels.Channels;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Resident assembler that accepts assemble requests over a local socket, so the toolchain pays
+ * for JVM startup (and warming up the JIT on Parser/Lexer/Code) once instead of once per file.
+ * AssemblerClient is the command line front end.
+ * <p>
+ *     The server listens on a Unix-domain socket (default) or on a loopback TCP port. Every
+ *     connection is handled by a worker of a fixed size pool, and every request gets its own
+ *     Assembler object, so nothing but the read-only Code tables is shared between requests.
+ *     A bad file or instruction is sent back as an error response, it never stops the server.
+ * </p>
+ * Protocol (DataInput/DataOutput encoding, a connection may send any number of requests):
+ * <pre>
+ *   request  'P' path(UTF) mode(byte) binary(boolean)   assemble a file, output is written next to it
+ *            'S' mode(byte) length(int) source(bytes)   assemble inline source, words are sent back
+ *            'Q'                                        stop the server
+ *   response 'O' outputPath(UTF) instructionCount(int)  for 'P'
+ *            'O' wordCount(int) words(short...)         for 'S'
+ *            'O'                                        for 'Q'
+ *            'E' message(UTF)                           for any failed request
+ * </pre>
+ * A source request longer than MAX_SOURCE_SIZE bytes (or of negative length), or a request with an
+ * unknown code, is answered with an error response and its connection is closed, since the rest of
+ * the request cannot be skipped. A file request must be for an .asm file.
+ * Usage: java AssemblerServer [-socket path | -port N] [-threads N] [-atable]
+ */
+public class AssemblerServer {
+
+    // request and response codes
+    public static final byte ASSEMBLE_FILE = 'P';
+    public static final byte ASSEMBLE_SOURCE = 'S';
+    public static final byte STOP = 'Q';
+    public static final byte OK = 'O';
+    public static final byte ERROR = 'E';
+
+    // largest inline source accepted, in bytes
+    public static final int MAX_SOURCE_SIZE = 64 * 1024 * 1024;
+
+    public static final String DEFAULT_SOCKET_PATH =
+            Paths.get(System.getProperty("java.io.tmpdir"), "hack-assembler.sock").toString();
+
+    private final ServerSocketChannel serverChannel;
+    private final Path socketFile;
+    private final ExecutorService workers;
+
+    // ALGORITHM:
+    // parse command line for the socket path or port, worker count, and A instruction cache
+    // bind the server socket (removing a stale socket file left by a killed server)
+    // accept connections until a stop request closes the server socket
+    // each connection: read request, assemble with a new Assembler, write response, repeat until EOF
+
+    public static void main(String[] args) {
+        String socketPath = DEFAULT_SOCKET_PATH;
+        int port = -1;
+        int threadCount = Runtime.getRuntime().availableProcessors();
+
+        for (int i = 0; i < args.length; i++) {
+            if (args[i].equals("-socket") && i + 1 < args.length) {
+                socketPath = args[++i];
+            } else if (args[i].equals("-port") && i + 1 < args.length) {
+                port = Integer.parseInt(args[++i]);
+            } else if (args[i].equals("-threads") && i + 1 < args.length) {
+                threadCount = Integer.parseInt(args[++i]);
+            } else if (args[i].equals("-atable")) {
+                Code.enableAInstructionCache();
+            } else {
+                System.err.println("Usage: java AssemblerServer [-socket path | -port N] [-threads N] [-atable]");
+                System.exit(0);
+            }
+        }
+
+        AssemblerServer server = null;
+        try {
+            server = port >= 0 ? new AssemblerServer(port, threadCount)
+                               : new AssemblerServer(Paths.get(socketPath), threadCount);
+        } catch (IOException e) {
+            System.err.println(e.getMessage());
+            System.err.println("Could not listen on " + (port >= 0 ? "port " + port : socketPath));
+            System.exit(0);
+        }
+
+        System.out.println("Assembler server listening on " + (port >= 0 ? "port " + port : socketPath));
+        server.serve();
+        System.out.println("Assembler server stopped.");
+    }
+
+    /**
+     * Constructor for AssemblerServer (Unix-domain socket)
+     * <p>
+     *     Binds the socket file. A socket file left behind by a server that did not stop cleanly
+     *     is removed first.
+     * </p>
+     * @param socketFile - path of the socket file to create
+     * @param threadCount - number of connections handled at the same time
+     * @throws IOException - if the socket could not be bound
+     */
+    public AssemblerServer(Path socketFile, int threadCount) throws IOException {
+        Files.deleteIfExists(socketFile);
+        this.serverChannel = ServerSocketChannel.open(StandardProtocolFamily.UNIX);
+        this.serverChannel.bind(UnixDomainSocketAddress.of(socketFile));
+        this.socketFile = socketFile;
+        this.workers = Executors.newFixedThreadPool(Math.max(1, threadCount));
+    }
+
+    /**
+     * Constructor for AssemblerServer (loopback TCP)
+     * @param port - port to listen on (loopback address only)
+     * @param threadCount - number of connections handled at the same time
+     * @throws IOException - if the port could not be bound
+     */
+    public AssemblerServer(int port, int threadCount) throws IOException {
+        this.serverChannel = ServerSocketChannel.open();
+        this.serverChannel.bind(new InetSocketAddress(InetAddress.getLoopbackAddress(), port));
+        this.socketFile = null;
+        this.workers = Executors.newFixedThreadPool(Math.max(1, threadCount));
+    }
+
+    /**
+     * getAddress
+     * @return - address the server is bound to (socket file or loopback address and port)
+     * @throws IOException - if the server socket is closed
+     */
+    public SocketAddress getAddress() throws IOException {
+        return serverChannel.getLocalAddress();
+    }
+
+    /**
+     * serve
+     * <p>
+     *     Accepts connections until stop() is called (directly or by a stop request), handing
+     *     each one to the worker pool.
+     * </p>
+     * Precondition: server is bound
+     * Postcondition: server socket is closed, socket file is removed, workers are shut down
+     */
+    public void serve() {
+        try {
+            while (true) {
+                final SocketChannel connection = serverChannel.accept();
+                workers.execute(new Runnable() {
+                    public void run() {
+                        handleConnection(connection);
+                    }
+                });
+            }
+        } catch (AsynchronousCloseException e) {
+            // stop() closed the server socket
+        } catch (IOException e) {
+            System.err.println("Assembler server failed to accept a connection: " + e.getMessage());
+        } finally {
+            stop();
+            workers.shutdown();
+        }
+    }
+
+    /**
+     * stop
+     * <p>
+     *     Closes the server socket so serve() returns. Requests already being handled are finished.
+     * </p>
+     */
+    public void stop() {
+        try {
+            serverChannel.close();
+            if (socketFile != null) {
+                Files.deleteIfExists(socketFile);
+            }
+        } catch (IOException e) {
+            System.err.println("Could not close the assembler server socket: " + e.getMessage());
+        }
+    }
+
+    /**
+     * handleConnection
+     * <p>
+     *     Answers requests on one connection until the client closes it.
+     * </p>
+     * @param connection - accepted client connection, closed before returning
+     */
+    private void handleConnection(SocketChannel connection) {
+        try (SocketChannel channel = connection) {
+            DataInputStream in = new DataInputStream(new BufferedInputStream(Channels.newInputStream(channel)));
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Channels.newOutputStream(channel)));
+
+            while (true) {
+                int request = in.read();
+                if (request < 0) {
+                    return;
+                }
+                boolean keepOpen = handleRequest((byte) request, in, out);
+                out.flush();
+                if (!keepOpen) {
+                    if (request == STOP) {
+                        stop();
+                    }
+                    return;
+                }
+            }
+        } catch (IOException e) {
+            // client went away mid request, nothing left to answer
+        }
+    }
+
+    /**
+     * handleRequest
+     * <p>
+     *     Reads the rest of one request and writes its response. Assembly errors (bad file names,
+     *     unreadable files, invalid instructions, unwritable output) become error responses, and a
+     *     failed file request neither creates nor changes an output file.
+     * </p>
+     * Precondition: request code has been read from in
+     * Postcondition: response is written to out (not flushed, except for a stop request)
+     * @param request - request code
+     * @param in - stream to read the request from
+     * @param out - stream to write the response to
+     * @return - false if the connection should be closed (and the server stopped, for a stop
+     *           request), true otherwise
+     * @throws IOException - if the connection itself failed
+     */
+    private boolean handleRequest(byte request, DataInputStream in, DataOutputStream out) throws IOException {
+        if (request == STOP) {
+            out.writeByte(OK);
+            out.flush();
+            return false;
+        }
+
+        if (request == ASSEMBLE_FILE) {
+            String inputFileName = in.readUTF();
+            int mode = in.readByte();
+            boolean useBinaryOutput = in.readBoolean();
+            Path temporaryFile = null;
+            try {
+                // the input is read (and must be an .asm file) before any output is opened, and the
+                // output replaces an existing file only once assembled, so a failed request leaves
+                // the disk as it was
+                ByteBuffer source = Parser.mapSource(inputFileName);
+                String outputFileName = Assembler.outputFileNameFor(inputFileName, useBinaryOutput);
+                Assembler assembler = new Assembler(mode);
+                temporaryFile = HackFile.createTemporaryFile(Paths.get(outputFileName));
+                HackWriter outputFile = HackFile.openWriter(temporaryFile.toString());
+                try {
+                    assembler.assemble(source, outputFile);
+                } finally {
+                    outputFile.close();
+                }
+                Files.move(temporaryFile, Paths.get(outputFileName), StandardCopyOption.REPLACE_EXISTING,
+                        StandardCopyOption.ATOMIC_MOVE);
+                out.writeByte(OK);
+                out.writeUTF(outputFileName);
+                out.writeInt(assembler.getInstructionCount());
+            } catch (IOException | RuntimeException e) {
+                writeError(out, inputFileName, e);
+            } finally {
+                if (temporaryFile != null) {
+                    Files.deleteIfExists(temporaryFile);
+                }
+            }
+        } else if (request == ASSEMBLE_SOURCE) {
+            int mode = in.readByte();
+            int length = in.readInt();
+            if (length < 0 || length > MAX_SOURCE_SIZE) {
+                out.writeByte(ERROR);
+                out.writeUTF("<source>: length " + length + " is not between 0 and " + MAX_SOURCE_SIZE + " bytes");
+                return false;
+            }
+            byte[] source = new byte[length];
+            in.readFully(source);
+            try {
+                WordBuffer words = new WordBuffer();
+                new Assembler(mode).assemble(ByteBuffer.wrap(source), words);
+                out.writeByte(OK);
+                out.writeInt(words.getWordCount());
+                for (int word : words.getWords()) {
+                    out.writeShort(word);
+                }
+            } catch (IOException | RuntimeException e) {
+                writeError(out, "<source>", e);
+            }
+        } else {
+            // the rest of an unknown request cannot be skipped, so the stream is out of step
+            out.writeByte(ERROR);
+            out.writeUTF("Unknown request code " + request);
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * writeError
+     * @param out - stream to write the response to
+     * @param inputName - file (or "&lt;source&gt;") the request was for
+     * @param e - reason the request failed
+     * @throws IOException - if the connection failed
+     */
+    private static void writeError(DataOutputStream out, String inputName, Exception e) throws IOException {
+        out.writeByte(ERROR);
+        out.writeUTF(inputName + ": " + (e.getMessage() == null ? e.toString() : e.getMessage()));
+    }
+
+    /**
+     * readResponseCode
+     * <p>
+     *     Shared with AssemblerClient: reads the status of a response, turning an error response
+     *     into an IOException carrying the server's message.
+     * </p>
+     * @param in - stream to read the response from
+     * @throws IOException - if the response is an error, or the connection was closed
+     */
+    static void readResponseCode(DataInputStream in) throws IOException {
+        int status = in.read();
+        if (status < 0) {
+            throw new EOFException("Assembler server closed the connection");
+        }
+        if (status == ERROR) {
+            throw new IOException(in.readUTF());
+        }
+        if (status != OK) {
+            throw new IOException("Unexpected response code " + status + " from assembler server");
+        }
+    }
+}
@@ -0,0 +1,625 @@
+/**
+ * Author: Ben Vargas
+ * Course: CS220 - Computer Architecture and Assembly Language
+ * Professor: Nery Chapeton-Lamas
+ * Project: Assembler (HACK Architecture)
+ */
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.FileTime;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Persistent on-disk cache of assembled programs, so a build only pays for the files that changed.
+ * <p>
+ *     An entry is keyed by the SHA-256 of the assembler version and the source bytes, and holds the
+ *     encoded words, the program's symbol table, and what every source line contributed (its hash,
+ *     command type, word or symbol). An unchanged file is served straight from its entry.
+ * </p>
+ * <p>
+ *     The cache also remembers the last entry of every file path. When a file has changed, the lines
+ *     it has in common with that entry at its start and end are reused without being lexed again:
+ *     their C instructions and integer literals keep their words, labels after the changed region
+ *     are relocated by the change in instruction count, and symbolic A instructions are resolved
+ *     against the new symbol table. Only the changed region goes through the Lexer. Variables are
+ *     allocated in order of first use exactly like secondPass, so the output is identical to a
+ *     full assembly in any mode.
+ * </p>
+ * <p>
+ *     Entries beyond maxEntries are evicted least recently used first (a hit refreshes an
+ *     entry's modification time). One AssemblyCache object may be shared by the threads of
+ *     BatchAssembler; separate processes sharing a directory are safe too, since every file is
+ *     written to a temporary name and then renamed.
+ * </p>
+ */
+public class AssemblyCache {
+
+    /** part of every key - change it whenever the encoding or the entry format changes */
+    public static final String ASSEMBLER_VERSION = "hack-assembler-11";
+
+    public static final int DEFAULT_MAX_ENTRIES = 512;
+
+    private static final String ENTRY_EXTENSION = ".entry";
+    private static final String PATH_EXTENSION = ".path";
+    private static final int ENTRY_MAGIC = 0x48434348; // "HCCH"
+
+    private final Path directory;
+    private final int maxEntries;
+
+    private final AtomicInteger hits = new AtomicInteger();
+    private final AtomicInteger misses = new AtomicInteger();
+    private final AtomicInteger incrementalMisses = new AtomicInteger();
+    private final AtomicInteger reusedLines = new AtomicInteger();
+    private final AtomicInteger evictions = new AtomicInteger();
+
+    /**
+     * Primary Constructor for AssemblyCache
+     * @param directory - directory holding the entries, created if it does not exist
+     * @param maxEntries - number of entries kept before the least recently used are evicted
+     * @throws IOException - if the directory could not be created
+     */
+    public AssemblyCache(Path directory, int maxEntries) throws IOException {
+        this.directory = Files.createDirectories(directory);
+        this.maxEntries = Math.max(1, maxEntries);
+    }
+
+    /**
+     * assemble
+     * <p>
+     *     Writes the words of an .asm file to outputFile, from the cache if the file is unchanged,
+     *     otherwise assembling it (incrementally if an earlier version of the path is cached) and
+     *     storing the result.
+     * </p>
+     * Precondition: outputFile is open
+     * Postcondition: all instructions are written to outputFile (outputFile is left open)
+     * @param inputFileName - the filename of the .asm file to assemble
+     * @param outputFile - the writer to hand the final instructions to
+     * @return - cache entry of the file (words, symbols, and line count)
+     * @throws IOException - if the .asm file could not be read or outputFile could not be written
+     * @throws AssemblyException - if an instruction is not valid
+     */
+    public Entry assemble(String inputFileName, HackWriter outputFile) throws IOException {
+        ByteBuffer source = Parser.mapSource(inputFileName);
+        String key = keyOf(source);
+        Path pathFile = directory.resolve(hashOf(Paths.get(inputFileName).toAbsolutePath().toString())
+                + PATH_EXTENSION);
+
+        Entry entry = load(key);
+        if (entry != null) {
+            hits.incrementAndGet();
+        } else {
+            misses.incrementAndGet();
+            Entry previous = null;
+            if (Files.exists(pathFile)) {
+                previous = load(new String(Files.readAllBytes(pathFile), StandardCharsets.US_ASCII));
+            }
+            entry = build(source, previous);
+            store(key, entry);
+        }
+        writeAtomically(pathFile, key.getBytes(StandardCharsets.US_ASCII));
+
+        outputFile.expectWords(entry.words.length);
+        for (int word : entry.words) {
+            outputFile.writeWord(word);
+        }
+        return entry;
+    }
+
+    /**
+     * build
+     * <p>
+     *     Assembles source, reusing the lines at the start and end it shares with previous.
+     * </p>
+     * @param source - buffer holding the assembly code
+     * @param previous - entry of an earlier version of the same file, null if there is none
+     * @return - new entry
+     * @throws AssemblyException - if an instruction is not valid
+     */
+    private Entry build(ByteBuffer source, Entry previous) {
+        int[] lineStarts = lineStartsOf(source);
+        int lineCount = lineStarts.length - 1;
+        long[] lineHashes = new long[lineCount];
+        for (int i = 0; i < lineCount; i++) {
+            lineHashes[i] = lineHash(source, lineStarts[i], lineStarts[i + 1]);
+        }
+
+        // unchanged lines at the start and end of the file
+        int prefix = 0, suffix = 0;
+        if (previous != null) {
+            int shared = Math.min(lineCount, previous.lineHashes.length);
+            while (prefix < shared && lineHashes[prefix] == previous.lineHashes[prefix]) {
+                prefix++;
+            }
+            while (suffix < shared - prefix && lineHashes[lineCount - 1 - suffix]
+                    == previous.lineHashes[previous.lineHashes.length - 1 - suffix]) {
+                suffix++;
+            }
+            if (prefix + suffix > 0) {
+                incrementalMisses.incrementAndGet();
+                reusedLines.addAndGet(prefix + suffix);
+            }
+        }
+
+        SymbolTable symbolTable = new SymbolTable();
+        char[] kinds = new char[lineCount];
+        int[] values = new int[lineCount];
+        int[] symbols = new int[lineCount];
+
+        // copy the unchanged lines, symbols are interned again by name (ids are per table)
+        int[] idMap = previous == null ? null : new int[previous.names.length];
+        if (idMap != null) {
+            Arrays.fill(idMap, SymbolTable.NO_SYMBOL);
+        }
+        for (int i = 0; i < prefix; i++) {
+            copyLine(previous, i, i, kinds, values, symbols, symbolTable, idMap);
+        }
+        for (int i = lineCount - suffix, j = previous == null ? 0 : previous.lineHashes.length - suffix;
+             i < lineCount; i++, j++) {
+            copyLine(previous, j, i, kinds, values, symbols, symbolTable, idMap);
+        }
+
+        // lex and encode the changed region
+        ByteBuffer region = source.duplicate();
+        region.position(lineStarts[prefix]);
+        region.limit(lineStarts[lineCount - suffix]);
+        Lexer lexer = new Lexer(region);
+        for (int i = prefix; i < lineCount - suffix; i++) {
+            try {
+                lexer.advance();
+                kinds[i] = lexer.getCommandType();
+                values[i] = Code.INVALID;
+                symbols[i] = SymbolTable.NO_SYMBOL;
+                if (kinds[i] == Parser.A_COMMAND) {
+                    symbols[i] = Assembler.internSymbol(lexer, symbolTable);
+                    if (symbols[i] == SymbolTable.NO_SYMBOL) {
+                        values[i] = ParallelEncoder.encodeAInstruction(lexer, SymbolTable.NO_SYMBOL, symbolTable, i + 1);
+                    }
+                } else if (kinds[i] == Parser.C_COMMAND) {
+                    values[i] = ParallelEncoder.encodeCInstruction(lexer, i + 1);
+                } else if (kinds[i] == Parser.L_COMMAND) {
+                    symbols[i] = Assembler.internSymbol(lexer, symbolTable);
+                }
+            } catch (IllegalArgumentException e) {
+                throw AssemblyException.atLine(e, i + 1, lexer.getCleanLine());
+            }
+        }
+
+        // labels - the same addEntry calls in the same order as firstPass
+        int romAddress = 0;
+        for (int i = 0; i < lineCount; i++) {
+            try {
+                if (kinds[i] == Parser.L_COMMAND) {
+                    symbolTable.addEntry(symbols[i], romAddress);
+                } else if (kinds[i] == Parser.A_COMMAND || kinds[i] == Parser.C_COMMAND) {
+                    romAddress++;
+                }
+            } catch (IllegalArgumentException e) {
+                throw AssemblyException.atLine(e, i + 1, lineText(source, lineStarts[i], lineStarts[i + 1]));
+            }
+        }
+
+        // variables and words - the same allocation order as secondPass
+        int[] words = new int[romAddress];
+        int ramAddress = 16, wordCount = 0;
+        for (int i = 0; i < lineCount; i++) {
+            try {
+                if (kinds[i] == Parser.A_COMMAND && symbols[i] != SymbolTable.NO_SYMBOL) {
+                    if (!symbolTable.contains(symbols[i])) {
+                        symbolTable.addEntry(symbols[i], ramAddress);
+                        ramAddress++;
+                    }
+                    words[wordCount++] = Code.encodeAInstruction(symbolTable.getAddress(symbols[i]));
+                } else if (kinds[i] == Parser.A_COMMAND || kinds[i] == Parser.C_COMMAND) {
+                    words[wordCount++] = values[i];
+                }
+            } catch (IllegalArgumentException e) {
+                throw AssemblyException.atLine(e, i + 1, lineText(source, lineStarts[i], lineStarts[i + 1]));
+            }
+        }
+
+        String[] names = new String[symbolTable.size()];
+        for (int id = 0; id < names.length; id++) {
+            names[id] = symbolTable.getName(id);
+        }
+        return new Entry(names, symbolTable, lineHashes, kinds, values, symbols, words);
+    }
+
+    /**
+     * copyLine
+     * <p>
+     *     Copies what line 'from' of previous contributed to line 'to' of the new program.
+     * </p>
+     */
+    private static void copyLine(Entry previous, int from, int to, char[] kinds, int[] values, int[] symbols,
+                                 SymbolTable symbolTable, int[] idMap) {
+        kinds[to] = previous.kinds[from];
+        values[to] = previous.values[from];
+        symbols[to] = SymbolTable.NO_SYMBOL;
+
+        int oldId = previous.symbols[from];
+        if (oldId != SymbolTable.NO_SYMBOL) {
+            if (idMap[oldId] == SymbolTable.NO_SYMBOL) {
+                idMap[oldId] = symbolTable.intern(previous.names[oldId]);
+            }
+            symbols[to] = idMap[oldId];
+        }
+    }
+
+    /**
+     * lineStartsOf
+     * <p>
+     *     Finds where every line starts, with the same line separators as Lexer ("\n", "\r\n",
+     *     or "\r"), so line i here is line i + 1 of the Lexer.
+     * </p>
+     * @param source - buffer holding the assembly code
+     * @return - start of every line, followed by the end of the source
+     */
+    private static int[] lineStartsOf(ByteBuffer source) {
+        int[] lineStarts = new int[1024];
+        int count = 0, position = source.position(), limit = source.limit();
+
+        while (position < limit) {
+            if (count + 1 >= lineStarts.length) {
+                lineStarts = Arrays.copyOf(lineStarts, lineStarts.length * 2);
+            }
+            lineStarts[count++] = position;
+
+            byte current = 0;
+            while (position < limit && (current = source.get(position)) != '\n' && current != '\r') {
+                position++;
+            }
+            if (position < limit) {
+                position++;
+                if (current == '\r' && position < limit && source.get(position) == '\n') {
+                    position++;
+                }
+            }
+        }
+        lineStarts[count] = limit;
+        return Arrays.copyOf(lineStarts, count + 1);
+    }
+
+    /**
+     * lineHash
+     * <p>
+     *     64-bit FNV-1a hash of the bytes of a line (separator included, which is harmless).
+     * </p>
+     */
+    private static long lineHash(ByteBuffer source, int start, int end) {
+        long hash = 0xcbf29ce484222325L;
+        for (int i = start; i < end; i++) {
+            hash ^= source.get(i) & 0xFF;
+            hash *= 0x100000001b3L;
+        }
+        return hash;
+    }
+
+    /**
+     * lineText
+     * @return - text of a line without its separator and surrounding whitespace (for error messages)
+     */
+    private static String lineText(ByteBuffer source, int start, int end) {
+        byte[] bytes = new byte[end - start];
+        for (int i = start; i < end; i++) {
+            bytes[i - start] = source.get(i);
+        }
+        return new String(bytes, StandardCharsets.UTF_8).trim();
+    }
+
+    /**
+     * keyOf
+     * @param source - buffer holding the assembly code
+     * @return - hex SHA-256 of ASSEMBLER_VERSION and the source bytes
+     */
+    private static String keyOf(ByteBuffer source) {
+        MessageDigest digest = sha256();
+        digest.update(ASSEMBLER_VERSION.getBytes(StandardCharsets.US_ASCII));
+        digest.update(source.duplicate());
+        return toHex(digest.digest());
+    }
+
+    /**
+     * hashOf
+     * @param text - e.g. the absolute path of a source file
+     * @return - hex SHA-256 of the text
+     */
+    private static String hashOf(String text) {
+        return toHex(sha256().digest(text.getBytes(StandardCharsets.UTF_8)));
+    }
+
+    private static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is required of every Java platform", e);
+        }
+    }
+
+    private static String toHex(byte[] bytes) {
+        StringBuilder hex = new StringBuilder(bytes.length * 2);
+        for (byte b : bytes) {
+            hex.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+        }
+        return hex.toString();
+    }
+
+    /**
+     * load
+     * <p>
+     *     Reads an entry. A missing entry is a miss; an unreadable or corrupt one is removed and
+     *     is a miss too (the file is simply assembled again).
+     * </p>
+     * @param key - key of the entry
+     * @return - the entry, null if it is not in the cache
+     */
+    private Entry load(String key) {
+        Path entryFile = directory.resolve(key + ENTRY_EXTENSION);
+        if (!Files.exists(entryFile)) {
+            return null;
+        }
+
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(entryFile)))) {
+            if (in.readInt() != ENTRY_MAGIC || !in.readUTF().equals(ASSEMBLER_VERSION)) {
+                throw new IOException("Not an entry of this assembler version");
+            }
+
+            String[] names = new String[in.readInt()];
+            for (int i = 0; i < names.length; i++) {
+                names[i] = in.readUTF();
+            }
+
+            int[] addresses = new int[names.length];
+            Arrays.fill(addresses, -1);
+            int symbolCount = in.readInt();
+            for (int i = 0; i < symbolCount; i++) {
+                int id = in.readInt();
+                addresses[id] = in.readInt();
+            }
+
+            int lineCount = in.readInt();
+            long[] lineHashes = new long[lineCount];
+            char[] kinds = new char[lineCount];
+            int[] values = new int[lineCount];
+            int[] symbols = new int[lineCount];
+            for (int i = 0; i < lineCount; i++) {
+                lineHashes[i] = in.readLong();
+                kinds[i] = (char) in.readByte();
+                values[i] = in.readInt();
+                symbols[i] = in.readInt();
+            }
+
+            int[] words = new int[in.readInt()];
+            for (int i = 0; i < words.length; i++) {
+                words[i] = in.readUnsignedShort();
+            }
+
+            Files.setLastModifiedTime(entryFile, FileTime.fromMillis(System.currentTimeMillis()));
+            return new Entry(names, addresses, lineHashes, kinds, values, symbols, words);
+        } catch (IOException | RuntimeException e) {
+            try {
+                Files.deleteIfExists(entryFile);
+            } catch (IOException ignored) {
+                // assembled again either way
+            }
+            return null;
+        }
+    }
+
+    /**
+     * store
+     * <p>
+     *     Writes an entry, then evicts the least recently used entries beyond maxEntries.
+     * </p>
+     * @param key - key of the entry
+     * @param entry - entry to write
+     * @throws IOException - if the entry could not be written
+     */
+    private void store(String key, Entry entry) throws IOException {
+        Path entryFile = directory.resolve(key + ENTRY_EXTENSION);
+        Path temporaryFile = Files.createTempFile(directory, key, ".tmp");
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+                Files.newOutputStream(temporaryFile)))) {
+            out.writeInt(ENTRY_MAGIC);
+            out.writeUTF(ASSEMBLER_VERSION);
+
+            out.writeInt(entry.names.length);
+            for (String name : entry.names) {
+                out.writeUTF(name);
+            }
+
+            int symbolCount = 0;
+            for (int address : entry.addresses) {
+                if (address >= 0) {
+                    symbolCount++;
+                }
+            }
+            out.writeInt(symbolCount);
+            for (int id = 0; id < entry.addresses.length; id++) {
+                if (entry.addresses[id] >= 0) {
+                    out.writeInt(id);
+                    out.writeInt(entry.addresses[id]);
+                }
+            }
+
+            out.writeInt(entry.lineHashes.length);
+            for (int i = 0; i < entry.lineHashes.length; i++) {
+                out.writeLong(entry.lineHashes[i]);
+                out.writeByte(entry.kinds[i]);
+                out.writeInt(entry.values[i]);
+                out.writeInt(entry.symbols[i]);
+            }
+
+            out.writeInt(entry.words.length);
+            for (int word : entry.words) {
+                out.writeShort(word);
+            }
+        }
+        Files.move(temporaryFile, entryFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        evict();
+    }
+
+    /**
+     * writeAtomically
+     * @param file - file to replace
+     * @param contents - new contents of the file
+     * @throws IOException - if the file could not be written
+     */
+    private void writeAtomically(Path file, byte[] contents) throws IOException {
+        Path temporaryFile = Files.createTempFile(directory, "path", ".tmp");
+        Files.write(temporaryFile, contents);
+        Files.move(temporaryFile, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * evict
+     * <p>
+     *     Deletes the least recently used entries until at most maxEntries are left.
+     * </p>
+     * @throws IOException - if the directory could not be listed
+     */
+    private synchronized void evict() throws IOException {
+        List<Path> entryFiles = new ArrayList<Path>();
+        try (DirectoryStream<Path> listing = Files.newDirectoryStream(directory, "*" + ENTRY_EXTENSION)) {
+            for (Path entryFile : listing) {
+                entryFiles.add(entryFile);
+            }
+        }
+        if (entryFiles.size() <= maxEntries) {
+            return;
+        }
+
+        final FileTime[] lastUsed = new FileTime[entryFiles.size()];
+        Integer[] order = new Integer[entryFiles.size()];
+        for (int i = 0; i < order.length; i++) {
+            order[i] = i;
+            try {
+                lastUsed[i] = Files.getLastModifiedTime(entryFiles.get(i));
+            } catch (IOException e) {
+                lastUsed[i] = FileTime.fromMillis(0); // already gone, deleting it again is harmless
+            }
+        }
+        Arrays.sort(order, new Comparator<Integer>() {
+            public int compare(Integer a, Integer b) {
+                return lastUsed[a].compareTo(lastUsed[b]);
+            }
+        });
+
+        for (int i = 0; i < order.length - maxEntries; i++) {
+            if (Files.deleteIfExists(entryFiles.get(order[i]))) {
+                evictions.incrementAndGet();
+            }
+        }
+    }
+
+    /**
+     * getReport
+     * @return - one line summary of the hit, miss, and eviction counts
+     */
+    public String getReport() {
+        return "Assembly cache: " + hits.get() + " hits, " + misses.get() + " misses (" + incrementalMisses.get()
+                + " incremental, " + reusedLines.get() + " lines reused), " + evictions.get() + " evictions";
+    }
+
+    public int getHits() {
+        return hits.get();
+    }
+
+    public int getMisses() {
+        return misses.get();
+    }
+
+    public int getIncrementalMisses() {
+        return incrementalMisses.get();
+    }
+
+    public int getEvictions() {
+        return evictions.get();
+    }
+
+    /**
+     * Everything the cache keeps about one version of a source file.
+     */
+    public static class Entry {
+        private final String[] names;       // symbol names by id
+        private final int[] addresses;      // address by id, -1 for a symbol without one
+        private final long[] lineHashes;
+        private final char[] kinds;         // command type of each line
+        private final int[] values;         // word of each C instruction and integer literal A instruction
+        private final int[] symbols;        // symbol id of each symbolic A instruction and label
+        private final int[] words;
+
+        Entry(String[] names, int[] addresses, long[] lineHashes, char[] kinds, int[] values, int[] symbols,
+              int[] words) {
+            this.names = names;
+            this.addresses = addresses;
+            this.lineHashes = lineHashes;
+            this.kinds = kinds;
+            this.values = values;
+            this.symbols = symbols;
+            this.words = words;
+        }
+
+        Entry(String[] names, SymbolTable symbolTable, long[] lineHashes, char[] kinds, int[] values,
+              int[] symbols, int[] words) {
+            this(names, new int[names.length], lineHashes, kinds, values, symbols, words);
+            for (int id = 0; id < names.length; id++) {
+                addresses[id] = symbolTable.contains(id) ? symbolTable.getAddress(id) : -1;
+            }
+        }
+
+        /**
+         * getWords
+         * @return - copy of the encoded words in ROM order
+         */
+        public int[] getWords() {
+            return words.clone();
+        }
+
+        /**
+         * getInstructionCount
+         * @return - number of instructions of the program
+         */
+        public int getInstructionCount() {
+            return words.length;
+        }
+
+        /**
+         * getLineCount
+         * @return - number of source lines of the program
+         */
+        public int getLineCount() {
+            return lineHashes.length;
+        }
+
+        /**
+         * getSymbolTable
+         * @return - new symbol table holding the labels and variables of the program
+         */
+        public SymbolTable getSymbolTable() {
+            SymbolTable symbolTable = new SymbolTable();
+            for (int id = 0; id < names.length; id++) {
+                if (addresses[id] >= 0) {
+                    symbolTable.addEntry(names[id], addresses[id]);
+                }
+            }
+            return symbolTable;
+        }
+    }
+}
@@ -0,0 +1,91 @@
+/**
+ * Author: Ben Vargas
+ * Course: CS220 - Computer Architecture and Assembly Language
+ * Professor: Nery Chapeton-Lamas
+ * Project: Assembler (HACK Architecture)
+ */
+
+/**
+ * Error in the assembly code itself (invalid mnemonic, malformed label, out of range address, ...),
+ * carrying the line it was found on so a caller can report it without parsing the message.
+ * <p>
+ *     Extends IllegalArgumentException, which is what the Assembler threw for these errors before,
+ *     so existing callers keep working. There is deliberately no (Throwable) constructor: a
+ *     ForkJoinPool then rethrows the original exception from ParallelEncoder instead of a copy.
+ * </p>
+ */
+public class AssemblyException extends IllegalArgumentException {
+    private static final long serialVersionUID = 1L;
+
+    private final String reason;
+    private final int lineNumber;
+    private final String sourceLine;
+
+    /**
+     * Primary Constructor for AssemblyException
+     * @param reason - what is wrong, e.g. "Invalid C instruction"
+     * @param lineNumber - line of the error (first line is 1), 0 if it is not tied to a line
+     * @param sourceLine - the line without comments and whitespace, null if not tied to a line
+     */
+    public AssemblyException(String reason, int lineNumber, String sourceLine) {
+        super(lineNumber > 0 ? reason + " on line " + lineNumber + ": " + sourceLine : reason);
+        this.reason = reason;
+        this.lineNumber = lineNumber;
+        this.sourceLine = sourceLine;
+    }
+
+    /**
+     * Constructor for AssemblyException with the exception it was made from
+     * @param reason - what is wrong
+     * @param lineNumber - line of the error (first line is 1), 0 if it is not tied to a line
+     * @param sourceLine - the line without comments and whitespace, null if not tied to a line
+     * @param cause - exception thrown by the code that found the error
+     */
+    public AssemblyException(String reason, int lineNumber, String sourceLine, Throwable cause) {
+        this(reason, lineNumber, sourceLine);
+        initCause(cause);
+    }
+
+    /**
+     * atLine
+     * <p>
+     *     Ties an IllegalArgumentException thrown while translating a line (e.g., by SymbolTable or
+     *     Code, which do not know the line) to that line. An AssemblyException is returned as is.
+     * </p>
+     * @param e - exception thrown while translating the line
+     * @param lineNumber - line being translated, 0 if unknown
+     * @param sourceLine - the line without comments and whitespace
+     * @return - exception to throw in place of e
+     */
+    public static AssemblyException atLine(IllegalArgumentException e, int lineNumber, String sourceLine) {
+        if (e instanceof AssemblyException) {
+            return (AssemblyException) e;
+        }
+        String reason = e.getMessage() == null ? "Invalid instruction" : e.getMessage();
+        return new AssemblyException(reason, lineNumber, sourceLine, e);
+    }
+
+    /**
+     * getReason
+     * @return - what is wrong, without the line number and line
+     */
+    public String getReason() {
+        return reason;
+    }
+
+    /**
+     * getLineNumber
+     * @return - line of the error (first line is 1), 0 if it is not tied to a line
+     */
+    public int getLineNumber() {
+        return lineNumber;
+    }
+
+    /**
+     * getSourceLine
+     * @return - the line without comments and whitespace, null if not tied to a line
+     */
+    public String getSourceLine() {
+        return sourceLine;
+    }
+}
@@ -0,0 +1,309 @@
+/**
+ * Author: Ben Vargas
+ * Course: CS220 - Computer Architecture and Assembly Language
+ * Professor: Nery Chapeton-Lamas
+ * Project: Assembler (HACK Architecture)
+ */
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Driver used to assemble every .asm file of a directory (or every file matching a glob)
+ * concurrently on a fixed size pool of worker threads.
+ * <p>
+ *     Each file gets its own Assembler object (and so its own Parser, SymbolTable, and RAM
+ *     address counter) and its own output file. Nothing but the read-only Code tables is
+ *     shared between workers.
+ * </p>
+ * <p>
+ *     With -cache, files are served from (and stored in) an AssemblyCache shared by the workers,
+ *     and its hit, miss, and eviction counts are printed with the totals.
+ * </p>
+ * Usage: java BatchAssembler [-threads N] [-single] [-binary] [-atable] [-cache dir] &lt;directory or glob&gt;
+ *        e.g. java BatchAssembler -threads 8 build/asm
+ *             java BatchAssembler "build/asm/Main*.asm"
+ */
+public class BatchAssembler {
+
+    // ALGORITHM:
+    // collect the .asm files (directory listing or glob)
+    // submit one task per file to the worker pool
+    // wait for the tasks in submission order, printing success/failure of each file
+    // print totals and lines/sec over the wall clock time of the whole batch
+
+    public static void main(String[] args) {
+        String target = null;
+        int threadCount = Runtime.getRuntime().availableProcessors();
+        int mode = Assembler.TWO_PASS;
+        boolean useBinaryOutput = false;
+        String cacheDirectory = null;
+
+        for (int i = 0; i < args.length; i++) {
+            if (args[i].equals("-threads") && i + 1 < args.length) {
+                threadCount = Integer.parseInt(args[++i]);
+            } else if (args[i].equals("-single")) {
+                mode = Assembler.SINGLE_PASS;
+            } else if (args[i].equals("-binary")) {
+                useBinaryOutput = true;
+            } else if (args[i].equals("-atable")) {
+                Code.enableAInstructionCache();
+            } else if (args[i].equals("-cache") && i + 1 < args.length) {
+                cacheDirectory = args[++i];
+            } else {
+                target = args[i];
+            }
+        }
+
+        if (target == null || threadCount < 1) {
+            System.err.println("Usage: java BatchAssembler [-threads N] [-single] [-binary] [-atable] " +
+                    "[-cache dir] <directory or glob>");
+            System.exit(0);
+        }
+
+        List<Path> inputFiles = null;
+        try {
+            inputFiles = findInputFiles(target);
+        } catch (IOException e) {
+            System.err.println(e.getMessage());
+            System.err.println("Could not list the assembly files for " + target);
+            System.exit(0);
+        }
+
+        if (inputFiles.isEmpty()) {
+            System.err.println("No .asm files found for " + target);
+            System.exit(0);
+        }
+
+        AssemblyCache cache = null;
+        if (cacheDirectory != null) {
+            try {
+                cache = new AssemblyCache(Paths.get(cacheDirectory), AssemblyCache.DEFAULT_MAX_ENTRIES);
+            } catch (IOException e) {
+                System.err.println(e.getMessage());
+                System.err.println("Could not create the assembly cache " + cacheDirectory);
+                System.exit(0);
+            }
+        }
+
+        threadCount = Math.min(threadCount, inputFiles.size()); // no idle workers for a small batch
+        long start = System.nanoTime();
+        List<FileResult> results = assembleAll(inputFiles, threadCount, mode, useBinaryOutput, cache);
+        printReport(results, threadCount, System.nanoTime() - start);
+        if (cache != null) {
+            System.out.println(cache.getReport());
+        }
+    }
+
+    /**
+     * findInputFiles
+     * <p>
+     *     Lists the files to assemble. A directory gives every ".asm" file directly inside
+     *     it; anything else is treated as a glob whose last path element is the pattern, of
+     *     which only the ".asm" files are kept (so "dir/*" does not pick up the outputs).
+     * </p>
+     * Precondition: target is a directory or glob
+     * Postcondition: n/a
+     * @param target - directory or glob from the command line
+     * @return - files to assemble, sorted by name
+     * @throws IOException - if the directory could not be listed
+     */
+    public static List<Path> findInputFiles(String target) throws IOException {
+        Path targetPath = Paths.get(target);
+        Path directory;
+        String glob;
+
+        if (Files.isDirectory(targetPath)) {
+            directory = targetPath;
+            glob = "*.asm";
+        } else {
+            directory = targetPath.getParent() == null ? Paths.get(".") : targetPath.getParent();
+            glob = targetPath.getFileName().toString();
+        }
+
+        List<Path> inputFiles = new ArrayList<Path>();
+        try (DirectoryStream<Path> listing = Files.newDirectoryStream(directory, glob)) {
+            for (Path file : listing) {
+                if (Files.isRegularFile(file) && file.getFileName().toString().endsWith(".asm")) {
+                    inputFiles.add(file);
+                }
+            }
+        }
+        Collections.sort(inputFiles);
+        return inputFiles;
+    }
+
+    /**
+     * assembleAll
+     * <p>
+     *     Submits one task per file to a fixed size thread pool and waits for all of them.
+     * </p>
+     * Precondition: inputFiles is not empty, threadCount &gt; 0
+     * Postcondition: every file has been attempted, pool is shut down
+     * @param inputFiles - files to assemble
+     * @param threadCount - number of worker threads
+     * @param mode - assembly mode, see Assembler(int)
+     * @param useBinaryOutput - true for .hackb output, false for .hack
+     * @param cache - cache shared by the workers, null to always assemble
+     * @return - one result per input file, in the same order as inputFiles
+     */
+    public static List<FileResult> assembleAll(List<Path> inputFiles, int threadCount, final int mode,
+                                               final boolean useBinaryOutput, final AssemblyCache cache) {
+        ExecutorService pool = Executors.newFixedThreadPool(Math.min(threadCount, inputFiles.size()));
+        List<Future<FileResult>> futures = new ArrayList<Future<FileResult>>();
+
+        for (final Path inputFile : inputFiles) {
+            futures.add(pool.submit(new Callable<FileResult>() {
+                public FileResult call() {
+                    return assembleOne(inputFile.toString(), mode, useBinaryOutput, cache);
+                }
+            }));
+        }
+
+        List<FileResult> results = new ArrayList<FileResult>();
+        try {
+            for (int i = 0; i < futures.size(); i++) {
+                try {
+                    results.add(futures.get(i).get());
+                } catch (ExecutionException e) {
+                    results.add(new FileResult(inputFiles.get(i).toString(), e.getCause()));
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            pool.shutdownNow();
+        }
+        return results;
+    }
+
+    /**
+     * assembleOne
+     * <p>
+     *     Assembles a single file with its own Assembler and output file. Any exception is
+     *     caught and recorded in the result, so one bad file does not stop the batch. The input
+     *     is read before any output is opened, and the output is written to a temporary file
+     *     moved over the .hack only once the file has assembled, so a file that fails leaves no
+     *     partial output and does not touch an existing one.
+     * </p>
+     * @param inputFileName - .asm file to assemble
+     * @param mode - assembly mode, see Assembler(int)
+     * @param useBinaryOutput - true for .hackb output, false for .hack
+     * @param cache - cache to serve the file from, null to always assemble
+     * @return - result of the file
+     */
+    private static FileResult assembleOne(String inputFileName, int mode, boolean useBinaryOutput,
+                                          AssemblyCache cache) {
+        long start = System.nanoTime();
+        Path temporaryFile = null;
+        try {
+            ByteBuffer source = Parser.mapSource(inputFileName); // checks the name ends in .asm
+            Path outputPath = Paths.get(Assembler.outputFileNameFor(inputFileName, useBinaryOutput));
+            temporaryFile = HackFile.createTemporaryFile(outputPath);
+
+            int linesRead, instructionCount;
+            HackWriter outputFile = HackFile.openWriter(temporaryFile.toString());
+            try {
+                if (cache != null) {
+                    AssemblyCache.Entry entry = cache.assemble(inputFileName, outputFile);
+                    linesRead = entry.getLineCount();
+                    instructionCount = entry.getInstructionCount();
+                } else {
+                    Assembler assembler = new Assembler(mode);
+                    assembler.assemble(source, outputFile);
+                    linesRead = assembler.getLinesRead();
+                    instructionCount = assembler.getInstructionCount();
+                }
+            } finally {
+                outputFile.close();
+            }
+            Files.move(temporaryFile, outputPath, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+
+            return new FileResult(inputFileName, linesRead, instructionCount, System.nanoTime() - start);
+        } catch (IOException | RuntimeException e) {
+            return new FileResult(inputFileName, e);
+        } finally {
+            if (temporaryFile != null) {
+                try {
+                    Files.deleteIfExists(temporaryFile);
+                } catch (IOException e) {
+                    // already reporting the result of the file
+                }
+            }
+        }
+    }
+
+    /**
+     * printReport
+     * <p>
+     *     Prints one line per file and the totals of the batch.
+     * </p>
+     * @param results - results of assembleAll
+     * @param threadCount - number of worker threads used
+     * @param wallNanos - wall clock time of the whole batch
+     */
+    private static void printReport(List<FileResult> results, int threadCount, long wallNanos) {
+        long totalLines = 0, totalInstructions = 0;
+        int failures = 0;
+
+        for (FileResult result : results) {
+            if (result.error == null) {
+                System.out.printf("OK     %s (%d lines, %d instructions, %.2f ms)%n", result.fileName,
+                        result.linesRead, result.instructionCount, result.nanos / 1e6);
+                totalLines += result.linesRead;
+                totalInstructions += result.instructionCount;
+            } else {
+                System.out.println("FAILED " + result.fileName + ": " + result.error);
+                failures++;
+            }
+        }
+
+        double wallSeconds = wallNanos / 1e9;
+        System.out.printf("%d files assembled, %d failed, %d lines, %d instructions%n",
+                results.size() - failures, failures, totalLines, totalInstructions);
+        if (wallSeconds > 0) {
+            System.out.printf("%.0f lines/sec on %d threads (%.2f ms wall clock)%n", totalLines / wallSeconds,
+                    threadCount, wallNanos / 1e6);
+        }
+    }
+
+    /**
+     * Result of assembling one file of the batch.
+     */
+    public static class FileResult {
+        public final String fileName;
+        public final int linesRead;
+        public final int instructionCount;
+        public final long nanos;
+        public final Throwable error;
+
+        FileResult(String fileName, int linesRead, int instructionCount, long nanos) {
+            this.fileName = fileName;
+            this.linesRead = linesRead;
+            this.instructionCount = instructionCount;
+            this.nanos = nanos;
+            this.error = null;
+        }
+
+        FileResult(String fileName, Throwable error) {
+            this.fileName = fileName;
+            this.linesRead = 0;
+            this.instructionCount = 0;
+            this.nanos = 0;
+            this.error = error;
+        }
+    }
+}
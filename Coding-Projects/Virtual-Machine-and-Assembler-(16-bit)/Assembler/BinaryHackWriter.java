@@ -0,0 +1,98 @@
+/**
+ * Author: Ben Vargas
+ * Course: CS220 - Computer Architecture and Assembly Language
+ * Professor: Nery Chapeton-Lamas
+ * Project: Assembler (HACK Architecture)
+ */
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Object used to write a packed binary .hack file: a small header followed by every
+ * instruction as a big-endian 16-bit word (2 bytes per instruction instead of 17+ for text).
+ * See HackFile for the layout of the header.
+ */
+public class BinaryHackWriter implements HackWriter {
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private FileChannel channel;
+    private ByteBuffer buffer;
+    private int wordCount;
+
+    /**
+     * Primary Constructor for BinaryHackWriter
+     * <p>
+     *     Reserves room for the header at the start of the channel. The header is filled in
+     *     by close(), once the number of words is known.
+     * </p>
+     * Precondition: channel is open for writing and positioned at the start of an empty file
+     * Postcondition: writer is ready for writeWord
+     * @param channel - file channel the packed words are written to
+     */
+    public BinaryHackWriter(FileChannel channel) {
+        this.channel = channel;
+        buffer = ByteBuffer.allocateDirect(BUFFER_SIZE); // ByteBuffer is big-endian by default
+        buffer.position(HackFile.BINARY_HEADER_SIZE);
+        wordCount = 0;
+    }
+
+    /**
+     * writeWord
+     * <p>
+     *     Writes one instruction as a 2 byte, big-endian word.
+     * </p>
+     * Precondition: writer has not been closed
+     * Postcondition: word is in the buffer (or already written to the channel)
+     * @param word - encoded instruction in the low 16 bits
+     * @throws IOException - if the buffer could not be flushed to the channel
+     */
+    public void writeWord(int word) throws IOException {
+        if (buffer.remaining() < 2) {
+            flush();
+        }
+
+        buffer.putShort((short) word);
+        wordCount++;
+    }
+
+    /**
+     * flush
+     * <p>
+     *     Hands the buffered words to the channel.
+     * </p>
+     * @throws IOException - if the channel could not be written to
+     */
+    private void flush() throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        buffer.clear();
+    }
+
+    /**
+     * close
+     * <p>
+     *     Flushes the remaining words, writes the header (format version and word count)
+     *     at the start of the file, and closes the channel.
+     * </p>
+     * Precondition: n/a
+     * Postcondition: channel is closed, file is a complete binary .hack file
+     * @throws IOException - if the channel could not be written to or closed
+     */
+    public void close() throws IOException {
+        flush();
+
+        ByteBuffer header = ByteBuffer.allocate(HackFile.BINARY_HEADER_SIZE);
+        HackFile.putBinaryHeader(header, wordCount);
+        header.flip();
+        long headerPosition = 0;
+        while (header.hasRemaining()) {
+            headerPosition += channel.write(header, headerPosition);
+        }
+        channel.close();
+    }
+}
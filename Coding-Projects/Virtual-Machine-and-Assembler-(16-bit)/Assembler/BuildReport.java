@@ -0,0 +1,217 @@
+/**
+ * Author: Ben Vargas
+ * Course: CS220 - Computer Architecture and Assembly Language
+ * Professor: Nery Chapeton-Lamas
+ * Project: Assembler (HACK Architecture)
+ */
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.lang.management.ThreadMXBean;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Timings and statistics of one assembly run, rendered as JSON (see Assembler.setReport).
+ * <p>
+ *     A run is split into consecutive phases: phase(name) ends the current phase and starts
+ *     the next, and finish() ends the last one. For each phase the report records the wall
+ *     clock nanoseconds, the bytes allocated by the calling thread (work done on other threads,
+ *     e.g., PARALLEL mode encoding on a ForkJoin pool, is not counted; -1 if the JVM can not
+ *     measure it), and the peak heap use of the JVM while it ran. Counts (lines, instructions,
+ *     labels, ...) and names are added with set.
+ * </p>
+ * <p>
+ *     Peak heap use is read from the JVM wide memory pools, which are reset at the start of
+ *     each phase, so it is only meaningful when one file is assembled at a time.
+ * </p>
+ */
+public class BuildReport {
+    private final List<String> phaseNames = new ArrayList<String>();
+    private final List<long[]> phaseValues = new ArrayList<long[]>(); // nanos, allocated bytes, peak heap
+    private final Map<String, String> fields = new LinkedHashMap<String, String>();
+
+    private final ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+    private final List<MemoryPoolMXBean> heapPools = new ArrayList<MemoryPoolMXBean>();
+
+    // start of the current phase, null name if no phase is running
+    private String currentPhase;
+    private long phaseStartNanos;
+    private long phaseStartAllocated;
+
+    /**
+     * Default Constructor for BuildReport
+     * <p>
+     *     Creates an empty report, no phase is running.
+     * </p>
+     */
+    public BuildReport() {
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            if (pool.getType() == MemoryType.HEAP && pool.isValid()) {
+                heapPools.add(pool);
+            }
+        }
+    }
+
+    /**
+     * phase
+     * <p>
+     *     Ends the current phase (if any) and starts a new one.
+     * </p>
+     * Precondition: n/a
+     * Postcondition: name is the current phase
+     * @param name - name of the phase, e.g. "firstPass"
+     */
+    public void phase(String name) {
+        finish();
+        for (MemoryPoolMXBean pool : heapPools) {
+            pool.resetPeakUsage();
+        }
+        currentPhase = name;
+        phaseStartAllocated = allocatedBytes();
+        phaseStartNanos = System.nanoTime();
+    }
+
+    /**
+     * finish
+     * <p>
+     *     Ends the current phase. Does nothing if no phase is running.
+     * </p>
+     * Precondition: n/a
+     * Postcondition: no phase is running
+     */
+    public void finish() {
+        if (currentPhase == null) {
+            return;
+        }
+
+        long nanos = System.nanoTime() - phaseStartNanos;
+        long allocated = allocatedBytes();
+        long peakHeap = 0;
+        for (MemoryPoolMXBean pool : heapPools) {
+            peakHeap += pool.getPeakUsage().getUsed();
+        }
+
+        phaseNames.add(currentPhase);
+        phaseValues.add(new long[] {nanos, allocated < 0 ? -1 : allocated - phaseStartAllocated, peakHeap});
+        currentPhase = null;
+    }
+
+    /**
+     * set
+     * @param name - name of the field
+     * @param value - value of the field (replaces an earlier value)
+     */
+    public void set(String name, long value) {
+        fields.put(name, Long.toString(value));
+    }
+
+    /**
+     * set
+     * @param name - name of the field
+     * @param value - value of the field (replaces an earlier value), null for JSON null
+     */
+    public void set(String name, String value) {
+        fields.put(name, value == null ? "null" : quote(value));
+    }
+
+    /**
+     * set
+     * @param name - name of the field
+     * @param value - value of the field (replaces an earlier value)
+     */
+    public void set(String name, boolean value) {
+        fields.put(name, Boolean.toString(value));
+    }
+
+    /**
+     * getPhaseNanos
+     * @param name - name of a finished phase
+     * @return - nanoseconds of the phase (summed if it ran more than once), 0 if it did not run
+     */
+    public long getPhaseNanos(String name) {
+        long nanos = 0;
+        for (int i = 0; i < phaseNames.size(); i++) {
+            if (phaseNames.get(i).equals(name)) {
+                nanos += phaseValues.get(i)[0];
+            }
+        }
+        return nanos;
+    }
+
+    /**
+     * toJson
+     * <p>
+     *     Renders the report as one JSON object: the fields in the order they were first set,
+     *     the totals over all phases, and a "phases" array in the order the phases ran.
+     * </p>
+     * Precondition: n/a
+     * Postcondition: the current phase (if any) is not included
+     * @return - JSON text (ending with a line break)
+     */
+    public String toJson() {
+        long totalNanos = 0, totalAllocated = 0, peakHeap = 0;
+        for (long[] values : phaseValues) {
+            totalNanos += values[0];
+            totalAllocated = totalAllocated < 0 || values[1] < 0 ? -1 : totalAllocated + values[1];
+            peakHeap = Math.max(peakHeap, values[2]);
+        }
+
+        StringBuilder json = new StringBuilder("{\n");
+        for (Map.Entry<String, String> field : fields.entrySet()) {
+            json.append("  ").append(quote(field.getKey())).append(": ").append(field.getValue()).append(",\n");
+        }
+        json.append("  \"totalNanos\": ").append(totalNanos).append(",\n");
+        json.append("  \"totalAllocatedBytes\": ").append(totalAllocated).append(",\n");
+        json.append("  \"peakHeapBytes\": ").append(peakHeap).append(",\n");
+        json.append("  \"phases\": [");
+        for (int i = 0; i < phaseNames.size(); i++) {
+            long[] values = phaseValues.get(i);
+            json.append(i == 0 ? "\n" : ",\n");
+            json.append("    {\"name\": ").append(quote(phaseNames.get(i)))
+                    .append(", \"nanos\": ").append(values[0])
+                    .append(", \"allocatedBytes\": ").append(values[1])
+                    .append(", \"peakHeapBytes\": ").append(values[2]).append('}');
+        }
+        json.append(phaseNames.isEmpty() ? "]\n" : "\n  ]\n");
+        json.append("}\n");
+        return json.toString();
+    }
+
+    /**
+     * allocatedBytes
+     * @return - bytes allocated so far by the calling thread, -1 if the JVM can not measure it
+     */
+    private long allocatedBytes() {
+        if (threads instanceof com.sun.management.ThreadMXBean) {
+            com.sun.management.ThreadMXBean allocationCounter = (com.sun.management.ThreadMXBean) threads;
+            if (allocationCounter.isThreadAllocatedMemorySupported() && allocationCounter.isThreadAllocatedMemoryEnabled()) {
+                return allocationCounter.getThreadAllocatedBytes(Thread.currentThread().getId());
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * quote
+     * @param text - text of a JSON string
+     * @return - text in quotes, with quotes, backslashes, and control characters escaped
+     */
+    static String quote(String text) {
+        StringBuilder quoted = new StringBuilder(text.length() + 2).append('"');
+        for (int i = 0; i < text.length(); i++) {
+            char current = text.charAt(i);
+            if (current == '"' || current == '\\') {
+                quoted.append('\\').append(current);
+            } else if (current < 0x20) {
+                quoted.append(String.format("\\u%04x", (int) current));
+            } else {
+                quoted.append(current);
+            }
+        }
+        return quoted.append('"').toString();
+    }
+}
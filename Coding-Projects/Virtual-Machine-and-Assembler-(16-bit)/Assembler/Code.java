@@ -4,125 +4,562 @@
  * Professor: Nery Chapeton-Lamas
  * Project: Assembler (HACK Architecture)
  */
-import java.util.HashMap;
 
 public class Code {
-    /** HashMaps that are used to store the binary representation of mnemonics */
-    private HashMap<String, String> compCodes;
-    private HashMap<String, String> destCodes;
-    private HashMap<String, String> jumpCodes;
+    /** value returned by the bit lookups when a mnemonic is not valid */
+    public static final int INVALID = -1;
+
+    /** fixed bits at the front of every C instruction: [1][1][1] */
+    public static final int C_INSTRUCTION_PREFIX = 0xE000;
+
+    // dense open-addressing tables used to store the binary representation of mnemonics.
+    // mnemonics are packed into an int key (one ASCII char per byte, at most 4 chars) so a
+    // lookup is a multiply, a shift and a probe - no String or boxed Integer is created.
+    private static final int TABLE_SIZE = 64; // must be a power of 2, larger than any table
+    private static final int TABLE_SHIFT = 32 - Integer.numberOfTrailingZeros(TABLE_SIZE);
+
+    private static final int[] compKeys = new int[TABLE_SIZE];
+    private static final int[] compBits = new int[TABLE_SIZE];
+    private static final int[] destKeys = new int[TABLE_SIZE];
+    private static final int[] destBits = new int[TABLE_SIZE];
+    private static final int[] jumpKeys = new int[TABLE_SIZE];
+    private static final int[] jumpBits = new int[TABLE_SIZE];
+
+    // inverse tables, indexed by the bits: the first mnemonic put for each value (so D+M, not
+    // its alias M+D), null for the comp values that are not instructions
+    private static final String[] compMnemonics = new String[128];
+    private static final String[] destMnemonics = new String[8];
+    private static final String[] jumpMnemonics = new String[8];
+
+    // ASCII text of every byte value, 8 digits per entry (MSB first), so a 16-bit word is
+    // formatted with two array copies instead of building and padding a String
+    private static final byte[] BYTE_DIGITS = new byte[256 * 8];
+
+    // optional ASCII text of all 32768 A instruction words (16 digits each), built on request
+    private static volatile byte[] aInstructionDigits;
+
+    /*
+     * Tables are filled with pre-determined, hardcoded translations of code into their binary,
+     * machine code versions as defined within our HACK architecture. Comp codes = 7 bits
+     * (a and c1-c6), and dest/jump codes = 3 bits (d/j1-d/j3).
+     */
+    static {
+        putEntry(destKeys, destBits, destMnemonics, "NULL","000");
+        putEntry(destKeys, destBits, destMnemonics, "M","001");
+        putEntry(destKeys, destBits, destMnemonics, "D","010");
+        putEntry(destKeys, destBits, destMnemonics, "MD","011");
+        putEntry(destKeys, destBits, destMnemonics, "A","100");
+        putEntry(destKeys, destBits, destMnemonics, "AM","101");
+        putEntry(destKeys, destBits, destMnemonics, "AD","110");
+        putEntry(destKeys, destBits, destMnemonics, "AMD","111");
+
+        putEntry(jumpKeys, jumpBits, jumpMnemonics, "NULL", "000");
+        putEntry(jumpKeys, jumpBits, jumpMnemonics, "JGT", "001");
+        putEntry(jumpKeys, jumpBits, jumpMnemonics, "JEQ", "010");
+        putEntry(jumpKeys, jumpBits, jumpMnemonics, "JGE", "011");
+        putEntry(jumpKeys, jumpBits, jumpMnemonics, "JLT","100");
+        putEntry(jumpKeys, jumpBits, jumpMnemonics, "JNE","101");
+        putEntry(jumpKeys, jumpBits, jumpMnemonics, "JLE","110");
+        putEntry(jumpKeys, jumpBits, jumpMnemonics, "JMP", "111");
+
+        putEntry(compKeys, compBits, compMnemonics, "0", "0101010");
+        putEntry(compKeys, compBits, compMnemonics, "1", "0111111");
+        putEntry(compKeys, compBits, compMnemonics, "-1","0111010");
+        putEntry(compKeys, compBits, compMnemonics, "D", "0001100");
+        putEntry(compKeys, compBits, compMnemonics, "A", "0110000");
+        putEntry(compKeys, compBits, compMnemonics, "!D", "0001101");
+        putEntry(compKeys, compBits, compMnemonics, "!A", "0110001");
+        putEntry(compKeys, compBits, compMnemonics, "-D", "0001111");
+        putEntry(compKeys, compBits, compMnemonics, "-A", "0110011");
+        putEntry(compKeys, compBits, compMnemonics, "D+1","0011111");
+        putEntry(compKeys, compBits, compMnemonics, "A+1","0110111");
+        putEntry(compKeys, compBits, compMnemonics, "D+A","0000010");
+        putEntry(compKeys, compBits, compMnemonics, "D-A","0010011");
+        putEntry(compKeys, compBits, compMnemonics, "A-D","0000111");
+        putEntry(compKeys, compBits, compMnemonics, "D&A","0000000");
+        putEntry(compKeys, compBits, compMnemonics, "D|A","0010101");
+        putEntry(compKeys, compBits, compMnemonics, "M","1110000");
+        putEntry(compKeys, compBits, compMnemonics, "!M","1110001");
+        putEntry(compKeys, compBits, compMnemonics, "-M","1110011");
+        putEntry(compKeys, compBits, compMnemonics, "M+1","1110111");
+        putEntry(compKeys, compBits, compMnemonics, "M-1","1110010");
+        putEntry(compKeys, compBits, compMnemonics, "D+M","1000010");
+        putEntry(compKeys, compBits, compMnemonics, "M+D","1000010");
+        putEntry(compKeys, compBits, compMnemonics, "D-M","1010011");
+        putEntry(compKeys, compBits, compMnemonics, "M-D","1000111");
+        putEntry(compKeys, compBits, compMnemonics, "D&M","1000000");
+        putEntry(compKeys, compBits, compMnemonics, "D|M","1010101");
+        putEntry(compKeys, compBits, compMnemonics, "D-1","0001110");
+        putEntry(compKeys, compBits, compMnemonics, "A-1","0110010");
+
+        for (int value = 0; value < 256; value++) {
+            for (int bit = 0; bit < 8; bit++) {
+                BYTE_DIGITS[value * 8 + bit] = (byte) ('0' + ((value >>> (7 - bit)) & 1));
+            }
+        }
+    }
 
     /**
      * Default Constructor for Code Object
      * <p>
-     *     Initializes code HashMaps with pre-determined, hardcoded
-     *     translations of code into their binary, machine code
-     *     versions as defined within our HACK architecture.
+     *     The translation tables are shared by every Code object (they never change after
+     *     the class is loaded), so constructing a Code object is free.
      * </p>
-     * Precondition: Comp codes = 7 bits (a and c1-c6), and dest/jump
-     *               codes = 3 bits (d/j1-d/j3).
-     * Postcondition: All hashmaps have lookups for valid codes
+     * Precondition: n/a
+     * Postcondition: Code object ready to translate mnemonics
      */
     public Code() {
-        destCodes = new HashMap<String, String>();
-        destCodes.put("NULL","000");
-        destCodes.put("M","001");
-        destCodes.put("D","010");
-        destCodes.put("MD","011");
-        destCodes.put("A","100");
-        destCodes.put("AM","101");
-        destCodes.put("AD","110");
-        destCodes.put("AMD","111");
-
-        jumpCodes = new HashMap<String,String>();
-        jumpCodes.put("NULL", "000");
-        jumpCodes.put("JGT", "001");
-        jumpCodes.put("JEQ", "010");
-        jumpCodes.put("JGE", "011");
-        jumpCodes.put("JLT","100");
-        jumpCodes.put("JNE","101");
-        jumpCodes.put("JLE","110");
-        jumpCodes.put("JMP", "111");
-
-        compCodes = new HashMap<String,String>();
-        compCodes.put("0", "0101010");
-        compCodes.put("1", "0111111");
-        compCodes.put("-1","0111010");
-        compCodes.put("D", "0001100");
-        compCodes.put("A", "0110000");
-        compCodes.put("!D", "0001101");
-        compCodes.put("!A", "0110001");
-        compCodes.put("-D", "0001111");
-        compCodes.put("-A", "0110011");
-        compCodes.put("D+1","0011111");
-        compCodes.put("A+1","0110111");
-        compCodes.put("D+A","0000010");
-        compCodes.put("D-A","0010011");
-        compCodes.put("A-D","0000111");
-        compCodes.put("D&A","0000000");
-        compCodes.put("D|A","0010101");
-        compCodes.put("M","1110000");
-        compCodes.put("!M","1110001");
-        compCodes.put("-M","1110011");
-        compCodes.put("M+1","1110111");
-        compCodes.put("M-1","1110010");
-        compCodes.put("D+M","1000010");
-        compCodes.put("M+D","1000010");
-        compCodes.put("D-M","1010011");
-        compCodes.put("M-D","1000111");
-        compCodes.put("D&M","1000000");
-        compCodes.put("D|M","1010101");
-        compCodes.put("D-1","0001110");
-        compCodes.put("A-1","0110010");
+    }
+
+    /**
+     * putEntry
+     * <p>
+     *     Helper used by the static initializer to add a mnemonic and its binary string to
+     *     one of the lookup tables.
+     * </p>
+     * Precondition: table has room for another entry
+     * Postcondition: mnemonic maps to the integer value of bits, and bits map back to the
+     *                mnemonic in the inverse table unless an earlier mnemonic has the same bits
+     * @param keys - key array of the table
+     * @param values - value array of the table
+     * @param inverse - inverse table (bits to mnemonic) of the table
+     * @param mnemonic - mnemonic to add
+     * @param bits - binary string the mnemonic translates to
+     */
+    private static void putEntry(int[] keys, int[] values, String[] inverse, String mnemonic, String bits) {
+        int key = packMnemonic(mnemonic, 0, mnemonic.length());
+        int slot = slotFor(key);
+        while (keys[slot] != 0) {
+            slot = (slot + 1) & (TABLE_SIZE - 1);
+        }
+        keys[slot] = key;
+        values[slot] = Integer.parseInt(bits, 2);
+        if (inverse[values[slot]] == null) {
+            inverse[values[slot]] = mnemonic;
+        }
+    }
+
+    /**
+     * packMnemonic
+     * <p>
+     *     Packs the characters of a mnemonic (between start and end) into the int key used by
+     *     the lookup tables. Every valid mnemonic is 1 to 4 ASCII characters long.
+     * </p>
+     * Precondition: 0 &lt;= start &lt;= end &lt;= text.length()
+     * Postcondition: n/a
+     * @param text - characters holding the mnemonic
+     * @param start - index of the first character of the mnemonic
+     * @param end - index one past the last character of the mnemonic
+     * @return - packed key, or 0 if the text can not be a valid mnemonic
+     */
+    static int packMnemonic(CharSequence text, int start, int end) {
+        int length = end - start;
+        if (length < 1 || length > 4) {
+            return 0;
+        }
+
+        int key = 0;
+        char current;
+        for (int i = start; i < end; i++) {
+            current = text.charAt(i);
+            if (current == 0 || current > 127) {
+                return 0;
+            }
+            key = (key << 8) | current;
+        }
+        return key;
+    }
+
+    /**
+     * packMnemonic
+     * <p>
+     *     byte[] version of packMnemonic, used for mnemonics that are slices of a Lexer line.
+     * </p>
+     * Precondition: 0 &lt;= start, end &lt;= text.length
+     * Postcondition: n/a
+     * @param text - bytes holding the mnemonic
+     * @param start - index of the first byte of the mnemonic
+     * @param end - index one past the last byte of the mnemonic
+     * @return - packed key, or 0 if the bytes can not be a valid mnemonic
+     */
+    static int packMnemonic(byte[] text, int start, int end) {
+        int length = end - start;
+        if (length < 1 || length > 4) {
+            return 0;
+        }
+
+        int key = 0;
+        for (int i = start; i < end; i++) {
+            if (text[i] <= 0) { // 0 or non-ASCII
+                return 0;
+            }
+            key = (key << 8) | text[i];
+        }
+        return key;
+    }
+
+    /**
+     * slotFor
+     * <p>
+     *     Simple multiplicative hash of a packed key into a table slot.
+     * </p>
+     * @param key - packed mnemonic key
+     * @return - first slot to probe for the key
+     */
+    private static int slotFor(int key) {
+        return (key * 0x9E3779B9) >>> TABLE_SHIFT;
+    }
+
+    /**
+     * lookup
+     * <p>
+     *     Looks up a packed key in one of the tables using linear probing.
+     * </p>
+     * @param keys - key array of the table
+     * @param values - value array of the table
+     * @param key - packed mnemonic key (0 is never found)
+     * @return - bits of the mnemonic, INVALID if not found
+     */
+    private static int lookup(int[] keys, int[] values, int key) {
+        if (key == 0) {
+            return INVALID;
+        }
+
+        int slot = slotFor(key);
+        while (keys[slot] != 0) {
+            if (keys[slot] == key) {
+                return values[slot];
+            }
+            slot = (slot + 1) & (TABLE_SIZE - 1);
+        }
+        return INVALID;
+    }
+
+    /**
+     * compBits
+     * <p>
+     *     Method used to convert a comp mnemonic to its 7 bits (a and c1-c6).
+     * </p>
+     * Precondition: n/a
+     * Postcondition: no objects are allocated
+     * @param text - characters holding the comp mnemonic
+     * @param start - index of the first character of the mnemonic
+     * @param end - index one past the last character of the mnemonic
+     * @return - comp bits in the low 7 bits of the int, INVALID if not a valid mnemonic
+     */
+    public static int compBits(CharSequence text, int start, int end) {
+        return lookup(compKeys, compBits, packMnemonic(text, start, end));
+    }
+
+    /**
+     * destBits
+     * <p>
+     *     Method used to convert a dest mnemonic to its 3 bits (d1-d3).
+     * </p>
+     * Precondition: n/a
+     * Postcondition: no objects are allocated
+     * @param text - characters holding the dest mnemonic
+     * @param start - index of the first character of the mnemonic
+     * @param end - index one past the last character of the mnemonic
+     * @return - dest bits in the low 3 bits of the int, INVALID if not a valid mnemonic
+     */
+    public static int destBits(CharSequence text, int start, int end) {
+        return lookup(destKeys, destBits, packMnemonic(text, start, end));
+    }
+
+    /**
+     * jumpBits
+     * <p>
+     *     Method used to convert a jump mnemonic to its 3 bits (j1-j3).
+     * </p>
+     * Precondition: n/a
+     * Postcondition: no objects are allocated
+     * @param text - characters holding the jump mnemonic
+     * @param start - index of the first character of the mnemonic
+     * @param end - index one past the last character of the mnemonic
+     * @return - jump bits in the low 3 bits of the int, INVALID if not a valid mnemonic
+     */
+    public static int jumpBits(CharSequence text, int start, int end) {
+        return lookup(jumpKeys, jumpBits, packMnemonic(text, start, end));
+    }
+
+    /**
+     * compMnemonic
+     * @param bits - comp bits (a and c1-c6), 0 to 127
+     * @return - canonical mnemonic of the bits, null if no mnemonic translates to them
+     */
+    public static String compMnemonic(int bits) {
+        return compMnemonics[bits];
+    }
+
+    /**
+     * destMnemonic
+     * @param bits - dest bits, 0 to 7
+     * @return - mnemonic of the bits ("NULL" for 0)
+     */
+    public static String destMnemonic(int bits) {
+        return destMnemonics[bits];
+    }
+
+    /**
+     * jumpMnemonic
+     * @param bits - jump bits, 0 to 7
+     * @return - mnemonic of the bits ("NULL" for 0)
+     */
+    public static String jumpMnemonic(int bits) {
+        return jumpMnemonics[bits];
+    }
+
+    /**
+     * encodeCInstruction
+     * <p>
+     *     Builds a C instruction word out of already translated comp, dest, and jump bits.
+     *
+     *     C instruction: [1][1][1][a][c1][c2][c3][c4][c5][c6][d1][d2][d3][j1][j2][j3]
+     * </p>
+     * Precondition: each part is a valid (non INVALID) result of compBits/destBits/jumpBits
+     * Postcondition: n/a
+     * @param comp - 7 comp bits
+     * @param dest - 3 dest bits
+     * @param jump - 3 jump bits
+     * @return - 16-bit C instruction in the low bits of the int
+     */
+    public static int encodeCInstruction(int comp, int dest, int jump) {
+        return C_INSTRUCTION_PREFIX | (comp << 6) | (dest << 3) | jump;
+    }
+
+    /**
+     * encodeCInstruction
+     * <p>
+     *     Builds a C instruction word out of the three mnemonics of a C instruction.
+     * </p>
+     * Precondition: mnemonics are non-null, "NULL" is used for an empty dest or jump
+     * Postcondition: no objects are allocated for valid mnemonics
+     * @param dest - dest mnemonic
+     * @param comp - comp mnemonic
+     * @param jump - jump mnemonic
+     * @return - 16-bit C instruction in the low bits of the int
+     * @throws IllegalArgumentException - if any of the mnemonics are not valid
+     */
+    public int encodeCInstruction(String dest, String comp, String jump) throws IllegalArgumentException {
+        int compPart = compBits(comp, 0, comp.length());
+        int destPart = destBits(dest, 0, dest.length());
+        int jumpPart = jumpBits(jump, 0, jump.length());
+
+        if (compPart == INVALID || destPart == INVALID || jumpPart == INVALID) {
+            throw new IllegalArgumentException("Invalid C instruction: dest=" + dest + " comp=" + comp +
+                    " jump=" + jump);
+        }
+        return encodeCInstruction(compPart, destPart, jumpPart);
+    }
+
+    /**
+     * encodeCInstruction
+     * <p>
+     *     Builds a C instruction word straight from the dest, comp, and jump slices of a
+     *     clean line (see Lexer). An empty dest or jump slice is the same as "NULL".
+     * </p>
+     * Precondition: slices are within line
+     * Postcondition: no objects are allocated
+     * @param line - bytes of the clean line
+     * @param destStart - start of the dest slice
+     * @param destEnd - end of the dest slice (exclusive)
+     * @param compStart - start of the comp slice
+     * @param compEnd - end of the comp slice (exclusive)
+     * @param jumpStart - start of the jump slice
+     * @param jumpEnd - end of the jump slice (exclusive)
+     * @return - 16-bit C instruction in the low bits of the int, INVALID if any part is not valid
+     */
+    public static int encodeCInstruction(byte[] line, int destStart, int destEnd, int compStart, int compEnd,
+                                         int jumpStart, int jumpEnd) {
+        int compPart = lookup(compKeys, compBits, packMnemonic(line, compStart, compEnd));
+        int destPart = destStart == destEnd ? 0 : lookup(destKeys, destBits, packMnemonic(line, destStart, destEnd));
+        int jumpPart = jumpStart == jumpEnd ? 0 : lookup(jumpKeys, jumpBits, packMnemonic(line, jumpStart, jumpEnd));
+
+        if (compPart == INVALID || destPart == INVALID || jumpPart == INVALID) {
+            return INVALID;
+        }
+        return encodeCInstruction(compPart, destPart, jumpPart);
+    }
+
+    /**
+     * encodeAInstruction
+     * <p>
+     *     Builds an A instruction word out of a decimal value.
+     *
+     *     A instruction: [0][v][v][v][v][v][v][v][v][v][v][v][v][v][v][v]
+     * </p>
+     * Precondition: valid range decimal value is passed to method per our architecture (HACK)
+     * Postcondition: only the low 15 bits of the value are kept ('value' semantics)
+     * @param decimal - address or constant of the A instruction
+     * @return - 16-bit A instruction in the low bits of the int
+     * @throws IllegalArgumentException - if decimal is out of range.
+     */
+    public static int encodeAInstruction(int decimal) throws IllegalArgumentException {
+        if (decimal > 32767 || decimal < -32768) {
+            throw new IllegalArgumentException("A instruction value out of range: " + decimal);
+        }
+        return decimal & 0x7FFF;
     }
 
     /**
      * getComp
      * <p>
-     *     Method used to convert a mnemonic to a string of bits (7).
+     *     Method used to convert a mnemonic to a string of bits (7). Thin wrapper over
+     *     compBits kept for code that still works with strings.
      * </p>
-     * Precondition: hashmaps are built with valid values
+     * Precondition: n/a
      * Postcondition: returns string of bits if valid, else returns null
      * @param mnemonic - comp mnemonic to convert to binary
      * @return - binary representation of the passed comp mnemonic
      */
     public String getComp(String mnemonic) {
-        return compCodes.get(mnemonic);
+        return toBitString(compBits(mnemonic, 0, mnemonic.length()), 7);
     }
 
     /**
      * getDest
      * <p>
-     *     Method used to convert a mnemonic to a string of bits (3).
+     *     Method used to convert a mnemonic to a string of bits (3). Thin wrapper over
+     *     destBits kept for code that still works with strings.
      * </p>
-     * Precondition: HashMaps are built with valid values
+     * Precondition: n/a
      * Postcondition: returns string of bits if valid, null otherwise
      * @param mnemonic - dest mnemonic to convert to binary
      * @return - binary representation of the passed dest mnemonic
      */
     public String getDest(String mnemonic) {
-        return destCodes.get(mnemonic);
+        return toBitString(destBits(mnemonic, 0, mnemonic.length()), 3);
     }
 
     /**
      * getJump
      * <p>
-     *     Method used to convert a mnemonic to a string of bits (3).
+     *     Method used to convert a mnemonic to a string of bits (3). Thin wrapper over
+     *     jumpBits kept for code that still works with strings.
      * </p>
-     * Precondition: HashMaps are built with valid values
+     * Precondition: n/a
      * Postcondition: Returns string of bits if valid, else returns null
      * @param mnemonic - jump mnemonic to convert to binary
      * @return - binary representation of the passed jump mnemonic
      */
     public String getJump(String mnemonic) {
-        return jumpCodes.get(mnemonic);
+        return toBitString(jumpBits(mnemonic, 0, mnemonic.length()), 3);
+    }
+
+    /**
+     * toBitString
+     * <p>
+     *     Helper for the String wrappers, renders the low bits of a table value.
+     * </p>
+     * @param bits - value from one of the tables (or INVALID)
+     * @param width - number of bits to render
+     * @return - binary string of length width, or null if bits is INVALID
+     */
+    private static String toBitString(int bits, int width) {
+        if (bits == INVALID) {
+            return null;
+        }
+
+        char[] digits = new char[width];
+        for (int i = width - 1; i >= 0; i--) {
+            digits[i] = (char) ('0' + (bits & 1));
+            bits >>>= 1;
+        }
+        return new String(digits);
+    }
+
+    /**
+     * formatWord
+     * <p>
+     *     Writes the 16 ASCII binary digits of an encoded word (first digit is MSB) straight
+     *     into an output buffer using the byte digit table. If the A instruction cache has been
+     *     enabled, A instructions are copied from it in a single step.
+     * </p>
+     * Precondition: dst has room for 16 bytes starting at offset
+     * Postcondition: dst[offset .. offset + 15] hold the digits of the low 16 bits of word
+     * @param word - encoded instruction
+     * @param dst - output buffer
+     * @param offset - index of dst to write the first digit to
+     * @return - index of dst just past the last digit written
+     */
+    public static int formatWord(int word, byte[] dst, int offset) {
+        byte[] cache = aInstructionDigits;
+        if (cache != null && (word & 0xFFFF) < 0x8000) {
+            System.arraycopy(cache, (word & 0x7FFF) << 4, dst, offset, 16);
+        } else {
+            System.arraycopy(BYTE_DIGITS, ((word >>> 8) & 0xFF) << 3, dst, offset, 8);
+            System.arraycopy(BYTE_DIGITS, (word & 0xFF) << 3, dst, offset + 8, 8);
+        }
+        return offset + 16;
+    }
+
+    /**
+     * formatWord
+     * <p>
+     *     char[] version of formatWord, used when the digits are needed as text.
+     * </p>
+     * Precondition: dst has room for 16 chars starting at offset
+     * Postcondition: dst[offset .. offset + 15] hold the digits of the low 16 bits of word
+     * @param word - encoded instruction
+     * @param dst - output buffer
+     * @param offset - index of dst to write the first digit to
+     * @return - index of dst just past the last digit written
+     */
+    public static int formatWord(int word, char[] dst, int offset) {
+        int high = ((word >>> 8) & 0xFF) << 3;
+        int low = (word & 0xFF) << 3;
+        for (int i = 0; i < 8; i++) {
+            dst[offset + i] = (char) BYTE_DIGITS[high + i];
+            dst[offset + 8 + i] = (char) BYTE_DIGITS[low + i];
+        }
+        return offset + 16;
+    }
+
+    /**
+     * enableAInstructionCache
+     * <p>
+     *     Builds (once) the text of every possible A instruction so formatWord can copy an A
+     *     instruction's 16 digits in one step. Uses 512KB, so it is only worth it for large,
+     *     A instruction heavy programs (e.g., VM translator output).
+     * </p>
+     * Precondition: n/a
+     * Postcondition: formatWord uses the cache for every later A instruction
+     */
+    public static synchronized void enableAInstructionCache() {
+        if (aInstructionDigits != null) {
+            return;
+        }
+
+        byte[] cache = new byte[32768 * 16];
+        for (int word = 0; word < 32768; word++) {
+            System.arraycopy(BYTE_DIGITS, (word >>> 8) << 3, cache, word << 4, 8);
+            System.arraycopy(BYTE_DIGITS, (word & 0xFF) << 3, cache, (word << 4) + 8, 8);
+        }
+        aInstructionDigits = cache;
+    }
+
+    /**
+     * wordToBinary
+     * <p>
+     *     Renders an encoded 16-bit instruction word as the text used in .hack files.
+     * </p>
+     * Precondition: word holds an encoded instruction in its low 16 bits
+     * Postcondition: returns 16-bit string of binary digits (first char is MSB)
+     * @param word - encoded instruction
+     * @return - 16 character binary string of the word
+     */
+    public String wordToBinary(int word) {
+        char[] digits = new char[16];
+        formatWord(word, digits, 0);
+        return new String(digits);
     }
 
     /**
      * decimalToBinary
      * <p>
-     *     Converts an integer parameter into a binary string using built in the built in Integer.toBinaryString
-     *     method.
+     *     Converts an integer parameter into a 16-bit binary string using the byte digit table
+     *     (two's complement for negative values).
      * </p>
      * Precondition: valid range decimal value is passed to method per our architecture (HACK)
      * Postcondition: returns 16-bit string of binary digits (first char is MSB)
@@ -135,18 +572,6 @@ public class Code {
             throw new IllegalArgumentException();
         }
 
-        String binaryString = Integer.toBinaryString(decimal);
-
-        // to account for leading zeros missed by the Integer.toBinaryString method
-        while (binaryString.length() < 16) {
-            binaryString = "0" + binaryString;
-        }
-
-        // removing overflow - should not occur because of the range check at the beginning of the method
-        if (binaryString.length() > 16) {
-            binaryString = binaryString.substring(binaryString.length() - 16, binaryString.length());
-        }
-
-        return binaryString;
+        return wordToBinary(decimal);
     }
 }
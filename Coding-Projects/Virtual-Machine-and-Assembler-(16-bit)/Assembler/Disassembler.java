@@ -0,0 +1,349 @@
+/**
+ * Author: Ben Vargas
+ * Course: CS220 - Computer Architecture and Assembly Language
+ * Professor: Nery Chapeton-Lamas
+ * Project: Assembler (HACK Architecture)
+ */
+
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * Translates HACK machine instructions back to HACK assembly code.
+ * <p>
+ *     A instructions become "@value" and C instructions become "dest=comp;jump" (dest and jump
+ *     left out when they are 0), with the canonical mnemonic of each field from the inverse
+ *     tables of Code - comp through a dense 128-entry table indexed by the a and c bits. Jump
+ *     targets and variables stay numeric, since the names are not in the .hack file; the
+ *     output assembles back to the same words. A word that no mnemonic encodes to (a C
+ *     instruction without its two fixed 1 bits, or an unused comp value) is an error.
+ * </p>
+ * <p>
+ *     Verify mode ("-verify") checks the assembler against the disassembler on any number of
+ *     files: each .asm file is assembled (a .hack/.hackb file is read), disassembled, and
+ *     assembled again, and the two programs must be bit for bit identical. Large programs are
+ *     disassembled in chunks on a ForkJoin pool and reassembled in PARALLEL mode.
+ * </p>
+ * Usage: java Disassembler input.hack/.hackb [output.asm]   (standard output if no output file)
+ *        java Disassembler -verify [-threads N] &lt;file, directory, or glob&gt;...
+ */
+public class Disassembler {
+
+    // ASCII text of every comp, dest ("D=" style, empty for 0), and jump (";JGT" style, empty
+    // for 0) value - a word is disassembled by copying three of these, null for invalid comps
+    private static final byte[][] COMP_TEXT = new byte[128][];
+    private static final byte[][] DEST_TEXT = new byte[8][];
+    private static final byte[][] JUMP_TEXT = new byte[8][];
+
+    // longest line: "AMD=" + 3 character comp + ";JMP" + '\n'
+    public static final int MAX_LINE_LENGTH = 12;
+
+    // words disassembled by one ForkJoin task
+    private static final int CHUNK_SIZE = 16384;
+
+    static {
+        for (int bits = 0; bits < 128; bits++) {
+            String comp = Code.compMnemonic(bits);
+            COMP_TEXT[bits] = comp == null ? null : comp.getBytes(StandardCharsets.US_ASCII);
+        }
+        for (int bits = 0; bits < 8; bits++) {
+            DEST_TEXT[bits] = bits == 0 ? new byte[0] : (Code.destMnemonic(bits) + "=").getBytes(StandardCharsets.US_ASCII);
+            JUMP_TEXT[bits] = bits == 0 ? new byte[0] : (";" + Code.jumpMnemonic(bits)).getBytes(StandardCharsets.US_ASCII);
+        }
+    }
+
+    // ALGORITHM:
+    // DISASSEMBLE:
+    // read the words of the .hack/.hackb file
+    // decode each word through the inverse tables into one line of assembly
+    // write the lines to the output file (or standard output)
+
+    // VERIFY ("-verify" flag):
+    // collect the files, then for each file (on a pool of worker threads):
+    //   assemble it (or read its words), disassemble in parallel chunks, assemble the result again
+    //   compare the two programs word by word, and report the first difference
+    // print totals and instructions/sec over the wall clock time
+
+    public static void main(String[] args) {
+        if (args.length > 0 && args[0].equals("-verify")) {
+            verifyMain(Arrays.copyOfRange(args, 1, args.length));
+            return;
+        }
+
+        if (args.length < 1 || args.length > 2) {
+            System.err.println("Usage: java Disassembler input.hack/.hackb [output.asm]");
+            System.err.println("       java Disassembler -verify [-threads N] <file, directory, or glob>...");
+            System.exit(0);
+        }
+
+        try {
+            int[] words = HackFile.readWords(args[0]);
+            ByteBuffer assembly = disassemble(words, ForkJoinPool.commonPool());
+            try (OutputStream output = args.length == 2 ? new FileOutputStream(args[1]) : System.out) {
+                output.write(assembly.array(), 0, assembly.limit());
+            }
+            if (args.length == 2) {
+                System.out.println("Disassembled " + words.length + " instructions from " + args[0] + " to " + args[1]);
+            }
+        } catch (IOException | IllegalArgumentException e) {
+            System.err.println(e.getMessage());
+            System.err.println("Could not disassemble " + args[0]);
+            System.exit(0);
+        }
+    }
+
+    /**
+     * disassemble
+     * <p>
+     *     Writes the assembly line of one instruction (ending with '\n') into an output buffer.
+     * </p>
+     * Precondition: dst has room for MAX_LINE_LENGTH bytes starting at offset
+     * Postcondition: no objects are allocated
+     * @param word - instruction in the low 16 bits
+     * @param dst - output buffer
+     * @param offset - index of dst to write the line to
+     * @return - index of dst just past the line
+     * @throws IllegalArgumentException - if the word is not a valid instruction
+     */
+    public static int disassemble(int word, byte[] dst, int offset) throws IllegalArgumentException {
+        word &= 0xFFFF;
+        if (word < 0x8000) {
+            dst[offset++] = '@';
+            offset = writeDecimal(word, dst, offset);
+        } else {
+            byte[] comp = COMP_TEXT[(word >>> 6) & 0x7F];
+            if ((word & Code.C_INSTRUCTION_PREFIX) != Code.C_INSTRUCTION_PREFIX || comp == null) {
+                throw new IllegalArgumentException("Not a valid instruction: " + Integer.toBinaryString(word));
+            }
+            byte[] dest = DEST_TEXT[(word >>> 3) & 0x7];
+            byte[] jump = JUMP_TEXT[word & 0x7];
+            System.arraycopy(dest, 0, dst, offset, dest.length);
+            offset += dest.length;
+            System.arraycopy(comp, 0, dst, offset, comp.length);
+            offset += comp.length;
+            System.arraycopy(jump, 0, dst, offset, jump.length);
+            offset += jump.length;
+        }
+        dst[offset++] = '\n';
+        return offset;
+    }
+
+    /**
+     * disassemble
+     * @param word - instruction in the low 16 bits
+     * @return - assembly of the instruction (without a line break)
+     * @throws IllegalArgumentException - if the word is not a valid instruction
+     */
+    public static String disassemble(int word) throws IllegalArgumentException {
+        byte[] line = new byte[MAX_LINE_LENGTH];
+        int length = disassemble(word, line, 0);
+        return new String(line, 0, length - 1, StandardCharsets.US_ASCII);
+    }
+
+    /**
+     * disassemble
+     * <p>
+     *     Disassembles a whole program, in chunks of CHUNK_SIZE words on the pool.
+     * </p>
+     * Precondition: n/a
+     * Postcondition: n/a
+     * @param words - instructions in ROM order (low 16 bits of each int)
+     * @param pool - ForkJoin pool to disassemble on
+     * @return - heap buffer (from position 0 to its limit) holding one line per instruction
+     * @throws IllegalArgumentException - if a word is not a valid instruction (the message has its ROM address)
+     */
+    public static ByteBuffer disassemble(int[] words, ForkJoinPool pool) throws IllegalArgumentException {
+        try {
+            return ByteBuffer.wrap(pool.invoke(new DisassembleTask(words, 0, words.length)));
+        } catch (IllegalArgumentException e) {
+            // thrown again by the pool in the caller's thread, wrapped around the task's own
+            if (e.getCause() instanceof IllegalArgumentException) {
+                throw (IllegalArgumentException) e.getCause();
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * Task disassembling the words [from, to), split in half until a range fits in one chunk.
+     */
+    private static class DisassembleTask extends RecursiveTask<byte[]> {
+        private static final long serialVersionUID = 1L;
+
+        private final int[] words;
+        private final int from;
+        private final int to;
+
+        DisassembleTask(int[] words, int from, int to) {
+            this.words = words;
+            this.from = from;
+            this.to = to;
+        }
+
+        protected byte[] compute() {
+            if (to - from <= CHUNK_SIZE) {
+                byte[] text = new byte[(to - from) * MAX_LINE_LENGTH];
+                int length = 0;
+                for (int romAddress = from; romAddress < to; romAddress++) {
+                    try {
+                        length = disassemble(words[romAddress], text, length);
+                    } catch (IllegalArgumentException e) {
+                        throw new IllegalArgumentException(e.getMessage() + " at ROM address " + romAddress);
+                    }
+                }
+                return Arrays.copyOf(text, length);
+            }
+
+            int middle = (from + to) >>> 1;
+            DisassembleTask second = new DisassembleTask(words, middle, to);
+            second.fork();
+            byte[] firstText = new DisassembleTask(words, from, middle).compute();
+            byte[] secondText = second.join();
+
+            byte[] text = Arrays.copyOf(firstText, firstText.length + secondText.length);
+            System.arraycopy(secondText, 0, text, firstText.length, secondText.length);
+            return text;
+        }
+    }
+
+    /**
+     * writeDecimal
+     * @param value - 0 to 32767
+     * @param dst - output buffer
+     * @param offset - index of dst to write the first digit to
+     * @return - index of dst just past the last digit
+     */
+    private static int writeDecimal(int value, byte[] dst, int offset) {
+        int digits = value < 10 ? 1 : value < 100 ? 2 : value < 1000 ? 3 : value < 10000 ? 4 : 5;
+        for (int i = offset + digits - 1; i >= offset; i--) {
+            dst[i] = (byte) ('0' + value % 10);
+            value /= 10;
+        }
+        return offset + digits;
+    }
+
+    /**
+     * binary
+     * @param word - instruction in the low 16 bits
+     * @return - the 16 binary digits of the word, as in a .hack file
+     */
+    private static String binary(int word) {
+        byte[] digits = new byte[16];
+        Code.formatWord(word, digits, 0);
+        return new String(digits, StandardCharsets.US_ASCII);
+    }
+
+    /**
+     * verifyMain
+     * <p>
+     *     Runs verify mode: checks every file and prints one line per file and the totals.
+     * </p>
+     * @param args - [-threads N] files, directories, or globs
+     */
+    private static void verifyMain(String[] args) {
+        int threadCount = Runtime.getRuntime().availableProcessors();
+        List<Path> inputFiles = new ArrayList<Path>();
+
+        try {
+            for (int i = 0; i < args.length; i++) {
+                if (args[i].equals("-threads") && i + 1 < args.length) {
+                    threadCount = Integer.parseInt(args[++i]);
+                } else if (Files.isRegularFile(Paths.get(args[i]))) {
+                    inputFiles.add(Paths.get(args[i]));
+                } else {
+                    inputFiles.addAll(BatchAssembler.findInputFiles(args[i]));
+                }
+            }
+        } catch (IOException e) {
+            System.err.println(e.getMessage());
+            System.err.println("Could not list the files to verify.");
+            System.exit(0);
+        }
+
+        if (inputFiles.isEmpty() || threadCount < 1) {
+            System.err.println("Usage: java Disassembler -verify [-threads N] <file, directory, or glob>...");
+            System.exit(0);
+        }
+
+        ForkJoinPool pool = new ForkJoinPool(threadCount);
+        long start = System.nanoTime();
+        long totalInstructions = 0;
+        int failures = 0;
+        for (Path inputFile : inputFiles) {
+            try {
+                int[] words = verify(inputFile.toString(), pool);
+                System.out.println("OK     " + inputFile + " (" + words.length + " instructions)");
+                totalInstructions += words.length;
+            } catch (IOException | RuntimeException e) {
+                System.out.println("FAILED " + inputFile + ": " + e.getMessage());
+                failures++;
+            }
+        }
+        long nanos = System.nanoTime() - start;
+        pool.shutdown();
+
+        System.out.printf("%d files verified, %d failed, %d instructions%n", inputFiles.size() - failures, failures,
+                totalInstructions);
+        System.out.printf("%.0f instructions/sec on %d threads (%.2f ms wall clock)%n",
+                totalInstructions / (nanos / 1e9), threadCount, nanos / 1e6);
+        if (failures > 0) {
+            System.exit(1);
+        }
+    }
+
+    /**
+     * verify
+     * <p>
+     *     Round trip of one file: assemble (or read) it, disassemble, assemble again, and
+     *     compare. The encoding of both assemblies and the disassembly run on the pool.
+     * </p>
+     * Precondition: inputFileName is a .asm, .hack, or .hackb file
+     * Postcondition: n/a
+     * @param inputFileName - file to check
+     * @param pool - ForkJoin pool to run on
+     * @return - the words of the program
+     * @throws IOException - if the file could not be read
+     * @throws IllegalStateException - if the round trip does not give the same words
+     * @throws IllegalArgumentException - if the file can not be assembled or disassembled
+     */
+    public static int[] verify(String inputFileName, ForkJoinPool pool) throws IOException {
+        Assembler assembler = new Assembler(Assembler.PARALLEL);
+        assembler.setPool(pool);
+
+        int[] expected;
+        if (inputFileName.endsWith(".asm")) {
+            WordBuffer words = new WordBuffer();
+            assembler.assemble(inputFileName, words);
+            expected = words.getWords();
+        } else {
+            expected = HackFile.readWords(inputFileName);
+        }
+
+        ByteBuffer assembly = disassemble(expected, pool);
+        WordBuffer actual = new WordBuffer();
+        assembler.assemble(assembly, actual);
+        int[] words = actual.getWords();
+
+        int mismatch = Arrays.mismatch(expected, words);
+        if (mismatch >= 0) {
+            if (mismatch >= expected.length || mismatch >= words.length) {
+                throw new IllegalStateException("Round trip has " + words.length + " instructions instead of " +
+                        expected.length);
+            }
+            throw new IllegalStateException("ROM address " + mismatch + ": " + binary(expected[mismatch]) +
+                    " became " + binary(words[mismatch]) + " (" + disassemble(expected[mismatch]) + ")");
+        }
+        return expected;
+    }
+}
@@ -0,0 +1,250 @@
+/**
+ * Author: Ben Vargas
+ * Course: CS220 - Computer Architecture and Assembly Language
+ * Professor: Nery Chapeton-Lamas
+ * Project: Assembler (HACK Architecture)
+ */
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Helper methods for reading .hack files in either format, and a converter between the
+ * text format (one line of 16 binary digits per instruction) and the packed binary format.
+ * <p>
+ *     Binary layout (all values big-endian):
+ *     [magic "HACK" (4 bytes)][format version (2 bytes)][reserved, 0 (2 bytes)][word count (4 bytes)]
+ *     followed by word count 16-bit instruction words in ROM order.
+ * </p>
+ * Usage: java HackFile input.hack output.hackb (text to binary)
+ *        java HackFile input.hackb output.hack (binary to text)
+ */
+public class HackFile {
+    public static final String TEXT_EXTENSION = ".hack";
+    public static final String BINARY_EXTENSION = ".hackb";
+
+    public static final int BINARY_MAGIC = 0x4841434B; // "HACK"
+    public static final int BINARY_VERSION = 1;
+    public static final int BINARY_HEADER_SIZE = 12;
+
+    public static void main(String[] args) {
+        if (args.length != 2) {
+            System.err.println("Usage: java HackFile <input .hack/.hackb> <output .hack/.hackb>");
+            System.exit(0);
+        }
+
+        try {
+            int[] words = readWords(args[0]);
+            HackWriter outputFile = openWriter(args[1]);
+            outputFile.expectWords(words.length);
+            for (int word : words) {
+                outputFile.writeWord(word);
+            }
+            outputFile.close();
+
+            System.out.println("Converted " + words.length + " instructions from " + args[0] + " to " + args[1]);
+        } catch (IOException | IllegalArgumentException e) {
+            System.err.println(e.getMessage());
+            System.err.println("Could not convert " + args[0] + " to " + args[1]);
+            System.exit(0);
+        }
+    }
+
+    /**
+     * openWriter
+     * <p>
+     *     Opens the writer matching the extension of the file name: packed binary for
+     *     ".hackb", text (written into a memory mapping of the file) for anything else.
+     * </p>
+     * Precondition: file can be created/overwritten
+     * Postcondition: returned writer points to an empty file
+     * @param outputFileName - name of the file to write
+     * @return - writer for the file
+     * @throws IOException - if the file could not be opened
+     */
+    public static HackWriter openWriter(String outputFileName) throws IOException {
+        if (outputFileName.endsWith(BINARY_EXTENSION)) {
+            return new BinaryHackWriter(FileChannel.open(Paths.get(outputFileName), StandardOpenOption.CREATE,
+                    StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING));
+        }
+        return new MappedHackWriter(FileChannel.open(Paths.get(outputFileName), StandardOpenOption.CREATE,
+                StandardOpenOption.READ, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING));
+    }
+
+    /**
+     * createTemporaryFile
+     * <p>
+     *     Creates an empty file next to file, to be written in full and then moved over file
+     *     (Files.move with ATOMIC_MOVE), so a failed write never truncates or leaves behind a
+     *     half written file. The name ends with file's name, so openWriter picks the same
+     *     format, and the file gets the permissions of any new file (Files.createTempFile would
+     *     make it readable by its owner only).
+     * </p>
+     * Precondition: the directory of file exists
+     * Postcondition: the temporary file exists and is empty, the caller moves or deletes it
+     * @param file - file the temporary file will replace
+     * @return - the temporary file
+     * @throws IOException - if the file could not be created
+     */
+    public static Path createTemporaryFile(Path file) throws IOException {
+        Path directory = file.toAbsolutePath().getParent();
+        while (true) {
+            Path temporaryFile = directory.resolve(".tmp" +
+                    Long.toHexString(ThreadLocalRandom.current().nextLong()) + "-" + file.getFileName());
+            try {
+                return Files.createFile(temporaryFile);
+            } catch (FileAlreadyExistsException e) {
+                // name taken (by another writer's temporary file), try another
+            }
+        }
+    }
+
+    /**
+     * putBinaryHeader
+     * <p>
+     *     Puts the binary format header into a buffer.
+     * </p>
+     * Precondition: buffer has BINARY_HEADER_SIZE bytes remaining
+     * Postcondition: buffer position is moved past the header
+     * @param buffer - buffer to put the header in
+     * @param wordCount - number of words that follow the header
+     */
+    public static void putBinaryHeader(ByteBuffer buffer, int wordCount) {
+        buffer.putInt(BINARY_MAGIC);
+        buffer.putShort((short) BINARY_VERSION);
+        buffer.putShort((short) 0);
+        buffer.putInt(wordCount);
+    }
+
+    /**
+     * isBinary
+     * <p>
+     *     Checks whether file contents start with the binary format magic number.
+     * </p>
+     * @param contents - contents of a .hack file
+     * @return - true if the contents are in the packed binary format
+     */
+    public static boolean isBinary(byte[] contents) {
+        return contents.length >= BINARY_HEADER_SIZE && ByteBuffer.wrap(contents).getInt(0) == BINARY_MAGIC;
+    }
+
+    /**
+     * readWords
+     * <p>
+     *     Reads every instruction word of a .hack file. The format is detected from the
+     *     contents of the file (binary files start with the magic number), not the extension.
+     * </p>
+     * Precondition: file is a text or binary .hack file
+     * Postcondition: n/a
+     * @param inputFileName - name of the file to read
+     * @return - instruction words in ROM order (low 16 bits of each int)
+     * @throws IOException - if the file could not be read
+     * @throws IllegalArgumentException - if the file is not a valid .hack file
+     */
+    public static int[] readWords(String inputFileName) throws IOException, IllegalArgumentException {
+        byte[] contents = Files.readAllBytes(Paths.get(inputFileName));
+        if (isBinary(contents)) {
+            return readBinaryWords(contents);
+        }
+        return readTextWords(contents);
+    }
+
+    /**
+     * readBinaryWords
+     * <p>
+     *     Decodes the contents of a packed binary .hack file.
+     * </p>
+     * @param contents - contents of the file, starting with the header
+     * @return - instruction words in ROM order
+     * @throws IllegalArgumentException - if the header is invalid or the file is cut short
+     */
+    public static int[] readBinaryWords(byte[] contents) throws IllegalArgumentException {
+        ByteBuffer buffer = ByteBuffer.wrap(contents);
+        if (buffer.getInt() != BINARY_MAGIC) {
+            throw new IllegalArgumentException("Not a binary .hack file (missing header)");
+        }
+
+        int version = buffer.getShort();
+        if (version != BINARY_VERSION) {
+            throw new IllegalArgumentException("Unsupported binary .hack format version: " + version);
+        }
+        buffer.getShort(); // reserved
+
+        int wordCount = buffer.getInt();
+        if (wordCount < 0 || buffer.remaining() != wordCount * 2L) {
+            throw new IllegalArgumentException("Binary .hack file should hold " + wordCount +
+                    " words but holds " + buffer.remaining() + " bytes");
+        }
+
+        int[] words = new int[wordCount];
+        for (int i = 0; i < wordCount; i++) {
+            words[i] = buffer.getShort() & 0xFFFF;
+        }
+        return words;
+    }
+
+    /**
+     * readTextWords
+     * <p>
+     *     Decodes the contents of a text .hack file by scanning the bytes directly. Blank lines
+     *     and carriage returns are skipped.
+     * </p>
+     * @param contents - contents of the file
+     * @return - instruction words in ROM order
+     * @throws IllegalArgumentException - if a line is not exactly 16 binary digits
+     */
+    public static int[] readTextWords(byte[] contents) throws IllegalArgumentException {
+        int[] words = new int[contents.length / 17 + 1];
+        int wordCount = 0;
+        int word = 0, digits = 0, lineNumber = 1;
+
+        for (byte current : contents) {
+            if (current == '0' || current == '1') {
+                word = (word << 1) | (current - '0');
+                digits++;
+            } else if (current == '\n') {
+                if (digits != 0) {
+                    wordCount = addTextWord(words, wordCount, word, digits, lineNumber);
+                    if (wordCount == words.length) {
+                        words = Arrays.copyOf(words, wordCount * 2);
+                    }
+                }
+                word = 0;
+                digits = 0;
+                lineNumber++;
+            } else if (current != '\r') {
+                throw new IllegalArgumentException("Invalid character in .hack file on line " + lineNumber);
+            }
+        }
+        if (digits != 0) { // last line without a line separator
+            wordCount = addTextWord(words, wordCount, word, digits, lineNumber);
+        }
+
+        return Arrays.copyOf(words, wordCount);
+    }
+
+    /**
+     * addTextWord
+     * <p>
+     *     Helper for readTextWords, stores a finished line.
+     * </p>
+     * @return - new word count
+     * @throws IllegalArgumentException - if the line did not have 16 digits
+     */
+    private static int addTextWord(int[] words, int wordCount, int word, int digits, int lineNumber) {
+        if (digits != 16) {
+            throw new IllegalArgumentException("Line " + lineNumber + " of .hack file has " + digits +
+                    " digits, expected 16");
+        }
+        words[wordCount] = word;
+        return wordCount + 1;
+    }
+}
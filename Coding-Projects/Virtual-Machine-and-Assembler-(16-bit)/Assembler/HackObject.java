@@ -0,0 +1,401 @@
+/**
+ * Author: Ben Vargas
+ * Course: CS220 - Computer Architecture and Assembly Language
+ * Professor: Nery Chapeton-Lamas
+ * Project: Assembler (HACK Architecture)
+ */
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Arrays;
+
+/**
+ * Relocatable object of one separately assembled module (.hacko file), see Linker.
+ * <p>
+ *     A module is assembled as if it were loaded at ROM address 0 and had no variables. Every
+ *     instruction is encoded except the A instructions that load a label or variable address:
+ *     a label of the module gets its module relative address and a relocation entry so the
+ *     Linker can add the module's ROM base, and any other symbol (a label of another module, or
+ *     a variable) gets 0 and a relocation entry naming the symbol. Predefined symbols (SP, R0,
+ *     SCREEN, ...) are encoded directly, unless the module declares a label of the same name.
+ * </p>
+ * <p>
+ *     Labels of a module are exported (visible to every other module) and symbols that are not
+ *     declared by a module are imported: at link time they resolve to the label exported by
+ *     another module, or else to a variable shared by every module that uses the name. A name
+ *     starting with '_' is private to its module instead: a private label is not exported, and
+ *     a private variable gets its own RAM address in each module.
+ * </p>
+ * <p>
+ *     File layout (DataOutput, all values big-endian):
+ *     [magic "HOBJ" (4 bytes)][format version (2 bytes)][reserved, 0 (2 bytes)][module name (UTF)]
+ *     [word count (4 bytes)] words (2 bytes each)
+ *     [symbol count (4 bytes)] symbols: name (UTF), kind (1 byte), value (4 bytes)
+ *     [relocation count (4 bytes)] relocations: ROM offset (4 bytes), symbol index (4 bytes, -1 to add the ROM base)
+ * </p>
+ */
+public class HackObject {
+    public static final String EXTENSION = ".hacko";
+
+    public static final int MAGIC = 0x484F424A; // "HOBJ"
+    public static final int VERSION = 1;
+
+    // kinds of symbol table entries
+    public static final byte EXPORT = 'E';   // label of the module, value is its module relative address
+    public static final byte IMPORT = 'I';   // label of another module or a shared variable, value unused
+    public static final byte PRIVATE = 'P';  // variable of this module only, value unused
+
+    // symbol index of a relocation that adds the module's ROM base to the word
+    public static final int ROM_RELATIVE = -1;
+
+    private final String moduleName;
+    private final int[] words;
+    private final String[] symbolNames;
+    private final byte[] symbolKinds;
+    private final int[] symbolValues;
+    private final int[] relocationOffsets;
+    private final int[] relocationSymbols;
+
+    /**
+     * Primary Constructor for HackObject
+     * @param moduleName - name of the module (for link error messages)
+     * @param words - instruction words, relocated words hold their module relative value or 0
+     * @param symbolNames - names of the symbol table entries
+     * @param symbolKinds - EXPORT, IMPORT, or PRIVATE for each entry
+     * @param symbolValues - module relative address of each EXPORT entry
+     * @param relocationOffsets - ROM offset of each relocated word, in ROM order
+     * @param relocationSymbols - symbol index of each relocated word, or ROM_RELATIVE
+     */
+    HackObject(String moduleName, int[] words, String[] symbolNames, byte[] symbolKinds, int[] symbolValues,
+               int[] relocationOffsets, int[] relocationSymbols) {
+        this.moduleName = moduleName;
+        this.words = words;
+        this.symbolNames = symbolNames;
+        this.symbolKinds = symbolKinds;
+        this.symbolValues = symbolValues;
+        this.relocationOffsets = relocationOffsets;
+        this.relocationSymbols = relocationSymbols;
+    }
+
+    /**
+     * assemble
+     * <p>
+     *     Assembles one module into an object. The first pass gives each label its module
+     *     relative address, the second encodes the instructions and records the relocations
+     *     and the imported/private symbols in order of first use (the order the Linker gives
+     *     variables their addresses in, so a program linked from a single module is identical
+     *     to the output of Assembler).
+     * </p>
+     * Precondition: source holds the assembly code of one module
+     * Postcondition: n/a
+     * @param moduleName - name of the module (for link error messages)
+     * @param source - buffer holding the assembly code (a duplicate is parsed)
+     * @return - relocatable object of the module
+     * @throws AssemblyException - if an instruction is not valid
+     */
+    public static HackObject assemble(String moduleName, ByteBuffer source) {
+        SymbolTable symbolTable = new SymbolTable();
+        boolean[] isLabel = new boolean[256];
+
+        // first pass: module relative label addresses (a later declaration replaces an earlier one)
+        Lexer lexer = new Lexer(source.duplicate());
+        int romAddress = 0;
+        try {
+            while (lexer.hasMoreLines()) {
+                lexer.advance();
+                if (lexer.getCommandType() == Parser.A_COMMAND || lexer.getCommandType() == Parser.C_COMMAND) {
+                    romAddress++;
+                } else if (lexer.getCommandType() == Parser.L_COMMAND) {
+                    int id = Assembler.internSymbol(lexer, symbolTable);
+                    if (id != SymbolTable.NO_SYMBOL) {
+                        symbolTable.addEntry(id, romAddress);
+                        if (id >= isLabel.length) {
+                            isLabel = Arrays.copyOf(isLabel, Math.max(id + 1, isLabel.length * 2));
+                        }
+                        isLabel[id] = true;
+                    }
+                }
+            }
+        } catch (IllegalArgumentException e) {
+            throw AssemblyException.atLine(e, lexer.getLineNumber(), lexer.getCleanLine());
+        }
+
+        int[] words = new int[romAddress];
+        int[] relocationOffsets = new int[64];
+        int[] relocationSymbols = new int[64];
+        int relocationCount = 0;
+
+        // symbol table entries: exports first, then imports and privates in order of first use
+        int[] symbolIndexes = new int[symbolTable.size()];
+        Arrays.fill(symbolIndexes, -1);
+        String[] symbolNames = new String[16];
+        byte[] symbolKinds = new byte[16];
+        int[] symbolValues = new int[16];
+        int symbolCount = 0;
+        for (int id = 0; id < symbolTable.size(); id++) {
+            String name = symbolTable.getName(id);
+            if (id < isLabel.length && isLabel[id] && !isPrivate(name)) {
+                if (symbolCount == symbolNames.length) {
+                    symbolNames = Arrays.copyOf(symbolNames, symbolCount * 2);
+                    symbolKinds = Arrays.copyOf(symbolKinds, symbolCount * 2);
+                    symbolValues = Arrays.copyOf(symbolValues, symbolCount * 2);
+                }
+                symbolNames[symbolCount] = name;
+                symbolKinds[symbolCount] = EXPORT;
+                symbolValues[symbolCount] = symbolTable.getAddress(id);
+                symbolCount++;
+            }
+        }
+
+        // second pass: encode, leaving every label or variable address to the Linker
+        lexer = new Lexer(source.duplicate());
+        romAddress = 0;
+        try {
+            while (lexer.hasMoreLines()) {
+                lexer.advance();
+                if (lexer.getCommandType() == Parser.C_COMMAND) {
+                    words[romAddress++] = ParallelEncoder.encodeCInstruction(lexer, lexer.getLineNumber());
+                } else if (lexer.getCommandType() == Parser.A_COMMAND) {
+                    int id = Assembler.internSymbol(lexer, symbolTable);
+                    boolean label = id >= 0 && id < isLabel.length && isLabel[id];
+
+                    if (id == SymbolTable.NO_SYMBOL || (!label && SymbolTable.isPredefined(id))) {
+                        words[romAddress++] = ParallelEncoder.encodeAInstruction(lexer, id, symbolTable,
+                                lexer.getLineNumber());
+                        continue;
+                    }
+
+                    if (relocationCount == relocationOffsets.length) {
+                        relocationOffsets = Arrays.copyOf(relocationOffsets, relocationCount * 2);
+                        relocationSymbols = Arrays.copyOf(relocationSymbols, relocationCount * 2);
+                    }
+                    relocationOffsets[relocationCount] = romAddress;
+
+                    if (label) {
+                        words[romAddress] = symbolTable.getAddress(id);
+                        relocationSymbols[relocationCount] = ROM_RELATIVE;
+                    } else {
+                        if (id >= symbolIndexes.length) {
+                            int oldLength = symbolIndexes.length;
+                            symbolIndexes = Arrays.copyOf(symbolIndexes, Math.max(id + 1, oldLength * 2));
+                            Arrays.fill(symbolIndexes, oldLength, symbolIndexes.length, -1);
+                        }
+                        if (symbolIndexes[id] < 0) {
+                            if (symbolCount == symbolNames.length) {
+                                symbolNames = Arrays.copyOf(symbolNames, symbolCount * 2);
+                                symbolKinds = Arrays.copyOf(symbolKinds, symbolCount * 2);
+                                symbolValues = Arrays.copyOf(symbolValues, symbolCount * 2);
+                            }
+                            String name = symbolTable.getName(id);
+                            symbolNames[symbolCount] = name;
+                            symbolKinds[symbolCount] = isPrivate(name) ? PRIVATE : IMPORT;
+                            symbolIndexes[id] = symbolCount++;
+                        }
+                        words[romAddress] = 0;
+                        relocationSymbols[relocationCount] = symbolIndexes[id];
+                    }
+                    relocationCount++;
+                    romAddress++;
+                }
+            }
+        } catch (IllegalArgumentException e) {
+            throw AssemblyException.atLine(e, lexer.getLineNumber(), lexer.getCleanLine());
+        }
+
+        return new HackObject(moduleName, words, Arrays.copyOf(symbolNames, symbolCount),
+                Arrays.copyOf(symbolKinds, symbolCount), Arrays.copyOf(symbolValues, symbolCount),
+                Arrays.copyOf(relocationOffsets, relocationCount), Arrays.copyOf(relocationSymbols, relocationCount));
+    }
+
+    /**
+     * isPrivate
+     * @param name - name of a label or variable
+     * @return - true if the symbol is private to its module (the name starts with '_')
+     */
+    public static boolean isPrivate(String name) {
+        return name.startsWith("_");
+    }
+
+    /**
+     * read
+     * <p>
+     *     Reads an object file written by write.
+     * </p>
+     * Precondition: file is a .hacko file
+     * Postcondition: n/a
+     * @param file - object file to read
+     * @return - the object
+     * @throws IOException - if the file could not be read or is not an object file of this version
+     */
+    public static HackObject read(Path file) throws IOException {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+            if (in.readInt() != MAGIC || in.readUnsignedShort() != VERSION) {
+                throw new IOException(file + " is not an object file of this assembler version");
+            }
+            in.readUnsignedShort();
+            String moduleName = in.readUTF();
+
+            int[] words = new int[in.readInt()];
+            for (int i = 0; i < words.length; i++) {
+                words[i] = in.readUnsignedShort();
+            }
+
+            int symbolCount = in.readInt();
+            String[] symbolNames = new String[symbolCount];
+            byte[] symbolKinds = new byte[symbolCount];
+            int[] symbolValues = new int[symbolCount];
+            for (int i = 0; i < symbolCount; i++) {
+                symbolNames[i] = in.readUTF();
+                symbolKinds[i] = in.readByte();
+                symbolValues[i] = in.readInt();
+                if (symbolKinds[i] != EXPORT && symbolKinds[i] != IMPORT && symbolKinds[i] != PRIVATE) {
+                    throw new IOException(file + " has a symbol of unknown kind: " + symbolNames[i]);
+                }
+            }
+
+            int relocationCount = in.readInt();
+            int[] relocationOffsets = new int[relocationCount];
+            int[] relocationSymbols = new int[relocationCount];
+            for (int i = 0; i < relocationCount; i++) {
+                relocationOffsets[i] = in.readInt();
+                relocationSymbols[i] = in.readInt();
+                if (relocationOffsets[i] < 0 || relocationOffsets[i] >= words.length
+                        || relocationSymbols[i] < ROM_RELATIVE || relocationSymbols[i] >= symbolCount) {
+                    throw new IOException(file + " has an invalid relocation entry");
+                }
+            }
+
+            return new HackObject(moduleName, words, symbolNames, symbolKinds, symbolValues,
+                    relocationOffsets, relocationSymbols);
+        }
+    }
+
+    /**
+     * write
+     * <p>
+     *     Writes the object to a temporary file that is then moved over file, so a reader
+     *     (e.g., a Linker checking whether the object is up to date) never sees half of it.
+     * </p>
+     * Precondition: the directory of file exists
+     * Postcondition: file holds the object
+     * @param file - object file to write
+     * @throws IOException - if the file could not be written
+     */
+    public void write(Path file) throws IOException {
+        Path temporaryFile = HackFile.createTemporaryFile(file);
+        try {
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+                    Files.newOutputStream(temporaryFile)))) {
+                out.writeInt(MAGIC);
+                out.writeShort(VERSION);
+                out.writeShort(0);
+                out.writeUTF(moduleName);
+
+                out.writeInt(words.length);
+                for (int word : words) {
+                    out.writeShort(word);
+                }
+
+                out.writeInt(symbolNames.length);
+                for (int i = 0; i < symbolNames.length; i++) {
+                    out.writeUTF(symbolNames[i]);
+                    out.writeByte(symbolKinds[i]);
+                    out.writeInt(symbolValues[i]);
+                }
+
+                out.writeInt(relocationOffsets.length);
+                for (int i = 0; i < relocationOffsets.length; i++) {
+                    out.writeInt(relocationOffsets[i]);
+                    out.writeInt(relocationSymbols[i]);
+                }
+            }
+            Files.move(temporaryFile, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(temporaryFile);
+        }
+    }
+
+    /**
+     * getModuleName
+     * @return - name of the module
+     */
+    public String getModuleName() {
+        return moduleName;
+    }
+
+    /**
+     * getWords
+     * @return - instruction words (not a copy), relocated words hold their module relative value or 0
+     */
+    public int[] getWords() {
+        return words;
+    }
+
+    /**
+     * getSymbolCount
+     * @return - number of symbol table entries
+     */
+    public int getSymbolCount() {
+        return symbolNames.length;
+    }
+
+    /**
+     * getSymbolName
+     * @param index - index of a symbol table entry
+     * @return - name of the symbol
+     */
+    public String getSymbolName(int index) {
+        return symbolNames[index];
+    }
+
+    /**
+     * getSymbolKind
+     * @param index - index of a symbol table entry
+     * @return - EXPORT, IMPORT, or PRIVATE
+     */
+    public byte getSymbolKind(int index) {
+        return symbolKinds[index];
+    }
+
+    /**
+     * getSymbolValue
+     * @param index - index of a symbol table entry
+     * @return - module relative address of an EXPORT entry, 0 otherwise
+     */
+    public int getSymbolValue(int index) {
+        return symbolValues[index];
+    }
+
+    /**
+     * getRelocationCount
+     * @return - number of relocation entries
+     */
+    public int getRelocationCount() {
+        return relocationOffsets.length;
+    }
+
+    /**
+     * getRelocationOffset
+     * @param index - index of a relocation entry
+     * @return - ROM offset (in this module) of the relocated word
+     */
+    public int getRelocationOffset(int index) {
+        return relocationOffsets[index];
+    }
+
+    /**
+     * getRelocationSymbol
+     * @param index - index of a relocation entry
+     * @return - symbol table index of the symbol whose address is loaded, or ROM_RELATIVE
+     */
+    public int getRelocationSymbol(int index) {
+        return relocationSymbols[index];
+    }
+}
@@ -0,0 +1,51 @@
+/**
+ * Author: Ben Vargas
+ * Course: CS220 - Computer Architecture and Assembly Language
+ * Professor: Nery Chapeton-Lamas
+ * Project: Assembler (HACK Architecture)
+ */
+
+import java.io.IOException;
+
+/**
+ * Interface for the different .hack output formats. The assembler hands every encoded
+ * instruction to writeWord in ROM order, the writer decides how the word is stored.
+ */
+public interface HackWriter {
+
+    /**
+     * writeWord
+     * <p>
+     *     Writes the next instruction of the program.
+     * </p>
+     * Precondition: writer has not been closed
+     * Postcondition: word is stored after all previously written words
+     * @param word - encoded instruction in the low 16 bits
+     * @throws IOException - if the word could not be written
+     */
+    void writeWord(int word) throws IOException;
+
+    /**
+     * expectWords
+     * <p>
+     *     Tells the writer how many words are about to be written, as soon as the assembler knows
+     *     (e.g., after firstPass), so it can size its output once. Writers that have no use for
+     *     the count ignore it; writing a different number of words is still allowed.
+     * </p>
+     * Precondition: no word has been written yet
+     * Postcondition: n/a
+     * @param wordCount - number of words that will be written
+     * @throws IOException - if the output could not be sized
+     */
+    default void expectWords(int wordCount) throws IOException {
+    }
+
+    /**
+     * close
+     * <p>
+     *     Finishes the output (flushing anything buffered) and closes the underlying file.
+     * </p>
+     * @throws IOException - if the output could not be finished or closed
+     */
+    void close() throws IOException;
+}
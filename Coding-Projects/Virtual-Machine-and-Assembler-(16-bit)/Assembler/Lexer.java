@@ -0,0 +1,341 @@
+/**
+ * Author: Ben Vargas
+ * Course: CS220 - Computer Architecture and Assembly Language
+ * Professor: Nery Chapeton-Lamas
+ * Project: Assembler (HACK Architecture)
+ */
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Byte level lexer for .asm source held in a ByteBuffer (memory-mapped file or bulk read).
+ * Each call to advance() scans one line: comments are skipped, whitespace is dropped, and the
+ * remaining bytes are copied into one reusable line buffer. The parts of the instruction are
+ * then exposed as [start, end) slices of that line buffer instead of new Strings.
+ */
+public class Lexer {
+
+    // SOURCE BEING SCANNED
+    private ByteBuffer source;
+    private int position;
+    private int limit;
+    private int lineNumber;
+    private int rawStart;
+    private int rawEnd;
+
+    // CLEAN LINE (no whitespace or comments) FROM LAST CALL TO ADVANCE
+    private byte[] line;
+    private int lineLength;
+    private char commandType;
+
+    // SLICES OF line FOR THE PARTS OF THE CURRENT INSTRUCTION
+    private int symbolStart, symbolEnd;
+    private int destStart, destEnd;
+    private int compStart, compEnd;
+    private int jumpStart, jumpEnd;
+
+    /**
+     * Primary Constructor for Lexer
+     * <p>
+     *     Lexer scans the bytes between the position and limit of the source buffer. The
+     *     buffer itself is never modified (read-only mappings are fine).
+     * </p>
+     * Precondition: source holds ASCII (or UTF-8) assembly code
+     * Postcondition: lexer is positioned before the first line
+     * @param source - buffer holding the assembly code
+     */
+    public Lexer(ByteBuffer source) {
+        this.source = source;
+        position = source.position();
+        limit = source.limit();
+        lineNumber = 0;
+        line = new byte[128];
+        commandType = Parser.NO_COMMAND;
+    }
+
+    /**
+     * hasMoreLines
+     * <p>
+     *     Simple check for whether there is another line to scan.
+     * </p>
+     * @return - true if advance() can be called again, false otherwise.
+     */
+    public boolean hasMoreLines() {
+        return position < limit;
+    }
+
+    /**
+     * advance
+     * <p>
+     *     Scans the next line of the source (a line ends at "\n", "\r\n", or "\r"). Anything
+     *     after "//" is skipped, every other non-whitespace byte is copied to the line buffer,
+     *     then the clean line is split into its parts.
+     * </p>
+     * Precondition: hasMoreLines() is true
+     * Postcondition: command type and slices describe the new line, lineNumber is incremented
+     * @throws IllegalArgumentException - if a label is missing its closing parenthesis or name
+     */
+    public void advance() throws IllegalArgumentException {
+        int current;
+        boolean inComment = false;
+
+        lineLength = 0;
+        rawStart = position;
+        while (position < limit) {
+            current = source.get(position);
+            if (current == '\n' || current == '\r') {
+                break;
+            }
+            if (!inComment) {
+                if (current == '/' && position + 1 < limit && source.get(position + 1) == '/') {
+                    inComment = true;
+                } else if (!isWhitespace(current)) {
+                    if (lineLength == line.length) {
+                        line = Arrays.copyOf(line, lineLength * 2);
+                    }
+                    line[lineLength++] = (byte) current;
+                }
+            }
+            position++;
+        }
+        rawEnd = position;
+
+        // step over the line separator ("\r\n" counts as one separator)
+        if (position < limit && source.get(position) == '\r') {
+            position++;
+            if (position < limit && source.get(position) == '\n') {
+                position++;
+            }
+        } else if (position < limit) {
+            position++;
+        }
+
+        lineNumber++;
+        split();
+    }
+
+    /**
+     * isWhitespace
+     * <p>
+     *     Same whitespace the "\\s" regular expression matches (line separators are handled by advance).
+     * </p>
+     * @param current - byte to check
+     * @return - true if the byte is whitespace
+     */
+    private static boolean isWhitespace(int current) {
+        return current == ' ' || current == '\t' || current == 0x0B || current == '\f';
+    }
+
+    /**
+     * split
+     * <p>
+     *     Determines the command type of the clean line and the slices of its parts.
+     *     A- and L-commands have a symbol, C-commands have dest, comp, and jump (a dest or
+     *     jump that is not present is an empty slice).
+     * </p>
+     * Precondition: line holds the clean line
+     * Postcondition: command type and slices are set
+     */
+    private void split() {
+        symbolStart = symbolEnd = 0;
+        destStart = destEnd = 0;
+        compStart = compEnd = 0;
+        jumpStart = jumpEnd = 0;
+
+        if (lineLength == 0) {
+            commandType = Parser.NO_COMMAND;
+        } else if (line[0] == '@') {
+            commandType = Parser.A_COMMAND;
+            symbolStart = 1;
+            symbolEnd = lineLength;
+        } else if (line[0] == '(') {
+            commandType = Parser.L_COMMAND;
+            if (lineLength < 3 || line[lineLength - 1] != ')') {
+                // the caller ties the error to its line (see AssemblyException), nothing is printed here
+                throw new IllegalArgumentException("Either missing closing parenthesis or missing label name");
+            }
+            symbolStart = 1;
+            symbolEnd = lineLength - 1;
+        } else {
+            commandType = Parser.C_COMMAND;
+            int indexOfEquals = indexOf('=');
+            int indexOfSemicolon = indexOf(';');
+
+            // if there is no "=", indexOf returns -1, making the dest empty and comp start at 0
+            destEnd = Math.max(indexOfEquals, 0);
+            compStart = indexOfEquals + 1;
+            if (indexOfSemicolon == -1) {
+                compEnd = lineLength;
+            } else {
+                compEnd = indexOfSemicolon;
+                jumpStart = indexOfSemicolon + 1;
+                jumpEnd = lineLength;
+            }
+        }
+    }
+
+    /**
+     * indexOf
+     * @param target - byte to look for
+     * @return - index of the first target in the clean line, -1 if there is none
+     */
+    private int indexOf(char target) {
+        for (int i = 0; i < lineLength; i++) {
+            if (line[i] == target) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * isSymbolNumeric
+     * <p>
+     *     Checks whether the symbol slice is an integer literal (optional sign followed by
+     *     ASCII digits) that fits in an int, so it can be used without creating a String.
+     * </p>
+     * Precondition: current line is an A- or L-command
+     * Postcondition: n/a
+     * @return - true if getSymbolValue() can be used for the current symbol
+     */
+    public boolean isSymbolNumeric() {
+        int start = symbolStart;
+        if (start < symbolEnd && (line[start] == '-' || line[start] == '+')) {
+            start++;
+        }
+        if (start == symbolEnd || symbolEnd - start > 9) { // 9 digits always fit in an int
+            return false;
+        }
+
+        for (int i = start; i < symbolEnd; i++) {
+            if (line[i] < '0' || line[i] > '9') {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * getSymbolValue
+     * <p>
+     *     Integer value of a numeric symbol slice.
+     * </p>
+     * Precondition: isSymbolNumeric() is true
+     * Postcondition: n/a
+     * @return - value of the symbol
+     */
+    public int getSymbolValue() {
+        int start = symbolStart;
+        boolean negative = line[start] == '-';
+        if (line[start] == '-' || line[start] == '+') {
+            start++;
+        }
+
+        int value = 0;
+        for (int i = start; i < symbolEnd; i++) {
+            value = value * 10 + (line[i] - '0');
+        }
+        return negative ? -value : value;
+    }
+
+    /**
+     * getSlice
+     * <p>
+     *     Creates a String from a slice of the clean line. Only used by callers that need a
+     *     String (e.g., the Parser accessors, symbol table lookups).
+     * </p>
+     * @param start - start of the slice
+     * @param end - end of the slice (exclusive)
+     * @return - String holding the bytes of the slice
+     */
+    public String getSlice(int start, int end) {
+        return new String(line, start, end - start, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * getCleanLine
+     * @return - current line without whitespace or comments, as a String
+     */
+    public String getCleanLine() {
+        return getSlice(0, lineLength);
+    }
+
+    /**
+     * getRawLine
+     * @return - current line exactly as it is in the source (without the line separator)
+     */
+    public String getRawLine() {
+        byte[] raw = new byte[rawEnd - rawStart];
+        for (int i = 0; i < raw.length; i++) {
+            raw[i] = source.get(rawStart + i);
+        }
+        return new String(raw, StandardCharsets.UTF_8);
+    }
+
+    /** @return - byte index of the source where the next line starts */
+    public int getPosition() {
+        return position;
+    }
+
+    /** @return - reusable buffer holding the clean line (only valid until the next advance) */
+    public byte[] getLine() {
+        return line;
+    }
+
+    /** @return - number of bytes of the clean line */
+    public int getLineLength() {
+        return lineLength;
+    }
+
+    /** @return - command type ('N', 'A', 'C', or 'L', see Parser) of the current line */
+    public char getCommandType() {
+        return commandType;
+    }
+
+    /** @return - 1-based line number of the current line */
+    public int getLineNumber() {
+        return lineNumber;
+    }
+
+    /** @return - start of the symbol slice (A- and L-commands) */
+    public int getSymbolStart() {
+        return symbolStart;
+    }
+
+    /** @return - end of the symbol slice (exclusive) */
+    public int getSymbolEnd() {
+        return symbolEnd;
+    }
+
+    /** @return - start of the dest slice (C-commands) */
+    public int getDestStart() {
+        return destStart;
+    }
+
+    /** @return - end of the dest slice (exclusive), equal to start if there is no dest */
+    public int getDestEnd() {
+        return destEnd;
+    }
+
+    /** @return - start of the comp slice (C-commands) */
+    public int getCompStart() {
+        return compStart;
+    }
+
+    /** @return - end of the comp slice (exclusive) */
+    public int getCompEnd() {
+        return compEnd;
+    }
+
+    /** @return - start of the jump slice (C-commands) */
+    public int getJumpStart() {
+        return jumpStart;
+    }
+
+    /** @return - end of the jump slice (exclusive), equal to start if there is no jump */
+    public int getJumpEnd() {
+        return jumpEnd;
+    }
+}
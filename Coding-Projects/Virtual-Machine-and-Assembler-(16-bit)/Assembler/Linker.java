@@ -0,0 +1,318 @@
+/**
+ * Author: Ben Vargas
+ * Course: CS220 - Computer Architecture and Assembly Language
+ * Professor: Nery Chapeton-Lamas
+ * Project: Assembler (HACK Architecture)
+ */
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Links separately assembled modules (see HackObject) into one program.
+ * <p>
+ *     Modules are placed in ROM in command line order, so the program starts at the first
+ *     instruction of the first module. Each label is given its final address (module ROM base
+ *     plus its module relative address), each imported symbol resolves to the label exported
+ *     by another module or else to a variable shared by all modules, and variables are given
+ *     RAM addresses from 16 in order of first use (module by module), the same order the
+ *     Assembler uses for a single file.
+ * </p>
+ * <p>
+ *     A .asm module is assembled to a .hacko object next to it, unless that object is newer
+ *     than the .asm file; out of date modules are assembled concurrently, so linking is the
+ *     only serial step. With -c the objects are made but not linked.
+ * </p>
+ * Usage: java Linker [-threads N] [-c] [-o output.hack/.hackb] module.asm/module.hacko...
+ */
+public class Linker {
+    public static final int FIRST_VARIABLE_ADDRESS = 16;
+
+    private int variableCount;
+    private int exportCount;
+
+    // ALGORITHM:
+    // parse command line for thread count, output file, and modules
+    // assemble the out of date .asm modules to objects on a pool of worker threads, load the rest
+    // place the modules in ROM, collect the exported labels
+    // patch every relocation with its label or variable address
+    // write the program to the output file
+
+    public static void main(String[] args) {
+        int threadCount = Runtime.getRuntime().availableProcessors();
+        boolean objectsOnly = false;
+        String outputFileName = null;
+        List<String> moduleFileNames = new ArrayList<String>();
+
+        for (int i = 0; i < args.length; i++) {
+            if (args[i].equals("-threads") && i + 1 < args.length) {
+                threadCount = Integer.parseInt(args[++i]);
+            } else if (args[i].equals("-c")) {
+                objectsOnly = true;
+            } else if (args[i].equals("-o") && i + 1 < args.length) {
+                outputFileName = args[++i];
+            } else {
+                moduleFileNames.add(args[i]);
+            }
+        }
+
+        if (moduleFileNames.isEmpty() || threadCount < 1) {
+            System.err.println("Usage: java Linker [-threads N] [-c] [-o output.hack/.hackb] " +
+                    "module.asm/module.hacko...");
+            System.exit(1);
+        }
+        if (outputFileName == null) {
+            outputFileName = Assembler.outputFileNameFor(moduleFileNames.get(0), false);
+        }
+
+        List<HackObject> modules = null;
+        try {
+            modules = loadModules(moduleFileNames, threadCount);
+        } catch (IOException | IllegalArgumentException e) {
+            System.err.println(e.getMessage());
+            System.err.println("Could not assemble the modules.");
+            System.exit(1);
+        }
+        if (objectsOnly) {
+            return;
+        }
+
+        try {
+            Linker linker = new Linker();
+            int[] words = linker.link(modules);
+
+            HackWriter outputFile = HackFile.openWriter(outputFileName);
+            outputFile.expectWords(words.length);
+            for (int word : words) {
+                outputFile.writeWord(word);
+            }
+            outputFile.close();
+
+            System.out.println("Linked " + modules.size() + " modules to " + outputFileName + " (" + words.length +
+                    " instructions, " + linker.getExportCount() + " exported labels, " +
+                    linker.getVariableCount() + " variables)");
+        } catch (IOException | IllegalArgumentException e) {
+            System.err.println(e.getMessage());
+            System.err.println("Could not link the modules to output file " + outputFileName);
+            System.exit(1);
+        }
+    }
+
+    /**
+     * objectFileNameFor
+     * @param inputFileName - name of a .asm module
+     * @return - name of its .hacko object
+     */
+    public static String objectFileNameFor(String inputFileName) {
+        String hackFileName = Assembler.outputFileNameFor(inputFileName, false);
+        return hackFileName.substring(0, hackFileName.length() - HackFile.TEXT_EXTENSION.length()) +
+                HackObject.EXTENSION;
+    }
+
+    /**
+     * loadModules
+     * <p>
+     *     Gets the object of each module: .hacko files are read, and .asm files are assembled to
+     *     an object next to them (on a pool of threadCount worker threads) unless the object is
+     *     newer than the .asm file, in which case it is read instead.
+     * </p>
+     * Precondition: threadCount &gt; 0
+     * Postcondition: every out of date object has been written
+     * @param moduleFileNames - .asm and .hacko files, in link order
+     * @param threadCount - number of worker threads
+     * @return - one object per module, in the same order as moduleFileNames
+     * @throws IOException - if a file could not be read or an object could not be written
+     * @throws AssemblyException - if a module has an invalid instruction
+     */
+    public static List<HackObject> loadModules(List<String> moduleFileNames, int threadCount) throws IOException {
+        ExecutorService pool = Executors.newFixedThreadPool(Math.min(threadCount, moduleFileNames.size()));
+        List<Future<HackObject>> futures = new ArrayList<Future<HackObject>>();
+
+        for (final String moduleFileName : moduleFileNames) {
+            futures.add(pool.submit(new Callable<HackObject>() {
+                public HackObject call() throws IOException {
+                    return loadModule(moduleFileName);
+                }
+            }));
+        }
+
+        List<HackObject> modules = new ArrayList<HackObject>();
+        try {
+            for (int i = 0; i < futures.size(); i++) {
+                try {
+                    modules.add(futures.get(i).get());
+                } catch (ExecutionException e) {
+                    if (e.getCause() instanceof IOException) {
+                        throw (IOException) e.getCause();
+                    }
+                    if (e.getCause() instanceof AssemblyException) {
+                        AssemblyException cause = (AssemblyException) e.getCause();
+                        throw new AssemblyException(moduleFileNames.get(i) + ": " + cause.getReason(),
+                                cause.getLineNumber(), cause.getSourceLine(), cause);
+                    }
+                    throw new IllegalStateException(moduleFileNames.get(i) + ": " + e.getCause(), e.getCause());
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while assembling the modules", e);
+        } finally {
+            pool.shutdownNow();
+        }
+        return modules;
+    }
+
+    /**
+     * loadModule
+     * @param moduleFileName - .asm or .hacko file
+     * @return - object of the module
+     * @throws IOException - if a file could not be read or the object could not be written
+     * @throws AssemblyException - if the module has an invalid instruction
+     */
+    private static HackObject loadModule(String moduleFileName) throws IOException {
+        if (moduleFileName.endsWith(HackObject.EXTENSION)) {
+            return HackObject.read(Paths.get(moduleFileName));
+        }
+
+        Path sourceFile = Paths.get(moduleFileName);
+        Path objectFile = Paths.get(objectFileNameFor(moduleFileName));
+        if (Files.exists(objectFile) && Files.exists(sourceFile)
+                && Files.getLastModifiedTime(objectFile).compareTo(Files.getLastModifiedTime(sourceFile)) > 0) {
+            try {
+                return HackObject.read(objectFile);
+            } catch (IOException e) {
+                // e.g., written by another version, assembled again below
+            }
+        }
+
+        HackObject module = HackObject.assemble(sourceFile.getFileName().toString(), Parser.mapSource(moduleFileName));
+        module.write(objectFile);
+        return module;
+    }
+
+    /**
+     * link
+     * <p>
+     *     Places the modules in ROM one after the other and patches every relocated word.
+     * </p>
+     * Precondition: modules is not empty
+     * Postcondition: getVariableCount and getExportCount describe the linked program
+     * @param modules - objects to link, in ROM order
+     * @return - instruction words of the program in ROM order
+     * @throws IllegalArgumentException - if two modules export the same label, or the program does
+     *                                    not fit in ROM/RAM
+     */
+    public int[] link(List<HackObject> modules) throws IllegalArgumentException {
+        int[] romBases = new int[modules.size()];
+        int wordCount = 0;
+        for (int m = 0; m < modules.size(); m++) {
+            romBases[m] = wordCount;
+            wordCount += modules.get(m).getWords().length;
+        }
+        if (wordCount > 32768) {
+            throw new IllegalArgumentException("Program has " + wordCount + " instructions, ROM holds 32768");
+        }
+
+        // labels exported by each module, at their final addresses
+        Map<String, Integer> labels = new HashMap<String, Integer>();
+        Map<String, String> exportingModules = new HashMap<String, String>();
+        for (int m = 0; m < modules.size(); m++) {
+            HackObject module = modules.get(m);
+            for (int s = 0; s < module.getSymbolCount(); s++) {
+                if (module.getSymbolKind(s) == HackObject.EXPORT) {
+                    String name = module.getSymbolName(s);
+                    String otherModule = exportingModules.put(name, module.getModuleName());
+                    if (otherModule != null) {
+                        throw new IllegalArgumentException("Label " + name + " is declared by both " + otherModule +
+                                " and " + module.getModuleName());
+                    }
+                    labels.put(name, checkAddress(romBases[m] + module.getSymbolValue(s)));
+                }
+            }
+        }
+        exportCount = labels.size();
+
+        // relocations, in ROM order so variables get their addresses in order of first use
+        Map<String, Integer> sharedVariables = new HashMap<String, Integer>();
+        int ramAddress = FIRST_VARIABLE_ADDRESS;
+        int[] words = new int[wordCount];
+        for (int m = 0; m < modules.size(); m++) {
+            HackObject module = modules.get(m);
+            int[] moduleWords = module.getWords();
+            System.arraycopy(moduleWords, 0, words, romBases[m], moduleWords.length);
+
+            int[] privateVariables = new int[module.getSymbolCount()];
+            for (int r = 0; r < module.getRelocationCount(); r++) {
+                int romAddress = romBases[m] + module.getRelocationOffset(r);
+                int symbol = module.getRelocationSymbol(r);
+
+                int address;
+                if (symbol == HackObject.ROM_RELATIVE) {
+                    address = checkAddress(romBases[m] + moduleWords[module.getRelocationOffset(r)]);
+                } else if (module.getSymbolKind(symbol) == HackObject.PRIVATE) {
+                    if (privateVariables[symbol] == 0) {
+                        privateVariables[symbol] = checkAddress(ramAddress++);
+                    }
+                    address = privateVariables[symbol];
+                } else {
+                    String name = module.getSymbolName(symbol);
+                    Integer resolved = labels.get(name);
+                    if (resolved == null) {
+                        resolved = sharedVariables.get(name);
+                    }
+                    if (resolved == null) {
+                        resolved = checkAddress(ramAddress++);
+                        sharedVariables.put(name, resolved);
+                    }
+                    address = resolved;
+                }
+                words[romAddress] = Code.encodeAInstruction(address);
+            }
+        }
+        variableCount = ramAddress - FIRST_VARIABLE_ADDRESS;
+        return words;
+    }
+
+    /**
+     * checkAddress
+     * <p>
+     *     Checks a label or variable address against the same limit SymbolTable.addEntry uses.
+     * </p>
+     * @param address - final address of a label or variable
+     * @return - address
+     * @throws IllegalArgumentException - if the address is out of range
+     */
+    private static int checkAddress(int address) throws IllegalArgumentException {
+        if (address < 0 || address > 24576) {
+            throw new IllegalArgumentException("Invalid address: " + Integer.toString(address));
+        }
+        return address;
+    }
+
+    /**
+     * getVariableCount
+     * @return - number of RAM addresses given to variables by the last link
+     */
+    public int getVariableCount() {
+        return variableCount;
+    }
+
+    /**
+     * getExportCount
+     * @return - number of labels exported by the modules of the last link
+     */
+    public int getExportCount() {
+        return exportCount;
+    }
+}
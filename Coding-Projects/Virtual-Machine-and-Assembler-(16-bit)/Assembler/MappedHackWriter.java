@@ -0,0 +1,187 @@
+/**
+ * Author: Ben Vargas
+ * Course: CS220 - Computer Architecture and Assembly Language
+ * Professor: Nery Chapeton-Lamas
+ * Project: Assembler (HACK Architecture)
+ */
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.NonReadableChannelException;
+import java.nio.channels.WritableByteChannel;
+
+/**
+ * Object used to write a text .hack file (same lines as TextHackWriter) straight into a
+ * memory mapping of the output file.
+ * <p>
+ *     Every line is the same size (16 digits and the line separator), so once the assembler
+ *     knows the instruction count (see expectWords) the file is mapped at its exact final size
+ *     and the digits of each word are copied into the mapping - no String, no stream, and no
+ *     write call per buffer. Without a count, or if more words are written than expected, the
+ *     file is mapped in growing windows and cut to the written size on close.
+ * </p>
+ * <p>
+ *     A channel that can not be mapped (a pipe, standard output, a socket, or a file opened
+ *     without read access) is written through one large direct ByteBuffer instead.
+ * </p>
+ */
+public class MappedHackWriter implements HackWriter {
+
+    private static final int DIRECT_BUFFER_SIZE = 1024 * 1024;
+    private static final int MIN_MAP_SIZE = 1024 * 1024;
+
+    // line separator is looked up once, same separator PrintWriter.println would use
+    private static final byte[] LINE_SEPARATOR = System.lineSeparator().getBytes();
+    private static final int LINE_SIZE = 16 + LINE_SEPARATOR.length;
+
+    private WritableByteChannel channel;
+    private FileChannel file; // null if channel is not a file, or could not be mapped
+
+    // current mapping of the file (starting at file offset mappedStart), or the direct buffer
+    private ByteBuffer buffer;
+    private long mappedStart;
+    private boolean mapped;
+
+    // one line: digits are formatted into 0 - 15, the separator is filled in once
+    private byte[] line;
+
+    /**
+     * Primary Constructor for MappedHackWriter
+     * <p>
+     *     Nothing is mapped or allocated until expectWords or the first writeWord.
+     * </p>
+     * Precondition: channel is open, a file channel is positioned where the output starts
+     *               (the start of an empty file, for a .hack file)
+     * Postcondition: writer is ready for writeWord, close also closes the channel
+     * @param channel - channel the .hack lines are written to (mapped if it is a FileChannel)
+     */
+    public MappedHackWriter(WritableByteChannel channel) {
+        this.channel = channel;
+        file = channel instanceof FileChannel ? (FileChannel) channel : null;
+        line = new byte[LINE_SIZE];
+        System.arraycopy(LINE_SEPARATOR, 0, line, 16, LINE_SEPARATOR.length);
+    }
+
+    /**
+     * expectWords
+     * <p>
+     *     Maps the file at its final size. Only used before the first word is written, a later
+     *     count is ignored.
+     * </p>
+     * @param wordCount - number of words that will be written
+     * @throws IOException - if the file could not be sized
+     */
+    public void expectWords(int wordCount) throws IOException {
+        if (buffer == null) {
+            allocate((long) wordCount * LINE_SIZE);
+        }
+    }
+
+    /**
+     * writeWord
+     * <p>
+     *     Writes one instruction as a line of 16 binary digits.
+     * </p>
+     * Precondition: writer has not been closed
+     * Postcondition: line is in the mapping or buffer (or already written to the channel)
+     * @param word - encoded instruction in the low 16 bits
+     * @throws IOException - if the file could not be mapped or the buffer could not be written
+     */
+    public void writeWord(int word) throws IOException {
+        if (buffer == null) {
+            allocate(MIN_MAP_SIZE);
+        } else if (buffer.remaining() < LINE_SIZE) {
+            if (mapped) {
+                // map the next window, twice the size of the last one
+                long end = mappedStart + buffer.position();
+                allocate(Math.max(MIN_MAP_SIZE, (long) buffer.capacity() * 2), end);
+            } else {
+                flush();
+            }
+        }
+
+        Code.formatWord(word, line, 0);
+        buffer.put(line);
+    }
+
+    /**
+     * flush
+     * <p>
+     *     Hands the lines in the direct buffer to the channel. Lines written to a mapping are
+     *     already in the file.
+     * </p>
+     * @throws IOException - if the channel could not be written to
+     */
+    public void flush() throws IOException {
+        if (buffer == null || mapped) {
+            return;
+        }
+
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        buffer.clear();
+    }
+
+    /**
+     * close
+     * <p>
+     *     Flushes the remaining lines, cuts a mapped file to the size actually written, and
+     *     closes the channel.
+     * </p>
+     * Precondition: n/a
+     * Postcondition: channel is closed
+     * @throws IOException - if the channel could not be written to, cut, or closed
+     */
+    public void close() throws IOException {
+        if (mapped) {
+            long end = mappedStart + buffer.position();
+            file.truncate(end);
+            file.position(end);
+        } else {
+            flush();
+        }
+        buffer = null;
+        channel.close();
+    }
+
+    /**
+     * allocate
+     * @param size - number of bytes needed
+     * @throws IOException - if the file could not be mapped
+     */
+    private void allocate(long size) throws IOException {
+        allocate(size, -1);
+    }
+
+    /**
+     * allocate
+     * <p>
+     *     Maps size bytes of the file from start (growing the file), or allocates the direct
+     *     buffer if the channel can not be mapped. Once mapping has failed it is not tried again.
+     * </p>
+     * @param size - number of bytes needed
+     * @param start - file offset the mapping starts at, -1 for the channel's position
+     * @throws IOException - if a file that was mapped before can not be mapped again
+     */
+    private void allocate(long size, long start) throws IOException {
+        if (file != null) {
+            try {
+                long offset = start >= 0 ? start : file.position();
+                buffer = file.map(FileChannel.MapMode.READ_WRITE, offset, Math.max(size, LINE_SIZE));
+                mappedStart = offset;
+                mapped = true;
+                return;
+            } catch (IOException | NonReadableChannelException | UnsupportedOperationException e) {
+                if (mapped) {
+                    throw e;
+                }
+                file = null; // a pipe, a character device, or opened write-only
+            }
+        }
+        buffer = ByteBuffer.allocateDirect(DIRECT_BUFFER_SIZE);
+        mapped = false;
+    }
+}
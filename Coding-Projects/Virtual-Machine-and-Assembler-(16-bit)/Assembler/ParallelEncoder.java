@@ -0,0 +1,281 @@
+/**
+ * Author: Ben Vargas
+ * Course: CS220 - Computer Architecture and Assembly Language
+ * Professor: Nery Chapeton-Lamas
+ * Project: Assembler (HACK Architecture)
+ */
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Object used to encode the instructions of one large program on a ForkJoin pool.
+ * <p>
+ *     Once every label and variable is in the symbol table (see Assembler's parallel mode),
+ *     encoding an instruction no longer depends on any other instruction. The instruction
+ *     stream is split into chunks of the source, each chunk is scanned by its own Lexer, and
+ *     every word is stored at its ROM address in one shared array (chunks never overlap), so
+ *     the words come out in order.
+ * </p>
+ * Usage (correctness check and scaling benchmark):
+ *        java ParallelEncoder &lt;file.asm&gt; [maxThreads] [iterations]
+ */
+public class ParallelEncoder {
+
+    // chunks smaller than this cost more to schedule than they save
+    private static final int MIN_CHUNK_SIZE = 2048;
+
+    private ForkJoinPool pool;
+
+    /**
+     * Primary Constructor for ParallelEncoder
+     * @param pool - pool the chunks are encoded on
+     */
+    public ParallelEncoder(ForkJoinPool pool) {
+        this.pool = pool;
+    }
+
+    /**
+     * encode
+     * <p>
+     *     Encodes every instruction of the source in parallel.
+     * </p>
+     * Precondition: symbolTable holds every label and variable of the program (read-only from
+     *               here on), instructionOffsets[i] is the byte index of the line of instruction i
+     * Postcondition: symbolTable is not modified
+     * @param source - buffer holding the whole assembly program
+     * @param instructionOffsets - start of the source line of each instruction
+     * @param instructionLines - line number of each instruction (for error messages)
+     * @param instructionSymbols - symbol id of each A instruction (SymbolTable.NO_SYMBOL for
+     *                             integer literals and C instructions)
+     * @param instructionCount - number of instructions in the program
+     * @param symbolTable - complete symbol table of the program
+     * @return - encoded words in ROM order
+     * @throws AssemblyException - if an instruction is not valid
+     */
+    public int[] encode(ByteBuffer source, int[] instructionOffsets, int[] instructionLines,
+                        int[] instructionSymbols, int instructionCount, SymbolTable symbolTable)
+            throws IllegalArgumentException {
+        int[] words = new int[instructionCount];
+        int chunkSize = Math.max(MIN_CHUNK_SIZE, instructionCount / (pool.getParallelism() * 4) + 1);
+
+        pool.invoke(new EncodeTask(source, instructionOffsets, instructionLines, instructionSymbols,
+                instructionCount, symbolTable, words, 0, instructionCount, chunkSize));
+        return words;
+    }
+
+    /**
+     * Task encoding the instructions [from, to), split in half until a range fits in one chunk.
+     */
+    private static class EncodeTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final ByteBuffer source;
+        private final int[] instructionOffsets;
+        private final int[] instructionLines;
+        private final int[] instructionSymbols;
+        private final int instructionCount;
+        private final SymbolTable symbolTable;
+        private final int[] words;
+        private final int from;
+        private final int to;
+        private final int chunkSize;
+
+        EncodeTask(ByteBuffer source, int[] instructionOffsets, int[] instructionLines, int[] instructionSymbols,
+                   int instructionCount, SymbolTable symbolTable, int[] words, int from, int to, int chunkSize) {
+            this.source = source;
+            this.instructionOffsets = instructionOffsets;
+            this.instructionLines = instructionLines;
+            this.instructionSymbols = instructionSymbols;
+            this.instructionCount = instructionCount;
+            this.symbolTable = symbolTable;
+            this.words = words;
+            this.from = from;
+            this.to = to;
+            this.chunkSize = chunkSize;
+        }
+
+        protected void compute() {
+            if (to - from <= chunkSize) {
+                encodeChunk();
+            } else {
+                int middle = (from + to) >>> 1;
+                invokeAll(new EncodeTask(source, instructionOffsets, instructionLines, instructionSymbols,
+                                instructionCount, symbolTable, words, from, middle, chunkSize),
+                        new EncodeTask(source, instructionOffsets, instructionLines, instructionSymbols,
+                                instructionCount, symbolTable, words, middle, to, chunkSize));
+            }
+        }
+
+        /**
+         * encodeChunk
+         * <p>
+         *     Scans the source from the line of instruction 'from' up to the line of instruction
+         *     'to' (labels, comments, and blank lines in between are skipped).
+         * </p>
+         */
+        private void encodeChunk() {
+            if (from == to) {
+                return;
+            }
+
+            ByteBuffer chunk = source.duplicate();
+            chunk.position(instructionOffsets[from]);
+            chunk.limit(to < instructionCount ? instructionOffsets[to] : source.limit());
+
+            Lexer lexer = new Lexer(chunk);
+            int romAddress = from;
+            char currentInstType;
+            try {
+                while (lexer.hasMoreLines() && romAddress < to) {
+                    lexer.advance();
+
+                    currentInstType = lexer.getCommandType();
+                    if (currentInstType == Parser.A_COMMAND) {
+                        words[romAddress] = encodeAInstruction(lexer, instructionSymbols[romAddress], symbolTable,
+                                instructionLines[romAddress]);
+                        romAddress++;
+                    } else if (currentInstType == Parser.C_COMMAND) {
+                        words[romAddress] = encodeCInstruction(lexer, instructionLines[romAddress]);
+                        romAddress++;
+                    }
+                }
+            } catch (IllegalArgumentException e) {
+                // the chunk's lexer counts lines from the chunk start, use the scan's line number
+                throw AssemblyException.atLine(e, instructionLines[romAddress], lexer.getCleanLine());
+            }
+
+            if (romAddress != to) {
+                throw new IllegalStateException("Chunk ended after " + (romAddress - from) + " of " + (to - from) +
+                        " instructions.");
+            }
+        }
+    }
+
+    /**
+     * encodeAInstruction
+     * <p>
+     *     Same translation as Assembler's buildAInstruction, except that the symbol table is
+     *     only read (all variables were allocated before encoding started), and symbols are
+     *     resolved by their id.
+     * </p>
+     * @param lexer - lexer positioned at an A instruction
+     * @param symbolId - id of the instruction's symbol, SymbolTable.NO_SYMBOL for an integer literal
+     * @param symbolTable - complete symbol table
+     * @param lineNumber - line of the instruction (for error messages)
+     * @return - 16-bit A instruction word
+     * @throws AssemblyException - if the symbol has no address or the literal is out of range
+     */
+    static int encodeAInstruction(Lexer lexer, int symbolId, SymbolTable symbolTable, int lineNumber) {
+        if (symbolId != SymbolTable.NO_SYMBOL) {
+            if (!symbolTable.contains(symbolId)) {
+                throw new AssemblyException("Unknown symbol " + symbolTable.getName(symbolId), lineNumber,
+                        lexer.getCleanLine());
+            }
+            return Code.encodeAInstruction(symbolTable.getAddress(symbolId));
+        }
+
+        if (lexer.isSymbolNumeric()) {
+            return Code.encodeAInstruction(lexer.getSymbolValue());
+        }
+        return Code.encodeAInstruction(Integer.parseInt(lexer.getSlice(lexer.getSymbolStart(), lexer.getSymbolEnd())));
+    }
+
+    /**
+     * encodeCInstruction
+     * @param lexer - lexer positioned at a C instruction
+     * @param lineNumber - line of the instruction (for error messages)
+     * @return - 16-bit C instruction word
+     * @throws AssemblyException - if dest, comp, or jump is not a valid mnemonic
+     */
+    static int encodeCInstruction(Lexer lexer, int lineNumber) {
+        int cInstruction = Code.encodeCInstruction(lexer.getLine(), lexer.getDestStart(), lexer.getDestEnd(),
+                lexer.getCompStart(), lexer.getCompEnd(), lexer.getJumpStart(), lexer.getJumpEnd());
+
+        if (cInstruction == Code.INVALID) {
+            throw new AssemblyException("Invalid C instruction", lineNumber, lexer.getCleanLine());
+        }
+        return cInstruction;
+    }
+
+    /**
+     * main
+     * <p>
+     *     Correctness check and scaling benchmark: assembles the file with the sequential
+     *     two pass mode, then with the parallel mode on 1, 2, 4, ... up to maxThreads threads,
+     *     checking every parallel result is identical to the sequential one.
+     * </p>
+     * @param args - file.asm [maxThreads (default: all cores)] [iterations (default: 10)]
+     */
+    public static void main(String[] args) {
+        if (args.length < 1) {
+            System.err.println("Usage: java ParallelEncoder <file.asm> [maxThreads] [iterations]");
+            System.exit(0);
+        }
+
+        String inputFileName = args[0];
+        int maxThreads = args.length > 1 ? Integer.parseInt(args[1]) : Runtime.getRuntime().availableProcessors();
+        int iterations = args.length > 2 ? Integer.parseInt(args[2]) : 10;
+
+        try {
+            Assembler sequential = new Assembler(Assembler.TWO_PASS);
+            int[] expected = null;
+            long sequentialNanos = time(sequential, inputFileName, iterations);
+            WordBuffer expectedWords = new WordBuffer();
+            sequential.assemble(inputFileName, expectedWords);
+            expected = expectedWords.getWords();
+
+            System.out.printf("%s: %d instructions%n", inputFileName, expected.length);
+            System.out.printf("sequential      %8.2f ms%n", sequentialNanos / 1e6);
+
+            boolean allIdentical = true;
+            for (int threads = 1; threads <= maxThreads; threads = nextThreadCount(threads, maxThreads)) {
+                ForkJoinPool pool = new ForkJoinPool(threads);
+                Assembler parallel = new Assembler(Assembler.PARALLEL);
+                parallel.setPool(pool);
+
+                long parallelNanos = time(parallel, inputFileName, iterations);
+                WordBuffer actualWords = new WordBuffer();
+                parallel.assemble(inputFileName, actualWords);
+                boolean identical = Arrays.equals(expected, actualWords.getWords());
+                allIdentical &= identical;
+
+                System.out.printf("parallel x%-4d %8.2f ms  speedup %5.2f  %s%n", threads, parallelNanos / 1e6,
+                        (double) sequentialNanos / parallelNanos, identical ? "identical" : "DIFFERENT");
+                pool.shutdown();
+            }
+
+            System.out.println(allIdentical ? "All parallel outputs are identical to the sequential output."
+                    : "Parallel output differs from the sequential output!");
+        } catch (IOException e) {
+            System.err.println(e.getMessage());
+        }
+    }
+
+    /**
+     * time
+     * @return - average nanoseconds per assembly of the file, after the same number of warmup runs
+     */
+    private static long time(Assembler assembler, String inputFileName, int iterations) throws IOException {
+        for (int i = 0; i < iterations; i++) {
+            assembler.assemble(inputFileName, new WordBuffer());
+        }
+
+        long start = System.nanoTime();
+        for (int i = 0; i < iterations; i++) {
+            assembler.assemble(inputFileName, new WordBuffer());
+        }
+        return (System.nanoTime() - start) / iterations;
+    }
+
+    /**
+     * nextThreadCount
+     * @return - next power of two, or maxThreads if that is passed
+     */
+    private static int nextThreadCount(int threads, int maxThreads) {
+        return (threads < maxThreads && threads * 2 > maxThreads) ? maxThreads : threads * 2;
+    }
+}
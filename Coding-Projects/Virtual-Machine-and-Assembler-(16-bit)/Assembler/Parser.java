@@ -5,9 +5,10 @@
  * Project: Assembler (HACK Architecture)
  */
 
-import java.io.FileInputStream;
 import java.io.IOException;
-import java.util.Scanner;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Paths;
 
 public class Parser {
     // all possible command types
@@ -17,12 +18,12 @@ public class Parser {
     public static final char L_COMMAND = 'L';
 
     // VARIABLES RELATED TO FILE IO
-    private Scanner inputFile;
+    // the whole file is memory-mapped and scanned byte by byte by the lexer
+    private Lexer lexer;
     private int lineNumber;
-    private String rawLine;
 
     // VARIABLES RELATED TO PARSING A LINE
-    private String cleanLine;
+    // Strings are only created (once per line) if one of the String accessors is called
     private char commandType;
     private String symbol;
     private String destMnemonic;
@@ -32,31 +33,65 @@ public class Parser {
     /**
      * Primary Constructor for Parser
      * <p>
-     *     Constructor used to initialize the file IO on an .asm file.
+     *     Constructor used to initialize the file IO on an .asm file. The file is
+     *     memory-mapped (read-only) and handed to a Lexer.
      * </p>
      * Precondition: provided file is ASM file
-     * Postcondition: if file can't be opened, ends program w/error message
+     * Postcondition: parser is positioned before the first line of the file
      * @param inFileName - the name of the file to attempt to open an input stream onto.
+     * @throws IOException - if the file can't be opened
+     * @throws IllegalArgumentException - if the file name does not end in ".asm"
      */
-    public Parser(String inFileName) {
-        // opens input file stream and prepares to parse
-        try {
-            if (inFileName.length() < 5) {
-                throw new IllegalArgumentException("Invalid file name. Must end in \".asm\" and have at least" +
-                        " one character before the file extension.");
-            }
+    public Parser(String inFileName) throws IOException {
+        this(mapSource(inFileName));
+    }
+
+    /**
+     * Secondary Constructor for Parser
+     * <p>
+     *     Constructor used to parse assembly code that is already in memory (e.g., a file
+     *     mapped once with mapSource and parsed more than once).
+     * </p>
+     * Precondition: source holds assembly code between its position and limit
+     * Postcondition: parser is positioned before the first line of source
+     * @param source - buffer holding the assembly code
+     */
+    public Parser(ByteBuffer source) {
+        lexer = new Lexer(source);
+        lineNumber = 0;
+    }
+
+    /**
+     * mapSource
+     * <p>
+     *     Checks the file name and memory-maps (read-only) the whole .asm file.
+     * </p>
+     * Precondition: provided file is ASM file
+     * Postcondition: n/a (the error is left to the caller, so a long running caller such as
+     *                AssemblerServer is not ended by one bad file)
+     * @param inFileName - the name of the file to map
+     * @return - buffer holding the contents of the file
+     * @throws IOException - if the file can't be opened
+     * @throws IllegalArgumentException - if the file name does not end in ".asm"
+     */
+    public static ByteBuffer mapSource(String inFileName) throws IOException {
+        if (inFileName.length() < 5) {
+            throw new IllegalArgumentException("Invalid file name. Must end in \".asm\" and have at least" +
+                    " one character before the file extension.");
+        }
 
-            String fileExtension = inFileName.substring(inFileName.length() - 4);
+        String fileExtension = inFileName.substring(inFileName.length() - 4);
 
-            if (! (fileExtension.equals(".asm")) ) {
-                throw new IllegalArgumentException("Invalid File Extension. Did not find  \".asm\"");
-            }
+        if (! (fileExtension.equals(".asm")) ) {
+            throw new IllegalArgumentException("Invalid File Extension. Did not find  \".asm\"");
+        }
 
-            inputFile = new Scanner(new FileInputStream(inFileName));
-        } catch(IOException e) {
-            System.out.println(e.getMessage());
-            System.out.println("There was an issue opening your assembly code file. Please check the filename.");
-            System.exit(0);
+        // the mapping stays valid after the channel is closed
+        try (FileChannel channel = FileChannel.open(Paths.get(inFileName))) {
+            return channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        } catch (IOException e) {
+            throw new IOException("There was an issue opening your assembly code file " + inFileName +
+                    ". Please check the filename. (" + e + ")", e);
         }
     }
 
@@ -65,11 +100,11 @@ public class Parser {
      * <p>
      *     Simple helper method to verify if the Parser object is pointing to a file.
      * </p>
-     * @throws IllegalStateException - if inputFile is not initialized
+     * @throws IllegalStateException - if the lexer is not initialized
      */
     private void checkIfInputFileIsNonNull() throws IllegalStateException {
-        if (inputFile == null) {
-            throw new IllegalStateException("The Scanner object was not properly initialized.");
+        if (lexer == null) {
+            throw new IllegalStateException("The Lexer object was not properly initialized.");
         }
     }
 
@@ -80,7 +115,7 @@ public class Parser {
      * </p>
      */
     private void checkIfAdvanced() {
-        if (cleanLine == null) {
+        if (lineNumber == 0) {
             throw new IllegalStateException();
         }
     }
@@ -91,192 +126,38 @@ public class Parser {
      *     Simple wrapper method that determines whether there are more lines to parse or not.
      * </p>
      * Precondition: file stream is open
-     * Postcondition: returns true if more commands, else closes stream
+     * Postcondition: returns true if more commands
      * @return - true if there is an additional command to parse, false otherwise.
      */
     public boolean hasMoreCommands() {
         checkIfInputFileIsNonNull(); // avoiding null pointer
 
-        return inputFile.hasNextLine();
+        return lexer.hasMoreLines();
     }
 
     /**
      * advance
      * <p>
      *     PUBLIC method used by outside class in order to advance to the next line.
-     *     Call to this method automatically cleans and parses the line that is returned
-     *     from the nextLine method of Scanner called on the inputFile.
+     *     The lexer skips comments and whitespace and splits the line into slices,
+     *     no Strings are created until an accessor needs one.
      * </p>
      * Precondition: file stream is open, called only if hasMoreCommands()
-     * Postcondition: current instruction parts put into instance variables
+     * Postcondition: current instruction parts available through the accessors
+     * @throws IllegalArgumentException - if a label is missing its closing parenthesis or name
      */
     public void advance() {
         checkIfInputFileIsNonNull(); // avoiding null pointer
 
         if (hasMoreCommands()) {
-            rawLine = inputFile.nextLine();
-            cleanLine();
-
-            parse();
-        }
-    }
-
-    /**
-     * cleanLine
-     * <p>
-     *     Method used to clean a line (i.e., removing spaces, comments, and inline comments
-     * </p>
-     * Precondition: String parameter given (not null)
-     * Postcondition: returned without comments and whitespace
-     */
-    private void cleanLine() {
-        int indexSlash;
-        if(rawLine.contains("//")) {
-            indexSlash = rawLine.indexOf("//");
-            rawLine = rawLine.substring(0, indexSlash);
-        }
-        cleanLine = rawLine.replaceAll("\\s+", "");
-    }
-
-    /**
-     * parseCommandType
-     * <p>
-     *     Method used to determine the type of command that the current line
-     *     of the parser is.
-     * </p>
-     * Precondition: String parameter is clean instruction
-     * Postcondition: returns 'A' (A-instruction), 'C' (C-Instruction),
-     *                'L' (Label), 'N' (no command)
-     */
-    private void parseCommandType() {
-        if(cleanLine == null || cleanLine.length() == 0) {
-            commandType = NO_COMMAND;
-        } else if (cleanLine.charAt(0) == '@') {
-            commandType = A_COMMAND;
-        } else if (cleanLine.charAt(0) == '(') {
-            commandType = L_COMMAND;
-        } else {
-            commandType = C_COMMAND;
-        }
-    }
-
-    /**
-     * parse
-     * <p>
-     *     Method is used to obtain and store crucial parts of an Assembly
-     *     instruction (e.g., symbol for A instruction, dest/comp/jump for
-     *     C instruction.
-     * </p>
-     * Precondition: advance() called so cleanLine has value
-     * Postcondition: appropriate parts (instance vars) of instruction filled
-     */
-    private void parse() {
-        checkIfAdvanced();
-
-        parseCommandType();
-        switch(commandType) {
-            case A_COMMAND:
-                parseSymbol();
-                break;
-            case L_COMMAND:
-                parseSymbol();
-                break;
-            case C_COMMAND:
-                parseDest();
-                parseComp();
-                parseJump();
-                break;
-            default:
-                break;
-        }
-
-    }
-
-    /**
-     * parseSymbol
-     * <p>
-     *     Method used to obtain the symbol from the current clean line
-     *     and store id to the instance variable inside the Parser object.
-     *     This method is specifically for A-Instructions. The symbol
-     *     does NOT contain the '(', ')', or '@' characters.
-     * </p>
-     * Precondition: advance() called so cleanLine has value, call for
-     *               A- and L-commands only
-     * Postcondition: symbol has appropriate value from instruction assigned
-     */
-    private void parseSymbol() {
-        if(cleanLine.charAt(0) == '(') {
-            if (cleanLine.length() < 3 || cleanLine.charAt(cleanLine.length() - 1) != ')') {
-                System.err.println("Either missing closing parenthesis or missing label name: \"" + cleanLine + "\"");
-                throw new IllegalArgumentException("Illegal expression: " + cleanLine);
-            }
-            symbol = cleanLine.substring(1, cleanLine.length() - 1);
-        } else {
-            symbol = cleanLine.substring(1);
-        }
-    }
-
-    /**
-     * parseDest
-     * <p>
-     *     Method used to obtain the dest mnemonic and store it to the instance
-     *     variable inside the Parser object.
-     *     This method is specifically for C-Instructions.
-     * </p>
-     * Precondition: advance() called so cleanLine has value, call for C-inst only
-     * Postcondition: destMnemonic set to appropriate value from instruction
-     */
-    private void parseDest() {
-        int indexOfEquals = cleanLine.indexOf("=");
-        if (indexOfEquals == -1) {
-            destMnemonic = "NULL";
-        } else {
-            destMnemonic = cleanLine.substring(0, indexOfEquals);
-        }
-    }
-
-    /**
-     * parseComp
-     * <p>
-     *     Method used to obtain the comp mnemonic and store it to the instance
-     *     variable inside the Parser object.
-     *     This method is specifically for C-Instructions.
-     * </p>
-     * Precondition: advance() called so cleanLine has value, call for C-inst only
-     * Postcondition: compMnemonic set to appropriate value from instruction
-     */
-    private void parseComp() {
-        int begin, end;
-
-        // if cleanLine does NOT contain a "=", then indexOf returns -1, making begin 0 as intended.
-        begin = cleanLine.indexOf("=") + 1;
-
-        if(cleanLine.contains(";")) {
-            end = cleanLine.indexOf(";");
-        } else {
-            end = cleanLine.length();
-        }
-        compMnemonic = cleanLine.substring(begin, end);
-    }
-
-    /**
-     * parseJump
-     * <p>
-     *     Method used to obtain the jump mnemonic and store it to the instance
-     *     variable inside the Parser object.
-     *     This method is specifically for C-Instructions.
-     * </p>
-     * Precondition: advance() called so cleanLine has value, call for C-inst only
-     * Postcondition: jumpMnemonic set to appropriate value from instruction
-     */
-    private void parseJump() {
-        int begin;
-        char lastChar = cleanLine.charAt(cleanLine.length() - 1);
-        if(cleanLine.contains(";") && lastChar != ';'){
-            begin = cleanLine.indexOf(";") + 1;
-            jumpMnemonic = cleanLine.substring(begin);
-        } else {
-            jumpMnemonic = "NULL";
+            lexer.advance();
+            lineNumber = lexer.getLineNumber();
+            commandType = lexer.getCommandType();
+
+            symbol = null;
+            destMnemonic = null;
+            compMnemonic = null;
+            jumpMnemonic = null;
         }
     }
 
@@ -304,6 +185,9 @@ public class Parser {
      * @return - current symbol from last A or L - Inst call to parse()
      */
     public String getSymbol() {
+        if (symbol == null) {
+            symbol = lexer.getSlice(lexer.getSymbolStart(), lexer.getSymbolEnd());
+        }
         return symbol;
     }
 
@@ -318,6 +202,9 @@ public class Parser {
      * @return - current compMnemonic from last C-Inst call to parse()
      */
     public String getDest() {
+        if (destMnemonic == null) {
+            destMnemonic = mnemonicOrNull(lexer.getDestStart(), lexer.getDestEnd());
+        }
         return destMnemonic;
     }
 
@@ -332,6 +219,9 @@ public class Parser {
      * @return - current compMnemonic from last C-Inst call to parse()
      */
     public String getComp() {
+        if (compMnemonic == null) {
+            compMnemonic = lexer.getSlice(lexer.getCompStart(), Math.max(lexer.getCompStart(), lexer.getCompEnd()));
+        }
         return compMnemonic;
     }
 
@@ -346,9 +236,39 @@ public class Parser {
      * @return - current jumpMnemonic from last C-Inst call to parse()
      */
     public String getJump() {
+        if (jumpMnemonic == null) {
+            jumpMnemonic = mnemonicOrNull(lexer.getJumpStart(), lexer.getJumpEnd());
+        }
         return jumpMnemonic;
     }
 
+    /**
+     * mnemonicOrNull
+     * <p>
+     *     Helper for getDest/getJump, an empty slice is the "NULL" mnemonic.
+     * </p>
+     * @param start - start of the slice
+     * @param end - end of the slice (exclusive)
+     * @return - mnemonic of the slice, "NULL" if empty
+     */
+    private String mnemonicOrNull(int start, int end) {
+        return start == end ? "NULL" : lexer.getSlice(start, end);
+    }
+
+    /**
+     * getLexer
+     * <p>
+     *     Accessor for the lexer, so callers that only need the slices of the current line
+     *     (e.g., encoding C instructions, numeric A instructions) can skip the Strings.
+     * </p>
+     * Precondition: advance was called
+     * Postcondition: n/a
+     * @return - lexer positioned at the current line
+     */
+    public Lexer getLexer() {
+        return lexer;
+    }
+
     /**
      * getCommandTypeString (Debugging method)
      * <p>
@@ -370,10 +290,11 @@ public class Parser {
      * </p>
      * Precondition: advance was called to put value from file in here
      * Postcondition: returns string of current original line from file
-     * @return - current line BEFORE cleanLine() has been called in advance()
+     * @return - current line BEFORE comments and whitespace were removed
      */
     public String getRawLine() {
-        return rawLine;
+        checkIfAdvanced();
+        return lexer.getRawLine();
     }
 
     /**
@@ -381,12 +302,13 @@ public class Parser {
      * <p>
      *     Simple accessor method for current 'cleaned' line.
      * </p>
-     * Precondition: advance and cleanLine were called
+     * Precondition: advance was called
      * Postcondition: returns string of current clean instruction from file
-     * @return - current line AFTER cleanLine() has been called in advance()
+     * @return - current line AFTER comments and whitespace were removed
      */
     public String getCleanLine() {
-        return cleanLine;
+        checkIfAdvanced();
+        return lexer.getCleanLine();
     }
 
     /**
@@ -0,0 +1,594 @@
+/**
+ * Author: Ben Vargas
+ * Course: CS220 - Computer Architecture and Assembly Language
+ * Professor: Nery Chapeton-Lamas
+ * Project: Assembler (HACK Architecture)
+ */
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Optional optimization stage run on the parsed instruction stream before the Assembler's passes
+ * ("-optimize" flag), aimed at the redundant sequences the VM translator's CodeWriter generates.
+ * <p>
+ *     The program is lexed once into a list of A instructions, C instructions (as encoded words),
+ *     and labels. Rules are then applied until none of them changes the program:
+ *     <ol>
+ *         <li>dead code: instructions after an unconditional jump, up to the next label</li>
+ *         <li>jump threading: a jump to a label whose code is just "@L2, 0;JMP" jumps to L2</li>
+ *         <li>jump to next: a side effect free jump to the label right after it is removed</li>
+ *         <li>inverse operations: adjacent pairs such as A=A-1, A=A+1 (or D=!D, D=!D) are removed,
+ *             and so is a push of D followed by a pop to D (CodeWriter's writePushD and
+ *             writePopTopOfStackToD), leaving only "@SP, A=M" if the next instruction reads A</li>
+ *         <li>redundant A loads: "@X" when A already holds X, or an "@X" overwritten by the next
+ *             A instruction before it is used</li>
+ *     </ol>
+ *     The result is written back out as assembly code, so the labels are re-resolved by the normal
+ *     passes (in any mode) and every removed instruction moves the code after it down in ROM.
+ * </p>
+ * <p>
+ *     Moving code is only safe if jumps go through labels. A program that loads an integer literal
+ *     into A right before a jump (a jump to a fixed ROM address) is left unchanged. Code that
+ *     reads A right after a label or after a conditional jump is assumed to load A first, as
+ *     generated code does; threading and jump removal only touch jumps whose fall through code
+ *     loads A.
+ * </p>
+ */
+public class PeepholeOptimizer {
+
+    private static final int MAX_ROUNDS = 32;
+
+    // dest bit for the A register, and the jump bits of an unconditional jump
+    private static final int DEST_A = 4;
+    private static final int JUMP_ALWAYS = 7;
+
+    // words of the inverse pairs (first, second) - either order of a pair cancels out
+    private static final int[][] INVERSE_PAIRS = {
+            {cWord("A", "A+1"), cWord("A", "A-1")},
+            {cWord("D", "D+1"), cWord("D", "D-1")},
+            {cWord("M", "M+1"), cWord("M", "M-1")},
+            {cWord("A", "!A"), cWord("A", "!A")},
+            {cWord("D", "!D"), cWord("D", "!D")},
+            {cWord("M", "!M"), cWord("M", "!M")},
+            {cWord("A", "-A"), cWord("A", "-A")},
+            {cWord("D", "-D"), cWord("D", "-D")},
+            {cWord("M", "-M"), cWord("M", "-M")}};
+
+    // comp bits that do not read A or M (safe to drop, and unaffected by a different A)
+    private static final int[] PURE_COMPS = {compOf("0"), compOf("1"), compOf("-1"), compOf("D"),
+            compOf("!D"), compOf("-D"), compOf("D+1"), compOf("D-1")};
+
+    private static final int UNCONDITIONAL_JUMP = cWord("", "0") | JUMP_ALWAYS;
+
+    // push D followed by pop to D, -1 entries are "@SP"
+    private static final int[] PUSH_POP = {-1, cWord("AM", "M+1"), cWord("A", "A-1"), cWord("M", "D"),
+            -1, cWord("AM", "M-1"), cWord("D", "M")};
+    private static final int LOAD_STACK_TOP = cWord("A", "M");
+
+    // program being optimized - one entry per A instruction, C instruction, or label
+    private char[] kinds;
+    private String[] texts;      // "@symbol", clean C instruction, or label name
+    private boolean[] literals;  // A instruction of an integer literal
+    private int[] words;         // encoded word of each C instruction
+    private int[] lines;         // line of the original source each entry came from
+    private int count;
+    private int sourceLineCount;
+    private boolean rewritten;   // last program was written back out (not skipped)
+
+    // report
+    private int instructionsBefore;
+    private int instructionsAfter;
+    private int deadInstructions;
+    private int threadedJumps;
+    private int removedJumps;        // instructions, two per jump
+    private int cancelledInstructions;
+    private int pushPopPairs;
+    private int redundantLoads;
+    private String skippedReason;
+
+    /**
+     * optimize
+     * <p>
+     *     Optimizes a whole program.
+     * </p>
+     * Precondition: source holds the assembly code between its position and limit
+     * Postcondition: report describes this program, source is not modified
+     * @param source - buffer holding the assembly code
+     * @return - buffer holding the optimized assembly code (source itself if nothing could be done)
+     * @throws AssemblyException - if an instruction is not valid
+     */
+    public ByteBuffer optimize(ByteBuffer source) {
+        deadInstructions = threadedJumps = removedJumps = cancelledInstructions = pushPopPairs = redundantLoads = 0;
+        skippedReason = null;
+        rewritten = false;
+
+        read(source);
+        instructionsBefore = instructionsAfter = instructionCount();
+
+        int jumpLine = findLiteralJump();
+        if (jumpLine >= 0) {
+            skippedReason = "jump to an integer literal ROM address (" + texts[jumpLine] + ")";
+            return source;
+        }
+
+        boolean changed = true;
+        for (int round = 0; changed && round < MAX_ROUNDS; round++) {
+            changed = removeDeadCode();
+            changed |= threadJumps();
+            changed |= removeJumpsToNext();
+            changed |= cancelInversePairs();
+            changed |= cancelPushPopPairs();
+            changed |= removeRedundantLoads();
+        }
+        instructionsAfter = instructionCount();
+
+        StringBuilder optimized = new StringBuilder(count * 8);
+        for (int i = 0; i < count; i++) {
+            if (kinds[i] == Parser.L_COMMAND) {
+                optimized.append('(').append(texts[i]).append(')');
+            } else {
+                optimized.append(texts[i]);
+            }
+            optimized.append('\n');
+        }
+        rewritten = true;
+        return ByteBuffer.wrap(optimized.toString().getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * read
+     * <p>
+     *     Lexes the program into the instruction arrays. C instructions and integer literals are
+     *     checked here, so their errors carry the line number of the original source. The line
+     *     of each entry is kept so later errors can be traced back to it (getSourceLine).
+     * </p>
+     * @param source - buffer holding the assembly code
+     */
+    private void read(ByteBuffer source) {
+        kinds = new char[1024];
+        texts = new String[1024];
+        literals = new boolean[1024];
+        words = new int[1024];
+        lines = new int[1024];
+        count = 0;
+
+        Lexer lexer = new Lexer(source.duplicate());
+        while (lexer.hasMoreLines()) {
+            try {
+                lexer.advance();
+                char kind = lexer.getCommandType();
+                if (kind == Parser.NO_COMMAND) {
+                    continue;
+                }
+                if (count == kinds.length) {
+                    kinds = Arrays.copyOf(kinds, count * 2);
+                    texts = Arrays.copyOf(texts, count * 2);
+                    literals = Arrays.copyOf(literals, count * 2);
+                    words = Arrays.copyOf(words, count * 2);
+                    lines = Arrays.copyOf(lines, count * 2);
+                }
+
+                kinds[count] = kind;
+                lines[count] = lexer.getLineNumber();
+                literals[count] = false;
+                words[count] = Code.INVALID;
+                if (kind == Parser.A_COMMAND) {
+                    String symbol = lexer.getSlice(lexer.getSymbolStart(), lexer.getSymbolEnd());
+                    literals[count] = lexer.isSymbolNumeric() || Assembler.isIntegerLiteral(symbol);
+                    if (literals[count]) {
+                        Code.encodeAInstruction(Integer.parseInt(symbol)); // range check
+                    }
+                    texts[count] = "@" + symbol;
+                } else if (kind == Parser.C_COMMAND) {
+                    words[count] = ParallelEncoder.encodeCInstruction(lexer, lexer.getLineNumber());
+                    texts[count] = lexer.getCleanLine();
+                } else {
+                    texts[count] = lexer.getSlice(lexer.getSymbolStart(), lexer.getSymbolEnd());
+                }
+                count++;
+            } catch (IllegalArgumentException e) {
+                throw AssemblyException.atLine(e, lexer.getLineNumber(), lexer.getCleanLine());
+            }
+        }
+        sourceLineCount = lexer.getLineNumber();
+    }
+
+    /**
+     * findLiteralJump
+     * @return - index of an integer literal A instruction used as a jump target, -1 if there is none
+     */
+    private int findLiteralJump() {
+        int lastLoad = -1;
+        for (int i = 0; i < count; i++) {
+            if (kinds[i] == Parser.A_COMMAND) {
+                lastLoad = i;
+            } else if (kinds[i] == Parser.L_COMMAND) {
+                lastLoad = -1;
+            } else {
+                if (jumpOf(words[i]) != 0 && lastLoad >= 0 && literals[lastLoad]) {
+                    return lastLoad;
+                }
+                if ((destOf(words[i]) & DEST_A) != 0) {
+                    lastLoad = -1;
+                }
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * removeDeadCode
+     * <p>
+     *     Instructions after an unconditional jump can only be reached through a label.
+     * </p>
+     * @return - true if the program changed
+     */
+    private boolean removeDeadCode() {
+        boolean[] removed = new boolean[count];
+        boolean unreachable = false;
+        int removedCount = 0;
+
+        for (int i = 0; i < count; i++) {
+            if (kinds[i] == Parser.L_COMMAND) {
+                unreachable = false;
+            } else if (unreachable) {
+                removed[i] = true;
+                removedCount++;
+            } else if (kinds[i] == Parser.C_COMMAND && jumpOf(words[i]) == JUMP_ALWAYS) {
+                unreachable = true;
+            }
+        }
+
+        deadInstructions += removedCount;
+        return compact(removed, removedCount);
+    }
+
+    /**
+     * threadJumps
+     * <p>
+     *     A jump to a label whose first instruction is "@L2, 0;JMP" goes straight to L2.
+     * </p>
+     * @return - true if the program changed
+     */
+    private boolean threadJumps() {
+        Map<String, Integer> labelTargets = labelTargets();
+        boolean changed = false;
+
+        for (int i = 0; i + 1 < count; i++) {
+            if (!isSymbolLoad(i) || !isRetargetableJump(i + 1)) {
+                continue;
+            }
+
+            // follow the chain of trampolines (bounded, a cycle of them is left alone)
+            String target = texts[i].substring(1);
+            for (int hop = 0; hop < MAX_ROUNDS; hop++) {
+                Integer first = labelTargets.get(target);
+                if (first == null || first + 1 >= count || !isSymbolLoad(first)
+                        || kinds[first + 1] != Parser.C_COMMAND || words[first + 1] != UNCONDITIONAL_JUMP) {
+                    break;
+                }
+                String next = texts[first].substring(1);
+                if (next.equals(target) || next.equals(texts[i].substring(1))) {
+                    break;
+                }
+                target = next;
+            }
+
+            if (!target.equals(texts[i].substring(1))) {
+                texts[i] = "@" + target;
+                threadedJumps++;
+                changed = true;
+            }
+        }
+        return changed;
+    }
+
+    /**
+     * removeJumpsToNext
+     * <p>
+     *     "@L, jump" followed by (L) goes to the same place whether or not it jumps.
+     * </p>
+     * @return - true if the program changed
+     */
+    private boolean removeJumpsToNext() {
+        boolean[] removed = new boolean[count];
+        int removedCount = 0;
+
+        for (int i = 0; i + 2 < count; i++) {
+            if (!isSymbolLoad(i) || kinds[i + 1] != Parser.C_COMMAND || destOf(words[i + 1]) != 0
+                    || jumpOf(words[i + 1]) == 0 || !isPure(words[i + 1])) {
+                continue;
+            }
+
+            int next = i + 2;
+            boolean labelFollows = false;
+            while (next < count && kinds[next] == Parser.L_COMMAND) {
+                labelFollows |= texts[next].equals(texts[i].substring(1));
+                next++;
+            }
+            if (labelFollows && next < count && kinds[next] == Parser.A_COMMAND) {
+                removed[i] = removed[i + 1] = true;
+                removedCount += 2;
+                removedJumps += 2;
+                i++;
+            }
+        }
+        return compact(removed, removedCount);
+    }
+
+    /**
+     * cancelInversePairs
+     * <p>
+     *     Adjacent instructions that undo each other (no label between them) are both removed.
+     * </p>
+     * @return - true if the program changed
+     */
+    private boolean cancelInversePairs() {
+        boolean[] removed = new boolean[count];
+        int removedCount = 0;
+
+        for (int i = 0; i + 1 < count; i++) {
+            if (kinds[i] == Parser.C_COMMAND && kinds[i + 1] == Parser.C_COMMAND && isInversePair(words[i], words[i + 1])) {
+                removed[i] = removed[i + 1] = true;
+                removedCount += 2;
+                i++;
+            }
+        }
+
+        cancelledInstructions += removedCount;
+        return compact(removed, removedCount);
+    }
+
+    /**
+     * cancelPushPopPairs
+     * <p>
+     *     Pushing D and popping it straight back leaves D, and the stack pointer, as they were.
+     *     Only A differs (it ends at the old stack pointer), so when the next instruction does not
+     *     load A itself, "@SP, A=M" is kept to give it that value.
+     * </p>
+     * @return - true if the program changed
+     */
+    private boolean cancelPushPopPairs() {
+        boolean[] removed = new boolean[count];
+        int removedCount = 0;
+
+        for (int i = 0; i + PUSH_POP.length <= count; i++) {
+            if (!isPushPop(i)) {
+                continue;
+            }
+
+            int next = i + PUSH_POP.length;
+            int kept = next < count && kinds[next] == Parser.A_COMMAND ? 0 : 2;
+            if (kept == 2) {
+                words[i + 1] = LOAD_STACK_TOP;
+                texts[i + 1] = "A=M";
+            }
+            for (int j = i + kept; j < next; j++) {
+                removed[j] = true;
+            }
+            removedCount += PUSH_POP.length - kept;
+            pushPopPairs++;
+            i = next - 1;
+        }
+
+        cancelledInstructions += removedCount;
+        return compact(removed, removedCount);
+    }
+
+    private boolean isPushPop(int start) {
+        for (int j = 0; j < PUSH_POP.length; j++) {
+            if (PUSH_POP[j] == -1) {
+                if (kinds[start + j] != Parser.A_COMMAND || !texts[start + j].equals("@SP")) {
+                    return false;
+                }
+            } else if (kinds[start + j] != Parser.C_COMMAND || words[start + j] != PUSH_POP[j]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * removeRedundantLoads
+     * <p>
+     *     Tracks what A holds since the last label: "@X" is removed when A already holds X, and
+     *     an A instruction is removed when the next A instruction overwrites it before any
+     *     C instruction uses it.
+     * </p>
+     * @return - true if the program changed
+     */
+    private boolean removeRedundantLoads() {
+        boolean[] removed = new boolean[count];
+        int removedCount = 0;
+        String knownA = null;
+        int unusedLoad = -1;
+
+        for (int i = 0; i < count; i++) {
+            if (kinds[i] == Parser.L_COMMAND) {
+                knownA = null;
+            } else if (kinds[i] == Parser.A_COMMAND) {
+                if (texts[i].equals(knownA)) {
+                    // the earlier load stays (and is still unused until the next C instruction)
+                    removed[i] = true;
+                    removedCount++;
+                } else {
+                    if (unusedLoad >= 0) {
+                        removed[unusedLoad] = true;
+                        removedCount++;
+                    }
+                    knownA = texts[i];
+                    unusedLoad = i;
+                }
+            } else {
+                unusedLoad = -1;
+                if ((destOf(words[i]) & DEST_A) != 0 || jumpOf(words[i]) == JUMP_ALWAYS) {
+                    knownA = null;
+                }
+            }
+        }
+
+        redundantLoads += removedCount;
+        return compact(removed, removedCount);
+    }
+
+    /**
+     * compact
+     * @param removed - entries to drop
+     * @param removedCount - number of entries to drop
+     * @return - true if any entry was dropped
+     */
+    private boolean compact(boolean[] removed, int removedCount) {
+        if (removedCount == 0) {
+            return false;
+        }
+
+        int kept = 0;
+        for (int i = 0; i < count; i++) {
+            if (!removed[i]) {
+                kinds[kept] = kinds[i];
+                texts[kept] = texts[i];
+                literals[kept] = literals[i];
+                words[kept] = words[i];
+                lines[kept] = lines[i];
+                kept++;
+            }
+        }
+        count = kept;
+        return true;
+    }
+
+    /**
+     * labelTargets
+     * @return - index of the first instruction after each label (labels at the end are left out)
+     */
+    private Map<String, Integer> labelTargets() {
+        Map<String, Integer> labelTargets = new HashMap<String, Integer>();
+        for (int i = 0; i < count; i++) {
+            if (kinds[i] == Parser.L_COMMAND) {
+                int first = i + 1;
+                while (first < count && kinds[first] == Parser.L_COMMAND) {
+                    first++;
+                }
+                if (first < count) {
+                    labelTargets.put(texts[i], first);
+                }
+            }
+        }
+        return labelTargets;
+    }
+
+    /**
+     * isRetargetableJump
+     * <p>
+     *     A jump whose target can change without changing anything else: it writes nothing, does
+     *     not read A or M, and either always jumps or falls through into code that loads A.
+     * </p>
+     */
+    private boolean isRetargetableJump(int i) {
+        if (kinds[i] != Parser.C_COMMAND || destOf(words[i]) != 0 || jumpOf(words[i]) == 0 || !isPure(words[i])) {
+            return false;
+        }
+        return jumpOf(words[i]) == JUMP_ALWAYS || (i + 1 < count && kinds[i + 1] == Parser.A_COMMAND);
+    }
+
+    private boolean isSymbolLoad(int i) {
+        return kinds[i] == Parser.A_COMMAND && !literals[i];
+    }
+
+    private int instructionCount() {
+        int instructions = 0;
+        for (int i = 0; i < count; i++) {
+            if (kinds[i] != Parser.L_COMMAND) {
+                instructions++;
+            }
+        }
+        return instructions;
+    }
+
+    private static boolean isInversePair(int first, int second) {
+        for (int[] pair : INVERSE_PAIRS) {
+            if ((first == pair[0] && second == pair[1]) || (first == pair[1] && second == pair[0])) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static boolean isPure(int word) {
+        int comp = (word >> 6) & 0x7F;
+        for (int pureComp : PURE_COMPS) {
+            if (comp == pureComp) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static int destOf(int word) {
+        return (word >> 3) & 7;
+    }
+
+    private static int jumpOf(int word) {
+        return word & 7;
+    }
+
+    private static int compOf(String comp) {
+        return Code.compBits(comp, 0, comp.length());
+    }
+
+    private static int cWord(String dest, String comp) {
+        int destBits = dest.isEmpty() ? 0 : Code.destBits(dest, 0, dest.length());
+        return Code.encodeCInstruction(compOf(comp), destBits, 0);
+    }
+
+    /**
+     * getReport
+     * @return - instruction counts before and after, and what each rule removed
+     */
+    public String getReport() {
+        if (skippedReason != null) {
+            return "Peephole optimizer skipped: " + skippedReason;
+        }
+        return "Peephole optimizer: " + instructionsBefore + " -> " + instructionsAfter + " instructions ("
+                + (instructionsBefore - instructionsAfter) + " removed: " + deadInstructions + " dead, "
+                + redundantLoads + " redundant A loads, " + cancelledInstructions + " in inverse operations ("
+                + pushPopPairs + " push/pop pairs), " + removedJumps + " in jumps to next; " + threadedJumps
+                + " jumps threaded)";
+    }
+
+    public int getInstructionsBefore() {
+        return instructionsBefore;
+    }
+
+    public int getInstructionsAfter() {
+        return instructionsAfter;
+    }
+
+    /**
+     * getSourceLine
+     * <p>
+     *     Translates a line of the last optimized program (one entry per line) to the line of the
+     *     original source it came from. Lines of a skipped program are the original lines already.
+     * </p>
+     * @param optimizedLine - line of the optimized program (first line is 1), 0 if not tied to a line
+     * @return - line of the original source, 0 if not tied to a line
+     */
+    public int getSourceLine(int optimizedLine) {
+        if (!rewritten || optimizedLine <= 0) {
+            return optimizedLine;
+        }
+        return optimizedLine <= count ? lines[optimizedLine - 1] : sourceLineCount;
+    }
+
+    /**
+     * getSourceLineCount
+     * @return - number of lines in the original source of the last program
+     */
+    public int getSourceLineCount() {
+        return sourceLineCount;
+    }
+}
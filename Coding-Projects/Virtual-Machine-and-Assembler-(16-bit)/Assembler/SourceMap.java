@@ -0,0 +1,198 @@
+/**
+ * Author: Ben Vargas
+ * Course: CS220 - Computer Architecture and Assembly Language
+ * Professor: Nery Chapeton-Lamas
+ * Project: Assembler (HACK Architecture)
+ */
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Source line of every ROM address and the labels of a program, recorded by the Assembler
+ * (see Assembler.setSourceMap) so tools running the machine code (e.g., the Profiler) can
+ * point back at the .asm file.
+ * <p>
+ *     As a file (the Assembler's -map flag writes it next to the output, as NAME.hack.map)
+ *     the map is text: a "source NAME" line, a "label NAME ADDRESS" line for each label in the
+ *     order declared, then an "ADDRESS LINE" line for each instruction. Line numbers are of the
+ *     source file, also with -optimize (an instruction the optimizer rewrote keeps its line).
+ * </p>
+ */
+public class SourceMap {
+    public static final String EXTENSION = ".map";
+
+    private String sourceName;
+    private int[] lines = new int[1024];
+    private int instructionCount;
+    private final List<String> labelNames = new ArrayList<String>();
+    private int[] labelAddresses = new int[64];
+
+    /**
+     * clear
+     * <p>
+     *     Forgets the instructions and labels, the Assembler clears the map before each file.
+     * </p>
+     */
+    public void clear() {
+        sourceName = null;
+        instructionCount = 0;
+        labelNames.clear();
+    }
+
+    /**
+     * setSourceName
+     * @param sourceName - name of the .asm file, null if the code did not come from a file
+     */
+    public void setSourceName(String sourceName) {
+        this.sourceName = sourceName;
+    }
+
+    /**
+     * addInstruction
+     * @param romAddress - ROM address of the instruction (the next one, addresses are added in order)
+     * @param lineNumber - source line of the instruction
+     */
+    public void addInstruction(int romAddress, int lineNumber) {
+        if (romAddress >= lines.length) {
+            lines = Arrays.copyOf(lines, Math.max(romAddress + 1, lines.length * 2));
+        }
+        lines[romAddress] = lineNumber;
+        instructionCount = Math.max(instructionCount, romAddress + 1);
+    }
+
+    /**
+     * addLabel
+     * @param name - name of the label
+     * @param romAddress - ROM address it stands for (labels are added in address order)
+     */
+    public void addLabel(String name, int romAddress) {
+        if (labelNames.size() == labelAddresses.length) {
+            labelAddresses = Arrays.copyOf(labelAddresses, labelAddresses.length * 2);
+        }
+        labelAddresses[labelNames.size()] = romAddress;
+        labelNames.add(name);
+    }
+
+    /**
+     * getSourceName
+     * @return - name of the .asm file, null if not known
+     */
+    public String getSourceName() {
+        return sourceName;
+    }
+
+    /**
+     * getInstructionCount
+     * @return - number of instructions mapped
+     */
+    public int getInstructionCount() {
+        return instructionCount;
+    }
+
+    /**
+     * getLine
+     * @param romAddress - ROM address
+     * @return - source line of the instruction there, 0 if the address is not mapped
+     */
+    public int getLine(int romAddress) {
+        return romAddress >= 0 && romAddress < instructionCount ? lines[romAddress] : 0;
+    }
+
+    /**
+     * getLabel
+     * @param romAddress - ROM address
+     * @return - the label at or last before the address, with "+offset" if it is before it
+     *           (e.g., "LOOP+3"), null if no label comes before the address
+     */
+    public String getLabel(int romAddress) {
+        // last label with an address <= romAddress (the last one declared if several share it)
+        int low = 0, high = labelNames.size() - 1, found = -1;
+        while (low <= high) {
+            int middle = (low + high) >>> 1;
+            if (labelAddresses[middle] <= romAddress) {
+                found = middle;
+                low = middle + 1;
+            } else {
+                high = middle - 1;
+            }
+        }
+        if (found < 0) {
+            return null;
+        }
+        int offset = romAddress - labelAddresses[found];
+        return offset == 0 ? labelNames.get(found) : labelNames.get(found) + "+" + offset;
+    }
+
+    /**
+     * getLabelCount
+     * @return - number of labels
+     */
+    public int getLabelCount() {
+        return labelNames.size();
+    }
+
+    /**
+     * getLabelName
+     * @param index - label index, 0 to getLabelCount - 1, in the order declared
+     * @return - name of the label
+     */
+    public String getLabelName(int index) {
+        return labelNames.get(index);
+    }
+
+    /**
+     * getLabelAddress
+     * @param index - label index, 0 to getLabelCount - 1, in the order declared
+     * @return - ROM address of the label
+     */
+    public int getLabelAddress(int index) {
+        return labelAddresses[index];
+    }
+
+    /**
+     * write
+     * @param out - writer the map is written to as text
+     * @throws IOException - if out could not be written to
+     */
+    public void write(Writer out) throws IOException {
+        String newLine = System.lineSeparator();
+        out.write("source " + (sourceName == null ? "-" : sourceName) + newLine);
+        for (int i = 0; i < labelNames.size(); i++) {
+            out.write("label " + labelNames.get(i) + " " + labelAddresses[i] + newLine);
+        }
+        for (int address = 0; address < instructionCount; address++) {
+            out.write(address + " " + lines[address] + newLine);
+        }
+    }
+
+    /**
+     * read
+     * @param text - lines of a map written by write
+     * @return - the map
+     * @throws IllegalArgumentException - if a line is not part of a map (the message has its line number)
+     */
+    public static SourceMap read(List<String> text) throws IllegalArgumentException {
+        SourceMap map = new SourceMap();
+        for (int i = 0; i < text.size(); i++) {
+            String[] fields = text.get(i).trim().split("\\s+");
+            try {
+                if (fields.length == 2 && fields[0].equals("source")) {
+                    map.setSourceName(fields[1].equals("-") ? null : fields[1]);
+                } else if (fields.length == 3 && fields[0].equals("label")) {
+                    map.addLabel(fields[1], Integer.parseInt(fields[2]));
+                } else if (fields.length == 2) {
+                    map.addInstruction(Integer.parseInt(fields[0]), Integer.parseInt(fields[1]));
+                } else if (fields.length != 1 || !fields[0].isEmpty()) {
+                    throw new NumberFormatException();
+                }
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException("Invalid source map line " + (i + 1) + ": " + text.get(i));
+            }
+        }
+        return map;
+    }
+}
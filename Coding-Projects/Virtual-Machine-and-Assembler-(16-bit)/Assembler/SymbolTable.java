@@ -4,19 +4,52 @@
  * Professor: Nery Chapeton-Lamas
  * Project: Assembler (HACK Architecture)
  */
-import java.util.HashMap;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
 
 public class SymbolTable {
     public static final String INITIAL_VALID_CHARS = "abcdefghijklmnopqrstuvwxyzABCDEFGHIJKLMNOPQRSTUVWXYZ_.$:";
     public static final String ALL_VALID_CHARS = INITIAL_VALID_CHARS + "0123456789";
 
-    // underlying data structure for SymbolTable wrapper class
-    private HashMap<String, Integer> symbolTable;
+    /** id returned by getId when a symbol has never been added or interned */
+    public static final int NO_SYMBOL = -1;
+
+    // address of a symbol that has been interned (has an id) but not added yet
+    private static final int UNDEFINED = -1;
+
+    // 128-bit ASCII sets of the valid characters (bit c of the set is on if char c is valid)
+    private static final long[] INITIAL_VALID_SET = asciiSet(INITIAL_VALID_CHARS);
+    private static final long[] ALL_VALID_SET = asciiSet(ALL_VALID_CHARS);
+
+    // predefined symbols always get ids 0 - 22, in this order
+    private static final String[] PREDEFINED_NAMES = {"SP", "LCL", "ARG", "THIS", "THAT",
+            "R0", "R1", "R2", "R3", "R4", "R5", "R6", "R7", "R8", "R9", "R10", "R11", "R12", "R13", "R14", "R15",
+            "SCREEN", "KBD"};
+    private static final int[] PREDEFINED_ADDRESSES = {0, 1, 2, 3, 4,
+            0, 1, 2, 3, 4, 5, 6, 7, 8, 9, 10, 11, 12, 13, 14, 15,
+            16384, 24576};
+
+    // perfect hash of the predefined symbols: (hash * multiplier) >>> shift gives a distinct
+    // slot for each one, so they are found with a single compare. Multiplier is searched for
+    // once when the class is loaded.
+    private static final int PREDEFINED_SLOT_BITS = 6;
+    private static final int[] PREDEFINED_SLOTS = new int[1 << PREDEFINED_SLOT_BITS]; // slot -> id + 1
+    private static final int PREDEFINED_MULTIPLIER = findPerfectMultiplier();
+
+    // every other symbol lives in an open-addressing table (slot -> id + 1, 0 is an empty slot)
+    private int[] slots;
+    private int[] slotHashes;
+
+    // dense per-id arrays, a symbol's id never changes once it has been interned
+    private String[] names;
+    private int[] hashes;
+    private int[] addresses;
+    private int size;
 
     /**
      * Default Constructor for SymbolTable
      * <p>
-     *     Initializes symbol HashMaps with pre-determined, hardcoded
+     *     Initializes the symbol table with pre-determined, hardcoded
      *     symbols (keys) and their corresponding reserved RAM locations
      *     (values).
      * </p>
@@ -24,31 +57,57 @@ public class SymbolTable {
      * Postcondition: SymbolTable starts with reserved memory location.
      */
     public SymbolTable() {
-        symbolTable = new HashMap<String, Integer>();
-        symbolTable.put("SP", 0);
-        symbolTable.put("LCL", 1);
-        symbolTable.put("ARG", 2);
-        symbolTable.put("THIS", 3);
-        symbolTable.put("THAT", 4);
-
-        symbolTable.put("R0", 0);
-        symbolTable.put("R1", 1);
-        symbolTable.put("R2", 2);
-        symbolTable.put("R3", 3);
-        symbolTable.put("R4", 4);
-        symbolTable.put("R5", 5);
-        symbolTable.put("R6", 6);
-        symbolTable.put("R7", 7);
-        symbolTable.put("R8", 8);
-        symbolTable.put("R9", 9);
-        symbolTable.put("R10", 10);
-        symbolTable.put("R11", 11);
-        symbolTable.put("R12", 12);
-        symbolTable.put("R13", 13);
-        symbolTable.put("R14", 14);
-        symbolTable.put("R15", 15);
-        symbolTable.put("SCREEN", 16384);
-        symbolTable.put("KBD", 24576);
+        slots = new int[256];
+        slotHashes = new int[256];
+        names = new String[256];
+        hashes = new int[256];
+        addresses = new int[256];
+
+        for (int id = 0; id < PREDEFINED_NAMES.length; id++) {
+            names[id] = PREDEFINED_NAMES[id];
+            hashes[id] = PREDEFINED_NAMES[id].hashCode();
+            addresses[id] = PREDEFINED_ADDRESSES[id];
+        }
+        size = PREDEFINED_NAMES.length;
+    }
+
+    /**
+     * asciiSet
+     * @param chars - characters to put in the set
+     * @return - 128-bit set (two longs) with the bit of each character on
+     */
+    private static long[] asciiSet(String chars) {
+        long[] set = new long[2];
+        for (int i = 0; i < chars.length(); i++) {
+            set[chars.charAt(i) >>> 6] |= 1L << chars.charAt(i);
+        }
+        return set;
+    }
+
+    /**
+     * findPerfectMultiplier
+     * <p>
+     *     Searches (odd multipliers, starting from the golden ratio constant) for a multiplier
+     *     that gives every predefined symbol its own slot, and fills PREDEFINED_SLOTS.
+     * </p>
+     * @return - multiplier of the perfect hash
+     */
+    private static int findPerfectMultiplier() {
+        for (int multiplier = 0x9E3779B9; ; multiplier += 2) {
+            Arrays.fill(PREDEFINED_SLOTS, 0);
+            boolean perfect = true;
+            for (int id = 0; id < PREDEFINED_NAMES.length && perfect; id++) {
+                int slot = (PREDEFINED_NAMES[id].hashCode() * multiplier) >>> (32 - PREDEFINED_SLOT_BITS);
+                if (PREDEFINED_SLOTS[slot] != 0) {
+                    perfect = false;
+                } else {
+                    PREDEFINED_SLOTS[slot] = id + 1;
+                }
+            }
+            if (perfect) {
+                return multiplier;
+            }
+        }
     }
 
     /**
@@ -56,7 +115,7 @@ public class SymbolTable {
      * <p>
      *     Method used to add a symbol and address to the SymbolTable
      * </p>
-     * Precondition: Symbol/address pair already in HashMap
+     * Precondition: n/a
      * Postcondition: Adds pair, returns true if added, false if illegal name/symbol/address
      * @param symbol - symbol to be added to the symbol table
      * @param address - int address to map the symbol to
@@ -70,35 +129,70 @@ public class SymbolTable {
             throw new IllegalArgumentException("Invalid address: " + Integer.toString(address));
         }
 
-         if (!isValidName(symbol)) {
+        if (!isValidName(symbol)) {
             System.err.print("An invalid name: " + symbol + " cannot be added to symbol table.");
             return false;
         }
-        symbolTable.put(symbol, address);
+        int id = intern(symbol); // may grow the arrays, so look the array up after
+        addresses[id] = address;
         return true;
     }
 
+    /**
+     * addEntry
+     * <p>
+     *     Method used to give an interned symbol (see intern) its address. A symbol that already
+     *     has an address is given the new one.
+     * </p>
+     * Precondition: id was returned by intern or getId
+     * Postcondition: the symbol maps to address
+     * @param id - id of the symbol
+     * @param address - int address to map the symbol to
+     * @throws IllegalArgumentException - if address is outside of acceptable range, or the name
+     *                                    of the symbol is not valid
+     */
+    public void addEntry(int id, int address) throws IllegalArgumentException {
+        if (address < 0 || address > 24576) {
+            throw new IllegalArgumentException("Invalid address: " + Integer.toString(address));
+        }
+
+        if (!isValidName(names[id])) {
+            throw new IllegalArgumentException("Invalid symbol name: " + names[id]);
+        }
+        addresses[id] = address;
+    }
+
     /**
      * contains
      * <p>
-     *     Method returns a boolean for whether HashMap has the symbol.
+     *     Method returns a boolean for whether the table has an address for the symbol.
      * </p>
      * Precondition: table has been initialized
      * Postcondition: returns boolean if arg is in table or not
-     * @param symbol - symbol to lookup in the HashMap
-     * @return - true if HashMap contains symbol, false otherwise
+     * @param symbol - symbol to lookup in the table
+     * @return - true if table contains symbol, false otherwise
      */
     public boolean contains(String symbol) {
-        return symbolTable.containsKey(symbol);
+        int id = getId(symbol);
+        return id != NO_SYMBOL && addresses[id] != UNDEFINED;
+    }
+
+    /**
+     * contains
+     * @param id - id of an interned symbol
+     * @return - true if the symbol has an address, false otherwise
+     */
+    public boolean contains(int id) {
+        return addresses[id] != UNDEFINED;
     }
 
     /**
      * getAddress
      * <p>
-     *     Method returns address in HashMap of given symbol
+     *     Method returns address in the table of given symbol
      * </p>
-     * Precondition: Symbol is in HashMap
-     * Postcondition: returns boolean if arg is in table or not
+     * Precondition: Symbol is in the table
+     * Postcondition: returns the address of the symbol
      * @param symbol - symbol to look up in the symbol table for an address
      * @return - the address of the symbol
      * @throws IllegalArgumentException - if symbol is not in the table.
@@ -108,13 +202,224 @@ public class SymbolTable {
             throw new IllegalArgumentException();
         }
 
-        return symbolTable.get(symbol);
+        return addresses[getId(symbol)];
+    }
+
+    /**
+     * getAddress
+     * <p>
+     *     Method returns address of an interned symbol by array index (no hashing).
+     * </p>
+     * Precondition: symbol with the id has an address
+     * Postcondition: n/a
+     * @param id - id of the symbol
+     * @return - the address of the symbol
+     * @throws IllegalArgumentException - if the symbol has no address.
+     */
+    public int getAddress(int id) throws IllegalArgumentException {
+        if (addresses[id] == UNDEFINED) {
+            throw new IllegalArgumentException("Symbol has no address: " + names[id]);
+        }
+        return addresses[id];
+    }
+
+    /**
+     * getName
+     * @param id - id of an interned symbol
+     * @return - name of the symbol
+     */
+    public String getName(int id) {
+        return names[id];
+    }
+
+    /**
+     * isPredefined
+     * @param id - id of an interned symbol
+     * @return - true if the symbol is one of the predefined symbols (SP, R0, SCREEN, ...)
+     */
+    public static boolean isPredefined(int id) {
+        return id >= 0 && id < PREDEFINED_NAMES.length;
+    }
+
+    /**
+     * size
+     * @return - number of interned symbols (ids are 0 to size - 1)
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * getId
+     * <p>
+     *     Looks up the id of a symbol without interning it.
+     * </p>
+     * @param symbol - symbol to look up
+     * @return - id of the symbol, NO_SYMBOL if it has never been interned
+     */
+    public int getId(String symbol) {
+        int hash = symbol.hashCode();
+        int id = predefinedId(hash);
+        if (id != NO_SYMBOL && names[id].equals(symbol)) {
+            return id;
+        }
+
+        int mask = slots.length - 1;
+        for (int slot = spread(hash) & mask; slots[slot] != 0; slot = (slot + 1) & mask) {
+            if (slotHashes[slot] == hash && names[slots[slot] - 1].equals(symbol)) {
+                return slots[slot] - 1;
+            }
+        }
+        return NO_SYMBOL;
+    }
+
+    /**
+     * intern
+     * <p>
+     *     Gives a symbol a dense integer id (the same one every time the symbol is interned).
+     *     A new symbol has no address until addEntry is called for it, so contains is still
+     *     false for it.
+     * </p>
+     * Precondition: symbol is non-null
+     * Postcondition: symbol has an id
+     * @param symbol - symbol to intern
+     * @return - id of the symbol
+     */
+    public int intern(String symbol) {
+        int id = getId(symbol);
+        return id != NO_SYMBOL ? id : insert(symbol, symbol.hashCode());
+    }
+
+    /**
+     * intern
+     * <p>
+     *     Same as intern(String) for a symbol that is a slice of a Lexer line. Symbols that are
+     *     already in the table are found without creating a String.
+     * </p>
+     * Precondition: 0 &lt;= start &lt;= end &lt;= text.length
+     * Postcondition: symbol has an id
+     * @param text - bytes holding the symbol
+     * @param start - index of the first byte of the symbol
+     * @param end - index one past the last byte of the symbol
+     * @return - id of the symbol
+     */
+    public int intern(byte[] text, int start, int end) {
+        // same value as String.hashCode for ASCII, anything else goes through a String
+        int hash = 0;
+        for (int i = start; i < end; i++) {
+            if (text[i] < 0) {
+                return intern(new String(text, start, end - start, StandardCharsets.UTF_8));
+            }
+            hash = 31 * hash + text[i];
+        }
+
+        int id = predefinedId(hash);
+        if (id != NO_SYMBOL && sliceEquals(names[id], text, start, end)) {
+            return id;
+        }
+
+        int mask = slots.length - 1;
+        for (int slot = spread(hash) & mask; slots[slot] != 0; slot = (slot + 1) & mask) {
+            if (slotHashes[slot] == hash && sliceEquals(names[slots[slot] - 1], text, start, end)) {
+                return slots[slot] - 1;
+            }
+        }
+        return insert(new String(text, start, end - start, StandardCharsets.US_ASCII), hash);
+    }
+
+    /**
+     * predefinedId
+     * @param hash - String hash of a symbol
+     * @return - id of the only predefined symbol the symbol could be, NO_SYMBOL if none
+     */
+    private static int predefinedId(int hash) {
+        return PREDEFINED_SLOTS[(hash * PREDEFINED_MULTIPLIER) >>> (32 - PREDEFINED_SLOT_BITS)] - 1;
+    }
+
+    /**
+     * spread
+     * @return - hash with the high bits mixed into the low bits used for the slot
+     */
+    private static int spread(int hash) {
+        return hash ^ (hash >>> 16);
+    }
+
+    /**
+     * sliceEquals
+     * @return - true if the ASCII bytes of the slice are the characters of name
+     */
+    private static boolean sliceEquals(String name, byte[] text, int start, int end) {
+        if (name.length() != end - start) {
+            return false;
+        }
+        for (int i = start; i < end; i++) {
+            if (name.charAt(i - start) != text[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * insert
+     * <p>
+     *     Gives a new symbol the next id and adds it to the open-addressing table, doubling
+     *     the arrays when they are half full.
+     * </p>
+     * @param symbol - symbol that is not in the table yet
+     * @param hash - String hash of the symbol
+     * @return - id of the symbol
+     */
+    private int insert(String symbol, int hash) {
+        if (size == names.length) {
+            names = Arrays.copyOf(names, size * 2);
+            hashes = Arrays.copyOf(hashes, size * 2);
+            addresses = Arrays.copyOf(addresses, size * 2);
+        }
+        int id = size++;
+        names[id] = symbol;
+        hashes[id] = hash;
+        addresses[id] = UNDEFINED;
+
+        if ((id - PREDEFINED_NAMES.length) * 2 >= slots.length) {
+            rehash(slots.length * 2);
+        } else {
+            putSlot(id);
+        }
+        return id;
+    }
+
+    /**
+     * rehash
+     * @param capacity - new number of slots (power of 2)
+     */
+    private void rehash(int capacity) {
+        slots = new int[capacity];
+        slotHashes = new int[capacity];
+        for (int id = PREDEFINED_NAMES.length; id < size; id++) {
+            putSlot(id);
+        }
+    }
+
+    /**
+     * putSlot
+     * @param id - id of a symbol to place in the first free slot for its hash
+     */
+    private void putSlot(int id) {
+        int mask = slots.length - 1;
+        int slot = spread(hashes[id]) & mask;
+        while (slots[slot] != 0) {
+            slot = (slot + 1) & mask;
+        }
+        slots[slot] = id + 1;
+        slotHashes[slot] = hashes[id];
     }
 
     /**
      * isValidName
      * <p>
      *     Method used to check validity of identifiers for assembly code symbols.
+     *     Each character is checked against a 128-bit ASCII set.
      * </p>
      * Precondition: Starts with letters or "_.$:" only, numbers allowed after
      * Postcondition: returns true if valid identifier, false otherwise.
@@ -127,29 +432,46 @@ public class SymbolTable {
             throw new IllegalArgumentException();
         }
 
-        String current;
+        char current;
         for(int i = 0; i < symbol.length(); i++) {
-            current = symbol.substring(i, i+1);
+            current = symbol.charAt(i);
             // first character must be valid and NON numeric
-            if (i == 0 && !INITIAL_VALID_CHARS.contains(current)){
+            if (i == 0 && !inSet(INITIAL_VALID_SET, current)){
                 return false;
-            } else if (!ALL_VALID_CHARS.contains(current)){ // checking non-first char
+            } else if (!inSet(ALL_VALID_SET, current)){ // checking non-first char
                 return false;
             }
         }
         return true;
     }
 
+    /**
+     * inSet
+     * @return - true if current is an ASCII character whose bit is on in the set
+     */
+    private static boolean inSet(long[] set, char current) {
+        return current < 128 && (set[current >>> 6] & (1L << current)) != 0;
+    }
+
     /**
      * toString
      * <p>
-     *     Standard toString that is a wrapper for the HashMap.toString() method
+     *     Standard toString listing every symbol that has an address.
      * </p>
-     * @return - string representation of underlying hashtable.
+     * @return - string representation of the table, e.g. {SP=0, LCL=1, ...}
      * Precondition: symbolTable has been initialized
      * Postcondition: n/a
      */
     public String toString() {
-        return symbolTable.toString();
+        StringBuilder builder = new StringBuilder("{");
+        for (int id = 0; id < size; id++) {
+            if (addresses[id] != UNDEFINED) {
+                if (builder.length() > 1) {
+                    builder.append(", ");
+                }
+                builder.append(names[id]).append('=').append(addresses[id]);
+            }
+        }
+        return builder.append('}').toString();
     }
 }
@@ -0,0 +1,103 @@
+/**
+ * Author: Ben Vargas
+ * Course: CS220 - Computer Architecture and Assembly Language
+ * Professor: Nery Chapeton-Lamas
+ * Project: Assembler (HACK Architecture)
+ */
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.WritableByteChannel;
+
+/**
+ * Object used to write encoded instruction words as the lines of a text .hack file.
+ * Words are formatted straight into one reusable byte buffer, which is only handed to the
+ * output stream when it is full (or the writer is closed).
+ */
+public class TextHackWriter implements HackWriter {
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    // line separator is looked up once, same separator PrintWriter.println would use
+    private static final byte[] LINE_SEPARATOR = System.lineSeparator().getBytes();
+
+    private OutputStream outputStream;
+    private byte[] buffer;
+    private int position;
+
+    /**
+     * Primary Constructor for TextHackWriter
+     * <p>
+     *     Wraps an already opened output stream (e.g., FileOutputStream of the .hack file).
+     * </p>
+     * Precondition: outputStream is open
+     * Postcondition: writer is ready for writeWord
+     * @param outputStream - stream the .hack lines are written to
+     */
+    public TextHackWriter(OutputStream outputStream) {
+        this.outputStream = outputStream;
+        buffer = new byte[BUFFER_SIZE];
+        position = 0;
+    }
+
+    /**
+     * Constructor for TextHackWriter over a channel
+     * <p>
+     *     Wraps an already opened channel (e.g., a pipe or socket of an embedding tool).
+     * </p>
+     * Precondition: channel is open
+     * Postcondition: writer is ready for writeWord, close also closes the channel
+     * @param channel - channel the .hack lines are written to
+     */
+    public TextHackWriter(WritableByteChannel channel) {
+        this(Channels.newOutputStream(channel));
+    }
+
+    /**
+     * writeWord
+     * <p>
+     *     Writes one instruction as a line of 16 binary digits.
+     * </p>
+     * Precondition: writer has not been closed
+     * Postcondition: line is in the buffer (or already written to the stream)
+     * @param word - encoded instruction in the low 16 bits
+     * @throws IOException - if the buffer could not be flushed to the stream
+     */
+    public void writeWord(int word) throws IOException {
+        if (position + 16 + LINE_SEPARATOR.length > buffer.length) {
+            flush();
+        }
+
+        position = Code.formatWord(word, buffer, position);
+        for (byte separatorByte : LINE_SEPARATOR) {
+            buffer[position++] = separatorByte;
+        }
+    }
+
+    /**
+     * flush
+     * <p>
+     *     Hands the buffered lines to the output stream.
+     * </p>
+     * @throws IOException - if the stream could not be written to
+     */
+    public void flush() throws IOException {
+        outputStream.write(buffer, 0, position);
+        position = 0;
+    }
+
+    /**
+     * close
+     * <p>
+     *     Flushes the remaining lines and closes the output stream.
+     * </p>
+     * Precondition: n/a
+     * Postcondition: output stream is closed
+     * @throws IOException - if the stream could not be written to or closed
+     */
+    public void close() throws IOException {
+        flush();
+        outputStream.close();
+    }
+}
@@ -0,0 +1,81 @@
+/**
+ * Author: Ben Vargas
+ * Course: CS220 - Computer Architecture and Assembly Language
+ * Professor: Nery Chapeton-Lamas
+ * Project: Assembler (HACK Architecture)
+ */
+
+import java.util.Arrays;
+
+/**
+ * HackWriter that keeps the encoded words in memory (growable int array) instead of
+ * writing a file, e.g. to compare the output of two assembly modes.
+ */
+public class WordBuffer implements HackWriter {
+
+    private int[] words;
+    private int wordCount;
+
+    /**
+     * Default Constructor for WordBuffer
+     * <p>
+     *     Starts with room for 1024 words, the array doubles when it is full.
+     * </p>
+     */
+    public WordBuffer() {
+        words = new int[1024];
+        wordCount = 0;
+    }
+
+    /**
+     * writeWord
+     * <p>
+     *     Appends one instruction to the buffer.
+     * </p>
+     * @param word - encoded instruction in the low 16 bits
+     */
+    public void writeWord(int word) {
+        if (wordCount == words.length) {
+            words = Arrays.copyOf(words, wordCount * 2);
+        }
+        words[wordCount++] = word & 0xFFFF;
+    }
+
+    /**
+     * expectWords
+     * <p>
+     *     Grows the array to hold wordCount words, so it is not doubled while they are written.
+     * </p>
+     * @param wordCount - number of words that will be written
+     */
+    public void expectWords(int wordCount) {
+        if (wordCount > words.length) {
+            words = Arrays.copyOf(words, wordCount);
+        }
+    }
+
+    /**
+     * close
+     * <p>
+     *     Nothing to release, words stay available.
+     * </p>
+     */
+    public void close() {
+    }
+
+    /**
+     * getWords
+     * @return - copy of the words written so far, in ROM order
+     */
+    public int[] getWords() {
+        return Arrays.copyOf(words, wordCount);
+    }
+
+    /**
+     * getWordCount
+     * @return - number of words written so far
+     */
+    public int getWordCount() {
+        return wordCount;
+    }
+}
@@ -0,0 +1,416 @@
+/**
+ * Author: Ben Vargas
+ * Course: CS220 - Computer Architecture and Assembly Language
+ * Professor: Nery Chapeton-Lamas
+ * Project: Assembler (HACK Architecture)
+ */
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Repeatable micro and end-to-end benchmarks of the assembler, run on a corpus from CorpusGenerator.
+ * <p>
+ *     Each benchmark is run for a number of warmup iterations, then measured iterations of a fixed
+ *     time each, like a JMH run in throughput mode. One operation is one pass over the whole
+ *     corpus (lexing it, assembling it, looking up all of its mnemonics or symbols, ...). For the
+ *     measured iterations the report has the operations per second (mean and standard deviation),
+ *     source lines per second, and the same numbers as the JMH GC profiler: allocation rate,
+ *     bytes allocated per operation, and the count and time of garbage collections.
+ * </p>
+ * <p>
+ *     Allocation is measured on the calling thread, so the encoding done on the ForkJoin pool by
+ *     assemble.parallel is not counted. Run with a fixed heap (e.g., -Xms2g -Xmx2g) so the GC
+ *     numbers of separate runs can be compared.
+ * </p>
+ * Build: javac -sourcepath ../Assembler:../Emulator -d build *.java
+ * Usage: java -cp build AssemblerBenchmark [-instructions N] [-seed S] [-warmup N] [-iterations N]
+ *                                          [-time ms] [benchmark name prefix...]
+ *        e.g. java -cp build AssemblerBenchmark -instructions 1000000 assemble
+ */
+public class AssemblerBenchmark {
+    public static final int DEFAULT_INSTRUCTIONS = 200000;
+    public static final int DEFAULT_WARMUP = 3;
+    public static final int DEFAULT_ITERATIONS = 5;
+    public static final int DEFAULT_TIME_MILLIS = 1000;
+
+    // results of every operation are added here, so the JIT can not remove the work
+    private static volatile long sink;
+
+    /**
+     * One benchmark: a name and the operation to repeat.
+     */
+    private abstract static class Benchmark {
+        final String name;
+
+        Benchmark(String name) {
+            this.name = name;
+        }
+
+        /**
+         * run
+         * @return - a value derived from the work done (added to the sink)
+         * @throws IOException - if an assembler writer fails
+         */
+        abstract long run() throws IOException;
+    }
+
+    // ALGORITHM:
+    // parse command line for corpus size, seed, iteration settings, and benchmark names
+    // generate the corpus once, and pull its mnemonics and symbols out for the component benchmarks
+    // for each selected benchmark: warmup iterations, then measured iterations
+    // print one row of throughput and allocation numbers per benchmark
+
+    public static void main(String[] args) {
+        int instructions = DEFAULT_INSTRUCTIONS, warmup = DEFAULT_WARMUP, iterations = DEFAULT_ITERATIONS;
+        int timeMillis = DEFAULT_TIME_MILLIS;
+        long seed = CorpusGenerator.DEFAULT_SEED;
+        List<String> selected = new ArrayList<String>();
+
+        for (int i = 0; i < args.length; i++) {
+            if (args[i].equals("-instructions") && i + 1 < args.length) {
+                instructions = Integer.parseInt(args[++i]);
+            } else if (args[i].equals("-seed") && i + 1 < args.length) {
+                seed = Long.parseLong(args[++i]);
+            } else if (args[i].equals("-warmup") && i + 1 < args.length) {
+                warmup = Integer.parseInt(args[++i]);
+            } else if (args[i].equals("-iterations") && i + 1 < args.length) {
+                iterations = Integer.parseInt(args[++i]);
+            } else if (args[i].equals("-time") && i + 1 < args.length) {
+                timeMillis = Integer.parseInt(args[++i]);
+            } else {
+                selected.add(args[i]);
+            }
+        }
+
+        if (instructions < 1 || warmup < 0 || iterations < 1 || timeMillis < 1) {
+            System.err.println("Usage: java AssemblerBenchmark [-instructions N] [-seed S] [-warmup N] " +
+                    "[-iterations N] [-time ms] [benchmark name prefix...]");
+            System.exit(0);
+        }
+
+        byte[] corpus = new CorpusGenerator(instructions, CorpusGenerator.DEFAULT_LABEL_DENSITY,
+                CorpusGenerator.DEFAULT_VARIABLES, CorpusGenerator.DEFAULT_COMMENT_RATIO,
+                CorpusGenerator.DEFAULT_WHITESPACE_NOISE, seed).generate();
+        int lines = countLines(corpus);
+        System.out.printf("Corpus: %d instructions, %d lines, %d bytes (seed %d)%n", instructions, lines,
+                corpus.length, seed);
+        System.out.printf("%d warmup and %d measured iterations of %d ms per benchmark%n%n", warmup, iterations,
+                timeMillis);
+
+        List<Benchmark> benchmarks = createBenchmarks(ByteBuffer.wrap(corpus).asReadOnlyBuffer());
+        System.out.printf("%-22s %12s %10s %14s %12s %14s %8s %10s%n", "Benchmark", "ops/s", "stdev", "lines/s",
+                "MB/s alloc", "B/op alloc", "gc.count", "gc.ms");
+
+        try {
+            for (Benchmark benchmark : benchmarks) {
+                if (isSelected(benchmark.name, selected)) {
+                    measure(benchmark, lines, warmup, iterations, timeMillis);
+                }
+            }
+        } catch (IOException | IllegalArgumentException e) {
+            System.err.println(e.getMessage());
+            System.err.println("Benchmark failed.");
+            System.exit(0);
+        }
+    }
+
+    /**
+     * createBenchmarks
+     * <p>
+     *     Makes every benchmark. The component benchmarks get their inputs (mnemonics, symbol
+     *     names) from one lexing pass over the corpus, so they measure only the component.
+     * </p>
+     * @param corpus - the generated program (read-only, each benchmark uses a duplicate)
+     * @return - the benchmarks, in the order they are run
+     */
+    private static List<Benchmark> createBenchmarks(final ByteBuffer corpus) {
+        final List<String> comps = new ArrayList<String>();
+        final List<String> dests = new ArrayList<String>();
+        final List<String> jumps = new ArrayList<String>();
+        final List<String> symbols = new ArrayList<String>();
+        Parser scan = new Parser(corpus.duplicate());
+        while (scan.hasMoreCommands()) {
+            scan.advance();
+            if (scan.getCommandType() == Parser.C_COMMAND) {
+                comps.add(scan.getComp());
+                dests.add(scan.getDest());
+                jumps.add(scan.getJump());
+            } else if (scan.getCommandType() == Parser.A_COMMAND || scan.getCommandType() == Parser.L_COMMAND) {
+                symbols.add(scan.getSymbol());
+            }
+        }
+        final String[] compArray = comps.toArray(new String[0]);
+        final String[] destArray = dests.toArray(new String[0]);
+        final String[] jumpArray = jumps.toArray(new String[0]);
+        final String[] symbolArray = symbols.toArray(new String[0]);
+
+        List<Benchmark> benchmarks = new ArrayList<Benchmark>();
+        benchmarks.add(new Benchmark("lexer.advance") {
+            long run() {
+                Lexer lexer = new Lexer(corpus.duplicate());
+                long sum = 0;
+                while (lexer.hasMoreLines()) {
+                    lexer.advance();
+                    sum += lexer.getCommandType();
+                }
+                return sum;
+            }
+        });
+        benchmarks.add(new Benchmark("parser.advance") {
+            long run() {
+                Parser parser = new Parser(corpus.duplicate());
+                long sum = 0;
+                while (parser.hasMoreCommands()) {
+                    parser.advance();
+                    char type = parser.getCommandType();
+                    if (type == Parser.C_COMMAND) {
+                        sum += parser.getComp().length() + parser.getDest().length() + parser.getJump().length();
+                    } else if (type == Parser.A_COMMAND || type == Parser.L_COMMAND) {
+                        sum += parser.getSymbol().length();
+                    }
+                }
+                return sum;
+            }
+        });
+        benchmarks.add(new Benchmark("code.bits") {
+            long run() {
+                long sum = 0;
+                for (int i = 0; i < compArray.length; i++) {
+                    sum += Code.encodeCInstruction(Code.compBits(compArray[i], 0, compArray[i].length()),
+                            Code.destBits(destArray[i], 0, destArray[i].length()),
+                            Code.jumpBits(jumpArray[i], 0, jumpArray[i].length()));
+                }
+                return sum;
+            }
+        });
+        benchmarks.add(new Benchmark("code.getComp") {
+            private final Code code = new Code();
+
+            long run() {
+                long sum = 0;
+                for (String comp : compArray) {
+                    sum += code.getComp(comp).length();
+                }
+                return sum;
+            }
+        });
+        benchmarks.add(new Benchmark("symbolTable.addEntry") {
+            long run() {
+                SymbolTable table = new SymbolTable();
+                long sum = 0;
+                for (int i = 0; i < symbolArray.length; i++) {
+                    if (!Assembler.isIntegerLiteral(symbolArray[i]) && table.addEntry(symbolArray[i], i & 16383)) {
+                        sum++;
+                    }
+                }
+                return sum + table.size();
+            }
+        });
+        benchmarks.add(new Benchmark("symbolTable.getAddress") {
+            private final SymbolTable table = new SymbolTable();
+            private final String[] names = definedSymbols(table, symbolArray);
+
+            long run() {
+                long sum = 0;
+                for (String name : names) {
+                    sum += table.getAddress(name);
+                }
+                return sum;
+            }
+        });
+        benchmarks.add(assembleBenchmark("assemble.twoPass", corpus, Assembler.TWO_PASS, false));
+        benchmarks.add(assembleBenchmark("assemble.singlePass", corpus, Assembler.SINGLE_PASS, false));
+        benchmarks.add(assembleBenchmark("assemble.parallel", corpus, Assembler.PARALLEL, false));
+        benchmarks.add(assembleBenchmark("assemble.text", corpus, Assembler.TWO_PASS, true));
+        return benchmarks;
+    }
+
+    /**
+     * assembleBenchmark
+     * @param name - name of the benchmark
+     * @param corpus - the generated program
+     * @param mode - assembly mode, see Assembler(int)
+     * @param text - true to format the .hack text (to a stream that discards it), false to keep words
+     * @return - benchmark of the whole assembler
+     */
+    private static Benchmark assembleBenchmark(String name, final ByteBuffer corpus, final int mode,
+                                               final boolean text) {
+        return new Benchmark(name) {
+            private final Assembler assembler = new Assembler(mode);
+
+            long run() throws IOException {
+                if (text) {
+                    TextHackWriter writer = new TextHackWriter(OutputStream.nullOutputStream());
+                    assembler.assemble(corpus.duplicate(), writer);
+                    writer.close();
+                    return assembler.getInstructionCount();
+                }
+                WordBuffer words = new WordBuffer();
+                assembler.assemble(corpus.duplicate(), words);
+                return words.getWordCount();
+            }
+        };
+    }
+
+    /**
+     * definedSymbols
+     * @param table - table to give every symbol of the corpus an address in
+     * @param symbols - A and L command symbols of the corpus
+     * @return - symbols to look up, in corpus order (integer literals left out)
+     */
+    private static String[] definedSymbols(SymbolTable table, String[] symbols) {
+        List<String> names = new ArrayList<String>();
+        for (int i = 0; i < symbols.length; i++) {
+            if (!Assembler.isIntegerLiteral(symbols[i])) {
+                if (!table.contains(symbols[i])) {
+                    table.addEntry(symbols[i], i & 16383);
+                }
+                names.add(symbols[i]);
+            }
+        }
+        return names.toArray(new String[0]);
+    }
+
+    /**
+     * measure
+     * <p>
+     *     Runs the warmup iterations, then the measured iterations, and prints the result row.
+     *     Each iteration repeats the operation until the iteration time has passed.
+     * </p>
+     * @param benchmark - benchmark to run
+     * @param lines - number of lines in the corpus
+     * @param warmup - number of warmup iterations
+     * @param iterations - number of measured iterations
+     * @param timeMillis - time of each iteration
+     * @throws IOException - if the benchmark fails
+     */
+    private static void measure(Benchmark benchmark, int lines, int warmup, int iterations, int timeMillis)
+            throws IOException {
+        for (int i = 0; i < warmup; i++) {
+            iteration(benchmark, timeMillis);
+        }
+
+        long allocatedBefore = allocatedBytes(), gcCountBefore = gcCount(), gcMillisBefore = gcMillis();
+        long totalOps = 0, totalNanos = 0;
+        double[] opsPerSecond = new double[iterations];
+        for (int i = 0; i < iterations; i++) {
+            long start = System.nanoTime();
+            long ops = iteration(benchmark, timeMillis);
+            long nanos = System.nanoTime() - start;
+            opsPerSecond[i] = ops / (nanos / 1e9);
+            totalOps += ops;
+            totalNanos += nanos;
+        }
+        long allocated = allocatedBytes() - allocatedBefore;
+
+        double mean = 0, variance = 0;
+        for (double value : opsPerSecond) {
+            mean += value / iterations;
+        }
+        for (double value : opsPerSecond) {
+            variance += (value - mean) * (value - mean) / Math.max(1, iterations - 1);
+        }
+
+        System.out.printf("%-22s %12.2f %10.2f %14.0f %12.1f %14.0f %8d %10d%n", benchmark.name, mean,
+                Math.sqrt(variance), mean * lines, allocatedBefore < 0 ? -1 : allocated / 1048576.0 / (totalNanos / 1e9),
+                allocatedBefore < 0 ? -1 : (double) allocated / totalOps, gcCount() - gcCountBefore,
+                gcMillis() - gcMillisBefore);
+    }
+
+    /**
+     * iteration
+     * @param benchmark - benchmark to run
+     * @param timeMillis - time of the iteration
+     * @return - number of operations completed
+     * @throws IOException - if the benchmark fails
+     */
+    private static long iteration(Benchmark benchmark, int timeMillis) throws IOException {
+        long end = System.nanoTime() + timeMillis * 1000000L;
+        long ops = 0, result = 0;
+        do {
+            result += benchmark.run();
+            ops++;
+        } while (System.nanoTime() < end);
+        sink += result;
+        return ops;
+    }
+
+    /**
+     * allocatedBytes
+     * @return - bytes allocated so far by the calling thread, -1 if the JVM can not measure it
+     */
+    private static long allocatedBytes() {
+        ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        if (threads instanceof com.sun.management.ThreadMXBean) {
+            com.sun.management.ThreadMXBean allocationCounter = (com.sun.management.ThreadMXBean) threads;
+            if (allocationCounter.isThreadAllocatedMemorySupported() && allocationCounter.isThreadAllocatedMemoryEnabled()) {
+                return allocationCounter.getThreadAllocatedBytes(Thread.currentThread().getId());
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * gcCount
+     * @return - number of garbage collections so far, summed over all collectors
+     */
+    private static long gcCount() {
+        long count = 0;
+        for (GarbageCollectorMXBean collector : ManagementFactory.getGarbageCollectorMXBeans()) {
+            count += Math.max(0, collector.getCollectionCount());
+        }
+        return count;
+    }
+
+    /**
+     * gcMillis
+     * @return - milliseconds spent in garbage collection so far, summed over all collectors
+     */
+    private static long gcMillis() {
+        long millis = 0;
+        for (GarbageCollectorMXBean collector : ManagementFactory.getGarbageCollectorMXBeans()) {
+            millis += Math.max(0, collector.getCollectionTime());
+        }
+        return millis;
+    }
+
+    /**
+     * countLines
+     * @param corpus - the generated program
+     * @return - number of lines (the generator ends every line with '\n')
+     */
+    private static int countLines(byte[] corpus) {
+        int lines = 0;
+        for (byte current : corpus) {
+            if (current == '\n') {
+                lines++;
+            }
+        }
+        return lines;
+    }
+
+    /**
+     * isSelected
+     * @param name - name of a benchmark
+     * @param selected - name prefixes from the command line, empty to run every benchmark
+     * @return - true if the benchmark should run
+     */
+    private static boolean isSelected(String name, List<String> selected) {
+        if (selected.isEmpty()) {
+            return true;
+        }
+        for (String prefix : selected) {
+            if (name.startsWith(prefix)) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
@@ -0,0 +1,266 @@
+/**
+ * Author: Ben Vargas
+ * Course: CS220 - Computer Architecture and Assembly Language
+ * Professor: Nery Chapeton-Lamas
+ * Project: Assembler (HACK Architecture)
+ */
+
+import java.io.BufferedWriter;
+import java.io.ByteArrayOutputStream;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+
+/**
+ * Deterministic generator of synthetic HACK assembly programs for benchmarking the assembler.
+ * <p>
+ *     Programs are built from the same kinds of snippets as Mult.asm and Fill.asm (load/store of
+ *     a variable, arithmetic with a constant, conditional jumps to a loop label, pointer writes
+ *     to SCREEN, plain C instructions), so any size from a few lines to millions of lines has
+ *     the same mix of instructions. The same settings and seed always give the same program.
+ * </p>
+ * <p>
+ *     Settings: instructions (size of the program), label density (chance of a label before
+ *     each snippet), variable count (variables are var0 ... varN-1), comment ratio (chance of
+ *     a comment after an instruction, and of a comment line between snippets), and whitespace
+ *     noise (chance of indentation, trailing spaces, and blank lines). Every label that is
+ *     jumped to is declared (before MAX_LABEL_ADDRESS), so every generated program assembles.
+ * </p>
+ * Usage: java CorpusGenerator [-instructions N] [-labels density] [-variables N] [-comments ratio]
+ *                             [-noise ratio] [-seed S] output.asm
+ */
+public class CorpusGenerator {
+    public static final int DEFAULT_INSTRUCTIONS = 1000000;
+    public static final double DEFAULT_LABEL_DENSITY = 0.05;
+    public static final int DEFAULT_VARIABLES = 200;
+    public static final double DEFAULT_COMMENT_RATIO = 0.25;
+    public static final double DEFAULT_WHITESPACE_NOISE = 0.1;
+    public static final long DEFAULT_SEED = 220;
+
+    // labels are all declared before this ROM address, since SymbolTable.addEntry rejects higher
+    // addresses (instructions after it are still generated, so the size is not limited)
+    public static final int MAX_LABEL_ADDRESS = 24560;
+
+    private static final String[] COMPS = {"0", "1", "-1", "D", "A", "!D", "!A", "-D", "-A", "D+1", "A+1", "D-1",
+            "A-1", "D+A", "D-A", "A-D", "D&A", "D|A", "M", "!M", "-M", "M+1", "M-1", "D+M", "D-M", "M-D", "D&M", "D|M"};
+    private static final String[] DESTS = {"M", "D", "MD", "A", "AM", "AD", "AMD"};
+    private static final String[] JUMPS = {"JGT", "JEQ", "JGE", "JLT", "JNE", "JLE", "JMP"};
+    private static final String[] PREDEFINED = {"SP", "LCL", "ARG", "THIS", "THAT", "R0", "R1", "R2", "R13",
+            "R14", "R15", "SCREEN", "KBD"};
+    private static final String[] COMMENTS = {"// load the counter", "// keep the running sum",
+            "// loop until done", "// next screen word", "// restore D"};
+
+    private final int instructions;
+    private final double labelDensity;
+    private final int variableCount;
+    private final double commentRatio;
+    private final double whitespaceNoise;
+    private final long seed;
+
+    // ALGORITHM:
+    // parse command line for the settings and output file name
+    // write snippets until the program has the requested number of instructions,
+    //   declaring a label before a snippet now and then
+    // once the program reaches MAX_LABEL_ADDRESS (or its end), declare every label that may
+    //   have been jumped to but was not declared yet
+
+    public static void main(String[] args) {
+        int instructions = DEFAULT_INSTRUCTIONS, variableCount = DEFAULT_VARIABLES;
+        double labelDensity = DEFAULT_LABEL_DENSITY, commentRatio = DEFAULT_COMMENT_RATIO;
+        double whitespaceNoise = DEFAULT_WHITESPACE_NOISE;
+        long seed = DEFAULT_SEED;
+        String outputFileName = null;
+
+        for (int i = 0; i < args.length; i++) {
+            if (args[i].equals("-instructions") && i + 1 < args.length) {
+                instructions = Integer.parseInt(args[++i]);
+            } else if (args[i].equals("-labels") && i + 1 < args.length) {
+                labelDensity = Double.parseDouble(args[++i]);
+            } else if (args[i].equals("-variables") && i + 1 < args.length) {
+                variableCount = Integer.parseInt(args[++i]);
+            } else if (args[i].equals("-comments") && i + 1 < args.length) {
+                commentRatio = Double.parseDouble(args[++i]);
+            } else if (args[i].equals("-noise") && i + 1 < args.length) {
+                whitespaceNoise = Double.parseDouble(args[++i]);
+            } else if (args[i].equals("-seed") && i + 1 < args.length) {
+                seed = Long.parseLong(args[++i]);
+            } else {
+                outputFileName = args[i];
+            }
+        }
+
+        if (outputFileName == null) {
+            System.err.println("Usage: java CorpusGenerator [-instructions N] [-labels density] [-variables N] " +
+                    "[-comments ratio] [-noise ratio] [-seed S] output.asm");
+            System.exit(0);
+        }
+
+        try (Writer output = new BufferedWriter(new FileWriter(outputFileName, StandardCharsets.US_ASCII), 1 << 16)) {
+            CorpusGenerator generator = new CorpusGenerator(instructions, labelDensity, variableCount, commentRatio,
+                    whitespaceNoise, seed);
+            int lines = generator.write(output);
+            System.out.println("Wrote " + lines + " lines (" + instructions + " instructions) to " + outputFileName);
+        } catch (IOException | IllegalArgumentException e) {
+            System.err.println(e.getMessage());
+            System.err.println("Could not write " + outputFileName);
+            System.exit(0);
+        }
+    }
+
+    /**
+     * Primary Constructor for CorpusGenerator
+     * @param instructions - number of A and C instructions in the program (at least 1)
+     * @param labelDensity - chance (0 to 1) of a label being declared before each snippet
+     * @param variableCount - number of distinct variables used (at least 1)
+     * @param commentRatio - chance (0 to 1) of a comment after an instruction or between snippets
+     * @param whitespaceNoise - chance (0 to 1) of extra indentation, trailing spaces, and blank lines
+     * @param seed - seed of the random choices
+     * @throws IllegalArgumentException - if a setting is out of range
+     */
+    public CorpusGenerator(int instructions, double labelDensity, int variableCount, double commentRatio,
+                           double whitespaceNoise, long seed) throws IllegalArgumentException {
+        if (instructions < 1 || variableCount < 1 || !isRatio(labelDensity) || !isRatio(commentRatio)
+                || !isRatio(whitespaceNoise)) {
+            throw new IllegalArgumentException("Invalid corpus settings: " + instructions + " instructions, " +
+                    labelDensity + " labels, " + variableCount + " variables, " + commentRatio + " comments, " +
+                    whitespaceNoise + " noise");
+        }
+        this.instructions = instructions;
+        this.labelDensity = labelDensity;
+        this.variableCount = variableCount;
+        this.commentRatio = commentRatio;
+        this.whitespaceNoise = whitespaceNoise;
+        this.seed = seed;
+    }
+
+    /**
+     * generate
+     * @return - the program as ASCII bytes, e.g. to wrap in a ByteBuffer for Assembler.assemble
+     */
+    public byte[] generate() {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream((int) Math.min(1 << 30, instructions * 12L));
+        try (Writer output = new BufferedWriter(new OutputStreamWriter(bytes, StandardCharsets.US_ASCII))) {
+            write(output);
+        } catch (IOException e) {
+            throw new IllegalStateException("Writing to memory failed", e);
+        }
+        return bytes.toByteArray();
+    }
+
+    /**
+     * write
+     * <p>
+     *     Writes the program. Labels are named LOOP0, LOOP1, ... in the order they are declared;
+     *     jumps go to one of the labels expected over the whole program, so some jumps are
+     *     forward references, and the labels that were not declared yet are all declared once
+     *     the program reaches MAX_LABEL_ADDRESS (or its last instruction).
+     * </p>
+     * Precondition: output is open
+     * Postcondition: the whole program has been written (output is not closed)
+     * @param output - where to write the program
+     * @return - number of lines written
+     * @throws IOException - if output could not be written
+     */
+    public int write(Writer output) throws IOException {
+        Random random = new Random(seed);
+        int labelRange = Math.min(instructions, MAX_LABEL_ADDRESS);
+        int expectedLabels = Math.max(1, (int) (labelRange / 3 * labelDensity));
+        int labelsDeclared = 0;
+        int lines = 0;
+        int written = 0;
+
+        output.write("// generated by CorpusGenerator (seed " + seed + ")\n");
+        lines++;
+
+        while (written < instructions) {
+            if (random.nextDouble() < whitespaceNoise) {
+                output.write(random.nextBoolean() ? "\n" : "   \n");
+                lines++;
+            }
+            if (random.nextDouble() < commentRatio / 4) {
+                output.write(COMMENTS[random.nextInt(COMMENTS.length)]);
+                output.write('\n');
+                lines++;
+            }
+            if (labelsDeclared < expectedLabels) {
+                if (written >= labelRange - 1) {
+                    // every label that may have been jumped to has to exist
+                    while (labelsDeclared < expectedLabels) {
+                        output.write("(LOOP" + labelsDeclared++ + ")\n");
+                        lines++;
+                    }
+                } else if (random.nextDouble() < labelDensity) {
+                    output.write("(LOOP" + labelsDeclared++ + ")\n");
+                    lines++;
+                }
+            }
+
+            String var = "var" + random.nextInt(variableCount);
+            String[] snippet;
+            switch (random.nextInt(6)) {
+                case 0: // load a variable
+                    snippet = new String[] {"@" + var, "D=M"};
+                    break;
+                case 1: // store to a variable
+                    snippet = new String[] {"@" + var, "M=D"};
+                    break;
+                case 2: // add a constant
+                    snippet = new String[] {"@" + random.nextInt(32768), "D=D+A"};
+                    break;
+                case 3: // conditional jump to a loop label
+                    snippet = new String[] {"@LOOP" + random.nextInt(expectedLabels),
+                            "D;" + JUMPS[random.nextInt(JUMPS.length)]};
+                    break;
+                case 4: // pointer write, as in Fill.asm
+                    snippet = new String[] {"@" + PREDEFINED[random.nextInt(PREDEFINED.length)], "D=A", "@" + var,
+                            "A=M", "M=-1"};
+                    break;
+                default: // any C instruction
+                    snippet = new String[] {DESTS[random.nextInt(DESTS.length)] + "=" +
+                            COMPS[random.nextInt(COMPS.length)]};
+                    break;
+            }
+
+            for (int i = 0; i < snippet.length && written < instructions; i++) {
+                writeInstruction(output, snippet[i], random);
+                written++;
+                lines++;
+            }
+        }
+        return lines;
+    }
+
+    /**
+     * writeInstruction
+     * @param output - where to write the instruction
+     * @param instruction - the instruction
+     * @param random - source of the noise and comment choices
+     * @throws IOException - if output could not be written
+     */
+    private void writeInstruction(Writer output, String instruction, Random random) throws IOException {
+        if (random.nextDouble() < whitespaceNoise) {
+            output.write(random.nextBoolean() ? "    " : "\t");
+        }
+        output.write(instruction);
+        if (random.nextDouble() < whitespaceNoise) {
+            output.write("  ");
+        }
+        if (random.nextDouble() < commentRatio) {
+            output.write(" ");
+            output.write(COMMENTS[random.nextInt(COMMENTS.length)]);
+        }
+        output.write('\n');
+    }
+
+    /**
+     * isRatio
+     * @param value - setting to check
+     * @return - true if value is between 0 and 1
+     */
+    private static boolean isRatio(double value) {
+        return value >= 0 && value <= 1;
+    }
+}
@@ -0,0 +1,246 @@
+/**
+ * Author: Ben Vargas
+ * Course: CS220 - Computer Architecture and Assembly Language
+ * Professor: Nery Chapeton-Lamas
+ * Project: CPU Emulator (HACK Architecture)
+ */
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Compares the ways of running a HACK program: a plain interpreter loop (every word decoded as
+ * it is executed), HackCPU (ROM decoded once), DynamicTranslator (hot blocks run as JVM
+ * bytecode), and LoopAccelerator (recognized loops run in bulk).
+ * <p>
+ *     Every program starts with R0 = 7, R1 = 32767, and a key held down (KBD = 65), so Mult.asm
+ *     multiplies for a while and Fill.asm keeps filling the screen. One operation runs a
+ *     program for the same number of instructions on each engine, starting it again from a
+ *     reset whenever it halts. Warmup iterations come first (the translator compiles its blocks
+ *     then), and the report has the mean and standard deviation of the measured iterations in
+ *     millions of instructions per second, and the speedup over the plain interpreter.
+ * </p>
+ * <p>
+ *     The built-in "loop" program is two nested counted loops, the kind of code the translator
+ *     chains into one JVM loop; any .asm/.hack/.hackb files on the command line are run too
+ *     (Mult.asm and Fill.asm from Assembly-Code if none are given).
+ * </p>
+ * Build: javac -sourcepath ../Assembler:../Emulator -d build *.java
+ * Usage: java -cp build EmulatorBenchmark [-cycles N] [-warmup N] [-iterations N] [program...]
+ */
+public class EmulatorBenchmark {
+    public static final long DEFAULT_CYCLES = 50000000L;
+    public static final int DEFAULT_WARMUP = 3;
+    public static final int DEFAULT_ITERATIONS = 5;
+    public static final String[] DEFAULT_PROGRAMS = {"../../Assembly-Code/Mult.asm", "../../Assembly-Code/Fill.asm"};
+
+    private static final String LOOP_PROGRAM = String.join("\n",
+            "@20000", "D=A", "@outer", "M=D",
+            "(OUTER)", "@30000", "D=A", "@inner", "M=D",
+            "(INNER)", "@R2", "M=M+1", "@inner", "MD=M-1", "@INNER", "D;JGT",
+            "@outer", "MD=M-1", "@OUTER", "D;JGT",
+            "(END)", "@END", "0;JMP", "");
+
+    private static final String[] ENGINES = {"interpreter", "predecoded", "translated", "accelerated"};
+
+    // results of every operation are added here, so the JIT can not remove the work
+    private static volatile long sink;
+
+    // ALGORITHM:
+    // parse command line for instructions per operation, iteration counts, and programs
+    // assemble the built-in loop and load each program
+    // for each program and engine: warmup iterations, then measured iterations of one operation
+    // print millions of instructions/sec (mean and stdev) and the speedup over the interpreter
+
+    public static void main(String[] args) {
+        long cycles = DEFAULT_CYCLES;
+        int warmup = DEFAULT_WARMUP, iterations = DEFAULT_ITERATIONS;
+        List<String> programFileNames = new ArrayList<String>();
+
+        for (int i = 0; i < args.length; i++) {
+            if (args[i].equals("-cycles") && i + 1 < args.length) {
+                cycles = Long.parseLong(args[++i]);
+            } else if (args[i].equals("-warmup") && i + 1 < args.length) {
+                warmup = Integer.parseInt(args[++i]);
+            } else if (args[i].equals("-iterations") && i + 1 < args.length) {
+                iterations = Integer.parseInt(args[++i]);
+            } else {
+                programFileNames.add(args[i]);
+            }
+        }
+
+        if (cycles < 1 || warmup < 0 || iterations < 1) {
+            System.err.println("Usage: java EmulatorBenchmark [-cycles N] [-warmup N] [-iterations N] [program...]");
+            System.exit(0);
+        }
+        if (programFileNames.isEmpty()) {
+            for (String programFileName : DEFAULT_PROGRAMS) {
+                if (Files.exists(Paths.get(programFileName))) {
+                    programFileNames.add(programFileName);
+                }
+            }
+        }
+
+        List<String> names = new ArrayList<String>();
+        List<int[]> programs = new ArrayList<int[]>();
+        try {
+            WordBuffer loop = new WordBuffer();
+            new Assembler(Assembler.TWO_PASS).assemble(
+                    ByteBuffer.wrap(LOOP_PROGRAM.getBytes(StandardCharsets.US_ASCII)), loop);
+            names.add("loop");
+            programs.add(loop.getWords());
+            for (String programFileName : programFileNames) {
+                names.add(Paths.get(programFileName).getFileName().toString());
+                programs.add(Emulator.loadProgram(programFileName));
+            }
+        } catch (IOException | IllegalArgumentException e) {
+            System.err.println(e.getMessage());
+            System.err.println("Could not load the programs.");
+            System.exit(0);
+        }
+
+        System.out.printf("%d instructions per operation, %d warmup and %d measured iterations%n%n", cycles, warmup,
+                iterations);
+        System.out.printf("%-14s %-12s %14s %10s %9s%n", "Program", "Engine", "M instr/s", "stdev", "speedup");
+        for (int p = 0; p < programs.size(); p++) {
+            double interpreterRate = 0;
+            for (int engine = 0; engine < ENGINES.length; engine++) {
+                double[] rates = measure(programs.get(p), engine, cycles, warmup, iterations);
+                double mean = mean(rates);
+                if (engine == 0) {
+                    interpreterRate = mean;
+                }
+                System.out.printf("%-14s %-12s %14.1f %10.1f %8.1fx%n", names.get(p), ENGINES[engine], mean,
+                        stdev(rates, mean), mean / interpreterRate);
+            }
+        }
+    }
+
+    /**
+     * measure
+     * @param rom - program to run
+     * @param engine - index in ENGINES
+     * @param cycles - instructions per operation
+     * @param warmup - iterations before measuring
+     * @param iterations - measured iterations
+     * @return - millions of instructions per second of each measured iteration
+     */
+    private static double[] measure(int[] rom, int engine, long cycles, int warmup, int iterations) {
+        HackCPU cpu = new HackCPU(rom);
+        DynamicTranslator translator = new DynamicTranslator(cpu);
+        LoopAccelerator accelerator = new LoopAccelerator(cpu);
+        boolean[] haltLoops = new boolean[rom.length];
+        for (int address = 0; address + 1 < rom.length; address++) {
+            haltLoops[address] = HackCPU.isHaltLoop(rom, address);
+        }
+
+        double[] rates = new double[iterations];
+        for (int i = 0; i < warmup + iterations; i++) {
+            long start = System.nanoTime();
+            long executed = 0;
+            while (executed < cycles) {
+                cpu.reset();
+                cpu.clearRam();
+                cpu.setRam(0, 7);
+                cpu.setRam(1, 32767);
+                cpu.setRam(HackCPU.KBD, 65);
+
+                long count;
+                if (engine == 0) {
+                    count = interpret(rom, haltLoops, cpu.getRam(), cycles - executed);
+                } else {
+                    long before = cpu.getCycles();
+                    if (engine == 1) {
+                        cpu.run(cycles - executed);
+                    } else if (engine == 2) {
+                        translator.run(cycles - executed);
+                    } else {
+                        accelerator.run(cycles - executed);
+                    }
+                    count = cpu.getCycles() - before;
+                }
+                if (count == 0) {
+                    throw new IllegalArgumentException("Program halts before its first instruction");
+                }
+                executed += count;
+            }
+            long nanos = System.nanoTime() - start;
+            sink += cpu.getRam(2);
+            if (i >= warmup) {
+                rates[i - warmup] = executed / (nanos / 1e3);
+            }
+        }
+        return rates;
+    }
+
+    /**
+     * interpret
+     * <p>
+     *     The plain interpreter: fetch a word, pull its fields out with shifts and masks, and
+     *     compute its comp with the generic ALU, every instruction.
+     * </p>
+     * @param rom - instruction words
+     * @param haltLoops - true at the "@END" of each halt loop
+     * @param ram - RAM
+     * @param maxCycles - most instructions to execute
+     * @return - instructions executed
+     */
+    private static long interpret(int[] rom, boolean[] haltLoops, short[] ram, long maxCycles) {
+        int a = 0, d = 0, pc = 0;
+        long count = 0;
+        while (count < maxCycles && pc < rom.length && !haltLoops[pc]) {
+            int word = rom[pc];
+            count++;
+            if ((word & 0x8000) == 0) {
+                a = word;
+                pc++;
+                continue;
+            }
+
+            int out = HackCPU.alu(word, d, (word & 0x1000) != 0 ? ram[a & 0x7FFF] : a);
+            int address = a & 0x7FFF;
+            if ((word & 0x08) != 0) ram[address] = (short) out;
+            if ((word & 0x10) != 0) d = out;
+            if ((word & 0x20) != 0) a = out;
+            boolean taken = ((word & 0x4) != 0 && out < 0) || ((word & 0x2) != 0 && out == 0)
+                    || ((word & 0x1) != 0 && out > 0);
+            pc = taken ? address : pc + 1;
+        }
+        return count;
+    }
+
+    /**
+     * mean
+     * @param values - measurements
+     * @return - mean of values
+     */
+    private static double mean(double[] values) {
+        double sum = 0;
+        for (double value : values) {
+            sum += value;
+        }
+        return sum / values.length;
+    }
+
+    /**
+     * stdev
+     * @param values - measurements
+     * @param mean - mean of values
+     * @return - sample standard deviation of values (0 for one value)
+     */
+    private static double stdev(double[] values, double mean) {
+        if (values.length < 2) {
+            return 0;
+        }
+        double sum = 0;
+        for (double value : values) {
+            sum += (value - mean) * (value - mean);
+        }
+        return Math.sqrt(sum / (values.length - 1));
+    }
+}
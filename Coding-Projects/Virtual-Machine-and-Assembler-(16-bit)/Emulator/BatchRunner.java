@@ -0,0 +1,492 @@
+/**
+ * Author: Ben Vargas
+ * Course: CS220 - Computer Architecture and Assembly Language
+ * Professor: Nery Chapeton-Lamas
+ * Project: CPU Emulator (HACK Architecture)
+ */
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Runs one HACK program over many input vectors, in parallel, and checks the outputs.
+ * <p>
+ *     An input vector is the values of some RAM addresses (e.g., R0 and R1 for Mult.asm); each
+ *     run starts from cleared RAM with those values, runs until the program halts (or uses its
+ *     cycle budget), and reads the output addresses (e.g., R2). The program is decoded once and
+ *     shared read only; the vectors are split into chunks on a ForkJoin pool, and each chunk
+ *     runs on its own HackCPU, so every worker has its own RAM.
+ * </p>
+ * <p>
+ *     With -snapshot every run starts instead from a state saved by Snapshot (e.g., after a
+ *     long setup), restored from the mapped file per vector, so the setup runs once and not
+ *     once per vector. Cycles are then counted from the snapshot.
+ * </p>
+ * <p>
+ *     Expected outputs come from the vectors file (values after the inputs on each line) or
+ *     from a function of the inputs (-expect product, sum, difference, and, or). A run that
+ *     does not halt is a failure.
+ * </p>
+ * Build: javac -sourcepath ../Assembler -d build *.java
+ * Usage: java -cp build BatchRunner [-threads N] [-cycles N] [-snapshot file] -in address,... -out address,...
+ *                                   (-vectors file | -range low..high,...) [-expect function] program
+ *        e.g. java -cp build BatchRunner -in R0,R1 -out R2 -range 0..99,0..99 -expect product Mult.asm
+ */
+public class BatchRunner {
+    public static final long DEFAULT_CYCLES = 10000000L;
+
+    // vectors run by one ForkJoin task
+    private static final int CHUNK_SIZE = 64;
+
+    // failures printed in full
+    private static final int MAX_REPORTED_FAILURES = 10;
+
+    /**
+     * Expected output values for an input vector.
+     */
+    public interface ExpectedFunction {
+        /**
+         * expected
+         * @param inputs - values of the input addresses
+         * @return - values of the output addresses (cut to 16 bits when compared)
+         */
+        int[] expected(int[] inputs);
+    }
+
+    private final HackCPU program;
+    private final int[] inputAddresses;
+    private final int[] outputAddresses;
+    private final long maxCycles;
+    private Snapshot start; // null for power-on
+
+    // results of the last run, one entry per vector
+    private int[][] outputs;
+    private int[] statuses;
+    private long[] cycles;
+
+    // ALGORITHM:
+    // parse command line for threads, cycle budget, input and output addresses, vectors, and expectation
+    // assemble or read the program and decode it once, open the snapshot to start from (if any)
+    // read the vectors file or build every vector in the ranges
+    // split the vectors into chunks on the pool, each chunk runs on its own CPU (shared program)
+    // each run restores the snapshot (or clears RAM) and sets its inputs
+    // compare each output with the expected values, print the first failures
+    // print pass/fail totals, programs/sec, and instructions/sec
+
+    public static void main(String[] args) {
+        int threadCount = Runtime.getRuntime().availableProcessors();
+        long maxCycles = DEFAULT_CYCLES;
+        String inputs = null, outputs = null, vectorsFileName = null, ranges = null, function = null;
+        String snapshotFileName = null, programFileName = null;
+
+        for (int i = 0; i < args.length; i++) {
+            if (args[i].equals("-threads") && i + 1 < args.length) {
+                threadCount = Integer.parseInt(args[++i]);
+            } else if (args[i].equals("-cycles") && i + 1 < args.length) {
+                maxCycles = Long.parseLong(args[++i]);
+            } else if (args[i].equals("-snapshot") && i + 1 < args.length) {
+                snapshotFileName = args[++i];
+            } else if (args[i].equals("-in") && i + 1 < args.length) {
+                inputs = args[++i];
+            } else if (args[i].equals("-out") && i + 1 < args.length) {
+                outputs = args[++i];
+            } else if (args[i].equals("-vectors") && i + 1 < args.length) {
+                vectorsFileName = args[++i];
+            } else if (args[i].equals("-range") && i + 1 < args.length) {
+                ranges = args[++i];
+            } else if (args[i].equals("-expect") && i + 1 < args.length) {
+                function = args[++i];
+            } else {
+                programFileName = args[i];
+            }
+        }
+
+        if (programFileName == null || inputs == null || outputs == null || (vectorsFileName == null) == (ranges == null)
+                || threadCount < 1 || maxCycles < 0) {
+            System.err.println("Usage: java BatchRunner [-threads N] [-cycles N] [-snapshot file] " +
+                    "-in address,... -out address,... " +
+                    "(-vectors file | -range low..high,...) [-expect function] program.asm/.hack/.hackb");
+            System.exit(1);
+        }
+
+        BatchRunner runner = null;
+        int[][] vectors = null;
+        int[][] expected = null;
+        try {
+            int[] inputAddresses = parseAddresses(inputs);
+            int[] outputAddresses = parseAddresses(outputs);
+            runner = new BatchRunner(Emulator.loadProgram(programFileName), inputAddresses, outputAddresses,
+                    maxCycles);
+            if (snapshotFileName != null) {
+                runner.setStart(Snapshot.open(Paths.get(snapshotFileName)));
+            }
+
+            if (vectorsFileName != null) {
+                List<int[]> lines = readVectors(vectorsFileName);
+                vectors = new int[lines.size()][];
+                expected = new int[lines.size()][];
+                for (int v = 0; v < lines.size(); v++) {
+                    int[] line = lines.get(v);
+                    if (line.length != inputAddresses.length && line.length != inputAddresses.length +
+                            outputAddresses.length) {
+                        throw new IllegalArgumentException("Vector " + (v + 1) + " has " + line.length + " values, " +
+                                "expected " + inputAddresses.length + " inputs and optionally " +
+                                outputAddresses.length + " outputs");
+                    }
+                    vectors[v] = Arrays.copyOf(line, inputAddresses.length);
+                    expected[v] = line.length > inputAddresses.length ?
+                            Arrays.copyOfRange(line, inputAddresses.length, line.length) : null;
+                }
+            } else {
+                vectors = rangeVectors(ranges, inputAddresses.length);
+                expected = new int[vectors.length][];
+            }
+
+            if (function != null) {
+                ExpectedFunction expectedFunction = expectedFunction(function);
+                for (int v = 0; v < vectors.length; v++) {
+                    expected[v] = expectedFunction.expected(vectors[v]);
+                }
+            }
+        } catch (IOException | IllegalArgumentException e) {
+            System.err.println(e.getMessage());
+            System.err.println("Could not load " + programFileName + " and its vectors");
+            System.exit(1);
+        }
+
+        ForkJoinPool pool = new ForkJoinPool(threadCount);
+        long start = System.nanoTime();
+        int[][] results = runner.run(vectors, pool);
+        long nanos = System.nanoTime() - start;
+        pool.shutdown();
+
+        int checked = 0, failures = 0;
+        for (int v = 0; v < vectors.length; v++) {
+            String problem = null;
+            if (runner.getStatus(v) != HackCPU.HALTED) {
+                problem = HackCPU.statusName(runner.getStatus(v)) + " after " + runner.getCycles(v) + " cycles";
+            } else if (expected[v] != null) {
+                checked++;
+                if (!matches(expected[v], results[v])) {
+                    problem = "expected " + format(expected[v]) + ", got " + format(results[v]);
+                }
+            }
+            if (problem != null) {
+                if (failures < MAX_REPORTED_FAILURES) {
+                    System.out.println("FAILED " + inputs + " = " + format(vectors[v]) + ": " + problem);
+                }
+                failures++;
+            }
+        }
+
+        System.out.printf("%d vectors, %d checked, %d failed%n", vectors.length, checked, failures);
+        System.out.printf("%.0f programs/sec, %.1f million instructions/sec on %d threads (%.2f ms wall clock)%n",
+                vectors.length / (nanos / 1e9), runner.getTotalCycles() / (nanos / 1e3), threadCount, nanos / 1e6);
+        if (failures > 0) {
+            System.exit(1);
+        }
+    }
+
+    /**
+     * Primary Constructor for BatchRunner
+     * @param rom - instruction words of the program (decoded once here)
+     * @param inputAddresses - RAM addresses set from each vector
+     * @param outputAddresses - RAM addresses read after each run
+     * @param maxCycles - cycle budget of each run
+     * @throws IllegalArgumentException - if the program does not fit in ROM
+     */
+    public BatchRunner(int[] rom, int[] inputAddresses, int[] outputAddresses, long maxCycles)
+            throws IllegalArgumentException {
+        program = new HackCPU(rom);
+        this.inputAddresses = inputAddresses.clone();
+        this.outputAddresses = outputAddresses.clone();
+        this.maxCycles = maxCycles;
+    }
+
+    /**
+     * setStart
+     * @param start - snapshot each run is restored from, null to start from power-on (cleared RAM)
+     * @throws IllegalArgumentException - if start is a snapshot of another program
+     */
+    public void setStart(Snapshot start) throws IllegalArgumentException {
+        if (start != null) {
+            start.restore(new HackCPU(program));
+        }
+        this.start = start;
+    }
+
+    /**
+     * run
+     * <p>
+     *     Runs the program once per vector, chunks of vectors in parallel on the pool.
+     * </p>
+     * Precondition: every vector has one value per input address
+     * Postcondition: getStatus, getCycles, and getTotalCycles describe these runs
+     * @param vectors - input values
+     * @param pool - ForkJoin pool to run on
+     * @return - output values of each vector (signed 16 bit), in the same order
+     */
+    public int[][] run(int[][] vectors, ForkJoinPool pool) {
+        outputs = new int[vectors.length][outputAddresses.length];
+        statuses = new int[vectors.length];
+        cycles = new long[vectors.length];
+        pool.invoke(new RunTask(vectors, 0, vectors.length));
+        return outputs;
+    }
+
+    /**
+     * Task running the vectors [from, to), split in half until a range fits in one chunk.
+     */
+    private class RunTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final int[][] vectors;
+        private final int from;
+        private final int to;
+
+        RunTask(int[][] vectors, int from, int to) {
+            this.vectors = vectors;
+            this.from = from;
+            this.to = to;
+        }
+
+        protected void compute() {
+            if (to - from > CHUNK_SIZE) {
+                int middle = (from + to) >>> 1;
+                invokeAll(new RunTask(vectors, from, middle), new RunTask(vectors, middle, to));
+                return;
+            }
+
+            HackCPU cpu = new HackCPU(program);
+            for (int v = from; v < to; v++) {
+                if (start != null) {
+                    start.restore(cpu);
+                } else {
+                    cpu.reset();
+                    cpu.clearRam();
+                }
+                for (int i = 0; i < inputAddresses.length; i++) {
+                    cpu.setRam(inputAddresses[i], vectors[v][i]);
+                }
+                statuses[v] = cpu.run(maxCycles);
+                cycles[v] = cpu.getCycles() - (start == null ? 0 : start.getCycles());
+                for (int i = 0; i < outputAddresses.length; i++) {
+                    outputs[v][i] = cpu.getRam(outputAddresses[i]);
+                }
+            }
+        }
+    }
+
+    /**
+     * expectedFunction
+     * @param name - product, sum, difference, and, or (of the first two inputs)
+     * @return - the function
+     * @throws IllegalArgumentException - if there is no function of that name
+     */
+    public static ExpectedFunction expectedFunction(String name) throws IllegalArgumentException {
+        switch (name) {
+            case "product":
+                return new ExpectedFunction() {
+                    public int[] expected(int[] inputs) {
+                        return new int[] {inputs[0] * inputs[1]};
+                    }
+                };
+            case "sum":
+                return new ExpectedFunction() {
+                    public int[] expected(int[] inputs) {
+                        return new int[] {inputs[0] + inputs[1]};
+                    }
+                };
+            case "difference":
+                return new ExpectedFunction() {
+                    public int[] expected(int[] inputs) {
+                        return new int[] {inputs[0] - inputs[1]};
+                    }
+                };
+            case "and":
+                return new ExpectedFunction() {
+                    public int[] expected(int[] inputs) {
+                        return new int[] {inputs[0] & inputs[1]};
+                    }
+                };
+            case "or":
+                return new ExpectedFunction() {
+                    public int[] expected(int[] inputs) {
+                        return new int[] {inputs[0] | inputs[1]};
+                    }
+                };
+            default:
+                throw new IllegalArgumentException("Unknown expected function: " + name);
+        }
+    }
+
+    /**
+     * matches
+     * @param expected - expected values
+     * @param actual - signed 16 bit values read from RAM
+     * @return - true if every expected value, cut to 16 bits, is the actual value
+     */
+    public static boolean matches(int[] expected, int[] actual) {
+        if (expected.length != actual.length) {
+            return false;
+        }
+        for (int i = 0; i < expected.length; i++) {
+            if ((short) expected[i] != actual[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * parseAddresses
+     * @param addresses - comma separated RAM addresses (numbers or predefined symbols)
+     * @return - the addresses
+     * @throws IllegalArgumentException - if an address is invalid
+     */
+    public static int[] parseAddresses(String addresses) throws IllegalArgumentException {
+        String[] names = addresses.split(",");
+        int[] parsed = new int[names.length];
+        for (int i = 0; i < names.length; i++) {
+            parsed[i] = Emulator.parseAddress(names[i]);
+        }
+        return parsed;
+    }
+
+    /**
+     * readVectors
+     * <p>
+     *     Reads one vector per line: integers separated by spaces or commas. Blank lines and
+     *     "//" comments are skipped.
+     * </p>
+     * @param vectorsFileName - vectors file
+     * @return - values of each line
+     * @throws IOException - if the file could not be read
+     * @throws IllegalArgumentException - if a value is not an integer
+     */
+    public static List<int[]> readVectors(String vectorsFileName) throws IOException, IllegalArgumentException {
+        List<int[]> vectors = new ArrayList<int[]>();
+        int lineNumber = 0;
+        for (String line : Files.readAllLines(Paths.get(vectorsFileName), StandardCharsets.US_ASCII)) {
+            lineNumber++;
+            int comment = line.indexOf("//");
+            if (comment >= 0) {
+                line = line.substring(0, comment);
+            }
+            line = line.trim();
+            if (line.isEmpty()) {
+                continue;
+            }
+
+            String[] fields = line.split("[\\s,]+");
+            int[] values = new int[fields.length];
+            try {
+                for (int i = 0; i < fields.length; i++) {
+                    values[i] = Integer.parseInt(fields[i]);
+                }
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException("Invalid value on line " + lineNumber + " of " + vectorsFileName);
+            }
+            vectors.add(values);
+        }
+        return vectors;
+    }
+
+    /**
+     * rangeVectors
+     * @param ranges - comma separated ranges "low..high", one per input
+     * @param inputCount - number of inputs
+     * @return - every combination of the values in the ranges (the last input changing fastest)
+     * @throws IllegalArgumentException - if the ranges are invalid
+     */
+    public static int[][] rangeVectors(String ranges, int inputCount) throws IllegalArgumentException {
+        String[] fields = ranges.split(",");
+        if (fields.length != inputCount) {
+            throw new IllegalArgumentException("Expected " + inputCount + " ranges: " + ranges);
+        }
+
+        int[] lows = new int[inputCount];
+        int[] sizes = new int[inputCount];
+        long count = 1;
+        for (int i = 0; i < inputCount; i++) {
+            int dots = fields[i].indexOf("..");
+            try {
+                lows[i] = Integer.parseInt(fields[i].substring(0, dots < 0 ? fields[i].length() : dots).trim());
+                int high = dots < 0 ? lows[i] : Integer.parseInt(fields[i].substring(dots + 2).trim());
+                sizes[i] = high - lows[i] + 1;
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException("Invalid range: " + fields[i]);
+            }
+            if (sizes[i] < 1) {
+                throw new IllegalArgumentException("Empty range: " + fields[i]);
+            }
+            count *= sizes[i];
+        }
+        if (count > Integer.MAX_VALUE - 8) {
+            throw new IllegalArgumentException("Too many vectors: " + count);
+        }
+
+        int[][] vectors = new int[(int) count][inputCount];
+        for (int v = 0; v < vectors.length; v++) {
+            int rest = v;
+            for (int i = inputCount - 1; i >= 0; i--) {
+                vectors[v][i] = lows[i] + rest % sizes[i];
+                rest /= sizes[i];
+            }
+        }
+        return vectors;
+    }
+
+    /**
+     * format
+     * @param values - values of a vector
+     * @return - values separated by commas
+     */
+    private static String format(int[] values) {
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < values.length; i++) {
+            if (i > 0) {
+                text.append(',');
+            }
+            text.append(values[i]);
+        }
+        return text.toString();
+    }
+
+    /**
+     * getStatus
+     * @param vector - index of a vector of the last run
+     * @return - HALTED, BUDGET_EXHAUSTED, or END_OF_PROGRAM
+     */
+    public int getStatus(int vector) {
+        return statuses[vector];
+    }
+
+    /**
+     * getCycles
+     * @param vector - index of a vector of the last run
+     * @return - instructions executed for that vector (after the snapshot, if it started from one)
+     */
+    public long getCycles(int vector) {
+        return cycles[vector];
+    }
+
+    /**
+     * getTotalCycles
+     * @return - instructions executed by the last run, all vectors
+     */
+    public long getTotalCycles() {
+        long total = 0;
+        for (long count : cycles) {
+            total += count;
+        }
+        return total;
+    }
+}
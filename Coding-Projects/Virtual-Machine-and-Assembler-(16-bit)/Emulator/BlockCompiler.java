@@ -0,0 +1,679 @@
+/**
+ * Author: Ben Vargas
+ * Course: CS220 - Computer Architecture and Assembly Language
+ * Professor: Nery Chapeton-Lamas
+ * Project: CPU Emulator (HACK Architecture)
+ */
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+
+/**
+ * Translates basic blocks of a HACK program into JVM bytecode, loaded as hidden classes.
+ * <p>
+ *     A block starts at any ROM address and runs up to and including the first C instruction
+ *     with a jump (or MAX_BLOCK_LENGTH instructions, or the instruction before a halt loop or
+ *     the end of the program), so control only leaves a block at its end. compile translates
+ *     the entry block together with the blocks it jumps or falls through to, as long as the
+ *     jump target is known (the last A instruction of the block loaded it) and the region stays
+ *     under MAX_REGION_INSTRUCTIONS: jumps between those blocks are JVM gotos, so a loop like
+ *     Mult.asm's (LOOP) runs as one JVM loop. Any other jump returns its target to the caller.
+ * </p>
+ * <p>
+ *     The generated execute method keeps A, D, and the cycle budget in JVM locals and reads
+ *     and writes the RAM array directly; every comp is a few JVM instructions (the generic ALU
+ *     of HackCPU for comp bits without a mnemonic). Each block first checks that the budget
+ *     covers all of its instructions, so the cycle count stays exact: when it does not, the
+ *     block returns its own address and the caller interprets the last instructions.
+ * </p>
+ * <p>
+ *     The class file is written by hand (Java 17 has no class file API): one constant pool,
+ *     a constructor, execute, and its StackMapTable. Every local is an int or an array from
+ *     the start of execute, so all branch targets have the same frame.
+ * </p>
+ */
+public class BlockCompiler {
+    public static final int MAX_BLOCK_LENGTH = 256;
+    public static final int MAX_REGION_INSTRUCTIONS = 512;
+
+    // branch offsets are 16 bit, a region that would need more code is not compiled
+    private static final int MAX_CODE_SIZE = 32000;
+
+    private static final String CLASS_NAME = "HackBlock";
+    private static final String EXECUTE_DESCRIPTOR = "([S[I)I";
+
+    // LOCALS OF execute
+    private static final int THIS = 0;
+    private static final int RAM = 1;
+    private static final int REGISTERS = 2;
+    private static final int A = 3;
+    private static final int D = 4;
+    private static final int BUDGET = 5;
+    private static final int OUT = 6;
+    private static final int ADDRESS = 7;
+    private static final int NEXT = 8;
+    private static final int LOCAL_COUNT = 9;
+
+    // JVM OPCODES
+    private static final int ICONST_M1 = 2;
+    private static final int ICONST_0 = 3;
+    private static final int ICONST_1 = 4;
+    private static final int ICONST_2 = 5;
+    private static final int SIPUSH = 17;
+    private static final int ILOAD = 21;
+    private static final int ALOAD = 25;
+    private static final int IALOAD = 46;
+    private static final int SALOAD = 53;
+    private static final int ISTORE = 54;
+    private static final int IASTORE = 79;
+    private static final int SASTORE = 86;
+    private static final int IADD = 96;
+    private static final int ISUB = 100;
+    private static final int INEG = 116;
+    private static final int IAND = 126;
+    private static final int IOR = 128;
+    private static final int IXOR = 130;
+    private static final int I2S = 147;
+    private static final int IF_ICMPGE = 162;
+    private static final int GOTO = 167;
+    private static final int IRETURN = 172;
+    private static final int RETURN = 177;
+    private static final int INVOKESPECIAL = 183;
+    private static final int INVOKESTATIC = 184;
+
+    // conditional branch of each jump: JGT, JEQ, JGE, JLT, JNE, JLE (IFGT, IFEQ, ... opcodes)
+    private static final int[] JUMP_OPCODES = {0, 157, 153, 156, 155, 154, 158, GOTO};
+
+    private final int[] rom;
+    private final boolean[] haltLoops;
+    private final int[] blockLengths; // 0 until computed
+    private final MethodHandles.Lookup lookup;
+    private int compiledCount;
+
+    /**
+     * Primary Constructor for BlockCompiler
+     * @param rom - instruction words of the program (not changed)
+     */
+    public BlockCompiler(int[] rom) {
+        this.rom = rom;
+        haltLoops = new boolean[rom.length];
+        for (int address = 0; address + 1 < rom.length; address++) {
+            haltLoops[address] = HackCPU.isHaltLoop(rom, address);
+        }
+        blockLengths = new int[rom.length];
+        lookup = MethodHandles.lookup();
+    }
+
+    /**
+     * isCompilable
+     * @param address - ROM address
+     * @return - true if a block can start at address (in the program, not a halt loop)
+     */
+    public boolean isCompilable(int address) {
+        return address >= 0 && address < rom.length && !haltLoops[address];
+    }
+
+    /**
+     * blockLength
+     * @param start - ROM address of the first instruction
+     * @return - number of instructions in the block starting there, 0 for a halt loop or past
+     *           the end of the program
+     */
+    public int blockLength(int start) {
+        if (!isCompilable(start)) {
+            return 0;
+        }
+        if (blockLengths[start] == 0) {
+            int end = start;
+            while (end < rom.length && !haltLoops[end] && end - start < MAX_BLOCK_LENGTH) {
+                int word = rom[end++] & 0xFFFF;
+                if (word >= 0x8000 && (word & HackCPU.JUMP_MASK) != 0) {
+                    break;
+                }
+            }
+            blockLengths[start] = end - start;
+        }
+        return blockLengths[start];
+    }
+
+    /**
+     * compile
+     * <p>
+     *     Translates the block at entry and the blocks reachable from it through known jumps
+     *     and fall throughs, up to MAX_REGION_INSTRUCTIONS, into one hidden class.
+     * </p>
+     * Precondition: n/a
+     * Postcondition: getCompiledCount has gone up by one if a block was returned
+     * @param entry - ROM address of the entry block
+     * @return - the compiled blocks, or null if entry can not be compiled
+     */
+    public CompiledBlock compile(int entry) {
+        if (!isCompilable(entry)) {
+            return null;
+        }
+
+        List<Integer> starts = new ArrayList<Integer>();
+        Map<Integer, Integer> blockLabels = new HashMap<Integer, Integer>();
+        Bytecode code = new Bytecode();
+        int instructions = blockLength(entry);
+        starts.add(entry);
+        blockLabels.put(entry, code.newLabel());
+        for (int i = 0; i < starts.size(); i++) {
+            for (int successor : successors(starts.get(i))) {
+                if (isCompilable(successor) && !blockLabels.containsKey(successor)
+                        && instructions + blockLength(successor) <= MAX_REGION_INSTRUCTIONS) {
+                    instructions += blockLength(successor);
+                    starts.add(successor);
+                    blockLabels.put(successor, code.newLabel());
+                }
+            }
+        }
+
+        Map<Integer, Integer> exitLabels = new HashMap<Integer, Integer>();
+        int dynamicExit = code.newLabel();
+        int exit = code.newLabel();
+
+        // A, D, and the budget are read once, every other local starts at 0
+        for (int register : new int[] {A, D, BUDGET}) {
+            code.var(ALOAD, REGISTERS);
+            code.u1(ICONST_0 + register - A);
+            code.u1(IALOAD);
+            code.var(ISTORE, register);
+        }
+        for (int local = OUT; local <= NEXT; local++) {
+            code.u1(ICONST_0);
+            code.var(ISTORE, local);
+        }
+
+        for (int i = 0; i < starts.size(); i++) {
+            int start = starts.get(i);
+            int length = blockLength(start);
+            code.mark(blockLabels.get(start));
+
+            // budget check, then the budget is charged for the whole block
+            int body = code.newLabel();
+            code.var(ILOAD, BUDGET);
+            code.push(length);
+            code.branch(IF_ICMPGE, body);
+            code.push(start);
+            code.var(ISTORE, NEXT);
+            code.branch(GOTO, exit);
+            code.mark(body);
+            code.var(ILOAD, BUDGET);
+            code.push(length);
+            code.u1(ISUB);
+            code.var(ISTORE, BUDGET);
+
+            int knownA = -1;
+            boolean jumpsAlways = false;
+            for (int address = start; address < start + length; address++) {
+                int word = rom[address] & 0xFFFF;
+                if (word < 0x8000) {
+                    code.push(word);
+                    code.var(ISTORE, A);
+                    knownA = word;
+                    continue;
+                }
+
+                int jump = word & HackCPU.JUMP_MASK;
+                boolean dynamicJump = jump != 0 && knownA < 0;
+                emitComp(code, word);
+                code.var(ISTORE, OUT);
+
+                // M is written and the jump is taken at the A of this instruction
+                if ((word & HackCPU.DEST_M) != 0 || dynamicJump) {
+                    code.var(ILOAD, A);
+                    code.push(HackCPU.ADDRESS_MASK);
+                    code.u1(IAND);
+                    code.var(ISTORE, ADDRESS);
+                }
+                if ((word & HackCPU.DEST_M) != 0) {
+                    code.var(ALOAD, RAM);
+                    code.var(ILOAD, ADDRESS);
+                    code.var(ILOAD, OUT);
+                    code.u1(SASTORE);
+                }
+                if ((word & HackCPU.DEST_D) != 0) {
+                    code.var(ILOAD, OUT);
+                    code.var(ISTORE, D);
+                }
+                if ((word & HackCPU.DEST_A) != 0) {
+                    code.var(ILOAD, OUT);
+                    code.var(ISTORE, A);
+                }
+
+                if (jump != 0) {
+                    int target = dynamicJump ? dynamicExit : targetLabel(code, knownA, blockLabels, exitLabels);
+                    if (jump != HackCPU.JUMP_MASK) {
+                        code.var(ILOAD, OUT);
+                    }
+                    code.branch(JUMP_OPCODES[jump], target);
+                    jumpsAlways = jump == HackCPU.JUMP_MASK;
+                }
+                if ((word & HackCPU.DEST_A) != 0) {
+                    knownA = -1;
+                }
+            }
+
+            // fall through to the next block, unless it is laid out right after this one
+            int next = start + length;
+            boolean nextIsAdjacent = i + 1 < starts.size() && starts.get(i + 1) == next;
+            if (!jumpsAlways && !nextIsAdjacent) {
+                code.branch(GOTO, targetLabel(code, next, blockLabels, exitLabels));
+            }
+        }
+
+        // exits: store the registers back and return the next ROM address
+        for (Map.Entry<Integer, Integer> exitLabel : exitLabels.entrySet()) {
+            code.mark(exitLabel.getValue());
+            code.push(exitLabel.getKey());
+            code.var(ISTORE, NEXT);
+            code.branch(GOTO, exit);
+        }
+        if (code.isUsed(dynamicExit)) {
+            code.mark(dynamicExit);
+            code.var(ILOAD, ADDRESS);
+            code.var(ISTORE, NEXT);
+            code.branch(GOTO, exit);
+        }
+        code.mark(exit);
+        for (int register : new int[] {A, D, BUDGET}) {
+            code.var(ALOAD, REGISTERS);
+            code.u1(ICONST_0 + register - A);
+            code.var(ILOAD, register);
+            code.u1(IASTORE);
+        }
+        code.var(ILOAD, NEXT);
+        code.u1(IRETURN);
+
+        if (code.length > MAX_CODE_SIZE) {
+            return null;
+        }
+        code.resolve();
+
+        try {
+            byte[] classFile = writeClass(code);
+            MethodHandles.Lookup hidden = lookup.defineHiddenClass(classFile, true);
+            CompiledBlock block = (CompiledBlock) hidden.findConstructor(hidden.lookupClass(),
+                    MethodType.methodType(void.class)).invoke();
+            compiledCount++;
+            return block;
+        } catch (Throwable e) {
+            throw new IllegalStateException("Could not load the block compiled at ROM address " + entry, e);
+        }
+    }
+
+    /**
+     * successors
+     * @param start - ROM address of a block
+     * @return - ROM addresses the block can go to next that are known before it runs
+     */
+    private List<Integer> successors(int start) {
+        List<Integer> successors = new ArrayList<Integer>();
+        int length = blockLength(start);
+        int knownA = -1;
+        for (int address = start; address < start + length; address++) {
+            int word = rom[address] & 0xFFFF;
+            if (word < 0x8000) {
+                knownA = word;
+            } else if ((word & HackCPU.JUMP_MASK) != 0) {
+                if ((word & HackCPU.JUMP_MASK) != HackCPU.JUMP_MASK) {
+                    successors.add(start + length);
+                }
+                if (knownA >= 0) {
+                    successors.add(knownA);
+                }
+                return successors;
+            } else if ((word & HackCPU.DEST_A) != 0) {
+                knownA = -1;
+            }
+        }
+        successors.add(start + length);
+        return successors;
+    }
+
+    /**
+     * targetLabel
+     * @param code - method being generated
+     * @param address - ROM address control goes to
+     * @param blockLabels - labels of the blocks in the region
+     * @param exitLabels - labels of the exits made so far (one is added for a new address)
+     * @return - label of the block at address, or of an exit returning address
+     */
+    private static int targetLabel(Bytecode code, int address, Map<Integer, Integer> blockLabels,
+                                   Map<Integer, Integer> exitLabels) {
+        Integer label = blockLabels.get(address);
+        if (label == null) {
+            label = exitLabels.get(address);
+        }
+        if (label == null) {
+            label = code.newLabel();
+            exitLabels.put(address, label);
+        }
+        return label;
+    }
+
+    /**
+     * emitComp
+     * <p>
+     *     Leaves the comp of a C instruction on the operand stack, as a signed 16 bit value.
+     * </p>
+     * @param code - method being generated
+     * @param word - C instruction
+     */
+    private static void emitComp(Bytecode code, int word) {
+        int opcode = HackCPU.opcodeOf((word >>> 6) & 0x7F);
+        switch (opcode) {
+            case HackCPU.OP_ZERO:       code.u1(ICONST_0); return;
+            case HackCPU.OP_ONE:        code.u1(ICONST_1); return;
+            case HackCPU.OP_MINUS_ONE:  code.u1(ICONST_M1); return;
+            case HackCPU.OP_D:          code.var(ILOAD, D); return;
+            case HackCPU.OP_A:          code.var(ILOAD, A); return;
+            case HackCPU.OP_M:          emitM(code); return;
+            case HackCPU.OP_NOT_D:      code.var(ILOAD, D); code.u1(ICONST_M1); code.u1(IXOR); return;
+            case HackCPU.OP_NOT_A:      code.var(ILOAD, A); code.u1(ICONST_M1); code.u1(IXOR); return;
+            case HackCPU.OP_NOT_M:      emitM(code); code.u1(ICONST_M1); code.u1(IXOR); return;
+            case HackCPU.OP_NEG_D:      code.var(ILOAD, D); code.u1(INEG); code.u1(I2S); return;
+            case HackCPU.OP_NEG_A:      code.var(ILOAD, A); code.u1(INEG); code.u1(I2S); return;
+            case HackCPU.OP_NEG_M:      emitM(code); code.u1(INEG); code.u1(I2S); return;
+            case HackCPU.OP_D_PLUS_1:   code.var(ILOAD, D); emitOperation(code, ICONST_1, IADD); return;
+            case HackCPU.OP_A_PLUS_1:   code.var(ILOAD, A); emitOperation(code, ICONST_1, IADD); return;
+            case HackCPU.OP_M_PLUS_1:   emitM(code); emitOperation(code, ICONST_1, IADD); return;
+            case HackCPU.OP_D_MINUS_1:  code.var(ILOAD, D); emitOperation(code, ICONST_1, ISUB); return;
+            case HackCPU.OP_A_MINUS_1:  code.var(ILOAD, A); emitOperation(code, ICONST_1, ISUB); return;
+            case HackCPU.OP_M_MINUS_1:  emitM(code); emitOperation(code, ICONST_1, ISUB); return;
+            case HackCPU.OP_D_PLUS_A:   code.var(ILOAD, D); code.var(ILOAD, A); code.u1(IADD); code.u1(I2S); return;
+            case HackCPU.OP_D_PLUS_M:   code.var(ILOAD, D); emitM(code); code.u1(IADD); code.u1(I2S); return;
+            case HackCPU.OP_D_MINUS_A:  code.var(ILOAD, D); code.var(ILOAD, A); code.u1(ISUB); code.u1(I2S); return;
+            case HackCPU.OP_D_MINUS_M:  code.var(ILOAD, D); emitM(code); code.u1(ISUB); code.u1(I2S); return;
+            case HackCPU.OP_A_MINUS_D:  code.var(ILOAD, A); code.var(ILOAD, D); code.u1(ISUB); code.u1(I2S); return;
+            case HackCPU.OP_M_MINUS_D:  emitM(code); code.var(ILOAD, D); code.u1(ISUB); code.u1(I2S); return;
+            case HackCPU.OP_D_AND_A:    code.var(ILOAD, D); code.var(ILOAD, A); code.u1(IAND); return;
+            case HackCPU.OP_D_AND_M:    code.var(ILOAD, D); emitM(code); code.u1(IAND); return;
+            case HackCPU.OP_D_OR_A:     code.var(ILOAD, D); code.var(ILOAD, A); code.u1(IOR); return;
+            case HackCPU.OP_D_OR_M:     code.var(ILOAD, D); emitM(code); code.u1(IOR); return;
+            default:
+                code.push(word & 0x1FFF);
+                code.var(ILOAD, D);
+                if ((word & 0x1000) != 0) {
+                    emitM(code);
+                } else {
+                    code.var(ILOAD, A);
+                }
+                code.u1(INVOKESTATIC);
+                code.u2(code.pool.methodRef("HackCPU", "alu", "(III)I"));
+                return;
+        }
+    }
+
+    /**
+     * emitM
+     * @param code - method being generated
+     */
+    private static void emitM(Bytecode code) {
+        code.var(ALOAD, RAM);
+        code.var(ILOAD, A);
+        code.push(HackCPU.ADDRESS_MASK);
+        code.u1(IAND);
+        code.u1(SALOAD);
+    }
+
+    /**
+     * emitOperation
+     * @param code - method being generated
+     * @param operand - opcode pushing the second operand
+     * @param operation - arithmetic opcode, its result is cut to 16 bits
+     */
+    private static void emitOperation(Bytecode code, int operand, int operation) {
+        code.u1(operand);
+        code.u1(operation);
+        code.u1(I2S);
+    }
+
+    /**
+     * writeClass
+     * @param code - execute method, with its branches resolved
+     * @return - class file of a final class implementing CompiledBlock
+     * @throws IOException - never, the class is written to memory
+     */
+    private static byte[] writeClass(Bytecode code) throws IOException {
+        ConstantPool pool = code.pool;
+        int thisClass = pool.classRef(CLASS_NAME);
+        int superClass = pool.classRef("java/lang/Object");
+        int blockInterface = pool.classRef("CompiledBlock");
+        int objectInit = pool.methodRef("java/lang/Object", "<init>", "()V");
+        int codeName = pool.utf8("Code");
+        int stackMapName = pool.utf8("StackMapTable");
+        int initName = pool.utf8("<init>");
+        int initDescriptor = pool.utf8("()V");
+        int executeName = pool.utf8("execute");
+        int executeDescriptor = pool.utf8(EXECUTE_DESCRIPTOR);
+        byte[] stackMap = code.stackMapTable(new int[] {thisClass, pool.classRef("[S"), pool.classRef("[I")});
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeInt(0xCAFEBABE);
+        out.writeShort(0);
+        out.writeShort(61); // Java 17
+        out.writeShort(pool.count);
+        out.write(pool.bytes.toByteArray());
+        out.writeShort(0x0031); // public final super
+        out.writeShort(thisClass);
+        out.writeShort(superClass);
+        out.writeShort(1);
+        out.writeShort(blockInterface);
+        out.writeShort(0); // fields
+        out.writeShort(2); // methods
+
+        // public HackBlock() { super(); }
+        out.writeShort(0x0001);
+        out.writeShort(initName);
+        out.writeShort(initDescriptor);
+        out.writeShort(1);
+        out.writeShort(codeName);
+        out.writeInt(12 + 5);
+        out.writeShort(1);
+        out.writeShort(1);
+        out.writeInt(5);
+        out.writeByte(ALOAD + 17); // aload_0
+        out.writeByte(INVOKESPECIAL);
+        out.writeShort(objectInit);
+        out.writeByte(RETURN);
+        out.writeShort(0);
+        out.writeShort(0);
+
+        // public int execute(short[] ram, int[] registers)
+        out.writeShort(0x0001);
+        out.writeShort(executeName);
+        out.writeShort(executeDescriptor);
+        out.writeShort(1);
+        out.writeShort(codeName);
+        out.writeInt(12 + code.length + 6 + stackMap.length);
+        out.writeShort(8);
+        out.writeShort(LOCAL_COUNT);
+        out.writeInt(code.length);
+        out.write(code.code, 0, code.length);
+        out.writeShort(0);
+        out.writeShort(1);
+        out.writeShort(stackMapName);
+        out.writeInt(stackMap.length);
+        out.write(stackMap);
+
+        out.writeShort(0); // class attributes
+        return bytes.toByteArray();
+    }
+
+    /**
+     * getCompiledCount
+     * @return - number of classes compiled
+     */
+    public int getCompiledCount() {
+        return compiledCount;
+    }
+
+    /**
+     * Constant pool of the class being generated.
+     */
+    private static class ConstantPool {
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        final DataOutputStream out = new DataOutputStream(bytes);
+        final Map<String, Integer> entries = new HashMap<String, Integer>();
+        int count = 1;
+
+        int utf8(String text) {
+            return entry("U" + text, 1, text, 0, 0);
+        }
+
+        int classRef(String name) {
+            return entry("C" + name, 7, null, utf8(name), 0);
+        }
+
+        int methodRef(String owner, String name, String descriptor) {
+            int nameAndType = entry("N" + name + " " + descriptor, 12, null, utf8(name), utf8(descriptor));
+            return entry("M" + owner + "." + name + descriptor, 10, null, classRef(owner), nameAndType);
+        }
+
+        private int entry(String key, int tag, String text, int first, int second) {
+            Integer index = entries.get(key);
+            if (index != null) {
+                return index;
+            }
+            try {
+                out.writeByte(tag);
+                if (text != null) {
+                    out.writeUTF(text);
+                } else {
+                    out.writeShort(first);
+                    if (second != 0) {
+                        out.writeShort(second);
+                    }
+                }
+            } catch (IOException e) {
+                throw new IllegalStateException(e); // written to memory
+            }
+            entries.put(key, count);
+            return count++;
+        }
+    }
+
+    /**
+     * Code of the execute method: bytes, labels, and the branches to patch once labels are placed.
+     */
+    private static class Bytecode {
+        final ConstantPool pool = new ConstantPool();
+        byte[] code = new byte[4096];
+        int length;
+
+        private int[] labelPositions = new int[16];
+        private int labelCount;
+        private final List<int[]> branches = new ArrayList<int[]>(); // position, label
+
+        void u1(int value) {
+            if (length == code.length) {
+                code = Arrays.copyOf(code, code.length * 2);
+            }
+            code[length++] = (byte) value;
+        }
+
+        void u2(int value) {
+            u1(value >>> 8);
+            u1(value);
+        }
+
+        void var(int opcode, int local) {
+            u1(opcode);
+            u1(local);
+        }
+
+        void push(int value) {
+            u1(SIPUSH);
+            u2(value);
+        }
+
+        int newLabel() {
+            if (labelCount == labelPositions.length) {
+                labelPositions = Arrays.copyOf(labelPositions, labelCount * 2);
+            }
+            labelPositions[labelCount] = -1;
+            return labelCount++;
+        }
+
+        void mark(int label) {
+            labelPositions[label] = length;
+        }
+
+        void branch(int opcode, int label) {
+            branches.add(new int[] {length, label});
+            u1(opcode);
+            u2(0);
+        }
+
+        boolean isUsed(int label) {
+            for (int[] branch : branches) {
+                if (branch[1] == label) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        void resolve() {
+            for (int[] branch : branches) {
+                int offset = labelPositions[branch[1]] - branch[0];
+                code[branch[0] + 1] = (byte) (offset >>> 8);
+                code[branch[0] + 2] = (byte) offset;
+            }
+        }
+
+        /**
+         * stackMapTable
+         * @param classes - constant pool classes of this, short[], and int[]
+         * @return - StackMapTable attribute (without its name and length): a full frame at the
+         *           first branch target, and the same frame at every other
+         */
+        byte[] stackMapTable(int[] classes) throws IOException {
+            TreeSet<Integer> targets = new TreeSet<Integer>();
+            for (int[] branch : branches) {
+                targets.add(labelPositions[branch[1]]);
+            }
+
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            DataOutputStream out = new DataOutputStream(bytes);
+            out.writeShort(targets.size());
+            int previous = -1;
+            for (int target : targets) {
+                int delta = previous < 0 ? target : target - previous - 1;
+                if (previous < 0) {
+                    out.writeByte(255); // full_frame
+                    out.writeShort(delta);
+                    out.writeShort(LOCAL_COUNT);
+                    for (int local = 0; local < LOCAL_COUNT; local++) {
+                        if (local <= REGISTERS) {
+                            out.writeByte(7); // object
+                            out.writeShort(classes[local]);
+                        } else {
+                            out.writeByte(1); // int
+                        }
+                    }
+                    out.writeShort(0);
+                } else if (delta < 64) {
+                    out.writeByte(delta); // same_frame
+                } else {
+                    out.writeByte(251); // same_frame_extended
+                    out.writeShort(delta);
+                }
+                previous = target;
+            }
+            return bytes.toByteArray();
+        }
+    }
+}
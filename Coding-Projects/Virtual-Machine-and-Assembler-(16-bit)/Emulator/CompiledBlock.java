@@ -0,0 +1,29 @@
+/**
+ * Author: Ben Vargas
+ * Course: CS220 - Computer Architecture and Assembly Language
+ * Professor: Nery Chapeton-Lamas
+ * Project: CPU Emulator (HACK Architecture)
+ */
+
+/**
+ * Basic blocks of a HACK program translated to JVM code by BlockCompiler.
+ */
+public interface CompiledBlock {
+    int A = 0;
+    int D = 1;
+    int BUDGET = 2;
+
+    /**
+     * execute
+     * <p>
+     *     Runs the entry block and every block it jumps to that was compiled with it, until a
+     *     jump leaves them or the next block would go over the cycle budget.
+     * </p>
+     * Precondition: registers holds A, D, and the cycle budget (at the indexes A, D, and BUDGET)
+     * Postcondition: registers holds the new A and D, and the budget minus the instructions executed
+     * @param ram - RAM of the CPU
+     * @param registers - A, D, and the cycle budget
+     * @return - ROM address of the next instruction
+     */
+    int execute(short[] ram, int[] registers);
+}
@@ -0,0 +1,108 @@
+/**
+ * Author: Ben Vargas
+ * Course: CS220 - Computer Architecture and Assembly Language
+ * Professor: Nery Chapeton-Lamas
+ * Project: CPU Emulator (HACK Architecture)
+ */
+
+/**
+ * Execution engine for a HackCPU that runs hot code as JVM bytecode (see BlockCompiler) and
+ * interprets the rest.
+ * <p>
+ *     Each time control reaches a ROM address the engine counts it; once an address has been
+ *     reached hotThreshold times its block (and the blocks chained to it) is compiled. A
+ *     compiled block runs on the CPU's own RAM and registers, and returns the address it left
+ *     to; cold code is interpreted one block at a time by HackCPU.run. Halting, leaving the
+ *     program, and the cycle budget behave exactly as HackCPU.run.
+ * </p>
+ */
+public class DynamicTranslator {
+    public static final int DEFAULT_HOT_THRESHOLD = 100;
+
+    private final HackCPU cpu;
+    private final BlockCompiler compiler;
+    private final int hotThreshold;
+
+    // compiled block and entry count of each ROM address (PC can be ROM_SIZE after the last word)
+    private final CompiledBlock[] blocks = new CompiledBlock[HackCPU.ROM_SIZE + 1];
+    private final int[] entryCounts = new int[HackCPU.ROM_SIZE + 1];
+
+    // A, D, and budget handed to a compiled block
+    private final int[] registers = new int[3];
+
+    /**
+     * Primary Constructor for DynamicTranslator
+     * @param cpu - CPU to run (its program is compiled, its RAM and registers are used)
+     * @param hotThreshold - times a ROM address is reached before its block is compiled, 0 to
+     *                       interpret only
+     */
+    public DynamicTranslator(HackCPU cpu, int hotThreshold) {
+        this.cpu = cpu;
+        this.hotThreshold = hotThreshold;
+        compiler = new BlockCompiler(cpu.getRom());
+    }
+
+    /**
+     * Default Constructor for DynamicTranslator
+     * @param cpu - CPU to run
+     */
+    public DynamicTranslator(HackCPU cpu) {
+        this(cpu, DEFAULT_HOT_THRESHOLD);
+    }
+
+    /**
+     * run
+     * <p>
+     *     Same as HackCPU.run, with hot blocks compiled and run as JVM code.
+     * </p>
+     * Precondition: maxCycles &gt;= 0
+     * Postcondition: the CPU is in the same state HackCPU.run would leave it in
+     * @param maxCycles - most instructions to execute
+     * @return - HALTED, BUDGET_EXHAUSTED, or END_OF_PROGRAM
+     */
+    public int run(long maxCycles) {
+        final short[] ram = cpu.getRam();
+        long remaining = maxCycles;
+
+        while (remaining > 0) {
+            int pc = cpu.getPC();
+            CompiledBlock block = blocks[pc];
+            if (block == null && entryCounts[pc] < hotThreshold && ++entryCounts[pc] == hotThreshold) {
+                block = compiler.compile(pc);
+                blocks[pc] = block;
+            }
+
+            if (block != null) {
+                int budget = (int) Math.min(remaining, Integer.MAX_VALUE);
+                registers[CompiledBlock.A] = cpu.getA();
+                registers[CompiledBlock.D] = cpu.getD();
+                registers[CompiledBlock.BUDGET] = budget;
+                int next = block.execute(ram, registers);
+                int executed = budget - registers[CompiledBlock.BUDGET];
+                cpu.setRegisters(registers[CompiledBlock.A], registers[CompiledBlock.D], next, executed);
+                remaining -= executed;
+                if (executed == 0) {
+                    // the budget ends inside the block
+                    return cpu.run(remaining);
+                }
+                continue;
+            }
+
+            long before = cpu.getCycles();
+            int status = cpu.run(Math.min(Math.max(compiler.blockLength(pc), 1), remaining));
+            remaining -= cpu.getCycles() - before;
+            if (status != HackCPU.BUDGET_EXHAUSTED) {
+                return status;
+            }
+        }
+        return HackCPU.BUDGET_EXHAUSTED;
+    }
+
+    /**
+     * getCompiledCount
+     * @return - number of blocks compiled so far
+     */
+    public int getCompiledCount() {
+        return compiler.getCompiledCount();
+    }
+}
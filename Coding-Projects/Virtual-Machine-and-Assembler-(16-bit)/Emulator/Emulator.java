@@ -0,0 +1,178 @@
+/**
+ * Author: Ben Vargas
+ * Course: CS220 - Computer Architecture and Assembly Language
+ * Professor: Nery Chapeton-Lamas
+ * Project: CPU Emulator (HACK Architecture)
+ */
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Runs a HACK program headless on HackCPU and prints RAM values afterwards, for regression tests
+ * of the assembler's output (e.g., Mult.asm with R0 and R1 set, checking R2).
+ * <p>
+ *     A .asm program is assembled first, a .hack or .hackb program is loaded as is. RAM
+ *     addresses on the command line are numbers or predefined symbols (R0 - R15, SP, SCREEN,
+ *     KBD, ...). The program runs until it halts, leaves the program, or uses its cycle budget;
+ *     with -repeat it is run again from a reset (and the same starting RAM) to time it.
+ *     -translate runs it on a DynamicTranslator, which compiles hot blocks to JVM bytecode;
+ *     -accelerate runs it on a LoopAccelerator, which runs recognized loops (fills, counted
+ *     adds) in bulk, and -verify-loops checks each bulk run against stepping it.
+ * </p>
+ * Build: javac -sourcepath ../Assembler -d build *.java
+ * Usage: java -cp build Emulator [-cycles N] [-repeat N] [-translate | -accelerate [-verify-loops]]
+ *                                [-ram address=value]... [-print address]... program.asm/.hack/.hackb
+ *        e.g. java -cp build Emulator -ram R0=6 -ram R1=7 -print R2 Mult.asm
+ */
+public class Emulator {
+    public static final long DEFAULT_CYCLES = 100000000L;
+
+    // ALGORITHM:
+    // parse command line for cycle budget, repeat count, RAM settings, and RAM addresses to print
+    // assemble (.asm) or read (.hack/.hackb) the program, and decode it into a HackCPU
+    // set the starting RAM values, run (interpreted, translated, or accelerated) until halted,
+    // out of program, or out of cycles
+    // repeat from a reset if asked, keeping the fastest run
+    // print the status, cycles, speed, and the requested RAM values
+
+    public static void main(String[] args) {
+        long maxCycles = DEFAULT_CYCLES;
+        int repeat = 1;
+        boolean translate = false, accelerate = false, verifyLoops = false;
+        List<String> settings = new ArrayList<String>();
+        List<String> printed = new ArrayList<String>();
+        String programFileName = null;
+
+        for (int i = 0; i < args.length; i++) {
+            if (args[i].equals("-cycles") && i + 1 < args.length) {
+                maxCycles = Long.parseLong(args[++i]);
+            } else if (args[i].equals("-repeat") && i + 1 < args.length) {
+                repeat = Integer.parseInt(args[++i]);
+            } else if (args[i].equals("-translate")) {
+                translate = true;
+            } else if (args[i].equals("-accelerate")) {
+                accelerate = true;
+            } else if (args[i].equals("-verify-loops")) {
+                verifyLoops = true;
+            } else if (args[i].equals("-ram") && i + 1 < args.length) {
+                settings.add(args[++i]);
+            } else if (args[i].equals("-print") && i + 1 < args.length) {
+                printed.add(args[++i]);
+            } else if (programFileName == null) {
+                programFileName = args[i];
+            } else {
+                programFileName = null;
+                break;
+            }
+        }
+
+        if (programFileName == null || maxCycles < 0 || repeat < 1 || (translate && accelerate)
+                || (verifyLoops && !accelerate)) {
+            System.err.println("Usage: java Emulator [-cycles N] [-repeat N] [-translate | -accelerate [-verify-loops]] " +
+                    "[-ram address=value]... [-print address]... program.asm/.hack/.hackb");
+            System.exit(1);
+        }
+
+        HackCPU cpu = null;
+        int[] addresses = new int[settings.size()];
+        int[] values = new int[settings.size()];
+        int[] printedAddresses = new int[printed.size()];
+        try {
+            cpu = new HackCPU(loadProgram(programFileName));
+            for (int i = 0; i < settings.size(); i++) {
+                String setting = settings.get(i);
+                int equals = setting.indexOf('=');
+                if (equals < 0) {
+                    throw new IllegalArgumentException("Invalid RAM setting: " + setting);
+                }
+                addresses[i] = parseAddress(setting.substring(0, equals));
+                values[i] = Integer.parseInt(setting.substring(equals + 1).trim());
+            }
+            for (int i = 0; i < printed.size(); i++) {
+                printedAddresses[i] = parseAddress(printed.get(i));
+            }
+        } catch (IOException | IllegalArgumentException e) {
+            System.err.println(e.getMessage());
+            System.err.println("Could not load " + programFileName);
+            System.exit(1);
+        }
+
+        DynamicTranslator translator = translate ? new DynamicTranslator(cpu) : null;
+        LoopAccelerator accelerator = accelerate ? new LoopAccelerator(cpu) : null;
+        if (accelerate) {
+            accelerator.setVerify(verifyLoops);
+        }
+        int status = 0;
+        long bestNanos = Long.MAX_VALUE;
+        for (int run = 0; run < repeat; run++) {
+            cpu.reset();
+            cpu.clearRam();
+            for (int i = 0; i < addresses.length; i++) {
+                cpu.setRam(addresses[i], values[i]);
+            }
+
+            long start = System.nanoTime();
+            if (translate) {
+                status = translator.run(maxCycles);
+            } else {
+                status = accelerate ? accelerator.run(maxCycles) : cpu.run(maxCycles);
+            }
+            bestNanos = Math.min(bestNanos, System.nanoTime() - start);
+        }
+
+        System.out.printf("%s: %s after %d cycles at PC %d (%.2f ms, %.1f million instructions/sec)%n",
+                programFileName, HackCPU.statusName(status), cpu.getCycles(), cpu.getPC(), bestNanos / 1e6,
+                cpu.getCycles() / (bestNanos / 1e3));
+        if (translate) {
+            System.out.println(translator.getCompiledCount() + " blocks compiled");
+        }
+        if (accelerate) {
+            System.out.println(accelerator.getLoopCount() + " bulk loop runs, " + accelerator.getAcceleratedCycles() +
+                    " instructions run in bulk" + (verifyLoops ? " (all verified)" : ""));
+        }
+        for (int i = 0; i < printed.size(); i++) {
+            System.out.println("RAM[" + printed.get(i) + "] = " + cpu.getRam(printedAddresses[i]));
+        }
+    }
+
+    /**
+     * loadProgram
+     * @param programFileName - .asm, .hack, or .hackb file
+     * @return - instruction words of the program
+     * @throws IOException - if the file could not be read
+     * @throws IllegalArgumentException - if the program could not be assembled or read
+     */
+    public static int[] loadProgram(String programFileName) throws IOException, IllegalArgumentException {
+        if (!programFileName.endsWith(".asm")) {
+            return HackFile.readWords(programFileName);
+        }
+
+        WordBuffer words = new WordBuffer();
+        new Assembler(Assembler.TWO_PASS).assemble(programFileName, words);
+        return words.getWords();
+    }
+
+    /**
+     * parseAddress
+     * @param address - RAM address as a number or a predefined symbol
+     * @return - the address
+     * @throws IllegalArgumentException - if the address is neither
+     */
+    public static int parseAddress(String address) throws IllegalArgumentException {
+        address = address.trim();
+        if (Assembler.isIntegerLiteral(address)) {
+            int value = Integer.parseInt(address);
+            if (value < HackCPU.RAM_SIZE) {
+                return value;
+            }
+        } else {
+            SymbolTable predefined = new SymbolTable();
+            if (predefined.contains(address)) {
+                return predefined.getAddress(address);
+            }
+        }
+        throw new IllegalArgumentException("Invalid RAM address: " + address);
+    }
+}
@@ -0,0 +1,528 @@
+/**
+ * Author: Ben Vargas
+ * Course: CS220 - Computer Architecture and Assembly Language
+ * Professor: Nery Chapeton-Lamas
+ * Project: CPU Emulator (HACK Architecture)
+ */
+
+import java.util.Arrays;
+
+/**
+ * Headless HACK computer: ROM, RAM (screen and keyboard included), and the A, D, and PC registers.
+ * <p>
+ *     The ROM is decoded once when it is loaded: every word becomes one int holding an opcode
+ *     (bits 16 and up) and the low bits of the word, the A instruction value or the dest and
+ *     jump bits of a C instruction. Each comp the Code table knows has its own opcode, so the
+ *     run loop is one switch per instruction with the ALU function already picked; any other
+ *     comp bits are computed by the generic ALU (zx, nx, zy, ny, f, no) the same way the
+ *     hardware does.
+ * </p>
+ * <p>
+ *     The canonical end of a program, "(END) @END 0;JMP" (an A instruction loading its own
+ *     address, followed by an unconditional jump with no dest), is decoded to a HALT opcode, so
+ *     run stops there instead of spinning through its cycle budget. Jumping or running past the
+ *     last instruction of the program also stops (the ROM past the program is empty).
+ * </p>
+ */
+public class HackCPU {
+    public static final int ROM_SIZE = 32768;
+    public static final int RAM_SIZE = 32768; // 15 bit addresses, 24577 of them are used
+    public static final int ADDRESS_MASK = 0x7FFF;
+    public static final int SCREEN = 16384;
+    public static final int KBD = 24576;
+
+    // STATUS OF A RUN
+    public static final int HALTED = 1;
+    public static final int BUDGET_EXHAUSTED = 2;
+    public static final int END_OF_PROGRAM = 3;
+
+    // 64 bit FNV-1a, the hash of ROM, RAM, and screen contents used to compare runs (see hash)
+    public static final long HASH_SEED = 0xcbf29ce484222325L;
+    private static final long HASH_PRIME = 0x100000001b3L;
+
+    // DECODED INSTRUCTION: opcode << OPCODE_SHIFT | value (A instruction) or dest and jump bits (C)
+    static final int OPCODE_SHIFT = 16;
+    static final int VALUE_MASK = 0x7FFF;
+    static final int DEST_A = 0x20;
+    static final int DEST_D = 0x10;
+    static final int DEST_M = 0x08;
+    static final int JUMP_MASK = 0x7;
+
+    // OPCODES
+    static final int OP_LOAD = 0;   // @value
+    static final int OP_HALT = 1;   // @value of "(END) @END 0;JMP"
+    static final int OP_END = 2;    // past the end of the program
+    static final int OP_ALU = 3;    // comp with no mnemonic, computed from its control bits
+    static final int OP_ZERO = 4;
+    static final int OP_ONE = 5;
+    static final int OP_MINUS_ONE = 6;
+    static final int OP_D = 7;
+    static final int OP_A = 8;
+    static final int OP_NOT_D = 9;
+    static final int OP_NOT_A = 10;
+    static final int OP_NEG_D = 11;
+    static final int OP_NEG_A = 12;
+    static final int OP_D_PLUS_1 = 13;
+    static final int OP_A_PLUS_1 = 14;
+    static final int OP_D_MINUS_1 = 15;
+    static final int OP_A_MINUS_1 = 16;
+    static final int OP_D_PLUS_A = 17;
+    static final int OP_D_MINUS_A = 18;
+    static final int OP_A_MINUS_D = 19;
+    static final int OP_D_AND_A = 20;
+    static final int OP_D_OR_A = 21;
+    static final int OP_M = 22;
+    static final int OP_NOT_M = 23;
+    static final int OP_NEG_M = 24;
+    static final int OP_M_PLUS_1 = 25;
+    static final int OP_M_MINUS_1 = 26;
+    static final int OP_D_PLUS_M = 27;
+    static final int OP_D_MINUS_M = 28;
+    static final int OP_M_MINUS_D = 29;
+    static final int OP_D_AND_M = 30;
+    static final int OP_D_OR_M = 31;
+
+    private final int[] rom;
+    private final int[] program; // decoded ROM, OP_END from the end of the program to ROM_SIZE
+    private final short[] ram;
+
+    // registers, A and D hold signed 16 bit values
+    private int a;
+    private int d;
+    private int pc;
+    private long cycles;
+
+    /**
+     * Primary Constructor for HackCPU
+     * <p>
+     *     Loads and decodes the program. Registers and RAM start at 0.
+     * </p>
+     * Precondition: n/a
+     * Postcondition: CPU is ready to run from ROM address 0
+     * @param rom - instruction words in ROM order (low 16 bits of each int)
+     * @throws IllegalArgumentException - if the program does not fit in ROM
+     */
+    public HackCPU(int[] rom) throws IllegalArgumentException {
+        if (rom.length > ROM_SIZE) {
+            throw new IllegalArgumentException("Program has " + rom.length + " instructions, ROM holds " + ROM_SIZE);
+        }
+        this.rom = rom.clone();
+        program = decode(this.rom);
+        ram = new short[RAM_SIZE];
+    }
+
+    /**
+     * Sharing Constructor for HackCPU
+     * <p>
+     *     Makes another CPU for the same program without decoding it again: the ROM and the
+     *     decoded program are shared (nothing writes them after decoding, so CPUs on different
+     *     threads can share them), RAM and registers are its own and start at 0.
+     * </p>
+     * Precondition: n/a
+     * Postcondition: CPU is ready to run from ROM address 0
+     * @param program - CPU whose program is run
+     */
+    public HackCPU(HackCPU program) {
+        rom = program.rom;
+        this.program = program.program;
+        ram = new short[RAM_SIZE];
+    }
+
+    /**
+     * decode
+     * <p>
+     *     Decodes every word of the ROM once. The array has one extra entry past ROM_SIZE, so
+     *     PC can run off the last ROM address without a bounds check in the run loop.
+     * </p>
+     * @param rom - instruction words
+     * @return - decoded instructions, ROM_SIZE + 1 of them
+     */
+    static int[] decode(int[] rom) {
+        int[] program = new int[ROM_SIZE + 1];
+        for (int address = 0; address < rom.length; address++) {
+            program[address] = decode(rom[address]);
+        }
+        for (int address = rom.length; address < program.length; address++) {
+            program[address] = OP_END << OPCODE_SHIFT;
+        }
+
+        for (int address = 0; address + 1 < rom.length; address++) {
+            if (isHaltLoop(rom, address)) {
+                program[address] = (OP_HALT << OPCODE_SHIFT) | address;
+            }
+        }
+        return program;
+    }
+
+    /**
+     * decode
+     * @param word - one instruction in the low 16 bits
+     * @return - decoded instruction
+     */
+    static int decode(int word) {
+        word &= 0xFFFF;
+        if (word < 0x8000) {
+            return (OP_LOAD << OPCODE_SHIFT) | word;
+        }
+
+        int comp = (word >>> 6) & 0x7F;
+        return (opcodeOf(comp) << OPCODE_SHIFT) | (word & 0x1FFF);
+    }
+
+    /**
+     * opcodeOf
+     * @param comp - a and c bits of a C instruction
+     * @return - opcode computing that comp
+     */
+    static int opcodeOf(int comp) {
+        String mnemonic = Code.compMnemonic(comp);
+        if (mnemonic == null) {
+            return OP_ALU;
+        }
+
+        switch (mnemonic) {
+            case "0":   return OP_ZERO;
+            case "1":   return OP_ONE;
+            case "-1":  return OP_MINUS_ONE;
+            case "D":   return OP_D;
+            case "A":   return OP_A;
+            case "!D":  return OP_NOT_D;
+            case "!A":  return OP_NOT_A;
+            case "-D":  return OP_NEG_D;
+            case "-A":  return OP_NEG_A;
+            case "D+1": return OP_D_PLUS_1;
+            case "A+1": return OP_A_PLUS_1;
+            case "D-1": return OP_D_MINUS_1;
+            case "A-1": return OP_A_MINUS_1;
+            case "D+A": return OP_D_PLUS_A;
+            case "D-A": return OP_D_MINUS_A;
+            case "A-D": return OP_A_MINUS_D;
+            case "D&A": return OP_D_AND_A;
+            case "D|A": return OP_D_OR_A;
+            case "M":   return OP_M;
+            case "!M":  return OP_NOT_M;
+            case "-M":  return OP_NEG_M;
+            case "M+1": return OP_M_PLUS_1;
+            case "M-1": return OP_M_MINUS_1;
+            case "D+M": return OP_D_PLUS_M;
+            case "D-M": return OP_D_MINUS_M;
+            case "M-D": return OP_M_MINUS_D;
+            case "D&M": return OP_D_AND_M;
+            case "D|M": return OP_D_OR_M;
+            default:    return OP_ALU;
+        }
+    }
+
+    /**
+     * isHaltLoop
+     * <p>
+     *     Checks for "@address" followed by a C instruction with no dest that always jumps
+     *     (";JMP", or a constant comp that meets its jump condition), so the two instructions
+     *     loop forever without changing anything.
+     * </p>
+     * @param rom - instruction words
+     * @param address - ROM address of the A instruction
+     * @return - true if the instructions at address and address + 1 are a halt loop
+     */
+    static boolean isHaltLoop(int[] rom, int address) {
+        int load = rom[address] & 0xFFFF;
+        int jump = rom[address + 1] & 0xFFFF;
+        if (load != address || jump < 0xE000 || (jump & (DEST_A | DEST_D | DEST_M)) != 0 || (jump & JUMP_MASK) == 0) {
+            return false;
+        }
+
+        if ((jump & JUMP_MASK) == JUMP_MASK) {
+            return true;
+        }
+
+        String comp = Code.compMnemonic((jump >>> 6) & 0x7F);
+        int out;
+        if ("0".equals(comp)) {
+            out = 0;
+        } else if ("1".equals(comp)) {
+            out = 1;
+        } else if ("-1".equals(comp)) {
+            out = -1;
+        } else {
+            return false;
+        }
+        return isJumpTaken(jump, out);
+    }
+
+    /**
+     * isJumpTaken
+     * @param op - decoded C instruction (or the word)
+     * @param out - ALU output
+     * @return - true if the jump bits select the sign of out
+     */
+    static boolean isJumpTaken(int op, int out) {
+        return (op & (out < 0 ? 4 : out == 0 ? 2 : 1)) != 0;
+    }
+
+    /**
+     * alu
+     * <p>
+     *     The HACK ALU on any comp bits: x is D, y is A or M (a bit), then zx, nx, zy, ny, f, no.
+     * </p>
+     * @param op - decoded C instruction
+     * @param x - D register
+     * @param y - A register or M
+     * @return - ALU output, as a signed 16 bit value
+     */
+    static int alu(int op, int x, int y) {
+        if ((op & 0x800) != 0) x = 0;
+        if ((op & 0x400) != 0) x = ~x;
+        if ((op & 0x200) != 0) y = 0;
+        if ((op & 0x100) != 0) y = ~y;
+        int out = (op & 0x80) != 0 ? x + y : x & y;
+        if ((op & 0x40) != 0) out = ~out;
+        return (short) out;
+    }
+
+    /**
+     * run
+     * <p>
+     *     Executes instructions until the program halts, PC leaves the program, or maxCycles
+     *     instructions have run. Registers and RAM are kept, so run can be called again to go on.
+     * </p>
+     * Precondition: maxCycles &gt;= 0
+     * Postcondition: getCycles has gone up by the number of instructions executed, a halted CPU
+     *                has PC on the "@END" of the halt loop and A loaded with its address
+     * @param maxCycles - most instructions to execute
+     * @return - HALTED, BUDGET_EXHAUSTED, or END_OF_PROGRAM
+     */
+    public int run(long maxCycles) {
+        final int[] program = this.program;
+        final short[] ram = this.ram;
+        int a = this.a, d = this.d, pc = this.pc;
+        long remaining = maxCycles;
+        int status = BUDGET_EXHAUSTED;
+
+        loop:
+        while (remaining > 0) {
+            int op = program[pc];
+            int out;
+            switch (op >>> OPCODE_SHIFT) {
+                case OP_LOAD:
+                    a = op & VALUE_MASK;
+                    pc++;
+                    remaining--;
+                    continue;
+                case OP_HALT:
+                    a = op & VALUE_MASK;
+                    status = HALTED;
+                    break loop;
+                case OP_END:
+                    status = END_OF_PROGRAM;
+                    break loop;
+                case OP_ZERO:       out = 0; break;
+                case OP_ONE:        out = 1; break;
+                case OP_MINUS_ONE:  out = -1; break;
+                case OP_D:          out = d; break;
+                case OP_A:          out = a; break;
+                case OP_NOT_D:      out = ~d; break;
+                case OP_NOT_A:      out = ~a; break;
+                case OP_NEG_D:      out = (short) -d; break;
+                case OP_NEG_A:      out = (short) -a; break;
+                case OP_D_PLUS_1:   out = (short) (d + 1); break;
+                case OP_A_PLUS_1:   out = (short) (a + 1); break;
+                case OP_D_MINUS_1:  out = (short) (d - 1); break;
+                case OP_A_MINUS_1:  out = (short) (a - 1); break;
+                case OP_D_PLUS_A:   out = (short) (d + a); break;
+                case OP_D_MINUS_A:  out = (short) (d - a); break;
+                case OP_A_MINUS_D:  out = (short) (a - d); break;
+                case OP_D_AND_A:    out = d & a; break;
+                case OP_D_OR_A:     out = d | a; break;
+                case OP_M:          out = ram[a & ADDRESS_MASK]; break;
+                case OP_NOT_M:      out = ~ram[a & ADDRESS_MASK]; break;
+                case OP_NEG_M:      out = (short) -ram[a & ADDRESS_MASK]; break;
+                case OP_M_PLUS_1:   out = (short) (ram[a & ADDRESS_MASK] + 1); break;
+                case OP_M_MINUS_1:  out = (short) (ram[a & ADDRESS_MASK] - 1); break;
+                case OP_D_PLUS_M:   out = (short) (d + ram[a & ADDRESS_MASK]); break;
+                case OP_D_MINUS_M:  out = (short) (d - ram[a & ADDRESS_MASK]); break;
+                case OP_M_MINUS_D:  out = (short) (ram[a & ADDRESS_MASK] - d); break;
+                case OP_D_AND_M:    out = d & ram[a & ADDRESS_MASK]; break;
+                case OP_D_OR_M:     out = d | ram[a & ADDRESS_MASK]; break;
+                default:
+                    out = alu(op, d, (op & 0x1000) != 0 ? ram[a & ADDRESS_MASK] : a);
+                    break;
+            }
+            remaining--;
+
+            // M is written and the jump is taken at the A of this instruction, not the new A
+            int address = a & ADDRESS_MASK;
+            if ((op & DEST_M) != 0) ram[address] = (short) out;
+            if ((op & DEST_D) != 0) d = out;
+            if ((op & DEST_A) != 0) a = out;
+            if ((op & JUMP_MASK) != 0 && isJumpTaken(op, out)) {
+                pc = address;
+            } else {
+                pc++;
+            }
+        }
+
+        this.a = a;
+        this.d = d;
+        this.pc = pc;
+        cycles += maxCycles - remaining;
+        return status;
+    }
+
+    /**
+     * reset
+     * <p>
+     *     Sets PC, A, D, and the cycle count back to 0. RAM is kept, like the reset pin of the
+     *     HACK computer (see clearRam).
+     * </p>
+     */
+    public void reset() {
+        a = 0;
+        d = 0;
+        pc = 0;
+        cycles = 0;
+    }
+
+    /**
+     * setRegisters
+     * <p>
+     *     Used by an engine that executes part of the program itself (see DynamicTranslator).
+     * </p>
+     * @param a - A register
+     * @param d - D register
+     * @param pc - ROM address of the next instruction
+     * @param executed - number of instructions the engine executed
+     */
+    void setRegisters(int a, int d, int pc, long executed) {
+        this.a = a;
+        this.d = d;
+        this.pc = pc;
+        cycles += executed;
+    }
+
+    /**
+     * clearRam
+     */
+    public void clearRam() {
+        Arrays.fill(ram, (short) 0);
+    }
+
+    /**
+     * statusName
+     * @param status - status returned by run
+     * @return - name of the status for messages
+     */
+    public static String statusName(int status) {
+        switch (status) {
+            case HALTED:           return "halted";
+            case BUDGET_EXHAUSTED: return "cycle budget exhausted";
+            case END_OF_PROGRAM:   return "ran past the end of the program";
+            default:               return "unknown status " + status;
+        }
+    }
+
+    /**
+     * hash
+     * @param hash - hash so far (HASH_SEED to start one)
+     * @param value - value to add to the hash
+     * @return - the hash with value added
+     */
+    public static long hash(long hash, long value) {
+        return (hash ^ value) * HASH_PRIME;
+    }
+
+    /**
+     * hash
+     * @param hash - hash so far (HASH_SEED to start one)
+     * @param words - RAM (or screen) words
+     * @param from - index of the first word to add
+     * @param to - index after the last word to add
+     * @return - the hash with the 16 bit words added in order
+     */
+    public static long hash(long hash, short[] words, int from, int to) {
+        for (int i = from; i < to; i++) {
+            hash = (hash ^ (words[i] & 0xFFFF)) * HASH_PRIME;
+        }
+        return hash;
+    }
+
+    /**
+     * hash
+     * @param hash - hash so far (HASH_SEED to start one)
+     * @param words - instruction words
+     * @param from - index of the first word to add
+     * @param to - index after the last word to add
+     * @return - the hash with the low 16 bits of the words added in order
+     */
+    public static long hash(long hash, int[] words, int from, int to) {
+        for (int i = from; i < to; i++) {
+            hash = (hash ^ (words[i] & 0xFFFF)) * HASH_PRIME;
+        }
+        return hash;
+    }
+
+    /**
+     * getRam
+     * @param address - RAM address
+     * @return - signed 16 bit value at address
+     */
+    public int getRam(int address) {
+        return ram[address & ADDRESS_MASK];
+    }
+
+    /**
+     * setRam
+     * @param address - RAM address (e.g., KBD for a key press)
+     * @param value - 16 bit value
+     */
+    public void setRam(int address, int value) {
+        ram[address & ADDRESS_MASK] = (short) value;
+    }
+
+    /**
+     * getRam
+     * @return - the RAM array itself (not a copy), SCREEN to KBD - 1 is the screen
+     */
+    public short[] getRam() {
+        return ram;
+    }
+
+    /**
+     * getRom
+     * @return - the program's instruction words (not a copy)
+     */
+    public int[] getRom() {
+        return rom;
+    }
+
+    /**
+     * getA
+     * @return - A register, signed 16 bit value
+     */
+    public int getA() {
+        return a;
+    }
+
+    /**
+     * getD
+     * @return - D register, signed 16 bit value
+     */
+    public int getD() {
+        return d;
+    }
+
+    /**
+     * getPC
+     * @return - ROM address of the next instruction
+     */
+    public int getPC() {
+        return pc;
+    }
+
+    /**
+     * getCycles
+     * @return - instructions executed since the CPU was made or reset (the halt loop is not counted)
+     */
+    public long getCycles() {
+        return cycles;
+    }
+}
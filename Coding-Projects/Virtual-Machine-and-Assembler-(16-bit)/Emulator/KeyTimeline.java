@@ -0,0 +1,179 @@
+/**
+ * Author: Ben Vargas
+ * Course: CS220 - Computer Architecture and Assembly Language
+ * Professor: Nery Chapeton-Lamas
+ * Project: CPU Emulator (HACK Architecture)
+ */
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Timeline of keyboard events: at cycle N, the key code in KBD becomes K (0 when no key is
+ * pressed).
+ * <p>
+ *     Events are kept in two parallel arrays (cycle and key code) in cycle order, events at the
+ *     same cycle in the order they were added (the last one wins). As text, each event is one
+ *     line "cycle key", where key is a number, a character in single quotes ('a', ' '), a HACK
+ *     key name (NEWLINE, BACKSPACE, LEFT, UP, RIGHT, DOWN, HOME, END, PAGEUP, PAGEDOWN, INSERT,
+ *     DELETE, ESC, F1 - F12), or RELEASE for 0. Blank lines and "//" comments are skipped.
+ * </p>
+ */
+public class KeyTimeline {
+    public static final int NO_KEY = 0;
+
+    private static final String[] KEY_NAMES = {"NEWLINE", "BACKSPACE", "LEFT", "UP", "RIGHT", "DOWN", "HOME",
+            "END", "PAGEUP", "PAGEDOWN", "INSERT", "DELETE", "ESC", "F1", "F2", "F3", "F4", "F5", "F6", "F7",
+            "F8", "F9", "F10", "F11", "F12"};
+    private static final int FIRST_NAMED_KEY = 128;
+
+    private long[] cycles = new long[16];
+    private short[] keys = new short[16];
+    private int size;
+
+    /**
+     * add
+     * @param cycle - cycle the key code is put in KBD (before the instruction of that cycle runs)
+     * @param key - key code, 0 for no key
+     * @throws IllegalArgumentException - if the cycle is negative or the key is not 16 bits
+     */
+    public void add(long cycle, int key) throws IllegalArgumentException {
+        if (cycle < 0 || key < Short.MIN_VALUE || key > 0xFFFF) {
+            throw new IllegalArgumentException("Invalid key event: " + cycle + " " + key);
+        }
+        if (size == cycles.length) {
+            cycles = Arrays.copyOf(cycles, size * 2);
+            keys = Arrays.copyOf(keys, size * 2);
+        }
+
+        // insertion keeps the arrays in cycle order, scripts are almost always in order already
+        int index = size;
+        while (index > 0 && cycles[index - 1] > cycle) {
+            cycles[index] = cycles[index - 1];
+            keys[index] = keys[index - 1];
+            index--;
+        }
+        cycles[index] = cycle;
+        keys[index] = (short) key;
+        size++;
+    }
+
+    /**
+     * size
+     * @return - number of events
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * getCycle
+     * @param index - event index, 0 to size - 1
+     * @return - cycle of the event
+     */
+    public long getCycle(int index) {
+        return cycles[index];
+    }
+
+    /**
+     * getKey
+     * @param index - event index, 0 to size - 1
+     * @return - key code of the event
+     */
+    public int getKey(int index) {
+        return keys[index];
+    }
+
+    /**
+     * parse
+     * @param lines - lines of a script
+     * @return - the timeline
+     * @throws IllegalArgumentException - if a line is not a valid event (the message has its line number)
+     */
+    public static KeyTimeline parse(List<String> lines) throws IllegalArgumentException {
+        KeyTimeline timeline = new KeyTimeline();
+        for (int i = 0; i < lines.size(); i++) {
+            String line = lines.get(i);
+            int comment = line.indexOf("//");
+            if (comment >= 0) {
+                line = line.substring(0, comment);
+            }
+            line = line.trim();
+            if (line.isEmpty()) {
+                continue;
+            }
+
+            int space = line.indexOf(' ');
+            try {
+                if (space < 0) {
+                    throw new NumberFormatException();
+                }
+                timeline.add(Long.parseLong(line.substring(0, space)), parseKey(line.substring(space + 1).trim()));
+            } catch (IllegalArgumentException e) {
+                throw new IllegalArgumentException("Invalid key event on line " + (i + 1) + ": " + lines.get(i));
+            }
+        }
+        return timeline;
+    }
+
+    /**
+     * parseKey
+     * @param key - number, 'c', key name, or RELEASE
+     * @return - key code
+     * @throws IllegalArgumentException - if key is none of those
+     */
+    public static int parseKey(String key) throws IllegalArgumentException {
+        if (key.length() == 3 && key.charAt(0) == '\'' && key.charAt(2) == '\'') {
+            return key.charAt(1);
+        }
+        if (key.equalsIgnoreCase("RELEASE")) {
+            return NO_KEY;
+        }
+        for (int i = 0; i < KEY_NAMES.length; i++) {
+            if (KEY_NAMES[i].equalsIgnoreCase(key)) {
+                return FIRST_NAMED_KEY + i;
+            }
+        }
+        return Integer.parseInt(key);
+    }
+
+    /**
+     * write
+     * @param out - writer the events are written to, one "cycle key" line each
+     * @throws IOException - if out could not be written to
+     */
+    public void write(Writer out) throws IOException {
+        for (int i = 0; i < size; i++) {
+            out.write(cycles[i] + " " + keys[i] + System.lineSeparator());
+        }
+    }
+
+    /**
+     * random
+     * <p>
+     *     Makes a timeline of random presses (printable characters) and releases, for fuzzing a
+     *     program; the same seed always gives the same timeline.
+     * </p>
+     * @param seed - random seed
+     * @param lastCycle - no events after this cycle
+     * @param meanGap - average number of cycles between events
+     * @return - the timeline
+     */
+    public static KeyTimeline random(long seed, long lastCycle, long meanGap) {
+        Random random = new Random(seed);
+        KeyTimeline timeline = new KeyTimeline();
+        long cycle = 0;
+        boolean pressed = false;
+        while (true) {
+            cycle += 1 + (long) (random.nextDouble() * 2 * meanGap);
+            if (cycle > lastCycle) {
+                return timeline;
+            }
+            timeline.add(cycle, pressed ? NO_KEY : ' ' + random.nextInt(95));
+            pressed = !pressed;
+        }
+    }
+}
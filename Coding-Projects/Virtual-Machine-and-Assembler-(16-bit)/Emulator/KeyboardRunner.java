@@ -0,0 +1,340 @@
+/**
+ * Author: Ben Vargas
+ * Course: CS220 - Computer Architecture and Assembly Language
+ * Professor: Nery Chapeton-Lamas
+ * Project: CPU Emulator (HACK Architecture)
+ */
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Runs a HACK program with scripted keyboard input (a KeyTimeline), with record and replay.
+ * <p>
+ *     The CPU runs in slices that end at the next event's cycle, then the event's key code is
+ *     put in KBD, so the script costs nothing per cycle, only per event. Runs are deterministic:
+ *     the same program, events, and cycle count always give the same final state, which
+ *     -record saves in a trace (the program's hash, the events, and a digest of the final
+ *     state) and -replay checks.
+ * </p>
+ * <p>
+ *     Busy-wait fast-forward: when the next event is far away, the runner steps the program a
+ *     few hundred cycles and compares PC, A, D, and all of RAM with where it started. If they
+ *     repeat after k cycles, the program is provably in a loop with period k (a polling loop
+ *     like Fill.asm's (CHECK) with nothing left to draw reads the same KBD and writes the same
+ *     values), and it stays in it until KBD changes, so whole periods up to the next event are
+ *     added to the cycle count without running them. The final state is the same as a run
+ *     without fast-forward. When no period is found the next attempt waits twice as long.
+ * </p>
+ * Build: javac -sourcepath ../Assembler -d build *.java
+ * Usage: java -cp build KeyboardRunner [-cycles N] [-translate] [-no-fast-forward]
+ *                                      [-keys script | -random seed | -replay trace] [-record trace]
+ *                                      [-print address]... program.asm/.hack/.hackb
+ *        e.g. java -cp build KeyboardRunner -cycles 100000000 -keys fill.keys -print SCREEN Fill.asm
+ */
+public class KeyboardRunner {
+    public static final long DEFAULT_CYCLES = 100000000L;
+    public static final long RANDOM_MEAN_GAP = 200000;
+
+    // longest loop looked for, and the shortest gap to the next event worth looking
+    public static final int MAX_SPIN_PERIOD = 256;
+    public static final long MIN_FAST_FORWARD_GAP = 4096;
+    private static final long MAX_BACKOFF = 1L << 22;
+
+    private static final String TRACE_HEADER = "trace";
+
+    private final HackCPU cpu;
+    private final DynamicTranslator translator; // null to interpret
+    private final KeyTimeline timeline;
+    private final KeyTimeline applied = new KeyTimeline();
+    private boolean fastForward = true;
+
+    private int nextEvent;
+    private long nextAttempt;
+    private long backoff = MIN_FAST_FORWARD_GAP;
+    private final short[] snapshot = new short[HackCPU.RAM_SIZE];
+    private int stepStatus;
+
+    private long skippedCycles;
+    private int fastForwardCount;
+
+    // ALGORITHM:
+    // parse command line for cycle budget, engine, fast-forward, input source, trace, and addresses
+    // assemble (.asm) or read (.hack/.hackb) the program, read the script or trace (or make random events)
+    // run to each event's cycle in turn and put its key code in KBD,
+    //   skipping whole periods of a provable busy-wait loop while the next event is far
+    // with -record, write the program hash, the events, and the final state digest to the trace
+    // with -replay, compare the final state digest with the trace's
+    // print the status, cycles, events, fast-forwarded cycles, and the requested RAM values
+
+    public static void main(String[] args) {
+        long maxCycles = DEFAULT_CYCLES;
+        boolean translate = false, fastForward = true;
+        String keysFileName = null, replayFileName = null, recordFileName = null, programFileName = null;
+        Long seed = null;
+        List<String> printed = new ArrayList<String>();
+
+        for (int i = 0; i < args.length; i++) {
+            if (args[i].equals("-cycles") && i + 1 < args.length) {
+                maxCycles = Long.parseLong(args[++i]);
+            } else if (args[i].equals("-translate")) {
+                translate = true;
+            } else if (args[i].equals("-no-fast-forward")) {
+                fastForward = false;
+            } else if (args[i].equals("-keys") && i + 1 < args.length) {
+                keysFileName = args[++i];
+            } else if (args[i].equals("-random") && i + 1 < args.length) {
+                seed = Long.parseLong(args[++i]);
+            } else if (args[i].equals("-replay") && i + 1 < args.length) {
+                replayFileName = args[++i];
+            } else if (args[i].equals("-record") && i + 1 < args.length) {
+                recordFileName = args[++i];
+            } else if (args[i].equals("-print") && i + 1 < args.length) {
+                printed.add(args[++i]);
+            } else {
+                programFileName = args[i];
+            }
+        }
+
+        int sources = (keysFileName != null ? 1 : 0) + (seed != null ? 1 : 0) + (replayFileName != null ? 1 : 0);
+        if (programFileName == null || sources > 1 || maxCycles < 0) {
+            System.err.println("Usage: java KeyboardRunner [-cycles N] [-translate] [-no-fast-forward] " +
+                    "[-keys script | -random seed | -replay trace] [-record trace] [-print address]... " +
+                    "program.asm/.hack/.hackb");
+            System.exit(1);
+        }
+
+        HackCPU cpu = null;
+        KeyTimeline timeline = new KeyTimeline();
+        long expectedDigest = 0;
+        int[] printedAddresses = new int[printed.size()];
+        try {
+            cpu = new HackCPU(Emulator.loadProgram(programFileName));
+            if (keysFileName != null) {
+                timeline = KeyTimeline.parse(Files.readAllLines(Paths.get(keysFileName), StandardCharsets.US_ASCII));
+            } else if (seed != null) {
+                timeline = KeyTimeline.random(seed, maxCycles, RANDOM_MEAN_GAP);
+            } else if (replayFileName != null) {
+                List<String> lines = Files.readAllLines(Paths.get(replayFileName), StandardCharsets.US_ASCII);
+                long[] header = parseTraceHeader(lines.isEmpty() ? "" : lines.get(0));
+                if (header[0] != romHash(cpu.getRom())) {
+                    throw new IllegalArgumentException(replayFileName + " was recorded with a different program");
+                }
+                maxCycles = header[1];
+                expectedDigest = header[2];
+                timeline = KeyTimeline.parse(lines.subList(1, lines.size()));
+            }
+            for (int i = 0; i < printed.size(); i++) {
+                printedAddresses[i] = Emulator.parseAddress(printed.get(i));
+            }
+        } catch (IOException | IllegalArgumentException e) {
+            System.err.println(e.getMessage());
+            System.err.println("Could not load " + programFileName + " and its keyboard input");
+            System.exit(1);
+        }
+
+        KeyboardRunner runner = new KeyboardRunner(cpu, translate ? new DynamicTranslator(cpu) : null, timeline);
+        runner.setFastForward(fastForward);
+        long start = System.nanoTime();
+        int status = runner.run(maxCycles);
+        long nanos = System.nanoTime() - start;
+        long digest = stateDigest(cpu);
+
+        System.out.printf("%s: %s after %d cycles, %d key events, %d cycles fast-forwarded in %d skips (%.2f ms)%n",
+                programFileName, HackCPU.statusName(status), cpu.getCycles(), runner.getApplied().size(),
+                runner.getSkippedCycles(), runner.getFastForwardCount(), nanos / 1e6);
+        System.out.printf("state digest %016x%n", digest);
+        for (int i = 0; i < printed.size(); i++) {
+            System.out.println("RAM[" + printed.get(i) + "] = " + cpu.getRam(printedAddresses[i]));
+        }
+
+        if (recordFileName != null) {
+            try (BufferedWriter out = Files.newBufferedWriter(Paths.get(recordFileName), StandardCharsets.US_ASCII)) {
+                out.write(String.format("%s rom=%016x cycles=%d state=%016x%n", TRACE_HEADER, romHash(cpu.getRom()),
+                        cpu.getCycles(), digest));
+                runner.getApplied().write(out);
+            } catch (IOException e) {
+                System.err.println(e.getMessage());
+                System.err.println("Could not write trace " + recordFileName);
+                System.exit(1);
+            }
+            System.out.println("Recorded " + recordFileName);
+        }
+        if (replayFileName != null) {
+            if (digest != expectedDigest) {
+                System.out.printf("Replay of %s DIFFERS: recorded state %016x%n", replayFileName, expectedDigest);
+                System.exit(1);
+            }
+            System.out.println("Replay of " + replayFileName + " matches");
+        }
+    }
+
+    /**
+     * Primary Constructor for KeyboardRunner
+     * @param cpu - CPU to run, from its current cycle count (event cycles count from its reset)
+     * @param translator - translator of the CPU's program, or null to interpret
+     * @param timeline - key events to apply
+     */
+    public KeyboardRunner(HackCPU cpu, DynamicTranslator translator, KeyTimeline timeline) {
+        this.cpu = cpu;
+        this.translator = translator;
+        this.timeline = timeline;
+    }
+
+    /**
+     * setFastForward
+     * @param fastForward - true to skip the periods of provable busy-wait loops (the default)
+     */
+    public void setFastForward(boolean fastForward) {
+        this.fastForward = fastForward;
+    }
+
+    /**
+     * run
+     * <p>
+     *     Runs maxCycles instructions (or until the program stops), applying every event whose
+     *     cycle is reached. Can be called again to go on.
+     * </p>
+     * Precondition: maxCycles &gt;= 0
+     * Postcondition: getApplied has every event applied so far
+     * @param maxCycles - most instructions to execute (fast-forwarded cycles count)
+     * @return - HALTED, BUDGET_EXHAUSTED, or END_OF_PROGRAM
+     */
+    public int run(long maxCycles) {
+        long end = cpu.getCycles() + maxCycles;
+        while (true) {
+            while (nextEvent < timeline.size() && timeline.getCycle(nextEvent) <= cpu.getCycles()) {
+                cpu.setRam(HackCPU.KBD, timeline.getKey(nextEvent));
+                applied.add(cpu.getCycles(), timeline.getKey(nextEvent));
+                nextEvent++;
+                backoff = MIN_FAST_FORWARD_GAP;
+                nextAttempt = cpu.getCycles();
+            }
+            if (cpu.getCycles() >= end) {
+                return HackCPU.BUDGET_EXHAUSTED;
+            }
+
+            long until = nextEvent < timeline.size() ? Math.min(end, timeline.getCycle(nextEvent)) : end;
+            long slice = until - cpu.getCycles();
+            if (fastForward && slice >= MIN_FAST_FORWARD_GAP) {
+                if (cpu.getCycles() >= nextAttempt) {
+                    int period = findPeriod();
+                    if (stepStatus != HackCPU.BUDGET_EXHAUSTED) {
+                        return stepStatus;
+                    }
+                    if (period > 0) {
+                        long skipped = (until - cpu.getCycles()) / period * period;
+                        cpu.setRegisters(cpu.getA(), cpu.getD(), cpu.getPC(), skipped);
+                        skippedCycles += skipped;
+                        fastForwardCount++;
+                        continue;
+                    }
+                    nextAttempt = cpu.getCycles() + backoff;
+                    backoff = Math.min(backoff * 2, MAX_BACKOFF);
+                    continue;
+                }
+                slice = Math.min(slice, nextAttempt - cpu.getCycles());
+            }
+
+            int status = translator != null ? translator.run(slice) : cpu.run(slice);
+            if (status != HackCPU.BUDGET_EXHAUSTED) {
+                return status;
+            }
+        }
+    }
+
+    /**
+     * findPeriod
+     * <p>
+     *     Steps the CPU up to MAX_SPIN_PERIOD cycles, looking for the state it started in.
+     * </p>
+     * Precondition: the next event is at least MAX_SPIN_PERIOD cycles away
+     * Postcondition: the steps taken are real (counted in the CPU's cycles), stepStatus is the
+     *                status of the last step
+     * @return - number of cycles after which PC, A, D, and RAM repeat, 0 if none was found
+     */
+    private int findPeriod() {
+        int pc = cpu.getPC(), a = cpu.getA(), d = cpu.getD();
+        short[] ram = cpu.getRam();
+        System.arraycopy(ram, 0, snapshot, 0, ram.length);
+
+        for (int period = 1; period <= MAX_SPIN_PERIOD; period++) {
+            stepStatus = cpu.run(1);
+            if (stepStatus != HackCPU.BUDGET_EXHAUSTED) {
+                return 0;
+            }
+            if (cpu.getPC() == pc && cpu.getA() == a && cpu.getD() == d && Arrays.equals(ram, snapshot)) {
+                return period;
+            }
+        }
+        return 0;
+    }
+
+    /**
+     * parseTraceHeader
+     * @param line - first line of a trace: "trace rom=HASH cycles=N state=DIGEST"
+     * @return - ROM hash, cycle count, and state digest
+     * @throws IllegalArgumentException - if the line is not a trace header
+     */
+    public static long[] parseTraceHeader(String line) throws IllegalArgumentException {
+        String[] fields = line.trim().split("\\s+");
+        if (fields.length != 4 || !fields[0].equals(TRACE_HEADER) || !fields[1].startsWith("rom=")
+                || !fields[2].startsWith("cycles=") || !fields[3].startsWith("state=")) {
+            throw new IllegalArgumentException("Not a keyboard trace: " + line);
+        }
+        return new long[] {Long.parseUnsignedLong(fields[1].substring(4), 16), Long.parseLong(fields[2].substring(7)),
+                Long.parseUnsignedLong(fields[3].substring(6), 16)};
+    }
+
+    /**
+     * romHash
+     * @param rom - instruction words
+     * @return - FNV-1a hash of the words
+     */
+    public static long romHash(int[] rom) {
+        return HackCPU.hash(HackCPU.HASH_SEED, rom, 0, rom.length);
+    }
+
+    /**
+     * stateDigest
+     * @param cpu - CPU
+     * @return - FNV-1a hash of the cycle count, PC, A, D, and all of RAM
+     */
+    public static long stateDigest(HackCPU cpu) {
+        long hash = HackCPU.hash(HackCPU.HASH_SEED, cpu.getCycles());
+        hash = HackCPU.hash(hash, cpu.getPC());
+        hash = HackCPU.hash(hash, cpu.getA() & 0xFFFF);
+        hash = HackCPU.hash(hash, cpu.getD() & 0xFFFF);
+        return HackCPU.hash(hash, cpu.getRam(), 0, HackCPU.RAM_SIZE);
+    }
+
+    /**
+     * getApplied
+     * @return - events applied so far, at the cycle they were applied
+     */
+    public KeyTimeline getApplied() {
+        return applied;
+    }
+
+    /**
+     * getSkippedCycles
+     * @return - cycles added by fast-forward instead of being run
+     */
+    public long getSkippedCycles() {
+        return skippedCycles;
+    }
+
+    /**
+     * getFastForwardCount
+     * @return - number of times the runner fast-forwarded
+     */
+    public int getFastForwardCount() {
+        return fastForwardCount;
+    }
+}
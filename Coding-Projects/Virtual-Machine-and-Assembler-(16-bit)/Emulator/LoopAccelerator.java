@@ -0,0 +1,671 @@
+/**
+ * Author: Ben Vargas
+ * Course: CS220 - Computer Architecture and Assembly Language
+ * Professor: Nery Chapeton-Lamas
+ * Project: CPU Emulator (HACK Architecture)
+ */
+
+import java.util.Arrays;
+
+/**
+ * Execution engine for a HackCPU that recognizes simple loops (fills, counted adds, counters,
+ * polling loops) and runs many of their iterations at once, with the same final RAM,
+ * registers, and cycle count as stepping them.
+ * <p>
+ *     Each time control reaches a ROM address the engine counts it. At a hot address it
+ *     follows one iteration of the loop from there symbolically: A, D, and every RAM word read
+ *     at a fixed address are variables, and every value is a linear expression of them (mod
+ *     2^16; !x is -x - 1). Branches on such values go the way the current values send them and
+ *     are kept as guards. If the iteration comes back to its start, and every variable it
+ *     changes is changed by adding something the loop does not change (an induction variable:
+ *     a pointer, a down counter, an accumulator like Mult.asm's R2 += R0), then every value in
+ *     iteration k is v + k * step. That gives the number of iterations before a guard changes
+ *     sign, and the final values in closed form.
+ * </p>
+ * <p>
+ *     Stores through a pointer (M with an induction variable in A, like Fill.asm's DRAW) are
+ *     done with Arrays.fill when the pointer moves one word at a time and the value stays the
+ *     same, or one word at a time otherwise; the iterations are cut short before a pointer
+ *     reaches a word the loop reads or writes at a fixed address, or leaves RAM. Loops that load
+ *     through a pointer, multiply, AND or OR variables, or change a value by something that
+ *     itself changes are run normally. With setVerify every bulk run is checked against a
+ *     copy of the CPU stepping the same iterations.
+ * </p>
+ */
+public class LoopAccelerator {
+    public static final int DEFAULT_HOT_THRESHOLD = 16;
+
+    // largest loop followed, and the most fixed RAM words, pointer stores, and guards in it
+    public static final int MAX_LOOP_LENGTH = 64;
+    public static final int MAX_CELLS = 16;
+    public static final int MAX_STORES = 4;
+    public static final int MAX_GUARDS = 8;
+
+    // fewest iterations worth running in bulk, and the longest wait after a failed attempt
+    private static final long MIN_ITERATIONS = 2;
+    private static final int MAX_BACKOFF = 1 << 20;
+
+    // variables: A and D at the start of the iteration, then one per fixed RAM word
+    private static final int VAR_A = 0;
+    private static final int VAR_D = 1;
+    private static final int VARIABLES = 2 + MAX_CELLS;
+
+    private final HackCPU cpu;
+    private final int[] program;
+    private final BlockCompiler blocks;
+    private final int hotThreshold;
+    private boolean verify;
+
+    // entries left before the loop at each ROM address is looked at, and the wait after a failure
+    private final int[] countdowns = new int[HackCPU.ROM_SIZE + 1];
+    private final int[] backoffs = new int[HackCPU.ROM_SIZE + 1];
+
+    // symbolic state of one iteration: an expression is int[VARIABLES + 1], the constant first,
+    // then the coefficient of each variable; values holds the variables at the start
+    private int[] a;
+    private int[] d;
+    private final int[] cellAddresses = new int[MAX_CELLS];
+    private final boolean[] cellsRead = new boolean[MAX_CELLS]; // read before written, so a variable
+    private final int[][] cellValues = new int[MAX_CELLS][];
+    private int cellCount;
+    private final int[][] storeAddresses = new int[MAX_STORES][];
+    private final int[][] storeValues = new int[MAX_STORES][];
+    private int storeCount;
+    private final int[][] guards = new int[MAX_GUARDS][];
+    private int guardCount;
+    private final int[] values = new int[VARIABLES];
+    private final int[] steps = new int[VARIABLES];
+
+    private long loopCount;
+    private long acceleratedCycles;
+
+    /**
+     * Primary Constructor for LoopAccelerator
+     * @param cpu - CPU to run (its RAM and registers are used)
+     * @param hotThreshold - times a ROM address is reached before the loop there is looked at
+     */
+    public LoopAccelerator(HackCPU cpu, int hotThreshold) {
+        this.cpu = cpu;
+        this.hotThreshold = Math.max(hotThreshold, 1);
+        program = HackCPU.decode(cpu.getRom());
+        blocks = new BlockCompiler(cpu.getRom());
+        Arrays.fill(countdowns, this.hotThreshold);
+        Arrays.fill(backoffs, this.hotThreshold);
+    }
+
+    /**
+     * Default Constructor for LoopAccelerator
+     * @param cpu - CPU to run
+     */
+    public LoopAccelerator(HackCPU cpu) {
+        this(cpu, DEFAULT_HOT_THRESHOLD);
+    }
+
+    /**
+     * setVerify
+     * @param verify - true to check every bulk run against stepping (slow, for testing)
+     */
+    public void setVerify(boolean verify) {
+        this.verify = verify;
+    }
+
+    /**
+     * run
+     * <p>
+     *     Same as HackCPU.run, with recognized loops run in bulk.
+     * </p>
+     * Precondition: maxCycles &gt;= 0
+     * Postcondition: the CPU is in the same state HackCPU.run would leave it in
+     * @param maxCycles - most instructions to execute
+     * @return - HALTED, BUDGET_EXHAUSTED, or END_OF_PROGRAM
+     * @throws IllegalStateException - if verifying and a bulk run differs from stepping
+     */
+    public int run(long maxCycles) throws IllegalStateException {
+        long remaining = maxCycles;
+        while (remaining > 0) {
+            int pc = cpu.getPC();
+            if (--countdowns[pc] <= 0) {
+                long executed = accelerate(pc, remaining);
+                if (executed > 0) {
+                    // a loop cut short (by the budget or a pointer) goes on in bulk next time
+                    remaining -= executed;
+                    countdowns[pc] = 1;
+                    backoffs[pc] = hotThreshold;
+                    continue;
+                }
+                countdowns[pc] = backoffs[pc];
+                backoffs[pc] = Math.min(backoffs[pc] * 2, MAX_BACKOFF);
+            }
+
+            long before = cpu.getCycles();
+            int status = cpu.run(Math.min(Math.max(blocks.blockLength(pc), 1), remaining));
+            remaining -= cpu.getCycles() - before;
+            if (status != HackCPU.BUDGET_EXHAUSTED) {
+                return status;
+            }
+        }
+        return HackCPU.BUDGET_EXHAUSTED;
+    }
+
+    /**
+     * accelerate
+     * @param head - ROM address of the loop's start (the CPU's PC)
+     * @param maxCycles - most instructions to execute
+     * @return - instructions executed in bulk, 0 if the loop there is not recognized
+     * @throws IllegalStateException - if verifying and the bulk run differs from stepping
+     */
+    private long accelerate(int head, long maxCycles) throws IllegalStateException {
+        int length = follow(head);
+        if (length == 0) {
+            return 0;
+        }
+
+        short[] ram = cpu.getRam();
+        if (!findSteps()) {
+            return 0;
+        }
+
+        long iterations = maxCycles / length;
+        for (int i = 0; i < guardCount && iterations >= MIN_ITERATIONS; i++) {
+            iterations = Math.min(iterations, guardLimit(guards[i]));
+        }
+        for (int i = 0; i < storeCount && iterations >= MIN_ITERATIONS; i++) {
+            iterations = Math.min(iterations, storeLimit(storeAddresses[i]));
+        }
+        if (iterations < MIN_ITERATIONS || !storesDisjoint(iterations)) {
+            return 0;
+        }
+
+        HackCPU reference = null;
+        if (verify) {
+            reference = new HackCPU(cpu);
+            System.arraycopy(ram, 0, reference.getRam(), 0, ram.length);
+            reference.setRegisters(cpu.getA(), cpu.getD(), head, 0);
+            reference.run(iterations * length);
+        }
+
+        // every value is taken from the starting values before anything is written
+        long last = iterations - 1;
+        int finalA = valueAt(a, last), finalD = valueAt(d, last);
+        int[] finalCells = new int[cellCount];
+        for (int cell = 0; cell < cellCount; cell++) {
+            finalCells[cell] = valueAt(cellValues[cell], last);
+        }
+        for (int i = 0; i < storeCount; i++) {
+            fill(ram, storeAddresses[i], storeValues[i], iterations);
+        }
+        for (int cell = 0; cell < cellCount; cell++) {
+            ram[cellAddresses[cell]] = (short) finalCells[cell];
+        }
+        cpu.setRegisters(finalA, finalD, head, iterations * length);
+        loopCount++;
+        acceleratedCycles += iterations * length;
+
+        if (reference != null && (reference.getA() != cpu.getA() || reference.getD() != cpu.getD()
+                || reference.getPC() != cpu.getPC() || !Arrays.equals(reference.getRam(), ram))) {
+            throw new IllegalStateException("Loop at ROM address " + head + " run " + iterations +
+                    " times in bulk differs from stepping it");
+        }
+        return iterations * length;
+    }
+
+    /**
+     * follow
+     * <p>
+     *     Follows one iteration of the loop at head symbolically, leaving the expressions of
+     *     A, D, the fixed RAM words, the pointer stores, and the guards in the fields.
+     * </p>
+     * @param head - ROM address of the loop's start
+     * @return - instructions in one iteration, 0 if it is not a loop this engine can run
+     */
+    private int follow(int head) {
+        a = variable(VAR_A);
+        d = variable(VAR_D);
+        cellCount = 0;
+        storeCount = 0;
+        guardCount = 0;
+        values[VAR_A] = cpu.getA();
+        values[VAR_D] = cpu.getD();
+
+        int pc = head;
+        for (int length = 1; length <= MAX_LOOP_LENGTH; length++) {
+            int op = program[pc];
+            int opcode = op >>> HackCPU.OPCODE_SHIFT;
+            if (opcode == HackCPU.OP_HALT || opcode == HackCPU.OP_END) {
+                return 0;
+            }
+            if (opcode == HackCPU.OP_LOAD) {
+                a = constant(op & HackCPU.VALUE_MASK);
+                pc++;
+            } else {
+                int[] m = readsM(op) ? load(a) : null;
+                int[] out = readsM(op) && m == null ? null : compute(op, opcode, m);
+                if (out == null) {
+                    return 0;
+                }
+
+                int[] address = a;
+                if ((op & HackCPU.DEST_M) != 0 && !store(address, out)) {
+                    return 0;
+                }
+                if ((op & HackCPU.DEST_D) != 0) d = out;
+                if ((op & HackCPU.DEST_A) != 0) a = out;
+                pc++;
+                if ((op & HackCPU.JUMP_MASK) != 0) {
+                    if (!isConstant(address)) {
+                        return 0;
+                    }
+                    boolean taken;
+                    if (isConstant(out) || (op & HackCPU.JUMP_MASK) == HackCPU.JUMP_MASK) {
+                        taken = HackCPU.isJumpTaken(op, (short) out[0]);
+                    } else if (guardCount < MAX_GUARDS) {
+                        taken = HackCPU.isJumpTaken(op, evaluate(out));
+                        guards[guardCount++] = out;
+                    } else {
+                        return 0;
+                    }
+                    if (taken) {
+                        pc = address[0] & HackCPU.ADDRESS_MASK;
+                    }
+                }
+            }
+
+            if (pc == head) {
+                return length;
+            }
+        }
+        return 0;
+    }
+
+    /**
+     * readsM
+     * @param op - decoded C instruction
+     * @return - true if its comp reads M
+     */
+    private static boolean readsM(int op) {
+        int opcode = op >>> HackCPU.OPCODE_SHIFT;
+        return opcode >= HackCPU.OP_M || (opcode == HackCPU.OP_ALU && (op & 0x1000) != 0);
+    }
+
+    /**
+     * compute
+     * @param op - decoded C instruction
+     * @param opcode - its opcode
+     * @param m - expression of M, if the comp reads it
+     * @return - expression of the comp, null if it is not linear in the variables
+     */
+    private int[] compute(int op, int opcode, int[] m) {
+        switch (opcode) {
+            case HackCPU.OP_ZERO:       return constant(0);
+            case HackCPU.OP_ONE:        return constant(1);
+            case HackCPU.OP_MINUS_ONE:  return constant(-1);
+            case HackCPU.OP_D:          return d;
+            case HackCPU.OP_A:          return a;
+            case HackCPU.OP_NOT_D:      return add(negate(d), constant(-1));
+            case HackCPU.OP_NOT_A:      return add(negate(a), constant(-1));
+            case HackCPU.OP_NEG_D:      return negate(d);
+            case HackCPU.OP_NEG_A:      return negate(a);
+            case HackCPU.OP_D_PLUS_1:   return add(d, constant(1));
+            case HackCPU.OP_A_PLUS_1:   return add(a, constant(1));
+            case HackCPU.OP_D_MINUS_1:  return add(d, constant(-1));
+            case HackCPU.OP_A_MINUS_1:  return add(a, constant(-1));
+            case HackCPU.OP_D_PLUS_A:   return add(d, a);
+            case HackCPU.OP_D_MINUS_A:  return add(d, negate(a));
+            case HackCPU.OP_A_MINUS_D:  return add(a, negate(d));
+            case HackCPU.OP_M:          return m;
+            case HackCPU.OP_NOT_M:      return add(negate(m), constant(-1));
+            case HackCPU.OP_NEG_M:      return negate(m);
+            case HackCPU.OP_M_PLUS_1:   return add(m, constant(1));
+            case HackCPU.OP_M_MINUS_1:  return add(m, constant(-1));
+            case HackCPU.OP_D_PLUS_M:   return add(d, m);
+            case HackCPU.OP_D_MINUS_M:  return add(d, negate(m));
+            case HackCPU.OP_M_MINUS_D:  return add(m, negate(d));
+            default:
+                // AND, OR, and the generic ALU only on constants
+                int[] y = readsM(op) ? m : a;
+                if (!isConstant(d) || !isConstant(y)) {
+                    return null;
+                }
+                return constant(opcode == HackCPU.OP_D_AND_A || opcode == HackCPU.OP_D_AND_M ? d[0] & y[0]
+                        : opcode == HackCPU.OP_D_OR_A || opcode == HackCPU.OP_D_OR_M ? d[0] | y[0]
+                        : HackCPU.alu(op, d[0], y[0]));
+        }
+    }
+
+    /**
+     * load
+     * @param address - expression of A
+     * @return - expression of the RAM word, null if A is not a fixed address or there are too
+     *           many fixed words
+     */
+    private int[] load(int[] address) {
+        if (!isConstant(address)) {
+            return null;
+        }
+        int cell = cell(address[0] & HackCPU.ADDRESS_MASK);
+        if (cell < 0) {
+            return null;
+        }
+        if (cellValues[cell] == null) {
+            cellsRead[cell] = true;
+            cellValues[cell] = variable(2 + cell);
+            values[2 + cell] = cpu.getRam()[cellAddresses[cell]];
+        }
+        return cellValues[cell];
+    }
+
+    /**
+     * store
+     * @param address - expression of A
+     * @param value - expression stored
+     * @return - false if there are too many fixed words or pointer stores
+     */
+    private boolean store(int[] address, int[] value) {
+        if (isConstant(address)) {
+            int cell = cell(address[0] & HackCPU.ADDRESS_MASK);
+            if (cell < 0) {
+                return false;
+            }
+            cellValues[cell] = value;
+            return true;
+        }
+        if (storeCount == MAX_STORES) {
+            return false;
+        }
+        storeAddresses[storeCount] = address;
+        storeValues[storeCount++] = value;
+        return true;
+    }
+
+    /**
+     * cell
+     * @param address - fixed RAM address
+     * @return - index of its cell (a new one the first time), -1 if there are MAX_CELLS already
+     */
+    private int cell(int address) {
+        for (int cell = 0; cell < cellCount; cell++) {
+            if (cellAddresses[cell] == address) {
+                return cell;
+            }
+        }
+        if (cellCount == MAX_CELLS) {
+            return -1;
+        }
+        cellAddresses[cellCount] = address;
+        cellsRead[cellCount] = false;
+        cellValues[cellCount] = null;
+        return cellCount++;
+    }
+
+    /**
+     * findSteps
+     * <p>
+     *     Works out the step of each variable the iteration uses. A variable the iteration does
+     *     not change steps by 0; one it changes must end as itself plus an expression of
+     *     variables that do not change.
+     * </p>
+     * @return - false if a variable that is used changes in any other way
+     */
+    private boolean findSteps() {
+        boolean[] changing = new boolean[VARIABLES];
+        int[][] finals = new int[VARIABLES][];
+        finals[VAR_A] = a;
+        finals[VAR_D] = d;
+        for (int cell = 0; cell < cellCount; cell++) {
+            if (cellsRead[cell]) {
+                finals[2 + cell] = cellValues[cell];
+            }
+        }
+        for (int v = 0; v < VARIABLES; v++) {
+            changing[v] = finals[v] != null && !Arrays.equals(finals[v], variable(v));
+        }
+
+        boolean[] used = new boolean[VARIABLES];
+        markUsed(used, a);
+        markUsed(used, d);
+        for (int cell = 0; cell < cellCount; cell++) {
+            markUsed(used, cellValues[cell]);
+        }
+        for (int i = 0; i < storeCount; i++) {
+            markUsed(used, storeAddresses[i]);
+            markUsed(used, storeValues[i]);
+        }
+        for (int i = 0; i < guardCount; i++) {
+            markUsed(used, guards[i]);
+        }
+
+        Arrays.fill(steps, 0);
+        for (int v = 0; v < VARIABLES; v++) {
+            if (!changing[v] || !used[v]) {
+                continue;
+            }
+            int[] step = add(finals[v], negate(variable(v)));
+            for (int w = 0; w < VARIABLES; w++) {
+                if (changing[w] && step[1 + w] != 0) {
+                    return false;
+                }
+            }
+            steps[v] = evaluate(step);
+        }
+        return true;
+    }
+
+    /**
+     * markUsed
+     * @param used - variables used so far
+     * @param expression - expression whose variables are added
+     */
+    private static void markUsed(boolean[] used, int[] expression) {
+        for (int v = 0; v < VARIABLES; v++) {
+            if (expression[1 + v] != 0) {
+                used[v] = true;
+            }
+        }
+    }
+
+    /**
+     * guardLimit
+     * <p>
+     *     The guard's value in iteration k is g + k * s (kept in 16 bit range, so no wrap
+     *     around); the branch goes the same way while its sign stays the same.
+     * </p>
+     * @param guard - expression a branch tests
+     * @return - number of iterations before its sign changes or it would leave 16 bit range
+     */
+    private long guardLimit(int[] guard) {
+        long g = evaluate(guard), s = step(guard);
+        if (s == 0) {
+            return Long.MAX_VALUE;
+        }
+        if (g == 0) {
+            return 1;
+        }
+        if (s > 0) {
+            return g < 0 ? (-g + s - 1) / s : (Short.MAX_VALUE - g) / s + 1;
+        }
+        return g > 0 ? (g - s - 1) / -s : (g - Short.MIN_VALUE) / -s + 1;
+    }
+
+    /**
+     * storeLimit
+     * @param address - expression of a pointer store's address
+     * @return - number of iterations before the pointer leaves RAM or reaches a fixed word
+     */
+    private long storeLimit(int[] address) {
+        long p = evaluate(address), s = step(address);
+        if (p < 0) {
+            return 0;
+        }
+        long limit = s > 0 ? (HackCPU.ADDRESS_MASK - p) / s + 1 : s < 0 ? p / -s + 1 : Long.MAX_VALUE;
+        for (int cell = 0; cell < cellCount; cell++) {
+            long c = cellAddresses[cell];
+            if (s == 0 && c == p) {
+                return 0;
+            }
+            if (s > 0 && c >= p) {
+                limit = Math.min(limit, (c - p + s - 1) / s);
+            } else if (s < 0 && c <= p) {
+                limit = Math.min(limit, (p - c - s - 1) / -s);
+            }
+        }
+        return limit;
+    }
+
+    /**
+     * storesDisjoint
+     * @param iterations - iterations to run
+     * @return - true if no two pointer stores write the same word in those iterations, so the
+     *           order they are done in does not matter
+     */
+    private boolean storesDisjoint(long iterations) {
+        for (int i = 0; i < storeCount; i++) {
+            long first = evaluate(storeAddresses[i]), last = first + step(storeAddresses[i]) * (iterations - 1);
+            for (int j = 0; j < i; j++) {
+                long otherFirst = evaluate(storeAddresses[j]);
+                long otherLast = otherFirst + step(storeAddresses[j]) * (iterations - 1);
+                if (Math.max(first, last) >= Math.min(otherFirst, otherLast)
+                        && Math.max(otherFirst, otherLast) >= Math.min(first, last)) {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
+    /**
+     * fill
+     * @param ram - RAM
+     * @param address - expression of the store's address
+     * @param value - expression of the value stored
+     * @param iterations - iterations to run
+     */
+    private void fill(short[] ram, int[] address, int[] value, long iterations) {
+        int p = evaluate(address), s = step(address);
+        int v = evaluate(value), vs = step(value);
+        if (s == 0) {
+            ram[p] = (short) (v + vs * (iterations - 1));
+        } else if (vs == 0 && (s == 1 || s == -1)) {
+            int last = (int) (p + s * (iterations - 1));
+            Arrays.fill(ram, Math.min(p, last), Math.max(p, last) + 1, (short) v);
+        } else {
+            for (int k = 0; k < iterations; k++) {
+                ram[p + s * k] = (short) (v + vs * k);
+            }
+        }
+    }
+
+    /**
+     * valueAt
+     * @param expression - expression in the variables at the start of an iteration
+     * @param k - iteration
+     * @return - its value in iteration k, as a signed 16 bit value
+     */
+    private int valueAt(int[] expression, long k) {
+        return (short) (evaluate(expression) + step(expression) * (k & 0xFFFF));
+    }
+
+    /**
+     * evaluate
+     * @param expression - expression in the variables
+     * @return - its value in the first iteration, as a signed 16 bit value
+     */
+    private int evaluate(int[] expression) {
+        int value = expression[0];
+        for (int v = 0; v < VARIABLES; v++) {
+            value += expression[1 + v] * values[v];
+        }
+        return (short) value;
+    }
+
+    /**
+     * step
+     * @param expression - expression in the variables
+     * @return - how much it goes up each iteration, as a signed 16 bit value
+     */
+    private int step(int[] expression) {
+        int step = 0;
+        for (int v = 0; v < VARIABLES; v++) {
+            step += expression[1 + v] * steps[v];
+        }
+        return (short) step;
+    }
+
+    /**
+     * constant
+     * @param value - 16 bit value
+     * @return - expression of the value
+     */
+    private static int[] constant(int value) {
+        int[] expression = new int[VARIABLES + 1];
+        expression[0] = (short) value;
+        return expression;
+    }
+
+    /**
+     * variable
+     * @param v - variable
+     * @return - expression of the variable
+     */
+    private static int[] variable(int v) {
+        int[] expression = new int[VARIABLES + 1];
+        expression[1 + v] = 1;
+        return expression;
+    }
+
+    /**
+     * isConstant
+     * @param expression - expression
+     * @return - true if it has no variables
+     */
+    private static boolean isConstant(int[] expression) {
+        for (int v = 0; v < VARIABLES; v++) {
+            if (expression[1 + v] != 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * add
+     * @param x - expression
+     * @param y - expression
+     * @return - x + y (mod 2^16)
+     */
+    private static int[] add(int[] x, int[] y) {
+        int[] sum = new int[VARIABLES + 1];
+        for (int i = 0; i < sum.length; i++) {
+            sum[i] = (short) (x[i] + y[i]);
+        }
+        return sum;
+    }
+
+    /**
+     * negate
+     * @param x - expression
+     * @return - -x (mod 2^16)
+     */
+    private static int[] negate(int[] x) {
+        int[] negative = new int[VARIABLES + 1];
+        for (int i = 0; i < negative.length; i++) {
+            negative[i] = (short) -x[i];
+        }
+        return negative;
+    }
+
+    /**
+     * getLoopCount
+     * @return - number of times a loop was run in bulk
+     */
+    public long getLoopCount() {
+        return loopCount;
+    }
+
+    /**
+     * getAcceleratedCycles
+     * @return - instructions run in bulk instead of one at a time
+     */
+    public long getAcceleratedCycles() {
+        return acceleratedCycles;
+    }
+}
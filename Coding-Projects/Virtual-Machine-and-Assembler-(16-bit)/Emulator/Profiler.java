@@ -0,0 +1,467 @@
+/**
+ * Author: Ben Vargas
+ * Course: CS220 - Computer Architecture and Assembly Language
+ * Professor: Nery Chapeton-Lamas
+ * Project: CPU Emulator (HACK Architecture)
+ */
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Runs a HACK program with a count of every instruction executed, and reports where the cycles
+ * go: a flat profile (the hottest ROM addresses) and a loop profile, as text and as JSON.
+ * <p>
+ *     The profiling run loop is HackCPU.run with two additions: the count of the ROM address
+ *     (a long[] indexed by PC) goes up for each instruction, and a jump taken backwards (to an
+ *     address at or before its own) is a back edge, counted at the jump's address with the
+ *     address it went to. Each back edge is a loop from its target (the head) to the jump (the
+ *     tail): its iterations are the back edge's count, its cycles are the counts of the
+ *     addresses from head to tail (inner loops included), and it was entered the head's count
+ *     minus the back edges to the head times. A jump that goes back to different addresses is
+ *     reported with the last one.
+ * </p>
+ * <p>
+ *     For a .asm program the source line and label of each address come from the Assembler's
+ *     SourceMap; for a .hack/.hackb program from NAME.hack.map (Assembler -map) when it is
+ *     there, or -map. Addresses are shown as "LABEL+offset" (the last label before them).
+ * </p>
+ * Build: javac -sourcepath ../Assembler -d build *.java
+ * Usage: java -cp build Profiler [-cycles N] [-ram address=value]... [-top N] [-json file] [-map file]
+ *                                program.asm/.hack/.hackb
+ *        e.g. java -cp build Profiler -ram R0=6 -ram R1=1000 -json mult.json Mult.asm
+ */
+public class Profiler {
+    public static final long DEFAULT_CYCLES = 100000000L;
+    public static final int DEFAULT_TOP = 20;
+
+    private final HackCPU cpu;
+    private final int[] program;
+    private final SourceMap sourceMap;
+
+    // count of each ROM address, and of each backward jump with the address it last went to
+    private final long[] hits = new long[HackCPU.ROM_SIZE + 1];
+    private final long[] backEdges = new long[HackCPU.ROM_SIZE + 1];
+    private final int[] backTargets = new int[HackCPU.ROM_SIZE + 1];
+    private long totalHits;
+
+    // ALGORITHM:
+    // parse command line for cycle budget, RAM settings, report length, JSON file, and map file
+    // assemble (.asm, recording the source map) or read (.hack/.hackb, and its .map) the program
+    // set the starting RAM values, run counting every ROM address and every backward jump
+    // print the flat profile (hottest addresses) and the loop profile (one loop per back edge)
+    // write both as JSON if asked
+
+    public static void main(String[] args) {
+        long maxCycles = DEFAULT_CYCLES;
+        int top = DEFAULT_TOP;
+        String jsonFileName = null, mapFileName = null, programFileName = null;
+        List<String> settings = new ArrayList<String>();
+
+        for (int i = 0; i < args.length; i++) {
+            if (args[i].equals("-cycles") && i + 1 < args.length) {
+                maxCycles = Long.parseLong(args[++i]);
+            } else if (args[i].equals("-ram") && i + 1 < args.length) {
+                settings.add(args[++i]);
+            } else if (args[i].equals("-top") && i + 1 < args.length) {
+                top = Integer.parseInt(args[++i]);
+            } else if (args[i].equals("-json") && i + 1 < args.length) {
+                jsonFileName = args[++i];
+            } else if (args[i].equals("-map") && i + 1 < args.length) {
+                mapFileName = args[++i];
+            } else {
+                programFileName = args[i];
+            }
+        }
+
+        if (programFileName == null || maxCycles < 0 || top < 1) {
+            System.err.println("Usage: java Profiler [-cycles N] [-ram address=value]... [-top N] [-json file] " +
+                    "[-map file] program.asm/.hack/.hackb");
+            System.exit(1);
+        }
+
+        HackCPU cpu = null;
+        SourceMap sourceMap = null;
+        try {
+            if (programFileName.endsWith(".asm") && mapFileName == null) {
+                sourceMap = new SourceMap();
+                WordBuffer words = new WordBuffer();
+                Assembler assembler = new Assembler(Assembler.TWO_PASS);
+                assembler.setSourceMap(sourceMap);
+                assembler.assemble(programFileName, words);
+                cpu = new HackCPU(words.getWords());
+            } else {
+                cpu = new HackCPU(Emulator.loadProgram(programFileName));
+                Path mapFile = Paths.get(mapFileName != null ? mapFileName : programFileName + SourceMap.EXTENSION);
+                if (mapFileName != null || Files.exists(mapFile)) {
+                    sourceMap = SourceMap.read(Files.readAllLines(mapFile, StandardCharsets.US_ASCII));
+                }
+            }
+            for (String setting : settings) {
+                int equals = setting.indexOf('=');
+                if (equals < 0) {
+                    throw new IllegalArgumentException("Invalid RAM setting: " + setting);
+                }
+                cpu.setRam(Emulator.parseAddress(setting.substring(0, equals)),
+                        Integer.parseInt(setting.substring(equals + 1).trim()));
+            }
+        } catch (IOException | IllegalArgumentException e) {
+            System.err.println(e.getMessage());
+            System.err.println("Could not load " + programFileName);
+            System.exit(1);
+        }
+
+        Profiler profiler = new Profiler(cpu, sourceMap);
+        long start = System.nanoTime();
+        int status = profiler.run(maxCycles);
+        long nanos = System.nanoTime() - start;
+
+        System.out.printf("%s: %s after %d cycles (profiled in %.2f ms, %.1f million instructions/sec)%n%n",
+                programFileName, HackCPU.statusName(status), cpu.getCycles(), nanos / 1e6,
+                cpu.getCycles() / (nanos / 1e3));
+        System.out.print(profiler.flatProfile(top));
+        System.out.println();
+        System.out.print(profiler.loopProfile(top));
+
+        if (jsonFileName != null) {
+            try {
+                Files.write(Paths.get(jsonFileName), profiler.toJson(programFileName, status)
+                        .getBytes(StandardCharsets.UTF_8));
+            } catch (IOException e) {
+                System.err.println(e.getMessage());
+                System.err.println("Could not write " + jsonFileName);
+                System.exit(1);
+            }
+        }
+    }
+
+    /**
+     * Primary Constructor for Profiler
+     * @param cpu - CPU to run (its RAM and registers are used)
+     * @param sourceMap - source lines and labels of the program, null if not known
+     */
+    public Profiler(HackCPU cpu, SourceMap sourceMap) {
+        this.cpu = cpu;
+        this.sourceMap = sourceMap;
+        program = HackCPU.decode(cpu.getRom());
+    }
+
+    /**
+     * run
+     * <p>
+     *     Same as HackCPU.run, counting every instruction by ROM address and every backward
+     *     jump. Counts add up over calls.
+     * </p>
+     * Precondition: maxCycles &gt;= 0
+     * Postcondition: the CPU is in the same state HackCPU.run would leave it in
+     * @param maxCycles - most instructions to execute
+     * @return - HALTED, BUDGET_EXHAUSTED, or END_OF_PROGRAM
+     */
+    public int run(long maxCycles) {
+        final int[] program = this.program;
+        final long[] hits = this.hits;
+        final short[] ram = cpu.getRam();
+        int a = cpu.getA(), d = cpu.getD(), pc = cpu.getPC();
+        long remaining = maxCycles;
+        int status = HackCPU.BUDGET_EXHAUSTED;
+
+        while (remaining > 0) {
+            int op = program[pc];
+            int opcode = op >>> HackCPU.OPCODE_SHIFT;
+            if (opcode == HackCPU.OP_LOAD) {
+                hits[pc++]++;
+                a = op & HackCPU.VALUE_MASK;
+                remaining--;
+                continue;
+            }
+            if (opcode == HackCPU.OP_HALT) {
+                a = op & HackCPU.VALUE_MASK;
+                status = HackCPU.HALTED;
+                break;
+            }
+            if (opcode == HackCPU.OP_END) {
+                status = HackCPU.END_OF_PROGRAM;
+                break;
+            }
+
+            hits[pc]++;
+            remaining--;
+            int address = a & HackCPU.ADDRESS_MASK;
+            int out = HackCPU.alu(op, d, (op & 0x1000) != 0 ? ram[address] : a);
+            if ((op & HackCPU.DEST_M) != 0) ram[address] = (short) out;
+            if ((op & HackCPU.DEST_D) != 0) d = out;
+            if ((op & HackCPU.DEST_A) != 0) a = out;
+            if ((op & HackCPU.JUMP_MASK) != 0 && HackCPU.isJumpTaken(op, out)) {
+                if (address <= pc) {
+                    backEdges[pc]++;
+                    backTargets[pc] = address;
+                }
+                pc = address;
+            } else {
+                pc++;
+            }
+        }
+
+        long executed = maxCycles - remaining;
+        totalHits += executed;
+        cpu.setRegisters(a, d, pc, executed);
+        return status;
+    }
+
+    /**
+     * getHits
+     * @param address - ROM address
+     * @return - times the instruction there was executed
+     */
+    public long getHits(int address) {
+        return hits[address];
+    }
+
+    /**
+     * getTotalHits
+     * @return - instructions executed while profiling
+     */
+    public long getTotalHits() {
+        return totalHits;
+    }
+
+    /**
+     * flatProfile
+     * @param top - most addresses to list
+     * @return - text table of the hottest ROM addresses, with their share of the cycles, source
+     *           line, label, and instruction
+     */
+    public String flatProfile(int top) {
+        int[] addresses = hotAddresses();
+        StringBuilder text = new StringBuilder();
+        text.append(String.format("Flat profile: %d instructions, %d ROM addresses executed%n", totalHits,
+                addresses.length));
+        text.append(String.format("%8s %14s %7s %6s  %-20s %s%n", "address", "hits", "%", "line", "label",
+                "instruction"));
+        for (int i = 0; i < Math.min(top, addresses.length); i++) {
+            int address = addresses[i];
+            text.append(String.format("%8d %14d %6.2f%% %6s  %-20s %s%n", address, hits[address],
+                    percent(hits[address]), lineText(address), labelText(address), instructionText(address)));
+        }
+        return text.toString();
+    }
+
+    /**
+     * loopProfile
+     * @param top - most loops to list
+     * @return - text table of the loops found (one per back edge), most cycles first
+     */
+    public String loopProfile(int top) {
+        int[] tails = loopTails();
+        StringBuilder text = new StringBuilder();
+        text.append(String.format("Loop profile: %d loops%n", tails.length));
+        text.append(String.format("%-20s %13s %14s %12s %14s %7s%n", "head", "lines", "iterations", "entries",
+                "cycles", "%"));
+        for (int i = 0; i < Math.min(top, tails.length); i++) {
+            int tail = tails[i], head = backTargets[tail];
+            long cycles = loopCycles(tail);
+            String lines = sourceMap == null ? head + "-" + tail : lineText(head) + "-" + lineText(tail);
+            text.append(String.format("%-20s %13s %14d %12d %14d %6.2f%%%n", labelText(head) + " @" + head, lines,
+                    backEdges[tail], loopEntries(tail), cycles, percent(cycles)));
+        }
+        return text.toString();
+    }
+
+    /**
+     * toJson
+     * @param programName - name of the program file
+     * @param status - status of the run
+     * @return - JSON object with the totals, every executed address ("flat"), and every loop
+     *           ("loops"), in the same order as the text profiles (ending with a line break)
+     */
+    public String toJson(String programName, int status) {
+        StringBuilder json = new StringBuilder("{\n");
+        json.append("  \"program\": ").append(BuildReport.quote(programName)).append(",\n");
+        json.append("  \"source\": ").append(sourceMap == null || sourceMap.getSourceName() == null ? "null"
+                : BuildReport.quote(sourceMap.getSourceName())).append(",\n");
+        json.append("  \"status\": ").append(BuildReport.quote(HackCPU.statusName(status))).append(",\n");
+        json.append("  \"cycles\": ").append(totalHits).append(",\n");
+
+        json.append("  \"flat\": [");
+        int[] addresses = hotAddresses();
+        for (int i = 0; i < addresses.length; i++) {
+            int address = addresses[i];
+            json.append(i == 0 ? "\n" : ",\n");
+            json.append("    {\"address\": ").append(address)
+                    .append(", \"hits\": ").append(hits[address])
+                    .append(", \"percent\": ").append(String.format("%.4f", percent(hits[address])))
+                    .append(", \"line\": ").append(sourceMap == null ? "null" : sourceMap.getLine(address))
+                    .append(", \"label\": ").append(labelJson(address))
+                    .append(", \"instruction\": ").append(BuildReport.quote(instructionText(address))).append('}');
+        }
+        json.append(addresses.length == 0 ? "],\n" : "\n  ],\n");
+
+        json.append("  \"loops\": [");
+        int[] tails = loopTails();
+        for (int i = 0; i < tails.length; i++) {
+            int tail = tails[i], head = backTargets[tail];
+            long cycles = loopCycles(tail);
+            json.append(i == 0 ? "\n" : ",\n");
+            json.append("    {\"head\": ").append(head)
+                    .append(", \"tail\": ").append(tail)
+                    .append(", \"label\": ").append(labelJson(head))
+                    .append(", \"headLine\": ").append(sourceMap == null ? "null" : sourceMap.getLine(head))
+                    .append(", \"tailLine\": ").append(sourceMap == null ? "null" : sourceMap.getLine(tail))
+                    .append(", \"iterations\": ").append(backEdges[tail])
+                    .append(", \"entries\": ").append(loopEntries(tail))
+                    .append(", \"cycles\": ").append(cycles)
+                    .append(", \"percent\": ").append(String.format("%.4f", percent(cycles))).append('}');
+        }
+        json.append(tails.length == 0 ? "]\n" : "\n  ]\n");
+        json.append("}\n");
+        return json.toString();
+    }
+
+    /**
+     * hotAddresses
+     * @return - ROM addresses executed at least once, most hits first (lowest address first on ties)
+     */
+    private int[] hotAddresses() {
+        List<Integer> addresses = new ArrayList<Integer>();
+        for (int address = 0; address < hits.length; address++) {
+            if (hits[address] > 0) {
+                addresses.add(address);
+            }
+        }
+        addresses.sort(new Comparator<Integer>() {
+            @Override
+            public int compare(Integer x, Integer y) {
+                return hits[x] != hits[y] ? Long.compare(hits[y], hits[x]) : Integer.compare(x, y);
+            }
+        });
+        return toArray(addresses);
+    }
+
+    /**
+     * loopTails
+     * @return - addresses of the backward jumps taken at least once, most loop cycles first
+     */
+    private int[] loopTails() {
+        List<Integer> tails = new ArrayList<Integer>();
+        for (int address = 0; address < backEdges.length; address++) {
+            if (backEdges[address] > 0) {
+                tails.add(address);
+            }
+        }
+        final long[] cycles = new long[backEdges.length];
+        for (int tail : tails) {
+            cycles[tail] = loopCycles(tail);
+        }
+        tails.sort(new Comparator<Integer>() {
+            @Override
+            public int compare(Integer x, Integer y) {
+                return cycles[x] != cycles[y] ? Long.compare(cycles[y], cycles[x]) : Integer.compare(x, y);
+            }
+        });
+        return toArray(tails);
+    }
+
+    /**
+     * loopCycles
+     * @param tail - address of a backward jump
+     * @return - instructions executed from its target to it (inner loops included)
+     */
+    private long loopCycles(int tail) {
+        long cycles = 0;
+        for (int address = backTargets[tail]; address <= tail; address++) {
+            cycles += hits[address];
+        }
+        return cycles;
+    }
+
+    /**
+     * loopEntries
+     * @param tail - address of a backward jump
+     * @return - times its target was reached other than by a backward jump to it (0 if it can
+     *           not tell)
+     */
+    private long loopEntries(int tail) {
+        long entries = hits[backTargets[tail]];
+        for (int address = backTargets[tail]; address < backEdges.length; address++) {
+            if (backEdges[address] > 0 && backTargets[address] == backTargets[tail]) {
+                entries -= backEdges[address];
+            }
+        }
+        return Math.max(entries, 0);
+    }
+
+    /**
+     * percent
+     * @param count - instructions
+     * @return - share of all instructions profiled, in percent
+     */
+    private double percent(long count) {
+        return totalHits == 0 ? 0 : 100.0 * count / totalHits;
+    }
+
+    /**
+     * lineText
+     * @param address - ROM address
+     * @return - its source line, "-" if not known
+     */
+    private String lineText(int address) {
+        int line = sourceMap == null ? 0 : sourceMap.getLine(address);
+        return line == 0 ? "-" : Integer.toString(line);
+    }
+
+    /**
+     * labelText
+     * @param address - ROM address
+     * @return - "LABEL+offset", "-" if not known
+     */
+    private String labelText(int address) {
+        String label = sourceMap == null ? null : sourceMap.getLabel(address);
+        return label == null ? "-" : label;
+    }
+
+    /**
+     * labelJson
+     * @param address - ROM address
+     * @return - "LABEL+offset" as a JSON string, null if not known
+     */
+    private String labelJson(int address) {
+        String label = sourceMap == null ? null : sourceMap.getLabel(address);
+        return label == null ? "null" : BuildReport.quote(label);
+    }
+
+    /**
+     * instructionText
+     * @param address - ROM address
+     * @return - the instruction there in assembly, or its word in hex if it has no mnemonic
+     */
+    private String instructionText(int address) {
+        int[] rom = cpu.getRom();
+        if (address >= rom.length) {
+            return "";
+        }
+        try {
+            return Disassembler.disassemble(rom[address]);
+        } catch (IllegalArgumentException e) {
+            return String.format("0x%04X", rom[address] & 0xFFFF);
+        }
+    }
+
+    /**
+     * toArray
+     * @param values - list of ints
+     * @return - the ints in an array
+     */
+    private static int[] toArray(List<Integer> values) {
+        int[] array = new int[values.size()];
+        for (int i = 0; i < array.length; i++) {
+            array[i] = values.get(i);
+        }
+        return array;
+    }
+}
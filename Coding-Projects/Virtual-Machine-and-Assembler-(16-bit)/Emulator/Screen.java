@@ -0,0 +1,181 @@
+/**
+ * Author: Ben Vargas
+ * Course: CS220 - Computer Architecture and Assembly Language
+ * Professor: Nery Chapeton-Lamas
+ * Project: CPU Emulator (HACK Architecture)
+ */
+
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferByte;
+import java.awt.image.IndexColorModel;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.BitSet;
+import javax.imageio.ImageIO;
+
+/**
+ * Headless HACK screen: a 512 x 256 black and white image of the screen memory map (RAM
+ * SCREEN to KBD - 1), brought up to date a frame at a time.
+ * <p>
+ *     The screen keeps its own copy of the 8K screen words. update compares the RAM with that
+ *     copy (Arrays.mismatch, which skips equal words many at a time), marks each row with a
+ *     difference in a bitset of dirty rows, and redraws and rehashes only those rows, so a
+ *     frame costs in proportion to the rows that changed. Nothing is added to the CPU's run
+ *     loop (or to translated code): writes to the screen are found when the frame is taken.
+ * </p>
+ * <p>
+ *     Each screen word is 16 pixels of one row, bit 0 the leftmost, 1 black. The image is 1 bit
+ *     per pixel (0 white, 1 black), so a word is two bit-reversed bytes of the image buffer.
+ *     The frame hash is a 64 bit FNV-1a hash of the row hashes, for comparing frames in tests
+ *     without saving images.
+ * </p>
+ */
+public class Screen {
+    public static final int WIDTH = 512;
+    public static final int HEIGHT = 256;
+    public static final int WORDS_PER_ROW = WIDTH / 16;
+    public static final int SCREEN_WORDS = WORDS_PER_ROW * HEIGHT;
+
+    private final short[] mirror = new short[SCREEN_WORDS];
+    private final BitSet dirtyRows = new BitSet(HEIGHT);
+    private final long[] rowHashes = new long[HEIGHT];
+    private final BufferedImage image;
+    private final byte[] pixels;
+    private final int stride;
+
+    private long frameCount;
+    private long rowsDrawn;
+
+    /**
+     * Primary Constructor for Screen
+     * <p>
+     *     The screen starts white, the same as cleared RAM.
+     * </p>
+     */
+    public Screen() {
+        byte[] levels = {(byte) 255, 0};
+        image = new BufferedImage(WIDTH, HEIGHT, BufferedImage.TYPE_BYTE_BINARY,
+                new IndexColorModel(1, 2, levels, levels, levels));
+        pixels = ((DataBufferByte) image.getRaster().getDataBuffer()).getData();
+        stride = pixels.length / HEIGHT;
+
+        long blankRow = hashRow(0);
+        Arrays.fill(rowHashes, blankRow);
+    }
+
+    /**
+     * update
+     * <p>
+     *     Takes a frame: finds the rows that changed since the last frame, redraws them, and
+     *     updates their hashes.
+     * </p>
+     * Precondition: ram is a HACK RAM (at least KBD words)
+     * Postcondition: getImage and getFrameHash show the screen words of ram, getDirtyRows has
+     *                the rows that changed
+     * @param ram - RAM of the CPU
+     * @return - number of rows that changed
+     */
+    public int update(short[] ram) {
+        dirtyRows.clear();
+        int offset = 0;
+        while (offset < SCREEN_WORDS) {
+            int mismatch = Arrays.mismatch(ram, HackCPU.SCREEN + offset, HackCPU.SCREEN + SCREEN_WORDS,
+                    mirror, offset, SCREEN_WORDS);
+            if (mismatch < 0) {
+                break;
+            }
+            int row = (offset + mismatch) / WORDS_PER_ROW;
+            dirtyRows.set(row);
+            offset = (row + 1) * WORDS_PER_ROW;
+        }
+
+        for (int row = dirtyRows.nextSetBit(0); row >= 0; row = dirtyRows.nextSetBit(row + 1)) {
+            System.arraycopy(ram, HackCPU.SCREEN + row * WORDS_PER_ROW, mirror, row * WORDS_PER_ROW, WORDS_PER_ROW);
+            drawRow(row);
+            rowHashes[row] = hashRow(row);
+        }
+
+        int changed = dirtyRows.cardinality();
+        frameCount++;
+        rowsDrawn += changed;
+        return changed;
+    }
+
+    /**
+     * drawRow
+     * @param row - row to copy from the mirror into the image
+     */
+    private void drawRow(int row) {
+        int pixel = row * stride;
+        for (int word = row * WORDS_PER_ROW; word < (row + 1) * WORDS_PER_ROW; word++) {
+            int value = mirror[word];
+            pixels[pixel++] = (byte) (Integer.reverse(value & 0xFF) >>> 24);
+            pixels[pixel++] = (byte) (Integer.reverse((value >>> 8) & 0xFF) >>> 24);
+        }
+    }
+
+    /**
+     * hashRow
+     * @param row - row of the mirror
+     * @return - FNV-1a hash of the row's words
+     */
+    private long hashRow(int row) {
+        return HackCPU.hash(HackCPU.HASH_SEED, mirror, row * WORDS_PER_ROW, (row + 1) * WORDS_PER_ROW);
+    }
+
+    /**
+     * getFrameHash
+     * @return - hash of the screen at the last update (the same screen always has the same hash)
+     */
+    public long getFrameHash() {
+        long hash = HackCPU.HASH_SEED;
+        for (long rowHash : rowHashes) {
+            hash = HackCPU.hash(hash, rowHash);
+        }
+        return hash;
+    }
+
+    /**
+     * writePng
+     * @param file - PNG file to write the image to
+     * @throws IOException - if the file could not be written
+     */
+    public void writePng(Path file) throws IOException {
+        if (!ImageIO.write(image, "png", file.toFile())) {
+            throw new IOException("No PNG writer available");
+        }
+    }
+
+    /**
+     * getImage
+     * @return - the image itself (not a copy), changed by every update
+     */
+    public BufferedImage getImage() {
+        return image;
+    }
+
+    /**
+     * getDirtyRows
+     * @return - rows that changed at the last update (not a copy)
+     */
+    public BitSet getDirtyRows() {
+        return dirtyRows;
+    }
+
+    /**
+     * getFrameCount
+     * @return - number of updates
+     */
+    public long getFrameCount() {
+        return frameCount;
+    }
+
+    /**
+     * getRowsDrawn
+     * @return - number of rows redrawn, all updates
+     */
+    public long getRowsDrawn() {
+        return rowsDrawn;
+    }
+}
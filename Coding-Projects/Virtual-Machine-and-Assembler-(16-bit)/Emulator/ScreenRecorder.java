@@ -0,0 +1,148 @@
+/**
+ * Author: Ben Vargas
+ * Course: CS220 - Computer Architecture and Assembly Language
+ * Professor: Nery Chapeton-Lamas
+ * Project: CPU Emulator (HACK Architecture)
+ */
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Runs a HACK program headless and records its screen every N cycles, as PNG frames and/or
+ * frame hashes, so display output can be checked in CI without a GUI.
+ * <p>
+ *     The program runs in slices of -interval cycles (on HackCPU, or a DynamicTranslator with
+ *     -translate); after each slice the Screen takes a frame, redrawing only the rows that
+ *     changed. With -png each frame is written as frame-NNNNNN.png in the directory, with
+ *     -hashes each frame's hash and changed row count is printed. The final frame hash is
+ *     always printed. With -keys the slices run on a KeyboardRunner, which types the script's
+ *     keys into KBD at their cycles.
+ * </p>
+ * Build: javac -sourcepath ../Assembler -d build *.java
+ * Usage: java -cp build ScreenRecorder [-cycles N] [-interval N] [-translate] [-ram address=value]...
+ *                                      [-keys script] [-png directory] [-hashes] program.asm/.hack/.hackb
+ *        e.g. java -cp build ScreenRecorder -interval 100000 -ram KBD=65 -hashes Fill.asm
+ */
+public class ScreenRecorder {
+    public static final long DEFAULT_CYCLES = 10000000L;
+    public static final long DEFAULT_INTERVAL = 1000000L;
+
+    // ALGORITHM:
+    // parse command line for cycle budget, frame interval, engine, RAM settings, key script, and outputs
+    // assemble (.asm) or read (.hack/.hackb) the program, set the starting RAM values, read the key script
+    // run one interval of cycles, then take a frame (changed rows only)
+    // write the frame's PNG and/or print its hash, until the budget is used or the program stops
+    // print the final frame hash and the emulation and rendering times
+
+    public static void main(String[] args) {
+        long maxCycles = DEFAULT_CYCLES;
+        long interval = DEFAULT_INTERVAL;
+        boolean translate = false, printHashes = false;
+        String pngDirectory = null, keysFileName = null;
+        List<String> settings = new ArrayList<String>();
+        String programFileName = null;
+
+        System.setProperty("java.awt.headless", "true");
+
+        for (int i = 0; i < args.length; i++) {
+            if (args[i].equals("-cycles") && i + 1 < args.length) {
+                maxCycles = Long.parseLong(args[++i]);
+            } else if (args[i].equals("-interval") && i + 1 < args.length) {
+                interval = Long.parseLong(args[++i]);
+            } else if (args[i].equals("-translate")) {
+                translate = true;
+            } else if (args[i].equals("-ram") && i + 1 < args.length) {
+                settings.add(args[++i]);
+            } else if (args[i].equals("-keys") && i + 1 < args.length) {
+                keysFileName = args[++i];
+            } else if (args[i].equals("-png") && i + 1 < args.length) {
+                pngDirectory = args[++i];
+            } else if (args[i].equals("-hashes")) {
+                printHashes = true;
+            } else {
+                programFileName = args[i];
+            }
+        }
+
+        if (programFileName == null || maxCycles < 0 || interval < 1) {
+            System.err.println("Usage: java ScreenRecorder [-cycles N] [-interval N] [-translate] " +
+                    "[-ram address=value]... [-keys script] [-png directory] [-hashes] program.asm/.hack/.hackb");
+            System.exit(1);
+        }
+
+        HackCPU cpu = null;
+        KeyTimeline timeline = null;
+        try {
+            cpu = new HackCPU(Emulator.loadProgram(programFileName));
+            for (String setting : settings) {
+                int equals = setting.indexOf('=');
+                if (equals < 0) {
+                    throw new IllegalArgumentException("Invalid RAM setting: " + setting);
+                }
+                cpu.setRam(Emulator.parseAddress(setting.substring(0, equals)),
+                        Integer.parseInt(setting.substring(equals + 1).trim()));
+            }
+            if (keysFileName != null) {
+                timeline = KeyTimeline.parse(Files.readAllLines(Paths.get(keysFileName), StandardCharsets.US_ASCII));
+            }
+            if (pngDirectory != null) {
+                Files.createDirectories(Paths.get(pngDirectory));
+            }
+        } catch (IOException | IllegalArgumentException e) {
+            System.err.println(e.getMessage());
+            System.err.println("Could not load " + programFileName);
+            System.exit(1);
+        }
+
+        DynamicTranslator translator = translate ? new DynamicTranslator(cpu) : null;
+        KeyboardRunner keyboard = timeline != null ? new KeyboardRunner(cpu, translator, timeline) : null;
+        Screen screen = new Screen();
+        long emulationNanos = 0, renderNanos = 0;
+        int status = HackCPU.BUDGET_EXHAUSTED;
+
+        try {
+            long remaining = maxCycles;
+            while (remaining > 0 && status == HackCPU.BUDGET_EXHAUSTED) {
+                long before = cpu.getCycles();
+                long start = System.nanoTime();
+                long slice = Math.min(interval, remaining);
+                if (keyboard != null) {
+                    status = keyboard.run(slice);
+                } else {
+                    status = translate ? translator.run(slice) : cpu.run(slice);
+                }
+                long rendered = System.nanoTime();
+                emulationNanos += rendered - start;
+                remaining -= cpu.getCycles() - before;
+
+                int changed = screen.update(cpu.getRam());
+                renderNanos += System.nanoTime() - rendered;
+
+                long frame = screen.getFrameCount();
+                if (pngDirectory != null) {
+                    Path file = Paths.get(pngDirectory, String.format("frame-%06d.png", frame));
+                    screen.writePng(file);
+                }
+                if (printHashes) {
+                    System.out.printf("frame %d at cycle %d: %016x (%d rows changed)%n", frame, cpu.getCycles(),
+                            screen.getFrameHash(), changed);
+                }
+            }
+        } catch (IOException e) {
+            System.err.println(e.getMessage());
+            System.err.println("Could not write the frames to " + pngDirectory);
+            System.exit(1);
+        }
+
+        System.out.printf("%s: %s after %d cycles, %d frames, %d rows redrawn%n", programFileName,
+                HackCPU.statusName(status), cpu.getCycles(), screen.getFrameCount(), screen.getRowsDrawn());
+        System.out.printf("final frame %016x (emulation %.2f ms, rendering %.2f ms)%n", screen.getFrameHash(),
+                emulationNanos / 1e6, renderNanos / 1e6);
+    }
+}
@@ -0,0 +1,459 @@
+/**
+ * Author: Ben Vargas
+ * Course: CS220 - Computer Architecture and Assembly Language
+ * Professor: Nery Chapeton-Lamas
+ * Project: CPU Emulator (HACK Architecture)
+ */
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.ShortBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Checkpoint of a running HACK program (RAM, A, D, PC, and cycle count) in a memory-mapped
+ * file, so a long run can be picked up again (or forked many times) without re-running it.
+ * <p>
+ *     RAM is split into pages of PAGE_WORDS words. A snapshot is saved against a base, another
+ *     snapshot or power-on (all RAM 0), and only the pages that differ from the base are
+ *     written, with a bitset of which ones they are; the rest of RAM is read from the base
+ *     when the snapshot is restored. A program that uses a few hundred words of RAM saves in a
+ *     few pages, and a snapshot of a later point of the same run holds only what changed since.
+ * </p>
+ * <p>
+ *     Opening a snapshot maps its file (and its base's) read only and reads nothing else;
+ *     restore copies each page straight from the mapping into the CPU's RAM, and nothing is
+ *     kept on the heap, so one open snapshot can restore any number of CPUs, on any number of
+ *     threads. A snapshot records the hash of its program's ROM (restore refuses another
+ *     program) and of its full RAM, which a snapshot saved against it records as its base, so
+ *     a base that was overwritten since is found when the snapshot is opened. A snapshot is
+ *     written to a temporary file and moved over the old one, so a snapshot already open (and
+ *     mapped) keeps reading the file it opened, and saving over a snapshot of its own base
+ *     chain is refused.
+ * </p>
+ * <p>
+ *     Layout (all values big-endian):
+ *     [magic "HSNP" (4 bytes)][version (2 bytes)][reserved, 0 (2 bytes)][A, D, PC (4 bytes each)]
+ *     [cycles (8 bytes)][ROM hash (8 bytes)][RAM hash (8 bytes)][base RAM hash, 0 for power-on (8 bytes)]
+ *     [page bitset (PAGES / 8 bytes)][base file name length (2 bytes)][base file name (UTF-8)]
+ *     [padding to a multiple of 8 bytes], then the pages in the bitset, in address order.
+ *     The base file name is relative to the snapshot's directory.
+ * </p>
+ * Build: javac -sourcepath ../Assembler -d build *.java
+ * Usage: java -cp build Snapshot [-from snapshot] [-cycles N] [-ram address=value]... [-save snapshot]
+ *                                [-print address]... program.asm/.hack/.hackb
+ *        java -cp build Snapshot -info snapshot
+ *        e.g. java -cp build Snapshot -cycles 5000000 -ram KBD=1 -save warm.hsnap Fill.asm
+ *             java -cp build Snapshot -from warm.hsnap -cycles 1000 -save later.hsnap -print SCREEN Fill.asm
+ */
+public class Snapshot {
+    public static final String EXTENSION = ".hsnap";
+    public static final int MAGIC = 0x48534E50; // "HSNP"
+    public static final int VERSION = 1;
+
+    public static final int PAGE_WORDS = 256;
+    public static final int PAGES = HackCPU.RAM_SIZE / PAGE_WORDS;
+
+    private static final int FIXED_HEADER_SIZE = 52 + PAGES / 8 + 2;
+
+    private final Path file;
+    private final Snapshot base; // null for power-on
+    private final ShortBuffer pages;
+    private final BitSet pageBits;
+    private final int[] pageIndexes = new int[PAGES]; // index of each page in pages, -1 if in the base
+
+    private final int a;
+    private final int d;
+    private final int pc;
+    private final long cycles;
+    private final long romHash;
+    private final long ramHash;
+
+    // ROM last found to match (CPUs made with the sharing constructor share one ROM array)
+    private volatile int[] checkedRom;
+
+    // ALGORITHM:
+    // parse command line for the snapshot to start from, cycle budget, RAM settings, snapshot to save, addresses
+    // with -info: open the snapshot (and its bases) and print its registers, cycles, and pages
+    // assemble (.asm) or read (.hack/.hackb) the program, restore the -from snapshot or start at power-on
+    // set the RAM values, run the cycle budget (or until the program stops)
+    // save the state against the -from snapshot (only the pages that changed) and print its size
+    // print the status, cycles, and the requested RAM values
+
+    public static void main(String[] args) {
+        long maxCycles = 0;
+        String fromFileName = null, saveFileName = null, infoFileName = null, programFileName = null;
+        List<String> settings = new ArrayList<String>();
+        List<String> printed = new ArrayList<String>();
+
+        for (int i = 0; i < args.length; i++) {
+            if (args[i].equals("-from") && i + 1 < args.length) {
+                fromFileName = args[++i];
+            } else if (args[i].equals("-cycles") && i + 1 < args.length) {
+                maxCycles = Long.parseLong(args[++i]);
+            } else if (args[i].equals("-ram") && i + 1 < args.length) {
+                settings.add(args[++i]);
+            } else if (args[i].equals("-save") && i + 1 < args.length) {
+                saveFileName = args[++i];
+            } else if (args[i].equals("-print") && i + 1 < args.length) {
+                printed.add(args[++i]);
+            } else if (args[i].equals("-info") && i + 1 < args.length) {
+                infoFileName = args[++i];
+            } else {
+                programFileName = args[i];
+            }
+        }
+
+        if ((programFileName == null) == (infoFileName == null) || maxCycles < 0) {
+            System.err.println("Usage: java Snapshot [-from snapshot] [-cycles N] [-ram address=value]... " +
+                    "[-save snapshot] [-print address]... program.asm/.hack/.hackb");
+            System.err.println("       java Snapshot -info snapshot");
+            System.exit(1);
+        }
+
+        if (infoFileName != null) {
+            try {
+                for (Snapshot snapshot = open(Paths.get(infoFileName)); snapshot != null; snapshot = snapshot.base) {
+                    System.out.printf("%s: cycle %d, A %d, D %d, PC %d, %d of %d pages, ROM %016x, RAM %016x, base %s%n",
+                            snapshot.file, snapshot.cycles, snapshot.a, snapshot.d, snapshot.pc,
+                            snapshot.pageBits.cardinality(), PAGES, snapshot.romHash, snapshot.ramHash,
+                            snapshot.base == null ? "power-on" : snapshot.base.file.toString());
+                }
+            } catch (IOException | IllegalArgumentException e) {
+                System.err.println(e.getMessage());
+                System.err.println("Could not open snapshot " + infoFileName);
+                System.exit(1);
+            }
+            return;
+        }
+
+        HackCPU cpu = null;
+        Snapshot from = null;
+        int[] printedAddresses = new int[printed.size()];
+        long restoreNanos = 0;
+        try {
+            cpu = new HackCPU(Emulator.loadProgram(programFileName));
+            if (fromFileName != null) {
+                long start = System.nanoTime();
+                from = open(Paths.get(fromFileName));
+                from.restore(cpu);
+                restoreNanos = System.nanoTime() - start;
+            }
+            for (String setting : settings) {
+                int equals = setting.indexOf('=');
+                if (equals < 0) {
+                    throw new IllegalArgumentException("Invalid RAM setting: " + setting);
+                }
+                cpu.setRam(Emulator.parseAddress(setting.substring(0, equals)),
+                        Integer.parseInt(setting.substring(equals + 1).trim()));
+            }
+            for (int i = 0; i < printed.size(); i++) {
+                printedAddresses[i] = Emulator.parseAddress(printed.get(i));
+            }
+        } catch (IOException | IllegalArgumentException e) {
+            System.err.println(e.getMessage());
+            System.err.println("Could not load " + programFileName + (fromFileName == null ? "" : " from " + fromFileName));
+            System.exit(1);
+        }
+
+        int status = cpu.run(maxCycles);
+        System.out.printf("%s: %s after %d cycles at PC %d%s%n", programFileName, HackCPU.statusName(status),
+                cpu.getCycles(), cpu.getPC(), from == null ? "" :
+                        String.format(" (restored from cycle %d in %.3f ms)", from.cycles, restoreNanos / 1e6));
+
+        if (saveFileName != null) {
+            try {
+                Snapshot saved = save(Paths.get(saveFileName), cpu, from);
+                System.out.printf("Saved %s: %d of %d pages against %s, %d bytes%n", saveFileName,
+                        saved.pageBits.cardinality(), PAGES, from == null ? "power-on" : fromFileName,
+                        Files.size(saved.file));
+            } catch (IOException | IllegalArgumentException e) {
+                System.err.println(e.getMessage());
+                System.err.println("Could not save snapshot " + saveFileName);
+                System.exit(1);
+            }
+        }
+        for (int i = 0; i < printed.size(); i++) {
+            System.out.println("RAM[" + printed.get(i) + "] = " + cpu.getRam(printedAddresses[i]));
+        }
+    }
+
+    /**
+     * Primary Constructor for Snapshot
+     * <p>
+     *     Reads the header of an opened file; the pages stay in the mapping.
+     * </p>
+     * @param file - snapshot file
+     * @param mapping - the whole file, mapped
+     * @param base - snapshot the file was saved against, null for power-on
+     * @param headerSize - bytes before the first page
+     */
+    private Snapshot(Path file, ByteBuffer mapping, Snapshot base, int headerSize) {
+        this.file = file;
+        this.base = base;
+        a = mapping.getInt(8);
+        d = mapping.getInt(12);
+        pc = mapping.getInt(16);
+        cycles = mapping.getLong(20);
+        romHash = mapping.getLong(28);
+        ramHash = mapping.getLong(36);
+
+        long[] bits = new long[PAGES / 64];
+        for (int i = 0; i < bits.length; i++) {
+            bits[i] = mapping.getLong(52 + i * 8);
+        }
+        pageBits = BitSet.valueOf(bits);
+        Arrays.fill(pageIndexes, -1);
+        int index = 0;
+        for (int page = pageBits.nextSetBit(0); page >= 0; page = pageBits.nextSetBit(page + 1)) {
+            pageIndexes[page] = index++;
+        }
+        pages = mapping.position(headerSize).slice().asShortBuffer();
+    }
+
+    /**
+     * save
+     * <p>
+     *     Writes the state of the CPU to a snapshot file, with only the pages of RAM that differ
+     *     from base.
+     * </p>
+     * Precondition: base (if any) is a snapshot of the same program
+     * Postcondition: file holds the snapshot (replaced if it existed)
+     * @param file - snapshot file to write
+     * @param cpu - CPU whose state is saved
+     * @param base - snapshot to save against, null for power-on
+     * @return - the saved snapshot, opened
+     * @throws IOException - if the file could not be written
+     * @throws IllegalArgumentException - if file is base or one of its bases
+     */
+    public static Snapshot save(Path file, HackCPU cpu, Snapshot base) throws IOException, IllegalArgumentException {
+        if (Files.exists(file)) {
+            Path target = file.toRealPath();
+            for (Snapshot snapshot = base; snapshot != null; snapshot = snapshot.base) {
+                if (Files.exists(snapshot.file) && snapshot.file.toRealPath().equals(target)) {
+                    throw new IllegalArgumentException(file + " is the snapshot (or a base of the snapshot) " +
+                            "it would be saved against");
+                }
+            }
+        }
+
+        short[] ram = cpu.getRam();
+        short[] basePage = new short[PAGE_WORDS];
+        BitSet pageBits = new BitSet(PAGES);
+        for (int page = 0; page < PAGES; page++) {
+            if (base != null) {
+                base.restorePage(page, basePage, 0);
+            }
+            if (Arrays.mismatch(ram, page * PAGE_WORDS, (page + 1) * PAGE_WORDS, basePage, 0, PAGE_WORDS) >= 0) {
+                pageBits.set(page);
+            }
+        }
+
+        byte[] baseName = base == null ? new byte[0] : file.toAbsolutePath().getParent()
+                .relativize(base.file.toAbsolutePath()).toString().getBytes(StandardCharsets.UTF_8);
+        int headerSize = (FIXED_HEADER_SIZE + baseName.length + 7) & ~7;
+        long size = headerSize + (long) pageBits.cardinality() * PAGE_WORDS * 2;
+
+        Path temporaryFile = HackFile.createTemporaryFile(file);
+        try {
+            try (FileChannel channel = FileChannel.open(temporaryFile, StandardOpenOption.READ,
+                    StandardOpenOption.WRITE)) {
+                writeSnapshot(channel.map(FileChannel.MapMode.READ_WRITE, 0, size), cpu, base, pageBits,
+                        baseName, headerSize);
+            }
+            Files.move(temporaryFile, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(temporaryFile);
+        }
+        return open(file);
+    }
+
+    /**
+     * writeSnapshot
+     * @param mapping - mapping of the (empty) file, headerSize plus the pages long
+     * @param cpu - CPU whose state is saved
+     * @param base - snapshot to save against, null for power-on
+     * @param pageBits - pages that differ from base
+     * @param baseName - name of the base's file, relative to the snapshot's directory
+     * @param headerSize - bytes before the first page
+     */
+    private static void writeSnapshot(MappedByteBuffer mapping, HackCPU cpu, Snapshot base, BitSet pageBits,
+                                      byte[] baseName, int headerSize) {
+        short[] ram = cpu.getRam();
+        mapping.putInt(MAGIC);
+        mapping.putShort((short) VERSION);
+        mapping.putShort((short) 0);
+        mapping.putInt(cpu.getA());
+        mapping.putInt(cpu.getD());
+        mapping.putInt(cpu.getPC());
+        mapping.putLong(cpu.getCycles());
+        int[] rom = cpu.getRom();
+        mapping.putLong(HackCPU.hash(HackCPU.HASH_SEED, rom, 0, rom.length));
+        mapping.putLong(HackCPU.hash(HackCPU.HASH_SEED, ram, 0, ram.length));
+        mapping.putLong(base == null ? 0 : base.ramHash);
+        long[] bits = Arrays.copyOf(pageBits.toLongArray(), PAGES / 64);
+        for (long word : bits) {
+            mapping.putLong(word);
+        }
+        mapping.putShort((short) baseName.length);
+        mapping.put(baseName);
+
+        ShortBuffer pages = mapping.position(headerSize).slice().asShortBuffer();
+        for (int page = pageBits.nextSetBit(0); page >= 0; page = pageBits.nextSetBit(page + 1)) {
+            pages.put(ram, page * PAGE_WORDS, PAGE_WORDS);
+        }
+        mapping.force();
+    }
+
+    /**
+     * open
+     * <p>
+     *     Maps a snapshot file and the files of its bases.
+     * </p>
+     * @param file - snapshot file
+     * @return - the snapshot
+     * @throws IOException - if the file (or a base) could not be read
+     * @throws IllegalArgumentException - if the file is not a snapshot, or its base has changed
+     *                                    (or the chain of bases leads back to a file already in it)
+     */
+    public static Snapshot open(Path file) throws IOException, IllegalArgumentException {
+        return open(file, new HashSet<Path>());
+    }
+
+    /**
+     * open
+     * @param file - snapshot file
+     * @param opened - real paths of the snapshots whose base is being opened
+     * @return - the snapshot
+     * @throws IOException - if the file (or a base) could not be read
+     * @throws IllegalArgumentException - if the file is not a snapshot, its base has changed, or it is in opened
+     */
+    private static Snapshot open(Path file, Set<Path> opened) throws IOException, IllegalArgumentException {
+        if (!opened.add(file.toRealPath())) {
+            throw new IllegalArgumentException(file + " is its own base (the chain of bases loops)");
+        }
+        MappedByteBuffer mapping;
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            if (channel.size() < FIXED_HEADER_SIZE) {
+                throw new IllegalArgumentException(file + " is not a snapshot");
+            }
+            mapping = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+        if (mapping.getInt(0) != MAGIC || mapping.getShort(4) != VERSION) {
+            throw new IllegalArgumentException(file + " is not a version " + VERSION + " snapshot");
+        }
+
+        int nameLength = mapping.getShort(FIXED_HEADER_SIZE - 2) & 0xFFFF;
+        int headerSize = (FIXED_HEADER_SIZE + nameLength + 7) & ~7;
+        if (mapping.capacity() < headerSize) {
+            throw new IllegalArgumentException(file + " is not a snapshot");
+        }
+        Snapshot base = null;
+        long baseHash = mapping.getLong(44);
+        if (nameLength > 0) {
+            byte[] name = new byte[nameLength];
+            mapping.get(FIXED_HEADER_SIZE, name);
+            base = open(file.toAbsolutePath().getParent().resolve(new String(name, StandardCharsets.UTF_8)), opened);
+            if (base.ramHash != baseHash) {
+                throw new IllegalArgumentException(file + " was saved against another version of " + base.file);
+            }
+        }
+
+        Snapshot snapshot = new Snapshot(file, mapping, base, headerSize);
+        if (mapping.capacity() < headerSize + (long) snapshot.pageBits.cardinality() * PAGE_WORDS * 2) {
+            throw new IllegalArgumentException(file + " is cut short");
+        }
+        return snapshot;
+    }
+
+    /**
+     * restore
+     * <p>
+     *     Puts the CPU in the saved state: every page of RAM from this snapshot or its base,
+     *     and the registers and cycle count.
+     * </p>
+     * Precondition: n/a
+     * Postcondition: the CPU continues the saved run from where it was saved
+     * @param cpu - CPU of the same program
+     * @throws IllegalArgumentException - if the CPU's program is not the snapshot's
+     */
+    public void restore(HackCPU cpu) throws IllegalArgumentException {
+        int[] rom = cpu.getRom();
+        if (rom != checkedRom) {
+            if (HackCPU.hash(HackCPU.HASH_SEED, rom, 0, rom.length) != romHash) {
+                throw new IllegalArgumentException(file + " is a snapshot of another program");
+            }
+            checkedRom = rom;
+        }
+
+        short[] ram = cpu.getRam();
+        for (int page = 0; page < PAGES; page++) {
+            restorePage(page, ram, page * PAGE_WORDS);
+        }
+        cpu.reset();
+        cpu.setRegisters(a, d, pc, cycles);
+    }
+
+    /**
+     * restorePage
+     * @param page - page number
+     * @param destination - array the page's words are copied to
+     * @param offset - index in destination of the page's first word
+     */
+    private void restorePage(int page, short[] destination, int offset) {
+        int index = pageIndexes[page];
+        if (index >= 0) {
+            // absolute get, the buffer's position is never moved so threads can share it
+            pages.get(index * PAGE_WORDS, destination, offset, PAGE_WORDS);
+        } else if (base != null) {
+            base.restorePage(page, destination, offset);
+        } else {
+            Arrays.fill(destination, offset, offset + PAGE_WORDS, (short) 0);
+        }
+    }
+
+    /**
+     * getFile
+     * @return - snapshot file
+     */
+    public Path getFile() {
+        return file;
+    }
+
+    /**
+     * getBase
+     * @return - snapshot this one was saved against, null for power-on
+     */
+    public Snapshot getBase() {
+        return base;
+    }
+
+    /**
+     * getCycles
+     * @return - cycle count of the saved run
+     */
+    public long getCycles() {
+        return cycles;
+    }
+
+    /**
+     * getPageCount
+     * @return - pages saved in this file (the rest come from the base)
+     */
+    public int getPageCount() {
+        return pageBits.cardinality();
+    }
+}